@@ -0,0 +1,4 @@
+ALTER TABLE `xiaozhi`.`sys_role` 
+ADD COLUMN `firstChunkLength` INT DEFAULT NULL COMMENT '首句最小字符数' AFTER vadSilenceMs,
+ADD COLUMN `firstChunkTokens` INT DEFAULT NULL COMMENT '首句最多等待的token数' AFTER firstChunkLength,
+ADD COLUMN `chunkLength` INT DEFAULT NULL COMMENT '后续句子最小字符数' AFTER firstChunkTokens;
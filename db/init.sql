@@ -104,6 +104,9 @@ CREATE TABLE `xiaozhi`.`sys_role` (
   `vadSilenceTh` FLOAT DEFAULT 0.3 COMMENT '静音检测阈值',
   `vadEnergyTh` FLOAT DEFAULT 0.01 COMMENT '能量检测阈值',
   `vadSilenceMs` INT DEFAULT 1200 COMMENT '静音检测时间',
+  `firstChunkLength` INT DEFAULT NULL COMMENT '首句最小字符数',
+  `firstChunkTokens` INT DEFAULT NULL COMMENT '首句最多等待的token数',
+  `chunkLength` INT DEFAULT NULL COMMENT '后续句子最小字符数',
   `voiceName` varchar(100) NOT NULL COMMENT '角色语音名称',
   `state` enum('1','0') DEFAULT '1' COMMENT '状态：1-启用，0-禁用',
   `isDefault` enum('1','0') DEFAULT '0' COMMENT '是否默认角色：1-是，0-否',
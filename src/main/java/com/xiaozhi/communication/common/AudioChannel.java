@@ -0,0 +1,27 @@
+package com.xiaozhi.communication.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * 独立于控制通道的音频通道
+ * 控制消息（JSON）始终走会话的主连接，协商出音频通道后，音频帧改由音频通道收发；通道不可用时会话退回主连接发送音频。
+ */
+public interface AudioChannel {
+
+    /**
+     * 传输方式，与hello消息中的 transport 一致
+     */
+    String getTransport();
+
+    /**
+     * 通道是否可以发送音频（已知对端地址且未关闭）
+     */
+    boolean isOpen();
+
+    /**
+     * 发送一帧音频，发送不保证送达
+     */
+    void send(ByteBuffer frame);
+
+    void close();
+}
@@ -1,6 +1,7 @@
 package com.xiaozhi.communication.common;
 
 import com.xiaozhi.communication.domain.iot.IotDescriptor;
+import com.xiaozhi.dialogue.service.DialoguePipeline;
 import com.xiaozhi.dialogue.llm.memory.Conversation;
 import com.xiaozhi.dialogue.llm.tool.ToolsSessionHolder;
 import com.xiaozhi.dialogue.llm.tool.mcp.device.DeviceMcpHolder;
@@ -12,6 +13,7 @@ import lombok.Data;
 import org.springframework.ai.tool.ToolCallback;
 import reactor.core.publisher.Sinks;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Path;
 import java.time.Instant;
 import java.time.LocalDateTime;
@@ -71,14 +73,23 @@ public abstract class ChatSession {
      * 会话的音频数据流
      */
     protected Sinks.Many<byte[]> audioSinks;
+    /**
+     * 协商出的独立音频通道（如UDP），为null时音频与控制消息共用主连接
+     */
+    protected volatile AudioChannel audioChannel;
     /**
      * 会话是否正在进行流式识别
      */
     protected boolean streamingState;
     /**
-     * 会话的最后有效活动时间
+     * 会话的最后有效活动时间（System.nanoTime），每帧音频都会更新，只做一次volatile写
      */
-    protected Instant lastActivityTime;
+    protected volatile long lastActivityNanos;
+
+    /**
+     * 对话流水线状态（句子队列、TTS任务、当前轮对话），随会话释放
+     */
+    protected final DialoguePipeline dialoguePipeline = new DialoguePipeline();
 
     /**
      * 会话属性存储
@@ -90,7 +101,7 @@ public abstract class ChatSession {
 
     public ChatSession(String sessionId) {
         this.sessionId = sessionId;
-        this.lastActivityTime = Instant.now();
+        this.lastActivityNanos = System.nanoTime();
     }
 
     public void setAttribute(String key, Object value) {
@@ -148,6 +159,13 @@ public abstract class ChatSession {
         return getAudioPath("assistant", getAssistantTimeMillis());
     }
 
+    /**
+     * 指定对话ID的助手录音路径
+     */
+    public Path getAssistantAudioPath(Long assistantTimeMillis) {
+        return getAudioPath("assistant", assistantTimeMillis);
+    }
+
     public ToolsSessionHolder getFunctionSessionHolder() {
         return toolsSessionHolder;
     }
@@ -180,6 +198,15 @@ public abstract class ChatSession {
 
     public abstract void sendBinaryMessage(byte[] message);
 
+    /**
+     * 发送缓冲区中剩余的数据，默认复制为数组后发送，支持直接发送缓冲区的实现可以覆盖以避免复制
+     */
+    public void sendBinaryMessage(ByteBuffer message) {
+        byte[] data = new byte[message.remaining()];
+        message.duplicate().get(data);
+        sendBinaryMessage(data);
+    }
+
     /**
      * 设置 Conversation，需要与当前活跃角色一致。
      * 当切换角色时，会释放当前 Conversation，并新建一个对应于新角色的Conversation。
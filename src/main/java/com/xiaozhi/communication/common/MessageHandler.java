@@ -181,7 +181,7 @@ public class MessageHandler {
         // 清理音频处理会话
         audioService.cleanupSession(sessionId);
         // 清理对话
-        dialogueService.cleanupSession(sessionId);
+        dialogueService.cleanupSession(chatSession);
         // 清理Conversation缓存的对话历史。
         Conversation conversation = chatSession.getConversation();
         if (conversation != null) {
@@ -5,6 +5,8 @@ import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.enums.ListenMode;
 import com.xiaozhi.event.ChatSessionCloseEvent;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
 import jakarta.annotation.Resource;
@@ -14,10 +16,13 @@ import org.springframework.context.ApplicationContext;
 import org.springframework.stereotype.Service;
 import reactor.core.publisher.Sinks;
 
-import java.time.Duration;
-import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.Map;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
 import java.util.concurrent.ScheduledExecutorService;
 import java.util.concurrent.TimeUnit;
@@ -35,10 +40,31 @@ public class SessionManager {
 
     // 设置不活跃超时时间为60秒
     private static final long INACTIVITY_TIMEOUT_SECONDS = 60;
+    private static final long INACTIVITY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(INACTIVITY_TIMEOUT_SECONDS);
+
+    // 超时时间轮的槽位精度为1秒，一圈覆盖整个超时时间，会话的到期槽位不会超过一圈
+    private static final long EXPIRY_TICK_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final int EXPIRY_WHEEL_SIZE = (int) INACTIVITY_TIMEOUT_SECONDS + 2;
 
     // 用于存储所有连接的会话信息
     private final ConcurrentHashMap<String, ChatSession> sessions = new ConcurrentHashMap<>();
 
+    // 设备ID到会话的索引，同一设备重连时指向最新注册的会话
+    private final ConcurrentHashMap<String, ChatSession> sessionsByDevice = new ConcurrentHashMap<>();
+
+    /*
+     * 不活跃超时时间轮：每个会话挂在其预计到期（最后活动时间 + 超时时间）所在的槽位上。
+     * 更新活动时间只写会话上的时间戳，不移动槽位；槽位到期时再检查，仍然活跃的会话按新的到期时间挂到后面的槽位。
+     * 每次检查只处理到期槽位上的会话，活跃会话每个超时周期只被检查一次，不再每10秒遍历全部会话。
+     * 时间轮只由定时线程访问，新注册的会话先放入待调度队列。
+     */
+    @SuppressWarnings("unchecked")
+    private final ArrayDeque<ChatSession>[] expiryWheel = new ArrayDeque[EXPIRY_WHEEL_SIZE];
+    private final Queue<ChatSession> pendingExpiry = new ConcurrentLinkedQueue<>();
+    private final long expiryStartNanos = System.nanoTime();
+    // 下一个待处理的槽位序号
+    private long nextExpiryTick = 0;
+
     // 存储验证码生成状态
     private final ConcurrentHashMap<String, Boolean> captchaState = new ConcurrentHashMap<>();
 
@@ -48,16 +74,42 @@ public class SessionManager {
     @Resource
     private ApplicationContext applicationContext;
 
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    {
+        for (int i = 0; i < expiryWheel.length; i++) {
+            expiryWheel[i] = new ArrayDeque<>();
+        }
+    }
+
     /**
      * 初始化方法，启动定时检查不活跃会话的任务
      */
     @PostConstruct
     public void init() {
-        // 每10秒检查一次不活跃的会话
-        scheduler.scheduleAtFixedRate(this::checkInactiveSessions, 10, 10, TimeUnit.SECONDS);
+        Gauge.builder("xiaozhi.sessions.active", sessions, Map::size)
+                .description("在线会话数")
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.dialogue.sentences.pending", this, SessionManager::pendingSentences)
+                .description("所有会话已送入TTS、尚未播放的句子数")
+                .register(meterRegistry);
+        // 每秒推进一次超时时间轮
+        scheduler.scheduleAtFixedRate(this::checkInactiveSessions, 1, 1, TimeUnit.SECONDS);
         logger.info("不活跃会话检查任务已启动，超时时间: {}秒", INACTIVITY_TIMEOUT_SECONDS);
     }
 
+    /**
+     * 所有会话待播放的句子数，采集指标时遍历
+     */
+    private double pendingSentences() {
+        int pending = 0;
+        for (ChatSession chatSession : sessions.values()) {
+            pending += chatSession.getDialoguePipeline().getSentences().size();
+        }
+        return pending;
+    }
+
     /**
      * 销毁方法，关闭定时任务执行器
      */
@@ -77,23 +129,63 @@ public class SessionManager {
 
     /**
      * 检查不活跃的会话并关闭它们
-     * 使用虚拟线程实现异步处理
+     * 在定时线程中推进时间轮，关闭会话使用虚拟线程异步处理
      */
     private void checkInactiveSessions() {
-        Thread.startVirtualThread(() -> {
-            Instant now = Instant.now();
-            sessions.values().forEach(session -> {
-                Instant lastActivity = session.getLastActivityTime();
-                if (lastActivity != null) {
-                    Duration inactiveDuration = Duration.between(lastActivity, now);
-                    if (inactiveDuration.getSeconds() > INACTIVITY_TIMEOUT_SECONDS) {
-                        logger.info("会话 {} 已经 {} 秒没有有效活动，自动关闭",
-                            session.getSessionId(), inactiveDuration.getSeconds());
-                        closeSession(session);
-                    }
+        try {
+            List<ChatSession> expired = expireInactiveSessions(System.nanoTime());
+            if (!expired.isEmpty()) {
+                Thread.startVirtualThread(() -> expired.forEach(this::closeSession));
+            }
+        } catch (Exception e) {
+            logger.error("检查不活跃会话时发生错误", e);
+        }
+    }
+
+    /**
+     * 推进时间轮到当前时间，返回已超时的会话
+     *
+     * @param now 当前时间（System.nanoTime）
+     */
+    private List<ChatSession> expireInactiveSessions(long now) {
+        long currentTick = (now - expiryStartNanos) / EXPIRY_TICK_NANOS;
+        ChatSession session;
+        while ((session = pendingExpiry.poll()) != null) {
+            scheduleExpiry(session, currentTick);
+        }
+
+        List<ChatSession> expired = new ArrayList<>();
+        for (; nextExpiryTick <= currentTick; nextExpiryTick++) {
+            ArrayDeque<ChatSession> slot = expiryWheel[(int) (nextExpiryTick % EXPIRY_WHEEL_SIZE)];
+            // 只处理本轮之前挂上的会话，重新挂回同一槽位的会话留到下一圈
+            for (int i = slot.size(); i > 0; i--) {
+                session = slot.poll();
+                if (sessions.get(session.getSessionId()) != session) {
+                    // 已关闭
+                    continue;
+                }
+                long inactiveNanos = now - session.getLastActivityNanos();
+                if (inactiveNanos > INACTIVITY_TIMEOUT_NANOS) {
+                    logger.info("会话 {} 已经 {} 秒没有有效活动，自动关闭",
+                            session.getSessionId(), TimeUnit.NANOSECONDS.toSeconds(inactiveNanos));
+                    expired.add(session);
+                } else {
+                    scheduleExpiry(session, currentTick);
                 }
-            });
-        });
+            }
+        }
+        return expired;
+    }
+
+    /**
+     * 按最后活动时间把会话挂到到期槽位，至少是下一个槽位
+     */
+    private void scheduleExpiry(ChatSession session, long currentTick) {
+        long deadline = session.getLastActivityNanos() + INACTIVITY_TIMEOUT_NANOS - expiryStartNanos;
+        // 向上取整，到达该槽位时已超过到期时间
+        long deadlineTick = Math.floorDiv(deadline, EXPIRY_TICK_NANOS) + 1;
+        long tick = Math.max(deadlineTick, currentTick + 1);
+        expiryWheel[(int) (tick % EXPIRY_WHEEL_SIZE)].add(session);
     }
 
     /**
@@ -105,7 +197,7 @@ public class SessionManager {
     public void updateLastActivity(String sessionId) {
         ChatSession session = sessions.get(sessionId);
         if(session != null){
-            session.setLastActivityTime(Instant.now());
+            session.setLastActivityNanos(System.nanoTime());
         }
     }
 
@@ -117,6 +209,7 @@ public class SessionManager {
      */
     public void registerSession(String sessionId, ChatSession chatSession) {
         sessions.put(sessionId, chatSession);
+        pendingExpiry.add(chatSession);
         logger.info("会话已注册 - SessionId: {}  SessionType: {}", sessionId, chatSession.getClass().getSimpleName());
     }
 
@@ -144,6 +237,11 @@ public class SessionManager {
         }
         try {
             sessions.remove(chatSession.getSessionId());
+            SysDevice device = chatSession.getSysDevice();
+            if (device != null && device.getDeviceId() != null) {
+                // 设备可能已经在新会话上重连，只移除指向本会话的索引
+                sessionsByDevice.remove(device.getDeviceId(), chatSession);
+            }
             // 关闭会话
             chatSession.close();
             // 清理音频流
@@ -173,7 +271,15 @@ public class SessionManager {
         // 先检查是否已存在该sessionId的配置
         ChatSession chatSession = sessions.get(sessionId);
         if(chatSession != null){
+            SysDevice previous = chatSession.getSysDevice();
+            if (previous != null && previous.getDeviceId() != null
+                    && !previous.getDeviceId().equals(device.getDeviceId())) {
+                sessionsByDevice.remove(previous.getDeviceId(), chatSession);
+            }
             chatSession.setSysDevice(device);
+            if (device.getDeviceId() != null) {
+                sessionsByDevice.put(device.getDeviceId(), chatSession);
+            }
             updateLastActivity(sessionId); // 更新活动时间
             logger.debug("设备配置已注册 - SessionId: {}, DeviceId: {}", sessionId, device.getDeviceId());
         }
@@ -242,15 +348,16 @@ public class SessionManager {
      * 获取会话
      *
      * @param deviceId 设备ID
-     * @return 会话ID
+     * @return 该设备最新注册的会话
      */
     public ChatSession getSessionByDeviceId(String deviceId) {
-        for (ChatSession chatSession : sessions.values()) {
-            if (chatSession.getSysDevice() != null && deviceId.equals(chatSession.getSysDevice().getDeviceId())) {
-                return chatSession;
-            }
+        ChatSession chatSession = sessionsByDevice.get(deviceId);
+        if (chatSession != null && sessions.get(chatSession.getSessionId()) != chatSession) {
+            // 注册设备与关闭会话并发时可能残留索引
+            sessionsByDevice.remove(deviceId, chatSession);
+            return null;
         }
-        return null;
+        return chatSession;
     }
 
     /**
@@ -1,5 +1,6 @@
 package com.xiaozhi.communication.domain;
 
+import com.fasterxml.jackson.annotation.JsonProperty;
 import lombok.Data;
 
 @Data
@@ -12,4 +13,9 @@ public class HelloFeatures {
      * 设备是否启用服务端aec
      */
     private Boolean aec = false;
+    /**
+     * 设备的UDP音频包是否附加认证标签
+     */
+    @JsonProperty("udp_auth")
+    private Boolean udpAuth = false;
 }
\ No newline at end of file
@@ -10,6 +10,8 @@ public final class HelloMessage extends Message {
         super("hello");
     }
 
+    // 设备期望的音频传输方式：websocket（默认）或 udp
+    private String transport;
     private HelloFeatures features;
     private AudioParams audioParams;
 }
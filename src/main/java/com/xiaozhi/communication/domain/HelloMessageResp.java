@@ -1,5 +1,6 @@
 package com.xiaozhi.communication.domain;
 
+import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.databind.PropertyNamingStrategies;
 import com.fasterxml.jackson.databind.annotation.JsonNaming;
 import lombok.Data;
@@ -13,4 +14,7 @@ public class HelloMessageResp {
     private String transport;
     private String sessionId;
     private AudioParams audioParams;
+    // 协商为UDP音频通道时下发
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private UdpParams udp;
 }
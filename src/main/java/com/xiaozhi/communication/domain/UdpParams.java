@@ -0,0 +1,23 @@
+package com.xiaozhi.communication.domain;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import com.fasterxml.jackson.databind.PropertyNamingStrategies;
+import com.fasterxml.jackson.databind.annotation.JsonNaming;
+import lombok.Data;
+import lombok.experimental.Accessors;
+
+/**
+ * hello响应中下发的UDP音频通道参数
+ * key 为AES-128密钥，nonce 为包头模板，均为十六进制字符串。auth 为true时每个包附加认证标签，只在设备声明支持时下发。
+ */
+@Data
+@Accessors(chain = true)
+@JsonNaming(PropertyNamingStrategies.SnakeCaseStrategy.class)
+public class UdpParams {
+    private String server;
+    private int port;
+    private String key;
+    private String nonce;
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    private Boolean auth;
+}
@@ -0,0 +1,141 @@
+package com.xiaozhi.communication.server.udp;
+
+import java.util.function.Consumer;
+
+/**
+ * 上行音频的乱序缓冲
+ * 按序号把数据包还原为发送顺序：连续的包立即交出；出现空洞时最多缓存 depth 个后续包，
+ * 或者最早缓存的包等待超过 maxDelay，就认为空洞已丢失，跳过继续交出。迟到和重复的包直接丢弃。
+ * 非线程安全，只由UDP接收线程访问。
+ */
+final class JitterBuffer {
+
+    // 序号窗口，超过窗口的跳跃视为大量丢包，直接追上
+    private static final int CAPACITY = 64;
+    // 序号回退超过该值视为设备重新开始计数
+    private static final long RESET_THRESHOLD = 1000;
+
+    private final int depth;
+    private final long maxDelayNanos;
+    private final byte[][] frames = new byte[CAPACITY][];
+    private final long[] arrivals = new long[CAPACITY];
+
+    // 下一个应交出的序号，-1 表示尚未收到任何包
+    private long next = -1;
+    // 已缓存、等待空洞的包数
+    private int buffered = 0;
+
+    private long late = 0;
+    private long lost = 0;
+
+    JitterBuffer(int depth, long maxDelayNanos) {
+        this.depth = Math.max(0, Math.min(depth, CAPACITY - 1));
+        this.maxDelayNanos = maxDelayNanos;
+    }
+
+    /**
+     * 放入一个包，并交出所有可以按序交出的包
+     *
+     * @param seq 序号（无符号32位）
+     * @param now 到达时间（System.nanoTime）
+     */
+    void offer(long seq, byte[] frame, long now, Consumer<byte[]> out) {
+        if (next < 0 || next - seq > RESET_THRESHOLD) {
+            skipAll(out);
+            next = seq;
+        }
+        if (seq < next) {
+            late++;
+            return;
+        }
+        if (seq - next >= CAPACITY) {
+            // 跳跃超出窗口：交出已缓存的包，从新序号继续
+            skipAll(out);
+            lost += seq - next;
+            next = seq;
+        }
+        int slot = slot(seq);
+        if (frames[slot] != null) {
+            // 窗口内槽位已有数据，即重复的包
+            late++;
+            return;
+        }
+        frames[slot] = frame;
+        arrivals[slot] = now;
+        buffered++;
+        drain(out);
+        while (buffered > depth) {
+            skipHole(out);
+        }
+    }
+
+    /**
+     * 检查缓存的包是否等待过久，过久则跳过空洞，由接收线程定期调用
+     */
+    void flush(long now, Consumer<byte[]> out) {
+        while (buffered > 0 && now - oldestArrival() > maxDelayNanos) {
+            skipHole(out);
+        }
+    }
+
+    boolean hasPending() {
+        return buffered > 0;
+    }
+
+    long getLate() {
+        return late;
+    }
+
+    long getLost() {
+        return lost;
+    }
+
+    // 缓存中的包序号都在 [next, next + CAPACITY) 内，槽位上有数据即为该序号
+    private int slot(long seq) {
+        return (int) (seq % CAPACITY);
+    }
+
+    private void drain(Consumer<byte[]> out) {
+        while (buffered > 0) {
+            int slot = slot(next);
+            byte[] frame = frames[slot];
+            if (frame == null) {
+                return;
+            }
+            frames[slot] = null;
+            buffered--;
+            next++;
+            out.accept(frame);
+        }
+    }
+
+    /**
+     * 跳过 next 处的空洞，直到下一个已缓存的包，并继续交出连续的包
+     */
+    private void skipHole(Consumer<byte[]> out) {
+        while (buffered > 0 && frames[slot(next)] == null) {
+            next++;
+            lost++;
+        }
+        drain(out);
+    }
+
+    private void skipAll(Consumer<byte[]> out) {
+        while (buffered > 0) {
+            skipHole(out);
+        }
+    }
+
+    private long oldestArrival() {
+        long oldest = Long.MAX_VALUE;
+        boolean found = false;
+        for (long seq = next; seq < next + CAPACITY; seq++) {
+            int slot = slot(seq);
+            if (frames[slot] != null && (!found || arrivals[slot] - oldest < 0)) {
+                oldest = arrivals[slot];
+                found = true;
+            }
+        }
+        return oldest;
+    }
+}
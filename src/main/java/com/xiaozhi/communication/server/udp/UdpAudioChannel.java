@@ -0,0 +1,306 @@
+package com.xiaozhi.communication.server.udp;
+
+import com.xiaozhi.communication.common.AudioChannel;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个会话的UDP音频通道
+ * 包格式与设备固件的UDP音频协议一致：16字节包头之后是AES-128-CTR加密的Opus帧，包头同时作为CTR的初始计数器。
+ * <pre>
+ * 0      1      2-3        4-7       8-11        12-15
+ * type   flags  负载长度    连接ID     时间戳(ms)   序号
+ * 0x01   0x00   大端        大端       大端         大端
+ * </pre>
+ * 连接ID随hello响应的nonce下发，服务端据此找到会话。设备的首个包（可以是空负载）确定设备地址，
+ * 之后序号递增的包到达时更新地址，以适应NAT重新映射端口；在此之前会话的音频仍经WebSocket发送。
+ * <p>
+ * 固件的协议本身没有完整性校验，伪造的包可以把下行音频引向别处。因此未认证的通道只接受小幅前进的序号改变地址，
+ * 序号大幅跳跃或回退（设备重新计数）只在来自当前地址时才被采纳，一个伪造的大序号不会卡住设备后续的地址变化。
+ * 设备在hello的 features 中声明 udp_auth 时启用认证：每个包在密文之后附加16字节标签，
+ * 即 HMAC-SHA256(macKey, 包头 || 密文) 的前16字节，macKey = HMAC-SHA256(AES密钥, "xiaozhi-udp-auth")。
+ * 包头中的长度仍为密文长度。标签不正确的包直接丢弃，只有认证通过的包才能改变设备地址。
+ */
+public class UdpAudioChannel implements AudioChannel {
+    private static final Logger logger = LoggerFactory.getLogger(UdpAudioChannel.class);
+
+    static final int HEADER_SIZE = 16;
+    static final byte TYPE_AUDIO = 0x01;
+    static final String TRANSFORMATION = "AES/CTR/NoPadding";
+    static final String MAC_ALGORITHM = "HmacSHA256";
+    static final int TAG_SIZE = 16;
+    static final byte[] MAC_LABEL = "xiaozhi-udp-auth".getBytes(StandardCharsets.US_ASCII);
+    // 未认证的通道中，来自新地址的包最多领先已收到的序号这么多，才会改变设备地址
+    static final long MAX_ADDRESS_JUMP = 64;
+    // 序号回退超过该值视为设备重新开始计数，与乱序缓冲一致
+    static final long RESET_THRESHOLD = 1000;
+
+    private final UdpAudioServer server;
+    private final String sessionId;
+    private final int connectionId;
+    private final byte[] keyBytes;
+    private final SecretKeySpec key;
+    // 是否附加并校验认证标签
+    private final boolean authenticated;
+    private final long startNanos = System.nanoTime();
+
+    // 发送端状态，发送锁保护，保证序号与发出顺序一致
+    private final ReentrantLock sendLock = new ReentrantLock();
+    private final Cipher encryptor;
+    private final Mac sendMac;
+    private int sendSequence = 0;
+
+    // 接收端状态，只由UDP接收线程访问
+    private final Cipher decryptor;
+    private final Mac receiveMac;
+    private final byte[] tag = new byte[TAG_SIZE];
+    private final JitterBuffer jitter;
+    private long lastReceived = -1;
+    private final byte[] iv = new byte[HEADER_SIZE];
+
+    private volatile SocketAddress remote;
+    private volatile boolean closed = false;
+
+    // 已还原顺序、待交给对话流水线的上行帧，由单个虚拟线程按序处理，不占用接收线程
+    private final Queue<byte[]> inbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean delivering = new AtomicBoolean(false);
+
+    UdpAudioChannel(UdpAudioServer server, String sessionId, int connectionId, byte[] keyBytes, JitterBuffer jitter,
+            boolean authenticated) {
+        this.server = server;
+        this.sessionId = sessionId;
+        this.connectionId = connectionId;
+        this.keyBytes = keyBytes;
+        this.key = new SecretKeySpec(keyBytes, "AES");
+        this.jitter = jitter;
+        this.authenticated = authenticated;
+        try {
+            this.encryptor = Cipher.getInstance(TRANSFORMATION);
+            this.decryptor = Cipher.getInstance(TRANSFORMATION);
+            if (authenticated) {
+                SecretKeySpec macKey = macKey(keyBytes);
+                this.sendMac = Mac.getInstance(MAC_ALGORITHM);
+                this.sendMac.init(macKey);
+                this.receiveMac = Mac.getInstance(MAC_ALGORITHM);
+                this.receiveMac.init(macKey);
+            } else {
+                this.sendMac = null;
+                this.receiveMac = null;
+            }
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException("不支持AES-CTR或HMAC-SHA256", e);
+        }
+    }
+
+    /**
+     * 由AES密钥派生的认证密钥，设备按同样的方式计算
+     */
+    static SecretKeySpec macKey(byte[] keyBytes) throws GeneralSecurityException {
+        Mac mac = Mac.getInstance(MAC_ALGORITHM);
+        mac.init(new SecretKeySpec(keyBytes, MAC_ALGORITHM));
+        return new SecretKeySpec(mac.doFinal(MAC_LABEL), MAC_ALGORITHM);
+    }
+
+    @Override
+    public String getTransport() {
+        return "udp";
+    }
+
+    @Override
+    public boolean isOpen() {
+        return !closed && remote != null;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    int getConnectionId() {
+        return connectionId;
+    }
+
+    public boolean isAuthenticated() {
+        return authenticated;
+    }
+
+    /**
+     * 每个包在密文之后附加的字节数
+     */
+    int tagSize() {
+        return authenticated ? TAG_SIZE : 0;
+    }
+
+    JitterBuffer getJitter() {
+        return jitter;
+    }
+
+    /**
+     * AES-128密钥（十六进制）
+     */
+    public String getKey() {
+        return HexFormat.of().formatHex(keyBytes);
+    }
+
+    /**
+     * 包头模板（十六进制），设备填入长度、时间戳和序号后作为包头和CTR初始计数器
+     */
+    public String getNonce() {
+        byte[] nonce = new byte[HEADER_SIZE];
+        ByteBuffer.wrap(nonce).put(TYPE_AUDIO).put((byte) 0).putShort((short) 0).putInt(connectionId);
+        return HexFormat.of().formatHex(nonce);
+    }
+
+    @Override
+    public void send(ByteBuffer frame) {
+        SocketAddress target = remote;
+        if (closed || target == null) {
+            return;
+        }
+        int length = frame.remaining();
+        if (length > 0xFFFF) {
+            logger.warn("音频帧过大，无法经UDP发送 - SessionId: {}, 长度: {}", sessionId, length);
+            return;
+        }
+        ByteBuffer packet = ByteBuffer.allocate(HEADER_SIZE + length + tagSize());
+        sendLock.lock();
+        try {
+            byte[] header = header(length, (int) ((System.nanoTime() - startNanos) / 1_000_000), ++sendSequence);
+            packet.put(header);
+            encryptor.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(header));
+            encryptor.doFinal(frame.duplicate(), packet);
+            if (authenticated) {
+                sendMac.update(packet.array(), 0, HEADER_SIZE + length);
+                packet.put(sendMac.doFinal(), 0, TAG_SIZE);
+            }
+            packet.flip();
+            server.send(packet, target);
+        } catch (GeneralSecurityException e) {
+            logger.warn("UDP音频加密失败 - SessionId: {}, 错误: {}", sessionId, e.getMessage());
+        } finally {
+            sendLock.unlock();
+        }
+    }
+
+    private byte[] header(int length, int timestamp, int sequence) {
+        byte[] header = new byte[HEADER_SIZE];
+        ByteBuffer.wrap(header)
+                .put(TYPE_AUDIO)
+                .put((byte) 0)
+                .putShort((short) length)
+                .putInt(connectionId)
+                .putInt(timestamp)
+                .putInt(sequence);
+        return header;
+    }
+
+    /**
+     * 处理一个已通过格式校验的包，由接收线程调用
+     *
+     * @param seq    包序号
+     * @param packet 完整的包，position 为0
+     * @param from   来源地址
+     * @param now    到达时间（System.nanoTime）
+     * @throws AEADBadTagException 认证标签不正确
+     */
+    void receive(long seq, ByteBuffer packet, SocketAddress from, long now) throws GeneralSecurityException {
+        if (closed) {
+            return;
+        }
+        int length = packet.remaining() - HEADER_SIZE - tagSize();
+        if (authenticated) {
+            receiveMac.update(packet.duplicate().limit(HEADER_SIZE + length));
+            byte[] expected = receiveMac.doFinal();
+            packet.get(HEADER_SIZE + length, tag);
+            if (!MessageDigest.isEqual(Arrays.copyOf(expected, TAG_SIZE), tag)) {
+                throw new AEADBadTagException("UDP音频包认证失败");
+            }
+        }
+        packet.get(0, iv);
+        byte[] frame = new byte[length];
+        decryptor.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(iv));
+        decryptor.doFinal(packet.position(HEADER_SIZE).limit(HEADER_SIZE + length), ByteBuffer.wrap(frame));
+
+        if (acceptSequence(seq, from)) {
+            lastReceived = seq;
+            if (!from.equals(remote)) {
+                if (remote != null) {
+                    logger.info("UDP音频通道地址变化 - SessionId: {}, {} -> {}", sessionId, remote, from);
+                }
+                remote = from;
+            }
+        }
+        if (frame.length == 0) {
+            // 空负载只用于登记地址和保活
+            return;
+        }
+        jitter.offer(seq, frame, now, this::deliver);
+    }
+
+    /**
+     * 是否以该包的序号作为最新序号，并采用它的来源地址
+     * 认证通过的包和来自当前地址的包可信，序号前进或设备重新计数都接受；
+     * 未认证且来自新地址的包只有小幅前进时才接受，伪造的包既不能跳到远处的序号，也不能借回退重置序号。
+     */
+    private boolean acceptSequence(long seq, SocketAddress from) {
+        if (lastReceived < 0) {
+            return true;
+        }
+        boolean trusted = authenticated || from.equals(remote);
+        if (seq > lastReceived) {
+            return trusted || seq - lastReceived <= MAX_ADDRESS_JUMP;
+        }
+        return trusted && lastReceived - seq > RESET_THRESHOLD;
+    }
+
+    /**
+     * 交出已还原顺序的帧
+     */
+    void deliver(byte[] frame) {
+        inbound.add(frame);
+        if (delivering.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::drainInbound);
+        }
+    }
+
+    private void drainInbound() {
+        while (true) {
+            byte[] frame;
+            while ((frame = inbound.poll()) != null) {
+                if (!closed) {
+                    server.dispatch(sessionId, frame);
+                }
+            }
+            delivering.set(false);
+            // 释放标记后又有新帧入队，且没有其他线程接手时继续处理
+            if (inbound.isEmpty() || !delivering.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        server.remove(this);
+    }
+}
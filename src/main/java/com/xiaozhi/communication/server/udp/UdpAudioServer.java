@@ -0,0 +1,307 @@
+package com.xiaozhi.communication.server.udp;
+
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.communication.common.MessageHandler;
+import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.communication.domain.UdpParams;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import javax.crypto.AEADBadTagException;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.DatagramChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.security.SecureRandom;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * UDP音频服务
+ * 设备在hello消息中声明 transport=udp 时，为会话分配连接ID和AES密钥，经hello响应下发；之后双向的Opus帧走UDP，
+ * 设备同时声明 features.udp_auth 时每个包附加认证标签（见 {@link UdpAudioChannel}），
+ * 控制消息仍走WebSocket。上行帧经乱序缓冲还原顺序后交给 MessageHandler，与WebSocket收到的音频走同一条流水线。
+ * 单个平台线程以非阻塞方式收包，解密和排序都很轻，交给流水线的工作在每个会话自己的虚拟线程上执行。
+ */
+@Component
+public class UdpAudioServer {
+    private static final Logger logger = LoggerFactory.getLogger(UdpAudioServer.class);
+
+    // 单个包的上限，Opus帧远小于此
+    private static final int MAX_PACKET_SIZE = 2048;
+
+    @Value("${udp.enabled:false}")
+    private boolean enabled;
+
+    @Value("${udp.port:8884}")
+    private int port;
+
+    // 下发给设备的服务器地址，为空时使用设备建立WebSocket连接时访问的本机地址；经过代理或NAT时需要配置
+    @Value("${udp.server:}")
+    private String advertisedHost;
+
+    // 乱序缓冲最多缓存的后续包数，超过后跳过空洞
+    @Value("${udp.jitter.depth:3}")
+    private int jitterDepth;
+
+    // 缓存的包最长等待时间，超过后跳过空洞
+    @Value("${udp.jitter.max-delay-ms:60}")
+    private long jitterMaxDelayMs;
+
+    // 是否只为声明了 udp_auth 的设备分配UDP通道，未声明的设备继续使用WebSocket
+    @Value("${udp.require-auth:false}")
+    private boolean requireAuth;
+
+    @Resource
+    private MessageHandler messageHandler;
+
+    @Resource
+    private SessionManager sessionManager;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 连接ID -> 通道
+    private final Map<Integer, UdpAudioChannel> channels = new ConcurrentHashMap<>();
+    private final SecureRandom random = new SecureRandom();
+
+    private DatagramChannel datagram;
+    private Selector selector;
+    private Thread receiver;
+    private volatile boolean running = false;
+
+    private Counter received;
+    private Counter sent;
+    private Counter malformed;
+    private Counter unknown;
+    private Counter undecryptable;
+    private Counter unauthenticated;
+    private Counter sendFailed;
+    private Counter late;
+    private Counter lost;
+
+    @PostConstruct
+    public void start() throws IOException {
+        received = meterRegistry.counter("xiaozhi.udp.packets", "direction", "in");
+        sent = meterRegistry.counter("xiaozhi.udp.packets", "direction", "out");
+        malformed = meterRegistry.counter("xiaozhi.udp.dropped", "reason", "malformed");
+        unknown = meterRegistry.counter("xiaozhi.udp.dropped", "reason", "unknown");
+        undecryptable = meterRegistry.counter("xiaozhi.udp.dropped", "reason", "decrypt");
+        unauthenticated = meterRegistry.counter("xiaozhi.udp.dropped", "reason", "auth");
+        sendFailed = meterRegistry.counter("xiaozhi.udp.dropped", "reason", "send");
+        late = meterRegistry.counter("xiaozhi.udp.dropped", "reason", "late");
+        lost = meterRegistry.counter("xiaozhi.udp.lost");
+        Gauge.builder("xiaozhi.udp.channels", channels, Map::size)
+                .description("UDP音频通道数")
+                .register(meterRegistry);
+        if (!enabled) {
+            return;
+        }
+
+        datagram = DatagramChannel.open();
+        datagram.configureBlocking(false);
+        datagram.bind(new InetSocketAddress(port));
+        selector = Selector.open();
+        datagram.register(selector, SelectionKey.OP_READ);
+        running = true;
+        receiver = Thread.ofPlatform().name("udp-audio").daemon(true).start(this::receiveLoop);
+        logger.info("UDP音频服务已启动，端口: {}", getPort());
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        try {
+            selector.close();
+            datagram.close();
+            receiver.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (IOException e) {
+            logger.warn("关闭UDP音频服务失败", e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        logger.info("UDP音频服务已关闭");
+    }
+
+    public boolean isEnabled() {
+        return running;
+    }
+
+    /**
+     * 设备能否使用UDP音频
+     *
+     * @param authenticated 设备是否支持带认证标签的包
+     */
+    public boolean accepts(boolean authenticated) {
+        return running && (authenticated || !requireAuth);
+    }
+
+    /**
+     * 实际监听的端口
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) datagram.getLocalAddress()).getPort();
+        } catch (IOException e) {
+            return port;
+        }
+    }
+
+    /**
+     * 为会话打开UDP音频通道，替换会话原有的通道
+     *
+     * @param authenticated 包是否附加认证标签
+     */
+    public UdpAudioChannel open(ChatSession session, boolean authenticated) {
+        byte[] key = new byte[16];
+        random.nextBytes(key);
+        JitterBuffer jitter = new JitterBuffer(jitterDepth, TimeUnit.MILLISECONDS.toNanos(jitterMaxDelayMs));
+        UdpAudioChannel channel;
+        do {
+            channel = new UdpAudioChannel(this, session.getSessionId(), random.nextInt(), key, jitter, authenticated);
+        } while (channels.putIfAbsent(channel.getConnectionId(), channel) != null);
+
+        if (session.getAudioChannel() != null) {
+            session.getAudioChannel().close();
+        }
+        session.setAudioChannel(channel);
+        return channel;
+    }
+
+    /**
+     * hello响应中下发的UDP参数
+     *
+     * @param localHost 设备建立WebSocket连接时访问的本机地址，未配置 udp.server 时使用
+     */
+    public UdpParams params(UdpAudioChannel channel, String localHost) {
+        String host = advertisedHost == null || advertisedHost.isBlank() ? localHost : advertisedHost;
+        return new UdpParams()
+                .setServer(host)
+                .setPort(getPort())
+                .setKey(channel.getKey())
+                .setNonce(channel.getNonce())
+                .setAuth(channel.isAuthenticated() ? Boolean.TRUE : null);
+    }
+
+    void remove(UdpAudioChannel channel) {
+        if (channels.remove(channel.getConnectionId(), channel)) {
+            JitterBuffer jitter = channel.getJitter();
+            late.increment(jitter.getLate());
+            lost.increment(jitter.getLost());
+            logger.info("UDP音频通道已关闭 - SessionId: {}, 迟到丢弃: {}, 丢失: {}",
+                    channel.getSessionId(), jitter.getLate(), jitter.getLost());
+        }
+    }
+
+    void send(ByteBuffer packet, SocketAddress target) {
+        try {
+            if (datagram.send(packet, target) > 0) {
+                sent.increment();
+            } else {
+                // 系统发送缓冲区已满，UDP音频直接丢弃
+                sendFailed.increment();
+            }
+        } catch (IOException e) {
+            sendFailed.increment();
+            if (!(e instanceof ClosedChannelException)) {
+                logger.debug("UDP音频发送失败 - 目标: {}, 错误: {}", target, e.getMessage());
+            }
+        }
+    }
+
+    void dispatch(String sessionId, byte[] frame) {
+        if (sessionManager.getDeviceConfig(sessionId) == null) {
+            return;
+        }
+        try {
+            messageHandler.handleBinaryMessage(sessionId, frame);
+        } catch (Exception e) {
+            logger.error("处理UDP音频失败 - SessionId: {}", sessionId, e);
+        }
+    }
+
+    private void receiveLoop() {
+        ByteBuffer buffer = ByteBuffer.allocate(MAX_PACKET_SIZE);
+        // 乱序缓冲中有等待空洞的包的通道，每轮检查是否超时
+        Set<UdpAudioChannel> pending = new HashSet<>();
+        long tickMs = Math.max(1, jitterMaxDelayMs / 4);
+        while (running) {
+            try {
+                selector.select(tickMs);
+                selector.selectedKeys().clear();
+                long now = System.nanoTime();
+                SocketAddress from;
+                while ((from = datagram.receive(buffer.clear())) != null) {
+                    buffer.flip();
+                    UdpAudioChannel channel = handlePacket(buffer, from, now);
+                    if (channel != null && channel.getJitter().hasPending()) {
+                        pending.add(channel);
+                    }
+                }
+                for (Iterator<UdpAudioChannel> it = pending.iterator(); it.hasNext(); ) {
+                    UdpAudioChannel channel = it.next();
+                    channel.getJitter().flush(now, channel::deliver);
+                    if (!channel.getJitter().hasPending()) {
+                        it.remove();
+                    }
+                }
+            } catch (ClosedSelectorException | ClosedChannelException e) {
+                return;
+            } catch (Exception e) {
+                logger.error("UDP音频接收异常", e);
+            }
+        }
+    }
+
+    /**
+     * 校验并处理一个包，返回包所属的通道
+     */
+    private UdpAudioChannel handlePacket(ByteBuffer packet, SocketAddress from, long now) {
+        received.increment();
+        if (packet.remaining() < UdpAudioChannel.HEADER_SIZE || packet.get(0) != UdpAudioChannel.TYPE_AUDIO) {
+            malformed.increment();
+            return null;
+        }
+        UdpAudioChannel channel = channels.get(packet.getInt(4));
+        if (channel == null) {
+            unknown.increment();
+            return null;
+        }
+        // 认证的通道在密文之后还有标签
+        if ((packet.getShort(2) & 0xFFFF) != packet.remaining() - UdpAudioChannel.HEADER_SIZE - channel.tagSize()) {
+            malformed.increment();
+            return null;
+        }
+        try {
+            channel.receive(Integer.toUnsignedLong(packet.getInt(12)), packet, from, now);
+        } catch (AEADBadTagException e) {
+            unauthenticated.increment();
+            return null;
+        } catch (Exception e) {
+            undecryptable.increment();
+            return null;
+        }
+        return channel;
+    }
+}
@@ -0,0 +1,297 @@
+package com.xiaozhi.communication.server.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.socket.BinaryMessage;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketMessage;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Iterator;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 单个WebSocket连接的发送队列
+ * 任意线程（节拍器、TTS、对话线程）只负责入队，由唯一的写线程按入队顺序发送，同一连接的消息不会并发写入。
+ * 网络慢的设备只会阻塞自己的写线程（虚拟线程，队列为空时退出，有消息时再启动），不会占住共享的节拍线程或载体线程。
+ * 积压时优先丢弃音频帧：排队超过 maxAudioDelay 的音频帧在发送前丢弃，积压字节数超过上限时从最旧的音频帧开始丢弃；
+ * 文本消息（控制消息）总是按顺序发送。单次发送超过 sendTimeLimit 仍未完成时认为连接不可用，关闭连接。
+ */
+public class OutboundQueue {
+    private static final Logger logger = LoggerFactory.getLogger(OutboundQueue.class);
+
+    // 关闭连接前等待积压消息发送完的最长时间
+    private static final long CLOSE_FLUSH_TIMEOUT_MS = 1000;
+
+    private final org.springframework.web.socket.WebSocketSession session;
+    private final long bufferSizeLimit;
+    private final long sendTimeLimitNanos;
+    private final long maxAudioDelayNanos;
+    private final Metrics metrics;
+
+    private final Queue<Outbound> queue = new ConcurrentLinkedQueue<>();
+    // 队列中的消息数和字节数
+    private final AtomicInteger depth = new AtomicInteger();
+    private final AtomicLong bufferedBytes = new AtomicLong();
+    // 是否已有写线程在发送
+    private final AtomicBoolean draining = new AtomicBoolean(false);
+    // 正在进行的发送的开始时间，0 表示没有在发送
+    private volatile long sendingSince = 0;
+    private volatile boolean closed = false;
+
+    // 本连接的统计，连接关闭时输出
+    private final AtomicInteger maxDepth = new AtomicInteger();
+    private final AtomicLong sent = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+    private final AtomicLong latencyNanos = new AtomicLong();
+    private final AtomicLong maxLatencyNanos = new AtomicLong();
+
+    /**
+     * 全局的发送指标，所有连接共用，避免按连接打标签造成指标数量膨胀
+     */
+    record Metrics(DistributionSummary depth, Timer latency, Counter staleDropped, Counter overflowDropped,
+                   AtomicInteger totalDepth) {
+    }
+
+    OutboundQueue(org.springframework.web.socket.WebSocketSession session, long bufferSizeLimit,
+                  long sendTimeLimitMs, long maxAudioDelayMs, Metrics metrics) {
+        this.session = session;
+        this.bufferSizeLimit = bufferSizeLimit;
+        this.sendTimeLimitNanos = TimeUnit.MILLISECONDS.toNanos(sendTimeLimitMs);
+        this.maxAudioDelayNanos = TimeUnit.MILLISECONDS.toNanos(maxAudioDelayMs);
+        this.metrics = metrics;
+    }
+
+    /**
+     * 入队文本消息，不会因积压被丢弃
+     */
+    public void sendText(String text) {
+        enqueue(new Outbound(new TextMessage(text), false));
+    }
+
+    /**
+     * 入队音频帧，积压时可能被丢弃
+     */
+    public void sendBinary(byte[] data) {
+        enqueue(new Outbound(new BinaryMessage(data), true));
+    }
+
+    /**
+     * 入队音频帧，直接发送缓冲区（如帧文件的映射切片），不复制数据
+     */
+    public void sendBinary(ByteBuffer data) {
+        enqueue(new Outbound(new BinaryMessage(data), true));
+    }
+
+    private void enqueue(Outbound entry) {
+        if (closed || !session.isOpen()) {
+            return;
+        }
+        if (!checkSendTimeLimit()) {
+            return;
+        }
+
+        queue.offer(entry);
+        int current = depth.incrementAndGet();
+        metrics.totalDepth().incrementAndGet();
+        long bytes = bufferedBytes.addAndGet(entry.size);
+        maxDepth.accumulateAndGet(current, Math::max);
+        metrics.depth().record(current);
+
+        if (bytes > bufferSizeLimit) {
+            evictAudio();
+        }
+        schedule();
+    }
+
+    /**
+     * 写线程卡在一次发送上超过限制时关闭连接，和Spring的ConcurrentWebSocketSessionDecorator一致
+     *
+     * @return 连接是否仍然可用，关闭后不再入队
+     */
+    private boolean checkSendTimeLimit() {
+        long since = sendingSince;
+        if (since != 0 && System.nanoTime() - since > sendTimeLimitNanos) {
+            logger.warn("发送超时，关闭连接 - SessionId: {}, 积压消息: {}, 积压字节: {}",
+                    session.getId(), depth.get(), bufferedBytes.get());
+            closeSession(CloseStatus.SESSION_NOT_RELIABLE);
+            return false;
+        }
+        return true;
+    }
+
+    /**
+     * 从最旧的音频帧开始丢弃，直到积压字节数回到上限以内
+     */
+    private void evictAudio() {
+        Iterator<Outbound> iterator = queue.iterator();
+        int evicted = 0;
+        while (bufferedBytes.get() > bufferSizeLimit && iterator.hasNext()) {
+            Outbound entry = iterator.next();
+            if (entry.audio && entry.claim()) {
+                iterator.remove();
+                release(entry);
+                metrics.overflowDropped().increment();
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            dropped.addAndGet(evicted);
+            logger.debug("发送积压，丢弃{}个音频帧 - SessionId: {}", evicted, session.getId());
+        }
+    }
+
+    private void schedule() {
+        if (draining.compareAndSet(false, true)) {
+            Thread.startVirtualThread(this::drain);
+        }
+    }
+
+    private void drain() {
+        while (true) {
+            Outbound entry;
+            while ((entry = queue.poll()) != null) {
+                if (!entry.claim()) {
+                    // 已被积压策略丢弃
+                    continue;
+                }
+                release(entry);
+                if (closed) {
+                    continue;
+                }
+                long waited = System.nanoTime() - entry.enqueuedNanos;
+                if (entry.audio && waited > maxAudioDelayNanos) {
+                    dropped.incrementAndGet();
+                    metrics.staleDropped().increment();
+                    continue;
+                }
+                send(entry);
+            }
+            draining.set(false);
+            // 退出前再检查一次，避免错过退出期间入队的消息
+            if (queue.isEmpty() || !draining.compareAndSet(false, true)) {
+                return;
+            }
+        }
+    }
+
+    private void send(Outbound entry) {
+        sendingSince = System.nanoTime();
+        try {
+            session.sendMessage(entry.message);
+            long latency = System.nanoTime() - entry.enqueuedNanos;
+            metrics.latency().record(latency, TimeUnit.NANOSECONDS);
+            sent.incrementAndGet();
+            latencyNanos.addAndGet(latency);
+            maxLatencyNanos.accumulateAndGet(latency, Math::max);
+        } catch (IOException | IllegalStateException e) {
+            if (entry.audio) {
+                logger.error("发送Binary消息失败 - SessionId: {}", session.getId(), e);
+            } else {
+                logger.error("发送Text消息失败, message: {}", entry.message.getPayload(), e);
+            }
+        } finally {
+            sendingSince = 0;
+        }
+    }
+
+    private void release(Outbound entry) {
+        depth.decrementAndGet();
+        metrics.totalDepth().decrementAndGet();
+        bufferedBytes.addAndGet(-entry.size);
+    }
+
+    /**
+     * 当前积压的消息数
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    /**
+     * 当前积压的字节数
+     */
+    public long getBufferedBytes() {
+        return bufferedBytes.get();
+    }
+
+    private void closeSession(CloseStatus status) {
+        try {
+            session.close(status);
+        } catch (IOException e) {
+            logger.error("关闭WebSocket会话时发生错误 - SessionId: {}", session.getId(), e);
+        }
+        close();
+    }
+
+    /**
+     * 等待积压的消息发送完（如关闭前的 tts stop），超时后丢弃剩余消息
+     */
+    public void flushAndClose() {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(CLOSE_FLUSH_TIMEOUT_MS);
+        try {
+            while ((depth.get() > 0 || draining.get()) && session.isOpen() && System.nanoTime() < deadline) {
+                Thread.sleep(5);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        close();
+    }
+
+    /**
+     * 丢弃未发送的消息，输出本连接的发送统计
+     */
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Outbound entry;
+        while ((entry = queue.poll()) != null) {
+            if (entry.claim()) {
+                release(entry);
+            }
+        }
+        long count = sent.get();
+        logger.debug("发送队列关闭 - SessionId: {}, 已发送: {}, 丢弃: {}, 最大积压: {}, 平均延迟: {}ms, 最大延迟: {}ms",
+                session.getId(), count, dropped.get(), maxDepth.get(),
+                count == 0 ? 0 : TimeUnit.NANOSECONDS.toMillis(latencyNanos.get() / count),
+                TimeUnit.NANOSECONDS.toMillis(maxLatencyNanos.get()));
+    }
+
+    /**
+     * 队列中的一条消息，写线程和积压策略通过 claim 争夺所有权，只有一方能处理
+     */
+    private static final class Outbound {
+        private static final AtomicIntegerFieldUpdater<Outbound> CLAIMED =
+                AtomicIntegerFieldUpdater.newUpdater(Outbound.class, "claimed");
+
+        final WebSocketMessage<?> message;
+        final boolean audio;
+        final int size;
+        final long enqueuedNanos = System.nanoTime();
+        volatile int claimed = 0;
+
+        Outbound(WebSocketMessage<?> message, boolean audio) {
+            this.message = message;
+            this.audio = audio;
+            this.size = message.getPayloadLength();
+        }
+
+        boolean claim() {
+            return CLAIMED.compareAndSet(this, 0, 1);
+        }
+    }
+}
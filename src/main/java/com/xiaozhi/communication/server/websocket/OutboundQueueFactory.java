@@ -0,0 +1,60 @@
+package com.xiaozhi.communication.server.websocket;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 为每个WebSocket连接创建发送队列，持有队列的配置和共用的指标
+ */
+@Component
+public class OutboundQueueFactory {
+
+    // 单个连接积压的最大字节数，超过后丢弃最旧的音频帧
+    @Value("${websocket.outbound.buffer-size-limit:131072}")
+    private long bufferSizeLimit;
+
+    // 单次发送的最长时间，超过后关闭连接
+    @Value("${websocket.outbound.send-time-limit-ms:10000}")
+    private long sendTimeLimitMs;
+
+    // 音频帧排队的最长时间，超过后不再发送
+    @Value("${websocket.outbound.max-audio-delay-ms:2000}")
+    private long maxAudioDelayMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private OutboundQueue.Metrics metrics;
+
+    @PostConstruct
+    public void initMetrics() {
+        AtomicInteger totalDepth = new AtomicInteger();
+        Gauge.builder("xiaozhi.websocket.outbound.pending", totalDepth, AtomicInteger::get)
+                .description("所有连接待发送的消息数")
+                .register(meterRegistry);
+        DistributionSummary depth = DistributionSummary.builder("xiaozhi.websocket.outbound.depth")
+                .description("入队时单个连接的积压消息数")
+                .publishPercentiles(0.5, 0.99)
+                .register(meterRegistry);
+        Timer latency = Timer.builder("xiaozhi.websocket.outbound.latency")
+                .description("消息从入队到发送完成的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Counter stale = meterRegistry.counter("xiaozhi.websocket.outbound.dropped", "reason", "stale");
+        Counter overflow = meterRegistry.counter("xiaozhi.websocket.outbound.dropped", "reason", "overflow");
+        metrics = new OutboundQueue.Metrics(depth, latency, stale, overflow, totalDepth);
+    }
+
+    public OutboundQueue create(org.springframework.web.socket.WebSocketSession session) {
+        return new OutboundQueue(session, bufferSizeLimit, sendTimeLimitMs, maxAudioDelayMs, metrics);
+    }
+}
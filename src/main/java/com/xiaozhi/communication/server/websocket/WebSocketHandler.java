@@ -2,6 +2,8 @@ package com.xiaozhi.communication.server.websocket;
 
 import com.xiaozhi.communication.common.*;
 import com.xiaozhi.communication.domain.*;
+import com.xiaozhi.communication.server.udp.UdpAudioChannel;
+import com.xiaozhi.communication.server.udp.UdpAudioServer;
 import com.xiaozhi.dialogue.llm.tool.mcp.device.DeviceMcpService;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.service.SysDeviceService;
@@ -37,6 +39,12 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
     @Resource
     private DeviceMcpService deviceMcpService;
 
+    @Resource
+    private OutboundQueueFactory outboundQueueFactory;
+
+    @Resource
+    private UdpAudioServer udpAudioServer;
+
     @Override
     public void afterConnectionEstablished(WebSocketSession session) {
         Map<String, String> headers = getHeadersFromSession(session);
@@ -68,7 +76,8 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
 //            }
 //        }else{
 
-        messageHandler.afterConnection(new com.xiaozhi.communication.server.websocket.WebSocketSession(session), deviceIdAuth);
+        messageHandler.afterConnection(new com.xiaozhi.communication.server.websocket.WebSocketSession(session,
+                outboundQueueFactory.create(session)), deviceIdAuth);
         logger.info("WebSocket连接建立成功 - SessionId: {}, DeviceId: {}", session.getId(), deviceIdAuth);
 
     }
@@ -163,11 +172,26 @@ public class WebSocketHandler extends AbstractWebSocketHandler {
                 .setSessionId(sessionId)
                 .setAudioParams(AudioParams.Opus);
 
+        ChatSession chatSession = sessionManager.getSession(sessionId);
+        // 设备请求UDP音频时分配通道，控制消息仍走WebSocket
+        boolean udpAuth = message.getFeatures() != null && Boolean.TRUE.equals(message.getFeatures().getUdpAuth());
+        if ("udp".equalsIgnoreCase(message.getTransport()) && chatSession != null && udpAudioServer.accepts(udpAuth)) {
+            UdpAudioChannel channel = udpAudioServer.open(chatSession, udpAuth);
+            String localHost = session.getLocalAddress() != null ? session.getLocalAddress().getHostString() : null;
+            resp.setTransport("udp").setUdp(udpAudioServer.params(channel, localHost));
+            logger.info("已分配UDP音频通道 - SessionId: {}, 服务器: {}:{}", sessionId,
+                    resp.getUdp().getServer(), resp.getUdp().getPort());
+        }
+
         try {
-            session.sendMessage(new TextMessage(JsonUtil.toJson(resp)));
+            // 经由会话的发送队列回复，避免与其他线程的发送并发写入
+            if (chatSession != null) {
+                chatSession.sendTextMessage(JsonUtil.toJson(resp));
+            } else {
+                session.sendMessage(new TextMessage(JsonUtil.toJson(resp)));
+            }
             if(message.getFeatures() != null && message.getFeatures().getMcp()) {
                 //如果客户端开启mcp协议，异步初始化MCP工具
-                ChatSession chatSession = sessionManager.getSession(sessionId);
                 Thread.startVirtualThread(() -> {
                     SysDevice device = sessionManager.getDeviceConfig(sessionId);
                     if (device.getRoleId() != null) {
@@ -1,12 +1,12 @@
 package com.xiaozhi.communication.server.websocket;
 
+import com.xiaozhi.communication.common.AudioChannel;
 import com.xiaozhi.communication.common.ChatSession;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.web.socket.BinaryMessage;
-import org.springframework.web.socket.TextMessage;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
 
 public class WebSocketSession extends ChatSession {
     private static final Logger logger = LoggerFactory.getLogger(WebSocketSession.class);
@@ -15,13 +15,19 @@ public class WebSocketSession extends ChatSession {
      */
     protected org.springframework.web.socket.WebSocketSession session;
 
+    /**
+     * 发送队列，所有消息经由队列串行发送
+     */
+    protected OutboundQueue outbound;
+
     public WebSocketSession(String sessionId) {
         super(sessionId);
     }
 
-    public WebSocketSession(org.springframework.web.socket.WebSocketSession session) {
+    public WebSocketSession(org.springframework.web.socket.WebSocketSession session, OutboundQueue outbound) {
         super(session.getId());
         this.session = session;
+        this.outbound = outbound;
     }
 
     @Override
@@ -35,6 +41,13 @@ public class WebSocketSession extends ChatSession {
 
     @Override
     public void close() {
+        AudioChannel channel = audioChannel;
+        if (channel != null) {
+            channel.close();
+        }
+        if (outbound != null) {
+            outbound.flushAndClose();
+        }
         if(session != null){
             try {
                 session.close();
@@ -56,19 +69,29 @@ public class WebSocketSession extends ChatSession {
 
     @Override
     public void sendTextMessage(String message) {
-        try {
-            session.sendMessage(new TextMessage(message));
-        } catch (IOException e) {
-            logger.error("发送Text消息失败, message: {}", message, e);
-        }
+        outbound.sendText(message);
     }
 
+    /**
+     * 音频帧优先走协商出的音频通道，通道尚不可用（如还没收到设备的首个UDP包）时仍经WebSocket发送
+     */
     @Override
     public void sendBinaryMessage(byte[] message) {
-        try {
-            session.sendMessage(new BinaryMessage(message));
-        } catch (IOException e) {
-            logger.error("发送Binary消息失败", e);
+        AudioChannel channel = audioChannel;
+        if (channel != null && channel.isOpen()) {
+            channel.send(ByteBuffer.wrap(message));
+            return;
+        }
+        outbound.sendBinary(message);
+    }
+
+    @Override
+    public void sendBinaryMessage(ByteBuffer message) {
+        AudioChannel channel = audioChannel;
+        if (channel != null && channel.isOpen()) {
+            channel.send(message);
+            return;
         }
+        outbound.sendBinary(message);
     }
 }
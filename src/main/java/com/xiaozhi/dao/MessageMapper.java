@@ -14,6 +14,8 @@ public interface MessageMapper {
 
   int add(SysMessage message);
 
+  int addBatch(List<SysMessage> messages);
+
   int delete(SysMessage message);
 
   List<SysMessage> query(SysMessage message);
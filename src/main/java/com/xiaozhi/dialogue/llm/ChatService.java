@@ -4,8 +4,19 @@ import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.dialogue.llm.api.StreamResponseListener;
 import com.xiaozhi.dialogue.llm.factory.ChatModelFactory;
 import com.xiaozhi.dialogue.llm.memory.ChatMemory;
+import com.xiaozhi.dialogue.llm.SentenceSegmenter.ChunkPolicy;
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysMessage;
-import com.xiaozhi.utils.EmojiUtils;
+import com.xiaozhi.entity.SysRole;
+import com.xiaozhi.service.SysConfigService;
+import com.xiaozhi.service.SysRoleService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Tags;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -17,16 +28,20 @@ import org.springframework.ai.chat.model.Generation;
 import org.springframework.ai.chat.prompt.ChatOptions;
 import org.springframework.ai.chat.prompt.Prompt;
 import org.springframework.ai.model.tool.ToolCallingChatOptions;
+import org.springframework.ai.tool.ToolCallback;
 import org.springframework.stereotype.Service;
+import reactor.core.Disposable;
 import reactor.core.publisher.Flux;
 
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.concurrent.atomic.AtomicInteger;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.function.Consumer;
 
 /**
  *
@@ -39,27 +54,6 @@ public class ChatService {
 
     public static final String TOOL_CONTEXT_SESSION_KEY = "session";
 
-    // 句子结束标点符号模式（中英文句号、感叹号、问号）
-    private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
-
-    // 逗号、分号等停顿标点
-    private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
-
-    // 冒号和引号等特殊标点
-    private static final Pattern SPECIAL_PATTERN = Pattern.compile("[：:\"]");
-
-    // 换行符
-    private static final Pattern NEWLINE_PATTERN = Pattern.compile("[\n\r]");
-
-    // 数字模式（用于检测小数点是否在数字中）
-    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
-
-    // 表情符号模式
-    private static final Pattern EMOJI_PATTERN = Pattern.compile("\\p{So}|\\p{Sk}|\\p{Sm}");
-
-    // 最小句子长度（字符数）
-    private static final int MIN_SENTENCE_LENGTH = 5;
-
     // 新句子判断的字符阈值
     private static final int NEW_SENTENCE_TOKEN_THRESHOLD = 8;
 
@@ -70,6 +64,33 @@ public class ChatService {
     @Resource
     private ChatModelFactory chatModelFactory;
 
+    @Resource
+    private SysRoleService roleService;
+
+    @Resource
+    private SysConfigService configService;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private Counter speculationHits;
+    private Counter speculationMisses;
+    private DistributionSummary speculationWastedTokens;
+    // 按指标名和标签缓存的延迟指标，每个标签组合只注册一次
+    private final Map<MeterKey, Timer> latencyTimers = new ConcurrentHashMap<>();
+
+    private record MeterKey(String name, Tags tags) {
+    }
+
+    @PostConstruct
+    public void initMetrics() {
+        speculationHits = meterRegistry.counter("xiaozhi.llm.speculation", "result", "hit");
+        speculationMisses = meterRegistry.counter("xiaozhi.llm.speculation", "result", "miss");
+        speculationWastedTokens = DistributionSummary.builder("xiaozhi.llm.speculation.wasted.tokens")
+                .description("取消的预取请求已生成的token数（按流式分片计）")
+                .register(meterRegistry);
+    }
+
     /**
      * 处理用户查询（同步方式）
      * 
@@ -120,11 +141,15 @@ public class ChatService {
      */
     public Flux<ChatResponse> chatStream(ChatSession session, String message,
             boolean useFunctionCall) {
+        return chatStream(session, message, useFunctionCall ? session.getToolCallbacks() : new ArrayList<>());
+    }
+
+    private Flux<ChatResponse> chatStream(ChatSession session, String message, List<ToolCallback> toolCallbacks) {
         // 获取ChatModel
         ChatModel chatModel = chatModelFactory.takeChatModel(session);
 
         ChatOptions chatOptions = ToolCallingChatOptions.builder()
-                .toolCallbacks(useFunctionCall ? session.getToolCallbacks() : new ArrayList<>())
+                .toolCallbacks(toolCallbacks)
                 .toolContext(TOOL_CONTEXT_SESSION_KEY, session)
                 .build();
 
@@ -140,34 +165,8 @@ public class ChatService {
             TriConsumer<String, Boolean, Boolean> sentenceHandler) {
         try {
             // 创建流式响应监听器
-            StreamResponseListener streamListener = new TokenStreamResponseListener(session, message, sentenceHandler);
-            final StringBuilder toolName = new StringBuilder(); // 当前句子的缓冲区
-            // 调用现有的流式方法
-            chatStream(session, message, useFunctionCall)
-                    .subscribe(
-                            chatResponse -> {
-                                String token = chatResponse.getResult() == null
-                                        || chatResponse.getResult().getOutput() == null
-                                        || chatResponse.getResult().getOutput().getText() == null ? ""
-                                                : chatResponse.getResult().getOutput().getText();
-                                if (!token.isEmpty()) {
-                                    streamListener.onToken(token);
-                                }
-                                if (toolName.isEmpty() && useFunctionCall) {
-                                    Generation generation = chatResponse.getResult();
-                                    // 注意，不能用chatResponse.hasToolCalls()判断，当前chatResponse工具调用结果的返回，
-                                    // 是个文本类助手消息，hasToolCalls标识是false。必须溯源取meta
-                                    if (generation != null) {
-                                        ChatGenerationMetadata chatGenerationMetadata = generation.getMetadata();
-                                        String name = chatGenerationMetadata.get("toolName");
-                                        if (name != null && !name.isEmpty()) {
-                                            toolName.append(name);
-                                        }
-                                    }
-                                }
-                            },
-                            streamListener::onError,
-                            () -> streamListener.onComplete(toolName.toString()));
+            TokenStreamResponseListener streamListener = new TokenStreamResponseListener(session, message, sentenceHandler);
+            subscribeBySentence(chatStream(session, message, useFunctionCall), useFunctionCall, streamListener);
         } catch (Exception e) {
             logger.error("处理LLM时出错: {}", e.getMessage(), e);
             // 发送错误信号
@@ -175,6 +174,70 @@ public class ChatService {
         }
     }
 
+    /**
+     * 根据稳定的中间识别结果提前发起流式对话
+     * 句子在确认前缓存，对话记录在确认后才保存，工具调用等待确认后执行。
+     *
+     * @param message 预取时的识别文本
+     * @return 预取的请求，识别结束后确认或取消；发起失败时返回null
+     */
+    public SpeculativeChat speculate(ChatSession session, String message, boolean useFunctionCall) {
+        SpeculativeChat speculation = new SpeculativeChat(message, speculationHits, speculationMisses,
+                speculationWastedTokens);
+        try {
+            TokenStreamResponseListener streamListener = new TokenStreamResponseListener(session, message,
+                    speculation::accept, speculation.getGate(), speculation.getCommitTime()) {
+                @Override
+                public void onError(Throwable e) {
+                    speculation.onError();
+                    super.onError(e);
+                }
+            };
+            List<ToolCallback> toolCallbacks = useFunctionCall
+                    ? speculation.gated(session.getToolCallbacks())
+                    : new ArrayList<>();
+            Flux<ChatResponse> stream = chatStream(session, message, toolCallbacks)
+                    .doOnNext(chatResponse -> speculation.onToken());
+            speculation.setSubscription(subscribeBySentence(stream, useFunctionCall, streamListener));
+            return speculation;
+        } catch (Exception e) {
+            logger.error("预取LLM响应失败: {}", e.getMessage(), e);
+            return null;
+        }
+    }
+
+    /**
+     * 订阅流式响应，按句子切分后交给监听器
+     */
+    private Disposable subscribeBySentence(Flux<ChatResponse> stream, boolean useFunctionCall,
+            StreamResponseListener streamListener) {
+        final StringBuilder toolName = new StringBuilder(); // 当前句子的缓冲区
+        return stream.subscribe(
+                chatResponse -> {
+                    String token = chatResponse.getResult() == null
+                            || chatResponse.getResult().getOutput() == null
+                            || chatResponse.getResult().getOutput().getText() == null ? ""
+                                    : chatResponse.getResult().getOutput().getText();
+                    if (!token.isEmpty()) {
+                        streamListener.onToken(token);
+                    }
+                    if (toolName.isEmpty() && useFunctionCall) {
+                        Generation generation = chatResponse.getResult();
+                        // 注意，不能用chatResponse.hasToolCalls()判断，当前chatResponse工具调用结果的返回，
+                        // 是个文本类助手消息，hasToolCalls标识是false。必须溯源取meta
+                        if (generation != null) {
+                            ChatGenerationMetadata chatGenerationMetadata = generation.getMetadata();
+                            String name = chatGenerationMetadata.get("toolName");
+                            if (name != null && !name.isEmpty()) {
+                                toolName.append(name);
+                            }
+                        }
+                    }
+                },
+                streamListener::onError,
+                () -> streamListener.onComplete(toolName.toString()));
+    }
+
 
     /**
      * 清除设备缓存
@@ -186,19 +249,44 @@ public class ChatService {
     }
 
     /**
-     * 判断文本是否包含实质性内容（不仅仅是空白字符或标点符号）
-     *
-     * @param text 要检查的文本
-     * @return 是否包含实质性内容
+     * 设备当前角色的分块策略，角色未配置时使用默认策略
      */
-    private boolean containsSubstantialContent(String text) {
-        if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
-            return false;
+    private ChunkPolicy chunkPolicy(ChatSession session) {
+        SysDevice device = session.getSysDevice();
+        if (device == null || device.getRoleId() == null) {
+            return ChunkPolicy.DEFAULT;
         }
+        SysRole role = roleService.selectRoleById(device.getRoleId());
+        if (role == null) {
+            return ChunkPolicy.DEFAULT;
+        }
+        return ChunkPolicy.of(role.getFirstChunkLength(), role.getFirstChunkTokens(), role.getChunkLength());
+    }
 
-        // 移除所有标点符号和空白字符后，检查是否还有内容
-        String stripped = text.replaceAll("[\\p{P}\\s]", "");
-        return stripped.length() >= 2; // 至少有两个非标点非空白字符
+    /**
+     * 指标标签：模型提供商、模型名称和角色ID
+     */
+    private Tags llmTags(ChatSession session) {
+        SysDevice device = session.getSysDevice();
+        SysRole role = device != null && device.getRoleId() != null ? roleService.selectRoleById(device.getRoleId()) : null;
+        SysConfig config = role != null && role.getModelId() != null ? configService.selectConfigById(role.getModelId()) : null;
+        return Tags.of(
+                "provider", config != null && config.getProvider() != null ? config.getProvider().toLowerCase() : "unknown",
+                "model", config != null && config.getConfigName() != null ? config.getConfigName() : "unknown",
+                "role", role != null ? String.valueOf(role.getRoleId()) : "none");
+    }
+
+    /**
+     * 记录从统计起点到事件发生的时间，事件早于起点时记为0
+     */
+    private void recordBetween(String name, String description, Tags tags, long startNanos, long eventNanos) {
+        latencyTimers.computeIfAbsent(new MeterKey(name, tags),
+                key -> Timer.builder(name)
+                        .description(description)
+                        .tags(tags)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(Math.max(0, eventNanos - startNanos), TimeUnit.NANOSECONDS);
     }
 
     /**
@@ -210,20 +298,38 @@ public class ChatService {
 
     class TokenStreamResponseListener implements StreamResponseListener {
 
-        final StringBuilder currentSentence = new StringBuilder(); // 当前句子的缓冲区
-        final StringBuilder contextBuffer = new StringBuilder(); // 上下文缓冲区，用于检测数字中的小数点
+        final SentenceSegmenter segmenter; // 断句器，保存当前句子的缓冲区
+        final Consumer<String> sentenceEmitter = this::onSentence; // 断句回调，避免每个token创建新的方法引用
         final AtomicInteger sentenceCount = new AtomicInteger(0); // 已发送句子的计数
         final StringBuilder fullResponse = new StringBuilder(); // 完整响应的缓冲区
         final AtomicBoolean finalSentenceSent = new AtomicBoolean(false); // 跟踪最后一个句子是否已发送
         String message;// 用户消息内容
         ChatSession session;
         TriConsumer<String, Boolean, Boolean> sentenceHandler;
+        // 完成后才保存对话记录，值为保存的用户消息；预取的请求在确认后以最终识别结果完成
+        CompletableFuture<String> persistGate;
+        // 首token和首句的统计起点：普通请求为发起请求的时间，预取的请求为确认的时间，取消的预取不统计
+        final CompletableFuture<Long> metricsStart;
+        final Tags tags;
+        boolean firstTokenRecorded = false;
+        boolean firstSentenceRecorded = false;
 
         public TokenStreamResponseListener(ChatSession session, String message,
                 TriConsumer<String, Boolean, Boolean> sentenceHandler) {
+            this(session, message, sentenceHandler, CompletableFuture.completedFuture(message),
+                    CompletableFuture.completedFuture(System.nanoTime()));
+        }
+
+        public TokenStreamResponseListener(ChatSession session, String message,
+                TriConsumer<String, Boolean, Boolean> sentenceHandler, CompletableFuture<String> persistGate,
+                CompletableFuture<Long> metricsStart) {
             this.message = message;
             this.session = session;
             this.sentenceHandler = sentenceHandler;
+            this.persistGate = persistGate;
+            this.metricsStart = metricsStart;
+            this.segmenter = new SentenceSegmenter(chunkPolicy(session));
+            this.tags = llmTags(session).and("speculative", String.valueOf(!metricsStart.isDone()));
         }
 
         @Override
@@ -231,94 +337,36 @@ public class ChatService {
             if (token == null || token.isEmpty()) {
                 return;
             }
+            if (!firstTokenRecorded) {
+                firstTokenRecorded = true;
+                recordOnStart("xiaozhi.llm.first.token", "从请求LLM（预取为确认时）到收到首个token的时间");
+            }
             // 将token添加到完整响应
             fullResponse.append(token);
 
-            // 逐字符处理token
-            for (int i = 0; i < token.length();) {
-                int codePoint = token.codePointAt(i);
-                String charStr = new String(Character.toChars(codePoint));
-
-                // 将字符添加到上下文缓冲区（保留最近的字符以检测数字模式）
-                contextBuffer.append(charStr);
-                if (contextBuffer.length() > 20) { // 保留足够的上下文
-                    contextBuffer.delete(0, contextBuffer.length() - 20);
-                }
-
-                // 将字符添加到当前句子缓冲区
-                currentSentence.append(charStr);
-
-                // 检查各种断句标记
-                boolean shouldSendSentence = false;
-                boolean isEndMark = SENTENCE_END_PATTERN.matcher(charStr).find();
-                boolean isPauseMark = PAUSE_PATTERN.matcher(charStr).find();
-                boolean isSpecialMark = SPECIAL_PATTERN.matcher(charStr).find();
-                boolean isNewline = NEWLINE_PATTERN.matcher(charStr).find();
-                boolean isEmoji = EmojiUtils.isEmoji(codePoint);
-
-                // 检查当前句子是否包含颜文字
-                boolean containsKaomoji = false;
-                if (currentSentence.length() >= 3) { // 颜文字至少需要3个字符
-                    containsKaomoji = EmojiUtils.containsKaomoji(currentSentence.toString());
-                }
-
-                // 如果当前字符是句号，检查它是否是数字中的小数点
-                if (isEndMark && charStr.equals(".")) {
-                    String context = contextBuffer.toString();
-                    Matcher numberMatcher = NUMBER_PATTERN.matcher(context);
-                    // 如果找到数字模式（如"0.271"），则不视为句子结束标点
-                    if (numberMatcher.find() && numberMatcher.end() >= context.length() - 3) {
-                        isEndMark = false;
-                    }
-                }
-
-                // 判断是否应该发送当前句子
-                if (isEndMark) {
-                    // 句子结束标点是强断句信号
-                    shouldSendSentence = true;
-                } else if (isNewline) {
-                    // 换行符也是强断句信号
-                    shouldSendSentence = true;
-                } else if ((isPauseMark || isSpecialMark || isEmoji || containsKaomoji)
-                        && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
-                    // 停顿标点、特殊标点、表情符号或颜文字在句子足够长时可以断句
-                    shouldSendSentence = true;
-                }
-
-                // 如果应该发送句子，且当前句子长度满足要求
-                if (shouldSendSentence && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
-                    String sentence = currentSentence.toString().trim();
-
-                    // 过滤颜文字
-                    sentence = EmojiUtils.filterKaomoji(sentence);
-
-                    if (containsSubstantialContent(sentence)) {
-                        boolean isFirst = sentenceCount.get() == 0;
-                        boolean isLast = false; // 只有在onComplete中才会有最后一个句子
-
-                        sentenceHandler.accept(sentence, isFirst, isLast);
-                        sentenceCount.incrementAndGet();
-
-                        // 清空当前句子缓冲区
-                        currentSentence.setLength(0);
-                    }
-                }
+            // 断句，每个完整句子交给 sentenceHandler，只有在onComplete中才会有最后一个句子
+            segmenter.append(token, sentenceEmitter);
+        }
 
-                // 移动到下一个码点
-                i += Character.charCount(codePoint);
-            }
+        void onSentence(String sentence) {
+            boolean isFirst = sentenceCount.get() == 0;
+            recordFirstSentence();
+            sentenceHandler.accept(sentence, isFirst, false);
+            sentenceCount.incrementAndGet();
         }
 
         @Override
         public void onComplete(String toolName) {
             // 检查该会话是否已完成处理
             // 处理当前缓冲区剩余的内容（如果有）
-            if (currentSentence.length() > 0 && containsSubstantialContent(currentSentence.toString())
+            String remaining = segmenter.remaining();
+            if (!remaining.isEmpty() && SentenceSegmenter.containsSubstantialContent(remaining)
                     && !finalSentenceSent.get()) {
-                String sentence = currentSentence.toString().trim();
+                String sentence = remaining.trim();
                 boolean isFirst = sentenceCount.get() == 0;
                 boolean isLast = true; // 这是最后一个句子
 
+                recordFirstSentence();
                 sentenceHandler.accept(sentence, isFirst, isLast);
                 sentenceCount.incrementAndGet();
                 finalSentenceSent.set(true);
@@ -330,12 +378,31 @@ public class ChatService {
                 finalSentenceSent.set(true);
             }
 
-            persistMessages(toolName);
+            // 预取的请求取消后不保存，确认后保存最终识别结果
+            persistGate.thenAccept(userText -> persistMessages(userText, toolName));
 
             // 记录处理的句子数量
             logger.debug("总共处理了 {} 个句子", sentenceCount.get());
         }
 
+        /**
+         * 记录从请求LLM到切分出首句的时间，首句随后送入TTS
+         */
+        void recordFirstSentence() {
+            if (!firstSentenceRecorded) {
+                firstSentenceRecorded = true;
+                recordOnStart("xiaozhi.llm.first.sentence", "从请求LLM（预取为确认时）到切分出首句的时间");
+            }
+        }
+
+        /**
+         * 统计起点确定后记录事件时间，预取的请求在确认前已发生的事件记为0
+         */
+        void recordOnStart(String name, String description) {
+            long eventNanos = System.nanoTime();
+            metricsStart.thenAccept(start -> recordBetween(name, description, tags, start, eventNanos));
+        }
+
         /**
          * 保存消息,只保存用户输入与输出。
          * Message在没有持久化前，是不会有messageId的。
@@ -343,8 +410,8 @@ public class ChatService {
          * 目前不入库（这类主要是function_call的二次调用llm进行总结时的过程消息）
          * 具体的细节逻辑，由Conversation处理，ChatService不再负责消息持久化的职能。
          */
-        void persistMessages(String toolName) {
-            UserMessage userMessage = new UserMessage(message);
+        void persistMessages(String userText, String toolName) {
+            UserMessage userMessage = new UserMessage(userText);
             Long userTimeMillis = session.getUserTimeMillis();
             AssistantMessage assistantMessage = new AssistantMessage(fullResponse.toString(), Map.of("toolName", toolName));
             Long assistantTimeMillis = session.getAssistantTimeMillis();
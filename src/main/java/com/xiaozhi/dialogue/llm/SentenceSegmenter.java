@@ -0,0 +1,247 @@
+package com.xiaozhi.dialogue.llm;
+
+import com.xiaozhi.utils.EmojiUtils;
+
+import java.util.function.Consumer;
+
+/**
+ * 流式输出的断句器
+ * 逐个码点查表分类，颜文字在追加字符时增量检测，不再为每个字符创建字符串、执行多次正则匹配，
+ * 也不再对整个句子反复做颜文字匹配。断句规则与原先的实现保持一致：
+ * <ul>
+ * <li>句末标点 [。！？!?] 和换行是强断句信号</li>
+ * <li>停顿标点 [，、；,;]、特殊标点 [：:"]、表情符号或句子中出现颜文字时，句子不少于5个字符才断句</li>
+ * <li>断出的句子去掉首尾空白和颜文字后需要包含实质内容，否则继续累积</li>
+ * </ul>
+ * 英文句点不是断句标点，因此 "0.271" 这类小数不会被拆开，不需要额外的上下文检测。
+ * 首句和后续句子的最小长度由 {@link ChunkPolicy} 控制：首句可以更短，或在收到若干token后直接断出，尽早开始合成；
+ * 后续句子可以合并为更长的分块，减少TTS请求次数。默认策略与上面的规则一致。
+ * 非线程安全，每个流式响应使用一个实例。
+ */
+public class SentenceSegmenter {
+
+    // 最小句子长度（字符数）
+    public static final int MIN_SENTENCE_LENGTH = 5;
+
+    // 字符类别
+    private static final byte OTHER = 0;
+    private static final byte END = 1;
+    private static final byte PAUSE = 2;
+    private static final byte SPECIAL = 3;
+    private static final byte NEWLINE = 4;
+    private static final byte EMOJI = 5;
+
+    // ASCII 字符的类别表
+    private static final byte[] ASCII_TYPES = new byte[128];
+
+    static {
+        ASCII_TYPES['!'] = END;
+        ASCII_TYPES['?'] = END;
+        ASCII_TYPES[','] = PAUSE;
+        ASCII_TYPES[';'] = PAUSE;
+        ASCII_TYPES[':'] = SPECIAL;
+        ASCII_TYPES['"'] = SPECIAL;
+        ASCII_TYPES['\n'] = NEWLINE;
+        ASCII_TYPES['\r'] = NEWLINE;
+    }
+
+    /**
+     * 分块策略
+     *
+     * @param firstMinLength  首句的最小长度，遇到任意断句标点即可断出
+     * @param firstMaxTokens  首句最多等待的token数，达到后在词边界处直接断出，0表示不限制
+     * @param minLength       后续句子的最小长度，不足时继续合并下一句
+     */
+    public record ChunkPolicy(int firstMinLength, int firstMaxTokens, int minLength) {
+
+        public static final ChunkPolicy DEFAULT = new ChunkPolicy(MIN_SENTENCE_LENGTH, 0, MIN_SENTENCE_LENGTH);
+
+        public ChunkPolicy {
+            // 实质内容至少两个字符，更短的长度没有意义
+            firstMinLength = Math.max(2, firstMinLength);
+            firstMaxTokens = Math.max(0, firstMaxTokens);
+            minLength = Math.max(2, minLength);
+        }
+
+        /**
+         * 按角色配置创建策略，未配置的参数使用默认值
+         */
+        public static ChunkPolicy of(Integer firstMinLength, Integer firstMaxTokens, Integer minLength) {
+            if (firstMinLength == null && firstMaxTokens == null && minLength == null) {
+                return DEFAULT;
+            }
+            return new ChunkPolicy(
+                    firstMinLength != null ? firstMinLength : DEFAULT.firstMinLength(),
+                    firstMaxTokens != null ? firstMaxTokens : DEFAULT.firstMaxTokens(),
+                    minLength != null ? minLength : DEFAULT.minLength());
+        }
+    }
+
+    private final ChunkPolicy policy;
+    private final StringBuilder current = new StringBuilder();
+    // 当前句子中是否出现过颜文字，句子只追加不修改，出现后一直有效
+    private boolean kaomoji = false;
+    // 已断出的句子数
+    private int emitted = 0;
+    // 首句断出前收到的token数
+    private int tokens = 0;
+
+    public SentenceSegmenter() {
+        this(ChunkPolicy.DEFAULT);
+    }
+
+    public SentenceSegmenter(ChunkPolicy policy) {
+        this.policy = policy;
+    }
+
+    /**
+     * 追加一段模型输出，每断出一个句子调用一次 sentenceConsumer
+     */
+    public void append(CharSequence token, Consumer<String> sentenceConsumer) {
+        if (emitted == 0 && policy.firstMaxTokens() > 0 && tokens >= policy.firstMaxTokens() && !token.isEmpty()
+                && isWhitespace(Character.codePointAt(token, 0))) {
+            // 上一个token停在单词末尾，新token以空白开头，说明已到词边界
+            flushFirstChunk(sentenceConsumer);
+        }
+        tokens++;
+
+        for (int i = 0; i < token.length();) {
+            int codePoint = Character.codePointAt(token, i);
+            i += Character.charCount(codePoint);
+            current.appendCodePoint(codePoint);
+            if (!kaomoji && EmojiUtils.endsWithKaomoji(current)) {
+                kaomoji = true;
+            }
+
+            int minLength = emitted == 0 ? policy.firstMinLength() : policy.minLength();
+            if (current.length() < minLength) {
+                continue;
+            }
+            if (typeOf(codePoint) == OTHER && !kaomoji) {
+                continue;
+            }
+            emit(minLength, sentenceConsumer);
+        }
+
+        if (emitted == 0 && policy.firstMaxTokens() > 0 && tokens >= policy.firstMaxTokens() && !current.isEmpty()
+                && !isInsideWord(current.codePointBefore(current.length()))) {
+            flushFirstChunk(sentenceConsumer);
+        }
+    }
+
+    /**
+     * 首句等待的token数已达上限，不等断句标点直接断出
+     */
+    private void flushFirstChunk(Consumer<String> sentenceConsumer) {
+        emit(policy.firstMinLength(), sentenceConsumer);
+    }
+
+    private void emit(int minLength, Consumer<String> sentenceConsumer) {
+        String sentence = current.toString().trim();
+        if (kaomoji) {
+            // 过滤颜文字
+            sentence = EmojiUtils.filterKaomoji(sentence);
+        }
+        if (containsSubstantialContent(sentence, minLength)) {
+            sentenceConsumer.accept(sentence);
+            current.setLength(0);
+            kaomoji = false;
+            emitted++;
+        }
+    }
+
+    /**
+     * 尚未断出的剩余内容
+     */
+    public String remaining() {
+        return current.toString();
+    }
+
+    public boolean isEmpty() {
+        return current.isEmpty();
+    }
+
+    /**
+     * 已断出的句子数
+     */
+    public int getEmitted() {
+        return emitted;
+    }
+
+    public void clear() {
+        current.setLength(0);
+        kaomoji = false;
+        emitted = 0;
+        tokens = 0;
+    }
+
+    private static byte typeOf(int codePoint) {
+        if (codePoint < 128) {
+            return ASCII_TYPES[codePoint];
+        }
+        return switch (codePoint) {
+            case '。', '！', '？' -> END;
+            case '，', '、', '；' -> PAUSE;
+            case '：' -> SPECIAL;
+            default -> EmojiUtils.isEmoji(codePoint) ? EMOJI : OTHER;
+        };
+    }
+
+    /**
+     * 判断文本是否包含实质性内容（不仅仅是空白字符或标点符号）
+     *
+     * @param text 要检查的文本
+     * @return 是否包含实质性内容
+     */
+    public static boolean containsSubstantialContent(String text) {
+        return containsSubstantialContent(text, MIN_SENTENCE_LENGTH);
+    }
+
+    private static boolean containsSubstantialContent(String text, int minLength) {
+        if (text == null || text.trim().length() < minLength) {
+            return false;
+        }
+
+        // 至少有两个非标点非空白字符
+        int remaining = 0;
+        for (int i = 0; i < text.length();) {
+            int codePoint = text.codePointAt(i);
+            int count = Character.charCount(codePoint);
+            if (!isPunctuation(codePoint) && !isWhitespace(codePoint)) {
+                remaining += count;
+                if (remaining >= 2) {
+                    return true;
+                }
+            }
+            i += count;
+        }
+        return false;
+    }
+
+    /**
+     * 字母或数字且不是汉字，在其后断开会把单词拆成两半
+     */
+    private static boolean isInsideWord(int codePoint) {
+        return Character.isLetterOrDigit(codePoint) && !Character.isIdeographic(codePoint);
+    }
+
+    /**
+     * 与正则 \p{P} 相同的标点类别
+     */
+    private static boolean isPunctuation(int codePoint) {
+        return switch (Character.getType(codePoint)) {
+            case Character.CONNECTOR_PUNCTUATION, Character.DASH_PUNCTUATION, Character.START_PUNCTUATION,
+                    Character.END_PUNCTUATION, Character.INITIAL_QUOTE_PUNCTUATION,
+                    Character.FINAL_QUOTE_PUNCTUATION, Character.OTHER_PUNCTUATION -> true;
+            default -> false;
+        };
+    }
+
+    /**
+     * 与正则 \s 相同的空白字符
+     */
+    private static boolean isWhitespace(int codePoint) {
+        return codePoint == ' ' || codePoint == '\t' || codePoint == '\n' || codePoint == 0x0B
+                || codePoint == '\f' || codePoint == '\r';
+    }
+}
@@ -0,0 +1,206 @@
+package com.xiaozhi.dialogue.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import org.springframework.ai.chat.model.ToolContext;
+import org.springframework.ai.tool.ToolCallback;
+import org.springframework.ai.tool.definition.ToolDefinition;
+import org.springframework.ai.tool.metadata.ToolMetadata;
+import reactor.core.Disposable;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Pattern;
+
+/**
+ * 根据稳定的中间识别结果提前发起的LLM请求
+ * 确认前模型输出的句子先缓存，不进入TTS；识别最终结果与预取文本一致时 {@link #commit} 回放缓存的句子并转为直接输出，
+ * 不一致时 {@link #cancel} 取消请求。确认前不保存对话记录，工具调用会等待确认后才执行，避免作废的请求产生副作用。
+ */
+public class SpeculativeChat {
+
+    // 比较识别文本时忽略标点和空白，最终结果常常只是补上了标点
+    private static final Pattern IGNORED = Pattern.compile("[\\p{P}\\s]");
+    // 工具调用等待确认的最长时间
+    private static final long TOOL_GATE_TIMEOUT_MS = 30000;
+
+    private final String message;
+    private final Counter hits;
+    private final Counter misses;
+    private final DistributionSummary wastedTokens;
+
+    // 确认后以最终识别结果完成，取消时异常完成
+    private final CompletableFuture<String> gate = new CompletableFuture<>();
+    // 确认的时间（System.nanoTime），作为首token等延迟指标的起点；取消时不完成，作废的请求不计入指标
+    private final CompletableFuture<Long> commitTime = new CompletableFuture<>();
+    private final List<BufferedSentence> buffered = new ArrayList<>();
+    private final AtomicInteger tokens = new AtomicInteger();
+    private ChatService.TriConsumer<String, Boolean, Boolean> handler;
+    private boolean settled = false;
+    private volatile boolean failed = false;
+    private volatile Disposable subscription;
+
+    private record BufferedSentence(String text, boolean isFirst, boolean isLast) {
+    }
+
+    SpeculativeChat(String message, Counter hits, Counter misses, DistributionSummary wastedTokens) {
+        this.message = message;
+        this.hits = hits;
+        this.misses = misses;
+        this.wastedTokens = wastedTokens;
+    }
+
+    public String getMessage() {
+        return message;
+    }
+
+    /**
+     * 最终识别结果是否与预取时的文本一致
+     */
+    public boolean matches(String finalText) {
+        return finalText != null && normalize(finalText).equals(normalize(message));
+    }
+
+    /**
+     * 确认预取结果，回放已缓存的句子，后续句子直接交给 handler
+     *
+     * @param finalText 最终识别结果，保存对话记录时作为用户消息，而不是预取时的文本
+     * @return 是否确认成功，已取消或请求出错时返回false，调用方应重新发起请求
+     */
+    public boolean commit(String finalText, ChatService.TriConsumer<String, Boolean, Boolean> sentenceHandler) {
+        synchronized (this) {
+            if (settled || failed) {
+                return false;
+            }
+            settled = true;
+            commitTime.complete(System.nanoTime());
+            for (BufferedSentence sentence : buffered) {
+                sentenceHandler.accept(sentence.text(), sentence.isFirst(), sentence.isLast());
+            }
+            buffered.clear();
+            handler = sentenceHandler;
+        }
+        hits.increment();
+        gate.complete(finalText);
+        return true;
+    }
+
+    /**
+     * 取消预取的请求，丢弃已生成的内容
+     */
+    public void cancel() {
+        synchronized (this) {
+            if (settled) {
+                return;
+            }
+            settled = true;
+            buffered.clear();
+        }
+        Disposable current = subscription;
+        if (current != null) {
+            current.dispose();
+        }
+        misses.increment();
+        wastedTokens.record(tokens.get());
+        gate.completeExceptionally(new CancellationException("预取的请求已取消"));
+    }
+
+    /**
+     * 确认后以最终识别结果完成，用于推迟保存对话记录
+     */
+    CompletableFuture<String> getGate() {
+        return gate;
+    }
+
+    /**
+     * 确认时完成，值为确认的时间
+     */
+    CompletableFuture<Long> getCommitTime() {
+        return commitTime;
+    }
+
+    void setSubscription(Disposable subscription) {
+        this.subscription = subscription;
+    }
+
+    void onToken() {
+        tokens.incrementAndGet();
+    }
+
+    void onError() {
+        failed = true;
+    }
+
+    /**
+     * 模型输出的句子，确认前缓存
+     */
+    synchronized void accept(String text, Boolean isFirst, Boolean isLast) {
+        if (handler != null) {
+            handler.accept(text, isFirst, isLast);
+        } else if (!settled) {
+            buffered.add(new BufferedSentence(text, isFirst, isLast));
+        }
+    }
+
+    /**
+     * 包装工具，调用时等待确认
+     */
+    List<ToolCallback> gated(List<ToolCallback> toolCallbacks) {
+        List<ToolCallback> result = new ArrayList<>(toolCallbacks.size());
+        for (ToolCallback toolCallback : toolCallbacks) {
+            result.add(new GatedToolCallback(toolCallback));
+        }
+        return result;
+    }
+
+    private void awaitCommit() {
+        try {
+            gate.get(TOOL_GATE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("等待确认时被中断");
+        } catch (ExecutionException | TimeoutException e) {
+            throw new CancellationException("预取的请求未被确认，不执行工具调用");
+        }
+    }
+
+    private static String normalize(String text) {
+        return IGNORED.matcher(text).replaceAll("");
+    }
+
+    private class GatedToolCallback implements ToolCallback {
+        private final ToolCallback delegate;
+
+        GatedToolCallback(ToolCallback delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public ToolDefinition getToolDefinition() {
+            return delegate.getToolDefinition();
+        }
+
+        @Override
+        public ToolMetadata getToolMetadata() {
+            return delegate.getToolMetadata();
+        }
+
+        @Override
+        public String call(String toolInput) {
+            awaitCommit();
+            return delegate.call(toolInput);
+        }
+
+        @Override
+        public String call(String toolInput, ToolContext toolContext) {
+            awaitCommit();
+            return delegate.call(toolInput, toolContext);
+        }
+    }
+}
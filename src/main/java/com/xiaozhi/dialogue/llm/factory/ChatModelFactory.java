@@ -12,7 +12,18 @@ import com.xiaozhi.service.SysRoleService;
 
 import java.net.http.HttpClient;
 import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
 
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.ai.chat.model.ChatModel;
@@ -29,6 +40,7 @@ import org.springframework.ai.zhipuai.ZhiPuAiChatModel;
 import org.springframework.ai.zhipuai.ZhiPuAiChatOptions;
 import org.springframework.ai.zhipuai.api.ZhiPuAiApi;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.http.client.JdkClientHttpRequestFactory;
 import org.springframework.http.client.reactive.JdkClientHttpConnector;
 import org.springframework.stereotype.Component;
@@ -42,6 +54,8 @@ import org.springframework.web.reactive.function.client.WebClient;
 /**
  * ChatModel工厂
  * 根据配置的模型ID，创建对应的ChatModel
+ * ChatModel本身无状态，按(provider, configId, temperature, topP)缓存复用，超过上限时淘汰最久未使用的模型；
+ * 同一端点共用一个HttpClient，保持连接池和TLS会话，没有缓存的模型再使用该端点时移除。
  */
 @Component
 public class ChatModelFactory {
@@ -53,10 +67,57 @@ public class ChatModelFactory {
     private ToolCallingManager toolCallingManager;
     @Autowired
     private TokenServiceFactory tokenService;
+    @Autowired
+    private MeterRegistry meterRegistry;
     private final Logger logger = LoggerFactory.getLogger(ChatModelFactory.class);
 
+    // 缓存的模型数上限，角色的temperature、topP各不相同时键的数量会持续增长
+    @Value("${llm.model.cache.max-size:256}")
+    private int maxCachedModels;
+
     /**
-     * 根据配置ID创建ChatModel，首次调用时缓存，缓存key为配置ID。
+     * 模型缓存的键
+     */
+    private record ModelKey(String provider, Integer configId, Double temperature, Double topP) {
+    }
+
+    /**
+     * 缓存的模型及其请求的端点
+     */
+    private record CachedModel(ChatModel chatModel, String endpoint) {
+    }
+
+    // 缓存已创建的模型，访问顺序的LinkedHashMap，队首为最久未使用；与 httpClients 一起由 modelCache 的锁保护
+    private final LinkedHashMap<ModelKey, CachedModel> modelCache = new LinkedHashMap<>(64, 0.75f, true);
+
+    // 每个端点共用的HttpClient，JDK HttpClient内部维护连接池；移除后由仍在使用它的模型继续持有，不再被引用时回收
+    private final Map<String, HttpClient> httpClients = new HashMap<>();
+
+    private Counter cacheHitCounter;
+    private Counter cacheMissCounter;
+    private Counter clientReuseCounter;
+    private Counter clientCreateCounter;
+
+    @PostConstruct
+    public void initMetrics() {
+        cacheHitCounter = meterRegistry.counter("xiaozhi.llm.model.cache", "result", "hit");
+        cacheMissCounter = meterRegistry.counter("xiaozhi.llm.model.cache", "result", "miss");
+        clientReuseCounter = meterRegistry.counter("xiaozhi.llm.http.client", "result", "reuse");
+        clientCreateCounter = meterRegistry.counter("xiaozhi.llm.http.client", "result", "create");
+        Gauge.builder("xiaozhi.llm.model.cache.size", this, factory -> factory.sizeOf(factory.modelCache))
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.llm.http.client.size", this, factory -> factory.sizeOf(factory.httpClients))
+                .register(meterRegistry);
+    }
+
+    private int sizeOf(Map<?, ?> map) {
+        synchronized (modelCache) {
+            return map.size();
+        }
+    }
+
+    /**
+     * 根据配置ID创建ChatModel，首次调用时缓存，缓存key为配置ID及角色的temperature、topP。
      * 
      * @see SysConfigService#selectConfigById(Integer) 已经进行了Cacheable,所以此处没有必要缓存
      * @param session 与网络链接绑定的聊天会话
@@ -90,13 +151,101 @@ public class ChatModelFactory {
         return createChatModel(config, new SysRole());
     }
 
+    /**
+     * 获取ChatModel，优先从缓存中获取
+     * Coze的Token会定期刷新，Dify依赖全局的智能体配置，这两类不缓存
+     */
+    private ChatModel createChatModel(SysConfig config, SysRole role) {
+        String provider = config.getProvider().toLowerCase();
+        if ("coze".equals(provider) || "dify".equals(provider)) {
+            return newChatModel(config, role);
+        }
+
+        ModelKey key = new ModelKey(provider, config.getConfigId(), role.getTemperature(), role.getTopP());
+        synchronized (modelCache) {
+            CachedModel cached = modelCache.get(key);
+            if (cached != null) {
+                cacheHitCounter.increment();
+                return cached.chatModel();
+            }
+            cacheMissCounter.increment();
+            // 创建模型只构建客户端对象，不发起请求，可以在锁内完成
+            ChatModel chatModel = newChatModel(config, role);
+            modelCache.put(key, new CachedModel(chatModel, config.getApiUrl()));
+
+            // 淘汰最久未使用的模型
+            Iterator<CachedModel> it = modelCache.values().iterator();
+            List<String> endpoints = new ArrayList<>();
+            while (modelCache.size() > maxCachedModels && it.hasNext()) {
+                endpoints.add(it.next().endpoint());
+                it.remove();
+            }
+            endpoints.forEach(this::releaseHttpClient);
+            return chatModel;
+        }
+    }
+
+    /**
+     * 移除指定配置的模型缓存，配置修改后调用
+     *
+     * @param config 模型配置
+     */
+    public void removeCache(SysConfig config) {
+        if (config == null || config.getConfigId() == null) {
+            return;
+        }
+        synchronized (modelCache) {
+            List<String> endpoints = new ArrayList<>();
+            Iterator<Map.Entry<ModelKey, CachedModel>> it = modelCache.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<ModelKey, CachedModel> entry = it.next();
+                if (config.getConfigId().equals(entry.getKey().configId())) {
+                    endpoints.add(entry.getValue().endpoint());
+                    it.remove();
+                }
+            }
+            // 端点可能已修改，旧端点没有模型使用时一并移除
+            endpoints.forEach(this::releaseHttpClient);
+        }
+    }
+
+    /**
+     * 获取端点对应的HttpClient，不存在时创建，调用方持有 modelCache 的锁
+     * LM Studio不支持Http/2，所以需要强制使用HTTP/1.1
+     */
+    private HttpClient getHttpClient(String endpoint) {
+        HttpClient httpClient = httpClients.get(endpoint);
+        if (httpClient != null) {
+            clientReuseCounter.increment();
+            return httpClient;
+        }
+        clientCreateCounter.increment();
+        httpClient = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(30))
+                .build();
+        httpClients.put(endpoint, httpClient);
+        return httpClient;
+    }
+
+    /**
+     * 没有缓存的模型使用该端点时移除它的HttpClient，调用方持有 modelCache 的锁
+     * 不关闭客户端，已取得模型的请求仍可以用它完成
+     */
+    private void releaseHttpClient(String endpoint) {
+        boolean inUse = modelCache.values().stream().anyMatch(cached -> Objects.equals(cached.endpoint(), endpoint));
+        if (!inUse) {
+            httpClients.remove(endpoint);
+        }
+    }
+
     /**
      * 创建ChatModel
      * 
      * @param config
      * @return
      */
-    private ChatModel createChatModel(SysConfig config, SysRole role) {
+    private ChatModel newChatModel(SysConfig config, SysRole role) {
         String provider = config.getProvider().toLowerCase();
         String model = config.getConfigName();
         String endpoint = config.getApiUrl();
@@ -128,7 +277,14 @@ public class ChatModelFactory {
     }
 
     private ChatModel newOllamaChatModel(String endpoint, String appId, String apiKey, String apiSecret, String model, Double temperature, Double topP) {
-        var ollamaApi = OllamaApi.builder().baseUrl(endpoint).build();
+        HttpClient httpClient = getHttpClient(endpoint);
+        var ollamaApi = OllamaApi.builder()
+                .baseUrl(endpoint)
+                .webClientBuilder(WebClient.builder()
+                        .clientConnector(new JdkClientHttpConnector(httpClient)))
+                .restClientBuilder(RestClient.builder()
+                        .requestFactory(new JdkClientHttpRequestFactory(httpClient)))
+                .build();
 
         var ollamaAiChatOptions = OllamaOptions.builder()
                 .model(model)
@@ -149,24 +305,17 @@ public class ChatModelFactory {
         MultiValueMap<String, String> headers = new LinkedMultiValueMap<>();
         headers.add("Content-Type", "application/json");
 
-        // LM Studio不支持Http/2，所以需要强制使用HTTP/1.1
+        // 流式与非流式请求共用同一端点的HttpClient
+        HttpClient httpClient = getHttpClient(endpoint);
         var openAiApi = OpenAiApi.builder()
                 .apiKey(StringUtils.hasText(apiKey) ? new SimpleApiKey(apiKey) : new NoopApiKey())
                 .baseUrl(endpoint)
                 .completionsPath("/chat/completions")
                 .headers(headers)
                 .webClientBuilder(WebClient.builder()
-                        // Force HTTP/1.1 for streaming
-                        .clientConnector(new JdkClientHttpConnector(HttpClient.newBuilder()
-                                .version(HttpClient.Version.HTTP_1_1)
-                                .connectTimeout(Duration.ofSeconds(30))
-                                .build())))
+                        .clientConnector(new JdkClientHttpConnector(httpClient)))
                 .restClientBuilder(RestClient.builder()
-                        // Force HTTP/1.1 for non-streaming
-                        .requestFactory(new JdkClientHttpRequestFactory(HttpClient.newBuilder()
-                                .version(HttpClient.Version.HTTP_1_1)
-                                .connectTimeout(Duration.ofSeconds(30))
-                                .build())))
+                        .requestFactory(new JdkClientHttpRequestFactory(httpClient)))
                 .build();
         var openAiChatOptions = OpenAiChatOptions.builder()
                 .model(model)
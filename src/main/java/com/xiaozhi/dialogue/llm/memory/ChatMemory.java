@@ -3,6 +3,7 @@ package com.xiaozhi.dialogue.llm.memory;
 import com.xiaozhi.entity.SysMessage;
 
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 聊天记忆接口，全局对象，不针对单个会话，而是负责全局记忆的存储策略及针对不同类型数据库的适配。。
@@ -31,6 +32,18 @@ public interface ChatMemory {
      */
     List<SysMessage> getMessages(String deviceId, String messageType, Integer limit);
 
+    /**
+     * 异步获取历史对话消息列表，默认在虚拟线程中调用 getMessages
+     *
+     * @param deviceId 设备ID
+     * @param messageType 消息类型
+     * @param limit 限制数量
+     * @return 按时间升序的消息列表
+     */
+    default CompletableFuture<List<SysMessage>> getMessagesAsync(String deviceId, String messageType, Integer limit) {
+        return CompletableFuture.supplyAsync(() -> getMessages(deviceId, messageType, limit), Thread::startVirtualThread);
+    }
+
     /**
      * 清除设备的历史记录
      *
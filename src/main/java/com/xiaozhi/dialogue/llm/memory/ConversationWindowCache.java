@@ -0,0 +1,208 @@
+package com.xiaozhi.dialogue.llm.memory;
+
+import com.xiaozhi.entity.SysMessage;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.IntFunction;
+
+/**
+ * 设备的最近对话窗口缓存
+ * 设备断线重连时不再每次查询数据库：窗口在会话关闭后继续保留，新消息由 ChatMemory#addMessage 直接追加，
+ * 只有缓存中没有该设备时才在虚拟线程中从数据库加载一次。按设备数LRU淘汰。
+ */
+@Component
+public class ConversationWindowCache {
+    private static final Logger logger = LoggerFactory.getLogger(ConversationWindowCache.class);
+
+    // 最多缓存的设备数
+    @Value("${chat.memory.window.max-devices:10000}")
+    private int maxDevices;
+
+    // 每个设备保留的消息条数
+    @Value("${chat.memory.window.size:" + MessageWindowConversation.DEFAULT_HISTORY_LIMIT + "}")
+    private int windowSize;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 访问顺序的LinkedHashMap，超过设备数上限时淘汰最久未使用的设备
+    private final LinkedHashMap<String, Window> windows = new LinkedHashMap<>(256, 0.75f, true) {
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<String, Window> eldest) {
+            if (size() > maxDevices) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    };
+
+    private Counter hits;
+    private Counter misses;
+    private Counter evictions;
+
+    @PostConstruct
+    public void init() {
+        hits = meterRegistry.counter("xiaozhi.chat.window", "result", "hit");
+        misses = meterRegistry.counter("xiaozhi.chat.window", "result", "miss");
+        evictions = meterRegistry.counter("xiaozhi.chat.window.evictions");
+        Gauge.builder("xiaozhi.chat.window.size", this, ConversationWindowCache::size)
+                .description("缓存的设备对话窗口数")
+                .register(meterRegistry);
+    }
+
+    /**
+     * 获取设备最近的消息，按时间升序
+     * 缓存未命中时异步加载，返回的Future在加载完成后完成。
+     *
+     * @param deviceId 设备ID
+     * @param limit    消息条数
+     * @param loader   从数据库加载最近N条消息
+     */
+    public CompletableFuture<List<SysMessage>> getMessages(String deviceId, int limit, IntFunction<List<SysMessage>> loader) {
+        if (limit > windowSize) {
+            // 超过窗口大小的请求不走缓存
+            return CompletableFuture.supplyAsync(() -> loader.apply(limit), Thread::startVirtualThread);
+        }
+
+        Window window;
+        boolean load = false;
+        synchronized (windows) {
+            window = windows.get(deviceId);
+            if (window == null) {
+                window = new Window();
+                windows.put(deviceId, window);
+                load = true;
+            }
+        }
+
+        if (load) {
+            misses.increment();
+            Window cold = window;
+            Thread.startVirtualThread(() -> hydrate(deviceId, cold, loader));
+        } else {
+            hits.increment();
+        }
+        Window current = window;
+        return window.ready.thenApply(v -> current.snapshot(limit));
+    }
+
+    /**
+     * 追加新消息，只更新已缓存的设备，未缓存的设备下次使用时从数据库加载
+     */
+    public void append(String deviceId, SysMessage message) {
+        Window window;
+        synchronized (windows) {
+            // 追加也算一次访问，活跃设备不会被淘汰
+            window = windows.get(deviceId);
+        }
+        if (window != null) {
+            window.append(message);
+        }
+    }
+
+    /**
+     * 移除设备的窗口
+     */
+    public void evict(String deviceId) {
+        synchronized (windows) {
+            windows.remove(deviceId);
+        }
+    }
+
+    /**
+     * 移除所有设备的窗口，用于无法确定受影响设备的批量删除
+     */
+    public void evictAll() {
+        synchronized (windows) {
+            windows.clear();
+        }
+    }
+
+    public int size() {
+        synchronized (windows) {
+            return windows.size();
+        }
+    }
+
+    private void hydrate(String deviceId, Window window, IntFunction<List<SysMessage>> loader) {
+        try {
+            window.hydrate(loader.apply(windowSize));
+        } catch (Exception e) {
+            logger.error("加载设备{}的对话历史失败: {}", deviceId, e.getMessage());
+            // 移除窗口，下次连接时重新加载
+            synchronized (windows) {
+                windows.remove(deviceId, window);
+            }
+            window.hydrate(List.of());
+        }
+    }
+
+    /**
+     * 单个设备的消息窗口
+     */
+    private class Window {
+        private final ArrayDeque<SysMessage> messages = new ArrayDeque<>();
+        private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+        /**
+         * 数据库结果在前，加载期间追加的消息在后，去掉已经落库的重复消息
+         */
+        synchronized void hydrate(List<SysMessage> history) {
+            List<SysMessage> appended = new ArrayList<>(messages);
+            messages.clear();
+            messages.addAll(history);
+            for (SysMessage message : appended) {
+                if (history.stream().noneMatch(h -> same(h, message))) {
+                    messages.add(message);
+                }
+            }
+            trim();
+            ready.complete(null);
+        }
+
+        synchronized void append(SysMessage message) {
+            messages.add(message);
+            trim();
+        }
+
+        synchronized List<SysMessage> snapshot(int limit) {
+            List<SysMessage> result = new ArrayList<>(Math.min(limit, messages.size()));
+            Iterator<SysMessage> it = messages.iterator();
+            for (int skip = messages.size() - limit; skip > 0; skip--) {
+                it.next();
+            }
+            it.forEachRemaining(result::add);
+            return result;
+        }
+
+        private void trim() {
+            while (messages.size() > windowSize) {
+                messages.pollFirst();
+            }
+        }
+
+        private boolean same(SysMessage a, SysMessage b) {
+            return Objects.equals(a.getSender(), b.getSender())
+                    && Objects.equals(a.getMessage(), b.getMessage())
+                    && a.getCreateTime() != null && b.getCreateTime() != null
+                    && a.getCreateTime().getTime() == b.getCreateTime().getTime();
+        }
+    }
+}
@@ -16,6 +16,7 @@ import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Date;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * 基于数据库的聊天记忆实现
@@ -28,30 +29,35 @@ public class DatabaseChatMemory  implements ChatMemory {
 
     private final SysMessageService messageService;
 
+    private final MessageBatchWriter messageWriter;
+
+    private final ConversationWindowCache windowCache;
+
     @Autowired
-    public DatabaseChatMemory(SysMessageService messageService) {
+    public DatabaseChatMemory(SysMessageService messageService, MessageBatchWriter messageWriter,
+            ConversationWindowCache windowCache) {
         this.messageService = messageService;
+        this.messageWriter = messageWriter;
+        this.windowCache = windowCache;
     }
 
     @Override
     public void addMessage(String deviceId, String sessionId, String sender, String content, Integer roleId, String messageType, Long timeMillis) {
-        // 异步虚拟线程处理持久化。
-        Thread.startVirtualThread(() -> {
-            try {
-                SysMessage message = new SysMessage();
-                message.setDeviceId(deviceId);
-                message.setSessionId(sessionId);
-                message.setSender(sender);
-                message.setMessage(content);
-                message.setRoleId(roleId);
-                message.setMessageType(messageType);
-                Instant instant = Instant.ofEpochMilli(timeMillis).truncatedTo(ChronoUnit.SECONDS);
-                message.setCreateTime(Date.from(instant));
-                messageService.add(message);
-            } catch (Exception e) {
-                logger.error("保存消息时出错: {}", e.getMessage(), e);
-            }
-        });
+        // 放入写入队列，由 MessageBatchWriter 批量持久化。
+        SysMessage message = new SysMessage();
+        message.setDeviceId(deviceId);
+        message.setSessionId(sessionId);
+        message.setSender(sender);
+        message.setMessage(content);
+        message.setRoleId(roleId);
+        message.setMessageType(messageType);
+        Instant instant = Instant.ofEpochMilli(timeMillis).truncatedTo(ChronoUnit.SECONDS);
+        message.setCreateTime(Date.from(instant));
+        messageWriter.submit(message);
+        // 普通消息同时追加到设备的对话窗口
+        if (SysMessage.MESSAGE_TYPE_NORMAL.equals(messageType)) {
+            windowCache.append(deviceId, message);
+        }
     }
 
     @Override
@@ -72,8 +78,20 @@ public class DatabaseChatMemory  implements ChatMemory {
         }
     }
 
+    /**
+     * 普通消息优先从设备对话窗口缓存读取，未命中时异步查询数据库
+     */
+    @Override
+    public CompletableFuture<List<SysMessage>> getMessagesAsync(String deviceId, String messageType, Integer limit) {
+        if (!SysMessage.MESSAGE_TYPE_NORMAL.equals(messageType)) {
+            return ChatMemory.super.getMessagesAsync(deviceId, messageType, limit);
+        }
+        return windowCache.getMessages(deviceId, limit, n -> getMessages(deviceId, messageType, n));
+    }
+
     @Override
     public void clearMessages(String deviceId) {
+        windowCache.evict(deviceId);
         try {
             // 清除设备的历史消息
             SysMessage deleteMessage = new SysMessage();
@@ -0,0 +1,298 @@
+package com.xiaozhi.dialogue.llm.memory;
+
+import com.fasterxml.jackson.databind.DeserializationFeature;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.service.SysMessageService;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 聊天消息异步批量写入
+ * 各会话把消息放入有界队列，由一个写线程每隔固定时间或攒够一批后用一条多行INSERT写入，
+ * 避免每条消息占用一个虚拟线程和一个数据库连接。
+ * 队列满时先阻塞等待一小段时间（背压），仍然放不进去时按配置丢弃或溢写到本地文件，溢写的消息在下次启动时补写。
+ */
+@Component
+public class MessageBatchWriter {
+    private static final Logger logger = LoggerFactory.getLogger(MessageBatchWriter.class);
+
+    /**
+     * 队列满时的处理策略
+     */
+    public enum OverflowPolicy {
+        /** 丢弃消息 */
+        DROP,
+        /** 溢写到本地文件，下次启动时补写 */
+        SPILL
+    }
+
+    @Value("${chat.memory.writer.queue-capacity:10000}")
+    private int queueCapacity;
+
+    // 每批最多写入的条数
+    @Value("${chat.memory.writer.batch-size:100}")
+    private int batchSize;
+
+    // 凑批的最长等待时间
+    @Value("${chat.memory.writer.flush-interval-ms:200}")
+    private long flushIntervalMs;
+
+    // 队列满时最多阻塞等待的时间
+    @Value("${chat.memory.writer.offer-timeout-ms:50}")
+    private long offerTimeoutMs;
+
+    @Value("${chat.memory.writer.overflow-policy:SPILL}")
+    private OverflowPolicy overflowPolicy;
+
+    @Value("${chat.memory.writer.spill-path:data/message-spill.jsonl}")
+    private String spillPath;
+
+    // 关闭时等待队列写完的最长时间
+    @Value("${chat.memory.writer.shutdown-timeout-ms:10000}")
+    private long shutdownTimeoutMs;
+
+    @Autowired
+    private SysMessageService messageService;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private final ObjectMapper objectMapper = new ObjectMapper()
+            .configure(DeserializationFeature.FAIL_ON_UNKNOWN_PROPERTIES, false);
+
+    private BlockingQueue<SysMessage> queue;
+    private Thread writerThread;
+    private volatile boolean running = false;
+
+    private DistributionSummary batchSizes;
+    private Timer batchWrites;
+    private Counter dropped;
+    private Counter spilled;
+    private Counter failed;
+
+    @PostConstruct
+    public void start() {
+        queue = new ArrayBlockingQueue<>(queueCapacity);
+
+        Gauge.builder("xiaozhi.chat.message.queue", queue, BlockingQueue::size)
+                .description("待写入的聊天消息数")
+                .register(meterRegistry);
+        batchSizes = DistributionSummary.builder("xiaozhi.chat.message.batch.size")
+                .description("每批写入的消息条数")
+                .register(meterRegistry);
+        batchWrites = Timer.builder("xiaozhi.chat.message.batch.write")
+                .description("每批写入的耗时")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        dropped = meterRegistry.counter("xiaozhi.chat.message.overflow", "policy", "drop");
+        spilled = meterRegistry.counter("xiaozhi.chat.message.overflow", "policy", "spill");
+        failed = meterRegistry.counter("xiaozhi.chat.message.failed");
+
+        running = true;
+        writerThread = Thread.ofPlatform().name("message-writer").daemon(true).start(this::writeLoop);
+        // 补写上次溢写的消息
+        Thread.startVirtualThread(this::replaySpill);
+    }
+
+    /**
+     * 提交一条消息，队列满时阻塞等待，超时后按溢出策略处理
+     *
+     * @return 是否进入队列
+     */
+    public boolean submit(SysMessage message) {
+        if (running) {
+            try {
+                if (queue.offer(message, offerTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    return true;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        overflow(List.of(message));
+        return false;
+    }
+
+    /**
+     * 当前队列长度
+     */
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    private void writeLoop() {
+        List<SysMessage> batch = new ArrayList<>(batchSize);
+        while (running || !queue.isEmpty()) {
+            try {
+                SysMessage first = queue.poll(flushIntervalMs, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                // 在一个刷新间隔内凑满一批
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(flushIntervalMs);
+                while (batch.size() < batchSize) {
+                    queue.drainTo(batch, batchSize - batch.size());
+                    long wait = deadline - System.nanoTime();
+                    if (batch.size() >= batchSize || wait <= 0 || !running) {
+                        break;
+                    }
+                    SysMessage next = queue.poll(wait, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (!batch.isEmpty()) {
+                write(batch);
+                batch.clear();
+            }
+        }
+    }
+
+    private void write(List<SysMessage> batch) {
+        batchSizes.record(batch.size());
+        long start = System.nanoTime();
+        try {
+            messageService.addBatch(batch);
+        } catch (Exception e) {
+            logger.warn("批量写入聊天消息失败，重试一次 - 条数: {}, 错误: {}", batch.size(), e.getMessage());
+            try {
+                messageService.addBatch(batch);
+            } catch (Exception retryError) {
+                logger.error("批量写入聊天消息失败 - 条数: {}", batch.size(), retryError);
+                failed.increment(batch.size());
+                overflow(batch);
+            }
+        } finally {
+            batchWrites.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * 放不进队列或写入失败的消息
+     */
+    private void overflow(List<SysMessage> messages) {
+        if (overflowPolicy == OverflowPolicy.SPILL && spill(messages)) {
+            spilled.increment(messages.size());
+            return;
+        }
+        dropped.increment(messages.size());
+        logger.warn("聊天消息无法写入，丢弃 {} 条", messages.size());
+    }
+
+    /**
+     * 以JSON行追加到溢写文件
+     */
+    private synchronized boolean spill(List<SysMessage> messages) {
+        try {
+            Path path = Path.of(spillPath);
+            if (path.getParent() != null) {
+                Files.createDirectories(path.getParent());
+            }
+            try (BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8,
+                    StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+                for (SysMessage message : messages) {
+                    writer.write(objectMapper.writeValueAsString(message));
+                    writer.newLine();
+                }
+            }
+            return true;
+        } catch (IOException e) {
+            logger.error("溢写聊天消息失败: {}", e.getMessage());
+            return false;
+        }
+    }
+
+    /**
+     * 启动时把溢写文件中的消息重新放入队列
+     */
+    private void replaySpill() {
+        Path path = Path.of(spillPath);
+        if (!Files.exists(path)) {
+            return;
+        }
+        Path replaying = path.resolveSibling(path.getFileName() + ".replay");
+        List<String> lines;
+        synchronized (this) {
+            try {
+                Files.move(path, replaying, StandardCopyOption.REPLACE_EXISTING);
+                lines = Files.readAllLines(replaying, StandardCharsets.UTF_8);
+            } catch (IOException e) {
+                logger.error("读取溢写的聊天消息失败: {}", e.getMessage());
+                return;
+            }
+        }
+
+        int count = 0;
+        for (String line : lines) {
+            if (line.isBlank()) {
+                continue;
+            }
+            try {
+                submit(objectMapper.readValue(line, SysMessage.class));
+                count++;
+            } catch (IOException e) {
+                logger.warn("跳过无法解析的溢写消息: {}", e.getMessage());
+            }
+        }
+        try {
+            Files.deleteIfExists(replaying);
+        } catch (IOException e) {
+            logger.warn("删除溢写文件失败: {}", replaying);
+        }
+        logger.info("已补写溢写的聊天消息 {} 条", count);
+    }
+
+    /**
+     * 关闭时停止接收新消息，等待队列写完
+     */
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (writerThread == null) {
+            return;
+        }
+        // 写线程最多一个刷新间隔后发现已停止，写完队列中的消息后退出
+        try {
+            writerThread.join(shutdownTimeoutMs);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        // 超时仍未写完的消息按溢出策略处理
+        List<SysMessage> remaining = new ArrayList<>();
+        queue.drainTo(remaining);
+        if (!remaining.isEmpty()) {
+            logger.warn("关闭时仍有 {} 条聊天消息未写入", remaining.size());
+            overflow(remaining);
+        }
+    }
+}
@@ -8,6 +8,9 @@ import org.springframework.ai.chat.messages.*;
 import org.springframework.util.StringUtils;
 
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * 限定消息条数（消息窗口）的Conversation实现。根据不同的策略，可实现聊天会话的持久化、加载、清除等功能。
@@ -15,8 +18,13 @@ import java.util.*;
 public class MessageWindowConversation extends Conversation {
     // 历史记录默认限制数量
     public static final int DEFAULT_HISTORY_LIMIT = 10;
+    // 首次对话时等待历史加载的最长时间
+    private static final long HISTORY_WAIT_MS = 1000;
     private final ChatMemory chatMemory;
     private final int maxMessages;
+    // 异步加载的历史消息，首次使用时合并到消息列表头部
+    private final CompletableFuture<List<SysMessage>> history;
+    private boolean historyMerged = false;
     private static final org.slf4j.Logger logger = org.slf4j.LoggerFactory.getLogger(MessageWindowConversation.class);
 
 
@@ -25,8 +33,26 @@ public class MessageWindowConversation extends Conversation {
         this.maxMessages = maxMessages;
         this.chatMemory = chatMemory;
         logger.info("加载设备{}的普通消息(SysMessage.MESSAGE_TYPE_NORMAL)作为对话历史",device.getDeviceId());
-        List<SysMessage> history = chatMemory.getMessages(device.getDeviceId(), SysMessage.MESSAGE_TYPE_NORMAL, maxMessages);
-        super.messages.addAll(convert(history)) ;
+        // 不阻塞建立连接，设备重连时通常直接命中缓存
+        this.history = chatMemory.getMessagesAsync(device.getDeviceId(), SysMessage.MESSAGE_TYPE_NORMAL, maxMessages);
+    }
+
+    /**
+     * 把异步加载的历史合并到消息列表头部，只执行一次
+     */
+    private synchronized void mergeHistory() {
+        if (historyMerged) {
+            return;
+        }
+        historyMerged = true;
+        try {
+            List<SysMessage> loaded = history.get(HISTORY_WAIT_MS, TimeUnit.MILLISECONDS);
+            super.messages.addAll(0, convert(loaded));
+        } catch (TimeoutException e) {
+            logger.warn("设备{}的对话历史加载超时，本次会话不使用历史", device().getDeviceId());
+        } catch (Exception e) {
+            logger.error("设备{}的对话历史加载失败: {}", device().getDeviceId(), e.getMessage());
+        }
     }
 
     public static class Builder {
@@ -71,6 +97,7 @@ public class MessageWindowConversation extends Conversation {
 
     @Override
     public void clear() {
+        mergeHistory();
         messages().clear();
         chatMemory.clearMessages(device().getDeviceId());
     }
@@ -101,6 +128,7 @@ public class MessageWindowConversation extends Conversation {
         // 这个逻辑面对更多的工具调用时，可能是值得商榷的。有些工具调用的结果直接作为AssistantMessage加入对话历史并不会影响对话效果。
         // 后续考虑：在XiaozhiToolCallingManager实现类里，包装出的AssistantMessage由工具来添加标识是否影响对话效果。
         if(!hasToolCalls){
+            mergeHistory();
             // 更新缓存
             messages().add(userMessage);
             messages().add(assistantMessage);
@@ -126,6 +154,7 @@ public class MessageWindowConversation extends Conversation {
         String roleDesc = role().getRoleDesc();
         SystemMessage systemMessage = new SystemMessage(StringUtils.hasText(roleDesc)?roleDesc:"");
 
+        mergeHistory();
         final var historyMessages = messages();
         while (historyMessages.size() > maxMessages) {
             historyMessages.remove(0);
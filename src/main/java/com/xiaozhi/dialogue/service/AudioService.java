@@ -2,8 +2,11 @@ package com.xiaozhi.dialogue.service;
 
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
-import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusFrameFile;
 import com.xiaozhi.utils.OpusProcessor;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -11,11 +14,12 @@ import org.springframework.stereotype.Service;
 
 import java.io.File;
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
 import java.util.function.Consumer;
 
 /**
@@ -25,9 +29,6 @@ import java.util.function.Consumer;
 public class AudioService {
     private static final Logger logger = LoggerFactory.getLogger(AudioService.class);
 
-    // 帧发送时间间隔略小于OPUS_FRAME_DURATION_MS，避免因某些调度原因，导致没能在规定时间内发送，设备出现杂音
-    private static final long OPUS_FRAME_SEND_INTERVAL_MS = AudioUtils.OPUS_FRAME_DURATION_MS;
-    
     // 预缓冲帧数量
     private static final int PRE_BUFFER_FRAMES = 3;
 
@@ -40,28 +41,26 @@ public class AudioService {
     @Autowired
     private MessageService messageService;
 
-    // 使用虚拟线程池处理定时任务
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
-            Runtime.getRuntime().availableProcessors(),
-            Thread.ofVirtual().name("audio-scheduler-", 0).factory());
+    // 所有会话共用的帧节拍器
+    @Autowired
+    private FramePacer framePacer;
 
-    // 存储每个会话最后一次发送帧的时间戳
-    private final Map<String, AtomicLong> lastFrameSentTime = new ConcurrentHashMap<>();
+    @Autowired
+    private MeterRegistry meterRegistry;
 
     // 存储每个会话当前是否正在播放音频
     private final Map<String, AtomicBoolean> isPlaying = new ConcurrentHashMap<>();
     
-    // 存储首帧发送状态
-    private final Map<String, AtomicBoolean> firstFrameSent = new ConcurrentHashMap<>();
-    
-    // 存储每个会话的调度任务
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
-    
-    // 存储播放开始时间（纳秒）
-    private final Map<String, Long> playStartTimes = new ConcurrentHashMap<>();
-    
-    // 存储播放位置（毫秒）
-    private final Map<String, Long> playPositions = new ConcurrentHashMap<>();
+    // 存储每个会话当前的播放
+    private final Map<String, FramePacer.Playback> playbacks = new ConcurrentHashMap<>();
+
+    @PostConstruct
+    public void initMetrics() {
+        Gauge.builder("xiaozhi.sessions.playing", isPlaying,
+                        playing -> playing.values().stream().filter(AtomicBoolean::get).count())
+                .description("正在播放回复音频的会话数")
+                .register(meterRegistry);
+    }
 
     /**
      * 发送TTS开始消息
@@ -96,9 +95,6 @@ public class AudioService {
             // 取消调度任务
             cancelScheduledTask(sessionId);
             
-            // 清理播放时间信息
-            cleanTimers(sessionId);
-            
             CompletableFuture<Void> sendTtsMessageFuture = CompletableFuture.runAsync(()->messageService.sendTtsMessage(session, null, "stop"));
             // 检查是否需要关闭会话
             if (sessionManager.isCloseAfterChat(sessionId)) {
@@ -141,6 +137,8 @@ public class AudioService {
 
         String sessionId = session.getSessionId();
         String audioPath = sentence.getAudioPath();
+        OpusStream audioStream = sentence.getAudioStream();
+        List<byte[]> cachedFrames = sentence.getOpusFrames();
         String text = sentence.getText();
 
         // 标记开始播放
@@ -151,7 +149,7 @@ public class AudioService {
         CompletableFuture<Void> startFuture = isFirst ? CompletableFuture.runAsync(()->sendStart(session))
                 : CompletableFuture.completedFuture(null);
         
-        if (audioPath == null) {
+        if (audioPath == null && audioStream == null && cachedFrames == null) {
             // 如果没有音频路径但是结束消息，发送结束标记
             if (isLast) {
                 return startFuture.thenCompose(v -> sendStop(session));
@@ -169,34 +167,45 @@ public class AudioService {
         // 发送句子表情
         CompletableFuture<Void> emotionFuture = sentenceStartFuture.thenRun(() -> sendSentenceEmotion(session, sentence, null));
 
-        // 处理音频文件
-        return emotionFuture.thenCompose(v -> CompletableFuture.supplyAsync(() -> {
-            String fullPath = audioPath;
-            File audioFile = new File(fullPath);
-            if (!audioFile.exists()) {
-                logger.warn("音频文件不存在: {}", fullPath);
-                return null;
-            }
+        CompletableFuture<FrameSource> sourceFuture;
+        if (cachedFrames != null) {
+            // 已编码好的帧（TTS缓存命中或合成时已编码）
+            sourceFuture = emotionFuture.thenApply(v -> cachedFrames.isEmpty() ? null : listSource(cachedFrames));
+        } else if (audioStream != null) {
+            // 流式TTS，边合成边发送
+            sourceFuture = emotionFuture.thenApply(v -> streamSource(audioStream));
+        } else {
+            // 处理音频文件
+            sourceFuture = emotionFuture.thenCompose(v -> CompletableFuture.supplyAsync(() -> {
+                String fullPath = audioPath;
+                File audioFile = new File(fullPath);
+                if (!audioFile.exists()) {
+                    logger.warn("音频文件不存在: {}", fullPath);
+                    return null;
+                }
 
-            List<byte[]> opusFrames;
-
-            try {
-                if (audioPath.contains(".opus")) {
-                    // 如果是opus文件，直接读取opus帧数据
-                    opusFrames = opusProcessor.readOpus(audioFile);
-                } else {
-                    // 如果不是opus文件，按照原来的逻辑处理
-                    byte[] audioData = AudioUtils.readAsPcm(fullPath);
-                    // 将PCM转换为Opus帧
-                    opusFrames = opusProcessor.pcmToOpus(sessionId, audioData, false);
+                try {
+                    // 帧文件内存映射后按切片发送，不逐帧复制，映射在播放结束后关闭
+                    if (fullPath.endsWith(OpusFrameFile.SUFFIX)) {
+                        OpusFrameFile frameFile = OpusFrameFile.open(Path.of(fullPath));
+                        if (frameFile.frameCount() == 0) {
+                            frameFile.close();
+                            return null;
+                        }
+                        return frameFileSource(frameFile);
+                    }
+                    // opus文件直接读取帧数据，其他格式转为PCM后编码
+                    List<byte[]> opusFrames = opusProcessor.readAsOpus(sessionId, fullPath);
+                    return opusFrames == null || opusFrames.isEmpty() ? null : listSource(opusFrames);
+                } catch (Exception e) {
+                    logger.error("处理音频文件失败: {}", fullPath, e);
+                    return null;
                 }
-                return opusFrames;
-            } catch (Exception e) {
-                logger.error("处理音频文件失败: {}", fullPath, e);
-                return null;
-            }
-        })).thenCompose(opusFrames -> {
-            if (opusFrames == null || opusFrames.isEmpty()) {
+            }));
+        }
+
+        return sourceFuture.thenCompose(source -> {
+            if (source == null) {
                 finalPlayingState.set(false);
                 if (isLast) {
                     return sendStop(session);
@@ -204,91 +213,15 @@ public class AudioService {
                 return CompletableFuture.completedFuture(null);
             }
 
-            // 确保播放状态为true
-            finalPlayingState.set(true);
-            
-            // 创建发送帧的CompletableFuture
-            CompletableFuture<Void> sendFramesFuture = new CompletableFuture<>();
-            
-            try {
-                // 初始化播放时间和位置
-                playStartTimes.put(sessionId, System.nanoTime());
-                playPositions.put(sessionId, 0L);
-                
-                // 预缓冲处理
-                int preBufferCount = Math.min(PRE_BUFFER_FRAMES, opusFrames.size());
-                for (int i = 0; i < preBufferCount; i++) {
-                    sendOpusFrame(session, opusFrames.get(i));
-                    // 更新播放位置
-                    playPositions.put(sessionId, (i + 1) * OPUS_FRAME_SEND_INTERVAL_MS);
-                }
-                
-                // 创建帧发送任务
-                final int[] frameIndex = {preBufferCount};
-                
-                Runnable frameTask = new Runnable() {
-                    @Override
-                    public void run() {
-                        try {
-                            if (!finalPlayingState.get() || frameIndex[0] >= opusFrames.size() || !session.isOpen()) {
-                                // 完成非流式音频处理
-                                endTask(sessionId, sendFramesFuture);
-                                return;
-                            }
-                            
-                            // 更新活跃时间
-                            sessionManager.updateLastActivity(sessionId);
-                            
-                            // 发送当前帧
-                            byte[] frame = opusFrames.get(frameIndex[0]++);
-                            sendOpusFrame(session, frame);
-                            
-                            // 更新播放位置
-                            Long position = playPositions.get(sessionId);
-                            if (position != null) {
-                                playPositions.put(sessionId, position + OPUS_FRAME_SEND_INTERVAL_MS);
-                            }
-                            
-                            // 计算下一帧的发送时间
-                            if (frameIndex[0] < opusFrames.size()) {
-                                scheduleNextFrame(sessionId, this);
-                            } else {
-                                // 所有帧已发送完成
-                                endTask(sessionId, sendFramesFuture);
-                            }
-                            
-                        } catch (Exception e) {
-                            // 发生错误，取消调度任务
-                            logger.error("非流式帧处理失败", e);
-                            endTask(sessionId, sendFramesFuture, e);
-                        }
-                    }
-                };
-                
-                // 如果还有帧需要发送，启动精确时间调度
-                if (frameIndex[0] < opusFrames.size()) {
-                    scheduleNextFrame(sessionId, frameTask);
-                } else {
-                    // 所有帧已在预缓冲中发送完毕
-                    endTask(sessionId, sendFramesFuture);
-                }
-                
-            } catch (Exception e) {
-                logger.error("音频帧发送初始化失败", e);
-                endTask(sessionId, sendFramesFuture, e);
-            }
-            
-            // 返回帧发送Future
-            return sendFramesFuture;
+            return playFrames(session, source, finalPlayingState).whenComplete((v, e) -> source.close());
         }).whenComplete((result, error) -> {
             // 无论成功还是失败，都标记播放结束
             finalPlayingState.set(false);
-            
-            // 取消调度任务
-            cancelScheduledTask(sessionId);
-            
-            // 清理播放时间信息
-            cleanTimers(sessionId);
+
+            // 播放被中断时，停止接收剩余的流式数据
+            if (audioStream != null) {
+                audioStream.abort();
+            }
         }).thenCompose(v -> {
             // 发送停止消息（只有在isLast为true时才发送）
             if (isLast) {
@@ -310,6 +243,144 @@ public class AudioService {
         });
     }
 
+    /**
+     * 按帧间隔发送帧来源中的所有帧
+     */
+    private CompletableFuture<Void> playFrames(ChatSession session, FrameSource source, AtomicBoolean playingState) {
+        String sessionId = session.getSessionId();
+
+        // 确保播放状态为true
+        playingState.set(true);
+
+        try {
+            // 播放时钟从预缓冲开始计时
+            long startNanos = System.nanoTime();
+
+            // 预缓冲处理
+            int buffered = 0;
+            while (buffered < PRE_BUFFER_FRAMES) {
+                ByteBuffer frame = source.next();
+                if (frame == null) {
+                    break;
+                }
+                sendOpusFrame(session, frame);
+                buffered++;
+            }
+
+            if (source.isDrained()) {
+                // 所有帧已在预缓冲中发送完毕
+                return CompletableFuture.completedFuture(null);
+            }
+
+            // 先登记播放再交给节拍器，第一次回调或播放结束时都能在表中找到它
+            FramePacer.Playback playback = new FramePacer.Playback();
+            FramePacer.Playback previous = playbacks.put(sessionId, playback);
+            if (previous != null) {
+                previous.cancel();
+            }
+            CompletableFuture<Void> finished = playback.getFuture()
+                    .whenComplete((v, e) -> playbacks.remove(sessionId, playback));
+
+            // 后续帧交给节拍器按期望时间发送
+            framePacer.start(playback, startNanos, buffered, () -> {
+                if (!playingState.get() || !session.isOpen()) {
+                    return FramePacer.FrameResult.FINISHED;
+                }
+
+                ByteBuffer frame = source.next();
+                if (frame == null) {
+                    // 合成速度跟不上播放时稍后再取
+                    return source.isDrained() ? FramePacer.FrameResult.FINISHED : FramePacer.FrameResult.UNDERRUN;
+                }
+
+                // 更新活跃时间
+                sessionManager.updateLastActivity(sessionId);
+
+                // 发送当前帧
+                sendOpusFrame(session, frame);
+
+                return source.isDrained() ? FramePacer.FrameResult.FINISHED : FramePacer.FrameResult.SENT;
+            });
+            return finished;
+        } catch (Exception e) {
+            logger.error("音频帧发送初始化失败", e);
+            return CompletableFuture.failedFuture(e);
+        }
+    }
+
+    /**
+     * 帧来源：音频文件读取的完整帧列表、内存映射的帧文件，或流式TTS边合成边编码的帧流
+     */
+    private interface FrameSource {
+        /**
+         * 取出下一帧，暂无可用帧时返回null
+         */
+        ByteBuffer next();
+
+        /**
+         * 所有帧都已取出，且不会再有新的帧
+         */
+        boolean isDrained();
+
+        /**
+         * 播放结束后释放帧来源持有的资源
+         */
+        default void close() {
+        }
+    }
+
+    private static FrameSource listSource(List<byte[]> frames) {
+        return new FrameSource() {
+            private int index = 0;
+
+            @Override
+            public ByteBuffer next() {
+                return index < frames.size() ? ByteBuffer.wrap(frames.get(index++)) : null;
+            }
+
+            @Override
+            public boolean isDrained() {
+                return index >= frames.size();
+            }
+        };
+    }
+
+    private static FrameSource frameFileSource(OpusFrameFile frameFile) {
+        return new FrameSource() {
+            private int index = 0;
+
+            @Override
+            public ByteBuffer next() {
+                return index < frameFile.frameCount() ? frameFile.frame(index++) : null;
+            }
+
+            @Override
+            public boolean isDrained() {
+                return index >= frameFile.frameCount();
+            }
+
+            @Override
+            public void close() {
+                frameFile.close();
+            }
+        };
+    }
+
+    private static FrameSource streamSource(OpusStream stream) {
+        return new FrameSource() {
+            @Override
+            public ByteBuffer next() {
+                byte[] frame = stream.poll();
+                return frame == null ? null : ByteBuffer.wrap(frame);
+            }
+
+            @Override
+            public boolean isDrained() {
+                return stream.isDrained();
+            }
+        };
+    }
+
     /**
      * 发送Opus帧数据
      */
@@ -317,6 +388,13 @@ public class AudioService {
         messageService.sendBinaryMessage(session, opusFrame);
     }
 
+    /**
+     * 发送Opus帧数据，缓冲区可以是帧文件的映射切片
+     */
+    public void sendOpusFrame(ChatSession session, ByteBuffer opusFrame) throws IOException {
+        messageService.sendBinaryMessage(session, opusFrame);
+    }
+
     /**
      * 发送表情信息。如果句子里没有分析出表情，则默认返回 happy
      */
@@ -333,84 +411,18 @@ public class AudioService {
      * 清理会话资源
      */
     public void cleanupSession(String sessionId) {
-        lastFrameSentTime.remove(sessionId);
         isPlaying.remove(sessionId);
-        cleanTimers(sessionId);
         cancelScheduledTask(sessionId);
         opusProcessor.cleanup(sessionId);
     }
     
-    /**
-     * 结束非流式任务
-     */
-    private void endTask(String sessionId, CompletableFuture<Void> future) {
-        endTask(sessionId, future, null);
-    }
-    
-    /**
-     * 结束非流式任务（带异常）
-     */
-    private void endTask(String sessionId, CompletableFuture<Void> future, Throwable error) {
-        // 取消调度任务
-        cancelScheduledTask(sessionId);
-        
-        // 清理播放时间信息
-        cleanTimers(sessionId);
-        
-        // 完成Future
-        if (error != null) {
-            future.completeExceptionally(error);
-        } else {
-            future.complete(null);
-        }
-    }
-    
-    /**
-     * 清理计时器资源
-     */
-    private void cleanTimers(String sessionId) {
-        playStartTimes.remove(sessionId);
-        playPositions.remove(sessionId);
-    }
-    
-    /**
-     * 计算并调度下一帧的发送时间
-     */
-    private void scheduleNextFrame(String sessionId, Runnable frameTask) {
-        Long startTime = playStartTimes.get(sessionId);
-        Long position = playPositions.get(sessionId);
-        
-        if (startTime == null || position == null) {
-            // 如果没有时间信息，使用固定间隔
-            ScheduledFuture<?> future = scheduler.schedule(frameTask, OPUS_FRAME_SEND_INTERVAL_MS, TimeUnit.MILLISECONDS);
-            scheduledTasks.put(sessionId, future);
-            return;
-        }
-
-        // 计算预期发送时间（纳秒级精度）
-        long expectedTime = startTime + position * 1_000_000;
-        long currentTime = System.nanoTime();
-        long delayNanos = expectedTime - currentTime;
-        
-        ScheduledFuture<?> future;
-        if (delayNanos <= 0) {
-            // 如果当前时间已经超过预期时间，立即发送
-            future = scheduler.schedule(frameTask, 0, TimeUnit.NANOSECONDS);
-        } else {
-            // 延迟到精确时间点再发送
-            future = scheduler.schedule(frameTask, delayNanos, TimeUnit.NANOSECONDS);
-        }
-
-        scheduledTasks.put(sessionId, future);
-    }
-    
     /**
      * 取消调度任务
      */
     public void cancelScheduledTask(String sessionId) {
-        ScheduledFuture<?> task = scheduledTasks.remove(sessionId);
-        if (task != null && !task.isDone()) {
-            task.cancel(false);
+        FramePacer.Playback playback = playbacks.remove(sessionId);
+        if (playback != null) {
+            playback.cancel();
         }
     }
 
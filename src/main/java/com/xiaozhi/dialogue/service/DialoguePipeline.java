@@ -0,0 +1,111 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.dialogue.service.DialogueService.Sentence;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 会话的对话流水线状态
+ * 随ChatSession创建和销毁，集中保存句子队列、播放状态和当前轮对话，会话关闭时统一释放。TTS任务由全局的 TtsScheduler 排队。
+ */
+public class DialoguePipeline {
+
+    // 待播放的句子
+    private final SentenceBuffer sentences = new SentenceBuffer();
+    // 首句是否已处理完成
+    private final AtomicBoolean firstSentDone = new AtomicBoolean(false);
+    // 播放队列处理锁
+    private final ReentrantLock queueLock = new ReentrantLock();
+
+    private volatile long sttStartTime;
+    // 用户说完（VAD检测到语音结束）的时间，文本输入时为0
+    private volatile long speechEndTime;
+    private volatile long llmStartTime;
+    private volatile DialogueTurn currentTurn;
+
+    /**
+     * 开始新的对话，记录LLM开始时间并重置首句状态
+     */
+    public void startChat() {
+        llmStartTime = System.currentTimeMillis();
+        speechEndTime = 0;
+        firstSentDone.set(false);
+    }
+
+    /**
+     * 识别完成、开始请求LLM时重新记录LLM开始时间，语音输入的模型响应时间不包含说话和识别的时间
+     */
+    public void markLlmStart() {
+        llmStartTime = System.currentTimeMillis();
+    }
+
+    /**
+     * 获取对话ID对应的轮次，与当前轮次不同时创建新的轮次
+     */
+    public synchronized DialogueTurn turn(Long assistantTimeMillis) {
+        DialogueTurn turn = currentTurn;
+        if (turn == null || !turn.getAssistantTimeMillis().equals(assistantTimeMillis)) {
+            turn = new DialogueTurn(assistantTimeMillis);
+            currentTurn = turn;
+        }
+        return turn;
+    }
+
+    /**
+     * 清空待播放的句子，正在流式合成的句子一并中止
+     */
+    public void clearSentences() {
+        DialogueTurn turn = currentTurn;
+        if (turn != null) {
+            turn.markInterrupted();
+        }
+        for (Sentence sentence : sentences.clear()) {
+            OpusStream audioStream = sentence.getAudioStream();
+            if (audioStream != null) {
+                audioStream.abort();
+            }
+        }
+    }
+
+    /**
+     * 会话关闭时释放所有状态
+     */
+    public void close() {
+        clearSentences();
+        firstSentDone.set(false);
+        currentTurn = null;
+    }
+
+    public SentenceBuffer getSentences() {
+        return sentences;
+    }
+
+    public AtomicBoolean getFirstSentDone() {
+        return firstSentDone;
+    }
+
+    public ReentrantLock getQueueLock() {
+        return queueLock;
+    }
+
+    public long getSttStartTime() {
+        return sttStartTime;
+    }
+
+    public void setSttStartTime(long sttStartTime) {
+        this.sttStartTime = sttStartTime;
+    }
+
+    public long getSpeechEndTime() {
+        return speechEndTime;
+    }
+
+    public void setSpeechEndTime(long speechEndTime) {
+        this.speechEndTime = speechEndTime;
+    }
+
+    public long getLlmStartTime() {
+        return llmStartTime;
+    }
+}
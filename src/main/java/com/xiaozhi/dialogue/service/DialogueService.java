@@ -3,34 +3,51 @@ package com.xiaozhi.dialogue.service;
 import com.xiaozhi.communication.common.ChatSession;
 import com.xiaozhi.communication.common.SessionManager;
 import com.xiaozhi.dialogue.llm.ChatService;
+import com.xiaozhi.dialogue.llm.SpeculativeChat;
 import com.xiaozhi.dialogue.service.VadService.VadStatus;
+import com.xiaozhi.dialogue.stt.PartialTranscript;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
+import com.xiaozhi.dialogue.tts.cache.TtsAudioCache;
 import com.xiaozhi.dialogue.tts.factory.TtsServiceFactory;
+import com.xiaozhi.dialogue.tts.hedge.TtsHedger;
+import com.xiaozhi.dialogue.tts.scheduler.TtsScheduler;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.event.ChatSessionCloseEvent;
 import com.xiaozhi.service.SysConfigService;
+import com.xiaozhi.dialogue.tts.TtsService;
 import com.xiaozhi.service.SysRoleService;
 import com.xiaozhi.utils.AudioUtils;
 import com.xiaozhi.utils.EmojiUtils;
 import com.xiaozhi.utils.EmojiUtils.EmoSentence;
+import com.xiaozhi.utils.OpusProcessor;
+import com.xiaozhi.utils.WavFileWriter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
 import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.context.ApplicationListener;
 import org.springframework.stereotype.Service;
 import org.springframework.util.Assert;
 import org.springframework.util.ObjectUtils;
 import org.springframework.util.StringUtils;
+import reactor.core.Disposable;
+import reactor.core.publisher.Sinks;
+import reactor.core.scheduler.Schedulers;
 
+import java.io.ByteArrayOutputStream;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.text.DecimalFormat;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.locks.ReentrantLock;
 import java.util.function.Consumer;
 
@@ -43,9 +60,8 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     private static final Logger logger = LoggerFactory.getLogger(DialogueService.class);
     private static final DecimalFormat df = new DecimalFormat("0.00");
     private static final long TIMEOUT_MS = 5000;
-    private static final int MAX_CONCURRENT_PER_SESSION = 3; // 每个session最大并发数
-    private static final int MAX_RETRY_COUNT = 2; // 最大重试次数
     private static final long TTS_TIMEOUT_MS = 10000; // TTS生成超时时间
+    private static final long STREAM_HOLD_TIMEOUT_MS = 60000; // 流式合成首包之后最长等待结束的时间
 
     @Resource
     private ChatService chatService;
@@ -80,34 +96,61 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     @Resource
     private SysRoleService roleService;
 
-    // 会话状态管理
-    private final Map<String, AtomicInteger> seqCounters = new ConcurrentHashMap<>();
-    private final Map<String, Long> sttStartTimes = new ConcurrentHashMap<>();
-    private final Map<String, Long> llmStartTimes = new ConcurrentHashMap<>();
-    private final Map<String, CopyOnWriteArrayList<Sentence>> sentenceQueue = new ConcurrentHashMap<>();
-    private final Map<String, AtomicBoolean> firstSentDone = new ConcurrentHashMap<>();
-    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    @Resource
+    private OpusProcessor opusProcessor;
+
+    @Resource
+    private TtsAudioCache ttsAudioCache;
 
-    // 存储每个对话ID的所有模型回复音频路径
-    private final Map<Long, Map<Integer, String>> dialogueAudioPaths = new ConcurrentHashMap<>();
-    // 存储每个对话ID的完整文本回复
-    private final Map<Long, StringBuilder> dialogueResponses = new ConcurrentHashMap<>();
+    @Resource
+    private TtsScheduler ttsScheduler;
 
-    // 新增：并发控制相关
-    private final Map<String, Semaphore> sessionSemaphores = new ConcurrentHashMap<>();
-    private final Map<String, PriorityBlockingQueue<TtsTask>> sessionTaskQueues = new ConcurrentHashMap<>();
+    @Resource
+    private TtsHedger ttsHedger;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    // 支持流式合成的TTS是否走流式播放
+    @Value("${tts.stream.enabled:true}")
+    private boolean ttsStreamEnabled;
+
+    // 流式合成结束后是否将音频保存为文件（用于合并助手录音）
+    @Value("${tts.stream.persist:true}")
+    private boolean ttsStreamPersist;
+
+    // 是否根据稳定的中间识别结果提前请求LLM
+    @Value("${llm.speculative.enabled:false}")
+    private boolean speculativeEnabled;
+
+    // 稳定的识别文本保持不变多久后开始预取（毫秒）
+    @Value("${llm.speculative.stable-window-ms:300}")
+    private long speculativeStableWindowMs;
+
+    // 每帧的VAD判定耗时，按判定结果区分
+    private final Map<VadStatus, Timer> vadTimers = new EnumMap<>(VadStatus.class);
+    // 按指标名和标签值缓存的对话指标，每个标签组合只注册一次
+    private final Map<String, Timer> dialogueTimers = new ConcurrentHashMap<>();
+    private final Map<String, DistributionSummary> dialogueSummaries = new ConcurrentHashMap<>();
+
+    // 会话状态保存在 ChatSession 的 DialoguePipeline 中，随会话关闭释放
+
+    @PostConstruct
+    public void initMetrics() {
+        for (VadStatus status : VadStatus.values()) {
+            vadTimers.put(status, Timer.builder("xiaozhi.vad.decision")
+                    .description("单帧音频的VAD判定耗时（含解码）")
+                    .tag("status", status.name().toLowerCase())
+                    .publishPercentileHistogram()
+                    .register(meterRegistry));
+        }
+    }
 
     @Override
     public void onApplicationEvent(ChatSessionCloseEvent event) {
         ChatSession chatSession = event.getSession();
         if(chatSession != null) {
-            // clean up dialogue audio paths and responses
-            Long assistantTimeMillis = chatSession.getAssistantTimeMillis();
-            if (assistantTimeMillis!=null ) {
-                dialogueAudioPaths.remove(assistantTimeMillis);
-                dialogueResponses.remove(assistantTimeMillis);
-            }
-            cleanupSession(chatSession.getSessionId());
+            cleanupSession(chatSession);
         }
     }
 
@@ -121,10 +164,13 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         private boolean isLast;
         private boolean ready = false;
         private String audioPath = null;
+        private OpusStream audioStream = null; // 流式TTS的帧流
+        private List<byte[]> opusFrames = null; // 已编码的Opus帧（缓存命中或合成后编码）
         private long timestamp = System.currentTimeMillis();
         private double modelResponseTime = 0.0; // 模型响应时间（秒）
         private double ttsGenerationTime = 0.0; // TTS生成时间（秒）
         private Long assistantTimeMillis = null; // 对话ID
+        private DialogueTurn turn = null; // 所属的对话轮次
         private List<String> moods;
         // TODO 看看是否真的需要这么多个构造方法。
         public Sentence(String text) {
@@ -176,6 +222,22 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             return audioPath;
         }
 
+        public OpusStream getAudioStream() {
+            return audioStream;
+        }
+
+        public void setAudioStream(OpusStream audioStream) {
+            this.audioStream = audioStream;
+        }
+
+        public List<byte[]> getOpusFrames() {
+            return opusFrames;
+        }
+
+        public void setOpusFrames(List<byte[]> opusFrames) {
+            this.opusFrames = opusFrames;
+        }
+
         public void setModelResponseTime(double time) {
             this.modelResponseTime = time;
         }
@@ -200,6 +262,15 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             return assistantTimeMillis;
         }
 
+        public DialogueTurn getTurn() {
+            return turn;
+        }
+
+        public void setTurn(DialogueTurn turn) {
+            this.turn = turn;
+            this.assistantTimeMillis = turn != null ? turn.getAssistantTimeMillis() : null;
+        }
+
         public List<String> getMoods() {
             return moods;
         }
@@ -210,9 +281,9 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     }
 
     /**
-     * TTS任务封装，用于优先队列
+     * TTS任务封装，排队和重试由 TtsScheduler 负责
      */
-    private static class TtsTask implements Comparable<TtsTask> {
+    static class TtsTask {
         private final String sessionId;
         private final Sentence sentence;
         private final EmoSentence emoSentence;
@@ -221,13 +292,12 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         private final SysConfig ttsConfig;
         private final String voiceName;
         private final ChatSession session;
-        private final long createTime;
-        private int retryCount = 0;
-        private boolean isRetry = false;
+        // 创建任务时TTS缓存的代数，合成期间配置被修改时结果不写入缓存
+        private final long cacheGeneration;
 
         public TtsTask(ChatSession session, String sessionId, Sentence sentence,
                 EmoSentence emoSentence, boolean isFirst, boolean isLast,
-                SysConfig ttsConfig, String voiceName) {
+                SysConfig ttsConfig, String voiceName, long cacheGeneration) {
             this.session = session;
             this.sessionId = sessionId;
             this.sentence = sentence;
@@ -236,38 +306,10 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             this.isLast = isLast;
             this.ttsConfig = ttsConfig;
             this.voiceName = voiceName;
-            this.createTime = System.currentTimeMillis();
-        }
-
-        @Override
-        public int compareTo(TtsTask other) {
-            // 优先级：重试任务 > 首句 > 序号小的句子
-            if (this.isRetry != other.isRetry) {
-                return this.isRetry ? -1 : 1;
-            }
-            if (this.isFirst != other.isFirst) {
-                return this.isFirst ? -1 : 1;
-            }
-            return Integer.compare(this.sentence.getSeq(), other.sentence.getSeq());
+            this.cacheGeneration = cacheGeneration;
         }
     }
 
-    /**
-     * 获取或创建session的信号量
-     */
-    private Semaphore getSessionSemaphore(String sessionId) {
-        return sessionSemaphores.computeIfAbsent(sessionId,
-                k -> new Semaphore(MAX_CONCURRENT_PER_SESSION));
-    }
-
-    /**
-     * 获取或创建session的任务队列
-     */
-    private PriorityBlockingQueue<TtsTask> getSessionTaskQueue(String sessionId) {
-        return sessionTaskQueues.computeIfAbsent(sessionId,
-                k -> new PriorityBlockingQueue<>());
-    }
-
     /**
      * 处理音频数据
      */
@@ -286,7 +328,11 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                         : null;
 
                 // 处理VAD
+                long vadStart = System.nanoTime();
                 VadService.VadResult vadResult = vadService.processAudio(sessionId, opusData);
+                if (vadResult != null && vadResult.getStatus() != null) {
+                    vadTimers.get(vadResult.getStatus()).record(System.nanoTime() - vadStart, TimeUnit.NANOSECONDS);
+                }
                 if (vadResult == null || vadResult.getStatus() == VadStatus.ERROR
                         || vadResult.getProcessedData() == null) {
                     return;
@@ -298,10 +344,10 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 switch (vadResult.getStatus()) {
                     case SPEECH_START:
                         // 检测到语音开始
-                        sttStartTimes.put(sessionId, System.currentTimeMillis());
+                        session.getDialoguePipeline().setSttStartTime(System.currentTimeMillis());
 
                         // 初始化对话状态
-                        initChat(sessionId);
+                        initChat(session);
                         startStt(session, sessionId, sttConfig, device, vadResult.getProcessedData());
                         break;
 
@@ -314,6 +360,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
                     case SPEECH_END:
                         // 语音结束，完成流式识别
+                        session.getDialoguePipeline().setSpeechEndTime(System.currentTimeMillis());
                         if (sessionManager.isStreaming(sessionId)) {
                             sessionManager.completeAudioStream(sessionId);
                             sessionManager.setStreamingState(sessionId, false);
@@ -340,7 +387,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             try {
                 // 如果正在播放，先中断音频
                 if (audioService.isPlaying(sessionId)) {
-                    sentenceQueue.get(sessionId).clear();
+                    session.getDialoguePipeline().clearSentences();
                     audioService.sendStop(session);
                 }
 
@@ -367,41 +414,40 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 final Long userTimeMillis =  System.currentTimeMillis();
                 session.setUserTimeMillis(userTimeMillis);
 
-                final String finalText;
-                if (sessionManager.getAudioStream(sessionId) != null) {
-                    finalText = sttService.streamRecognition(sessionManager.getAudioStream(sessionId));
-                    if (!StringUtils.hasText(finalText)) {
-                        return;
-                    }
-                } else {
+                Sinks.Many<byte[]> audioStream = sessionManager.getAudioStream(sessionId);
+                if (audioStream == null) {
                     return;
                 }
-                // 获取完整的音频数据并保存
-                saveUserAudio(session);
-
-                CompletableFuture.runAsync(() -> messageService.sendSttMessage(session, finalText))
-                        .thenRun(() -> audioService.sendStart(session))
-                        .thenRun(() -> {
-                            // 设置LLM生成消息的时间戳作为Assistant消息的创建时间戳，也用于约定保存音频文件的路径。一定要在LLM前设置时间戳。
-                            final Long assistantTimeMillis =  System.currentTimeMillis();
-                            session.setAssistantTimeMillis(assistantTimeMillis);
-                            // 初始化当前对话的音频路径映射和文本响应
-                            dialogueAudioPaths.put(assistantTimeMillis, new ConcurrentHashMap<>());
-                            dialogueResponses.put(assistantTimeMillis, new StringBuilder());
-                            // 使用句子切分处理响应
-                            chatService.chatStreamBySentence(session, finalText, true,
-                                    (sentence, isFirst, isLast) -> {
-                                        handleSentence(
-                                                session,
-                                                sentence,
-                                                isFirst,
-                                                isLast);
-                                    });
+                // 开启预取时，稳定的中间结果保持不变一段时间后提前请求LLM
+                SpeculationTracker tracker = speculativeEnabled ? new SpeculationTracker(session) : null;
+
+                // 订阅识别结果流，中间结果随识别进度到达，最终结果到达后再开始对话，不阻塞当前线程
+                sttService.streamTranscripts(audioStream.asFlux())
+                        .doOnNext(transcript -> {
+                            if (!transcript.last()) {
+                                logger.debug("识别中间结果 - SessionId: {}, 文本: {}", sessionId, transcript.text());
+                                if (tracker != null) {
+                                    tracker.onTranscript(transcript);
+                                }
+                            }
                         })
-                        .exceptionally(e -> {
-                            logger.error("处理对话失败: {}", e.getMessage(), e);
-                            return null;
-                        });
+                        .filter(PartialTranscript::last)
+                        .next()
+                        .map(PartialTranscript::text)
+                        .filter(StringUtils::hasText)
+                        .doFinally(signal -> {
+                            // 没有得到最终结果时取消预取
+                            if (tracker != null) {
+                                tracker.cancel();
+                            }
+                        })
+                        .subscribe(
+                                finalText -> {
+                                    recordSttLatency(session, sttService.getProviderName());
+                                    SpeculativeChat speculation = tracker != null ? tracker.take() : null;
+                                    Thread.startVirtualThread(() -> handleTranscript(session, finalText, speculation));
+                                },
+                                e -> logger.error("流式识别错误: {}", e.getMessage(), e));
             } catch (Exception e) {
                 logger.error("流式识别错误: {}", e.getMessage(), e);
             }
@@ -409,28 +455,135 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     }
 
     /**
-     * 保存用户音频数据
+     * 识别完成，保存用户音频并开始对话
+     *
+     * @param speculation 识别过程中预取的请求，最终结果一致时直接使用，可以为null
      */
-    private void saveUserAudio(ChatSession session) {
-        try {
-            // 获取当前语音活动的PCM数据
-            List<byte[]> pcmFrames = vadService.getPcmData(session.getSessionId());
-
-            if (pcmFrames != null && !pcmFrames.isEmpty()) {
-                // 计算总大小并合并PCM帧
-                int totalSize = pcmFrames.stream().mapToInt(frame -> frame.length).sum();
-                byte[] fullPcmData = new byte[totalSize];
-                int offset = 0;
-
-                for (byte[] frame : pcmFrames) {
-                    System.arraycopy(frame, 0, fullPcmData, offset, frame.length);
-                    offset += frame.length;
+    private void handleTranscript(ChatSession session, String finalText, SpeculativeChat speculation) {
+        if (speculation != null && !speculation.matches(finalText)) {
+            logger.debug("预取文本与识别结果不一致，取消预取 - 预取: {}, 结果: {}", speculation.getMessage(), finalText);
+            speculation.cancel();
+            speculation = null;
+        }
+        final SpeculativeChat committable = speculation;
+
+        // 获取完整的音频数据并保存
+        saveUserAudio(session);
+
+        CompletableFuture.runAsync(() -> messageService.sendSttMessage(session, finalText))
+                .thenRun(() -> audioService.sendStart(session))
+                .thenRun(() -> {
+                    // 设置LLM生成消息的时间戳作为Assistant消息的创建时间戳，也用于约定保存音频文件的路径。一定要在LLM前设置时间戳。
+                    final Long assistantTimeMillis =  System.currentTimeMillis();
+                    session.setAssistantTimeMillis(assistantTimeMillis);
+                    // 初始化当前轮对话的音频路径和文本响应
+                    session.getDialoguePipeline().turn(assistantTimeMillis);
+                    session.getDialoguePipeline().markLlmStart();
+                    ChatService.TriConsumer<String, Boolean, Boolean> sentenceHandler =
+                            (sentence, isFirst, isLast) -> handleSentence(session, sentence, isFirst, isLast);
+                    // 预取的请求已经在生成，确认后直接使用
+                    if (committable != null && committable.commit(finalText, sentenceHandler)) {
+                        logger.info("使用预取的LLM响应 - SessionId: {}, 文本: {}", session.getSessionId(), finalText);
+                        return;
+                    }
+                    // 使用句子切分处理响应
+                    chatService.chatStreamBySentence(session, finalText, true, sentenceHandler);
+                })
+                .exceptionally(e -> {
+                    if (committable != null) {
+                        committable.cancel();
+                    }
+                    logger.error("处理对话失败: {}", e.getMessage(), e);
+                    return null;
+                });
+    }
+
+    /**
+     * 跟踪一次识别的中间结果，稳定文本在窗口期内不再变化时提前请求LLM；用户继续说话时取消预取
+     */
+    private class SpeculationTracker {
+        private final ChatSession session;
+        // 最近一次稳定的识别文本
+        private String candidate;
+        private Disposable timer;
+        private SpeculativeChat speculation;
+
+        SpeculationTracker(ChatSession session) {
+            this.session = session;
+        }
+
+        synchronized void onTranscript(PartialTranscript transcript) {
+            String text = transcript.text();
+            if (speculation != null && !speculation.getMessage().equals(text)) {
+                // 用户还在继续说，预取的文本已过时
+                speculation.cancel();
+                speculation = null;
+            }
+            if (text.equals(candidate)) {
+                return;
+            }
+            candidate = transcript.stable() ? text : null;
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            if (candidate != null) {
+                timer = Schedulers.parallel().schedule(() -> start(text), speculativeStableWindowMs, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        private void start(String text) {
+            synchronized (this) {
+                if (!text.equals(candidate) || speculation != null) {
+                    return;
                 }
+                timer = null;
+            }
+            // 发起请求不持有锁，期间到达的中间结果会在下面检查
+            SpeculativeChat started = chatService.speculate(session, text, true);
+            if (started == null) {
+                return;
+            }
+            synchronized (this) {
+                if (text.equals(candidate) && speculation == null) {
+                    logger.debug("预取LLM响应 - SessionId: {}, 文本: {}", session.getSessionId(), text);
+                    speculation = started;
+                    return;
+                }
+            }
+            started.cancel();
+        }
 
-                // 保存为WAV文件
-                Path path = session.getUserAudioPath();
-                AudioUtils.saveAsWav(path,fullPcmData);
+        /**
+         * 取出预取的请求，交由调用方确认或取消
+         */
+        synchronized SpeculativeChat take() {
+            if (timer != null) {
+                timer.dispose();
+                timer = null;
+            }
+            candidate = null;
+            SpeculativeChat current = speculation;
+            speculation = null;
+            return current;
+        }
 
+        void cancel() {
+            SpeculativeChat current = take();
+            if (current != null) {
+                current.cancel();
+            }
+        }
+    }
+
+    /**
+     * 保存用户音频数据
+     */
+    private void saveUserAudio(ChatSession session) {
+        try {
+            // 当前语音活动的PCM数据直接写入WAV文件
+            Path path = session.getUserAudioPath();
+            if (vadService.writePcmAsWav(session.getSessionId(), path)) {
                 logger.debug("用户音频已保存: {}", path.toString());
             }
         } catch (Exception e) {
@@ -441,12 +594,8 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     /**
      * 初始化对话状态
      */
-    private void initChat(String sessionId) {
-        llmStartTimes.put(sessionId, System.currentTimeMillis());
-        seqCounters.putIfAbsent(sessionId, new AtomicInteger(0));
-        sentenceQueue.putIfAbsent(sessionId, new CopyOnWriteArrayList<>());
-        firstSentDone.put(sessionId, new AtomicBoolean(false));
-        locks.putIfAbsent(sessionId, new ReentrantLock());
+    private void initChat(ChatSession session) {
+        session.getDialoguePipeline().startChat();
     }
 
     /**
@@ -462,20 +611,18 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         Long assistantTimeMillis = session.getAssistantTimeMillis();
         Assert.notNull(assistantTimeMillis, "assistantTimeMillis cannot be null");
         String sessionId = session.getSessionId();
-        seqCounters.putIfAbsent(sessionId, new AtomicInteger(0));
-        // 获取句子序列号
-        int seq = seqCounters.get(sessionId).incrementAndGet();
+        DialoguePipeline pipeline = session.getDialoguePipeline();
+        DialogueTurn turn = pipeline.turn(assistantTimeMillis);
 
         // 累加完整回复内容
         if (text != null && !text.isEmpty()) {
-            // 同时累加到对话ID对应的响应中
-            dialogueResponses.computeIfAbsent(assistantTimeMillis, k -> new StringBuilder()).append(text);
+            turn.appendResponse(text);
         }
 
         // 计算模型响应时间
         final double responseTime;
-        Long startTime = llmStartTimes.get(sessionId);
-        if (startTime != null) {
+        long startTime = pipeline.getLlmStartTime();
+        if (startTime > 0) {
             responseTime = (System.currentTimeMillis() - startTime) / 1000.0;
         } else {
             responseTime = 0.0;
@@ -495,16 +642,13 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
             ttsConfig = null;
         }
         String voiceName = role.getVoiceName();
+        turn.setTtsProvider(TtsServiceFactory.providerOf(ttsConfig));
 
-        // 创建句子对象
-        Sentence sentence = new Sentence(seq, text, isFirst, isLast);
+        // 分配序号并添加到句子队列，确保序号连续
+        Sentence sentence = pipeline.getSentences().append(text, isFirst, isLast);
         sentence.setModelResponseTime(responseTime); // 记录模型响应时间
-        sentence.setAssistantTimeMillis(assistantTimeMillis); // 设置对话ID
-
-        // 添加到句子队列
-        CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-        if (queue == null) {return;}
-        queue.add(sentence);
+        sentence.setTurn(turn); // 设置对话轮次
+        recordChunk(turn, text, isLast);
 
         // 如果句子为空且是结束状态，直接标记为准备好（不需要生成音频）
         if ((text == null || text.isEmpty()) && isLast) {
@@ -513,7 +657,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
             // 如果是首句，需要标记首句处理完成
             if (isFirst) {
-                firstSentDone.get(sessionId).set(true);
+                pipeline.getFirstSentDone().set(true);
             }
 
             // 尝试处理队列
@@ -546,7 +690,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
         // 创建TTS任务
         TtsTask task = new TtsTask(session, sessionId, sentence, emoSentence,
-                isFirst, isLast, ttsConfig, voiceName);
+                isFirst, isLast, ttsConfig, voiceName, ttsAudioCache.generation(ttsConfig));
 
         // 提交任务到队列
         submitTtsTask(task);
@@ -554,86 +698,269 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
     /**
      * 提交TTS任务
+     * 缓存命中直接播放，不占用TTS服务的并发和限速配额；其他任务交给全局调度器，按服务提供商排队。
      */
     private void submitTtsTask(TtsTask task) {
-        PriorityBlockingQueue<TtsTask> taskQueue = getSessionTaskQueue(task.sessionId);
-        taskQueue.offer(task);
+        String text = task.emoSentence.getTtsSentence();
+        List<byte[]> cachedFrames = ttsAudioCache.get(task.ttsConfig, task.voiceName, text);
+        if (cachedFrames != null) {
+            handleTtsCacheHit(task, cachedFrames);
+            return;
+        }
+        DialogueTurn turn = task.sentence.getTurn();
+        Long dialogueId = turn != null ? turn.getAssistantTimeMillis() : null;
+        ttsScheduler.submit(TtsServiceFactory.providerOf(task.ttsConfig), task.sessionId, dialogueId, task.isFirst,
+                task.sentence.getSeq(), () -> executeTtsTask(task), error -> handleTtsFailure(task, error));
+    }
+
+    /**
+     * 执行一次TTS合成（带超时），失败时抛出异常，由调度器决定是否重试
+     * 开启对冲时，主服务迟迟不返回或提前失败会改发备用服务；备用服务的音色可能不同，结果不写入缓存。
+     */
+    private void executeTtsTask(TtsTask task) throws Exception {
+        String text = task.emoSentence.getTtsSentence();
+        String provider = TtsServiceFactory.providerOf(task.ttsConfig);
+        TtsService ttsService = ttsFactory.getTtsService(task.ttsConfig, task.voiceName);
+        TtsHedger.Fallback fallback = ttsHedger.fallback();
+        if (ttsStreamEnabled && ttsService.isSupportStreamTts()) {
+            executeStreamingTtsTask(task, provider, ttsService, fallback);
+            return;
+        }
+
+        long ttsStartTime = System.currentTimeMillis();
+        TtsHedger.Result<String> result;
+        try {
+            result = ttsHedger.call(false,
+                    new TtsHedger.Leg<>(provider, () -> ttsService.textToSpeech(text)),
+                    fallback != null
+                            ? new TtsHedger.Leg<>(fallback.provider(), () -> fallback.service().textToSpeech(text))
+                            : null,
+                    TTS_TIMEOUT_MS, DialogueService::deleteAudioFile);
+        } catch (TimeoutException e) {
+            logger.warn("TTS生成超时 - 序号: {}, 内容: \"{}\"", task.sentence.getSeq(), task.sentence.getText());
+            throw e;
+        }
+        String audioPath = result.value();
+
+        // 记录TTS生成时间
+        task.sentence.setTtsGenerationTime((System.currentTimeMillis() - ttsStartTime) / 1000.0);
+        if (result.fallback()) {
+            logger.info("TTS由备用服务生成 - 序号: {}, 服务: {}", task.sentence.getSeq(), fallback.provider());
+        }
+
+        // 短句编码后写入缓存，播放时直接使用编码结果
+        if (!result.fallback() && audioPath != null && ttsAudioCache.isCacheable(text)) {
+            String encoderKey = task.sessionId + "_" + task.sentence.getSeq() + "_cache";
+            try {
+                List<byte[]> frames = opusProcessor.readAsOpus(encoderKey, audioPath);
+                ttsAudioCache.put(task.ttsConfig, task.voiceName, text, frames, task.cacheGeneration);
+                task.sentence.setOpusFrames(frames);
+            } finally {
+                opusProcessor.release(encoderKey);
+            }
+        }
 
-        // 尝试处理队列中的任务
-        processTtsTaskQueue(task.sessionId);
+        // 成功生成音频
+        handleTtsSuccess(task, audioPath);
     }
 
     /**
-     * 处理TTS任务队列
+     * 执行流式TTS任务
+     * 收到首个音频分片即视为就绪进入播放队列，之后的分片边合成边编码发送，超时和对冲只针对首个分片。
+     * 合成结束后才返回，调度器的并发名额覆盖整个合成过程；首包之后的失败只记录日志，不再重试。
      */
-    private void processTtsTaskQueue(String sessionId) {
-        Thread.startVirtualThread(() -> {
-            PriorityBlockingQueue<TtsTask> taskQueue = getSessionTaskQueue(sessionId);
-            Semaphore semaphore = getSessionSemaphore(sessionId);
-
-            while (!taskQueue.isEmpty()) {
-                // 尝试获取许可
-                if (!semaphore.tryAcquire()) {
-                    // 无法获取许可，等待其他任务完成
-                    break;
-                }
+    private void executeStreamingTtsTask(TtsTask task, String provider, TtsService ttsService,
+            TtsHedger.Fallback fallback) throws Exception {
+        long ttsStartTime = System.currentTimeMillis();
+        TtsHedger.Leg<StreamingSynthesis> hedge = null;
+        if (fallback != null) {
+            TtsService fallbackService = fallback.service();
+            hedge = new TtsHedger.Leg<>(fallback.provider(), fallbackService.isSupportStreamTts()
+                    ? () -> startStreaming(task, fallbackService, false)
+                    : () -> synthesizeAsStream(task, fallbackService));
+        }
 
-                TtsTask task = taskQueue.poll();
-                if (task == null) {
-                    semaphore.release();
-                    break;
-                }
+        TtsHedger.Result<StreamingSynthesis> result;
+        try {
+            result = ttsHedger.call(true,
+                    new TtsHedger.Leg<>(provider, () -> startStreaming(task, ttsService, true)),
+                    hedge, TTS_TIMEOUT_MS, StreamingSynthesis::cancel);
+        } catch (TimeoutException e) {
+            logger.warn("流式TTS首包超时 - 序号: {}, 内容: \"{}\"", task.sentence.getSeq(), task.sentence.getText());
+            throw new TimeoutException("流式TTS首包超时");
+        }
+        StreamingSynthesis synthesis = result.value();
 
-                // 使用虚拟线程执行任务
-                Thread.startVirtualThread(() -> {
-                    try {
-                        executeTtsTask(task);
-                    } finally {
-                        semaphore.release();
-                        // 任务完成后，继续处理队列
-                        processTtsTaskQueue(sessionId);
-                    }
-                });
+        // 记录首个分片的生成时间
+        task.sentence.setTtsGenerationTime((System.currentTimeMillis() - ttsStartTime) / 1000.0);
+        if (result.fallback()) {
+            logger.info("TTS由备用服务生成 - 序号: {}, 服务: {}", task.sentence.getSeq(), fallback.provider());
+        }
+        if (ttsStreamPersist && synthesis.thread() == null) {
+            // 备用服务一次性合成的音频，胜出后才记录，落败的结果不能覆盖主服务的音频
+            persistStream(task, synthesis.stream());
+        }
+        task.sentence.setAudioStream(synthesis.stream());
+        handleTtsSuccess(task, null);
+
+        // 等待合成结束再释放并发名额，中途失败已在合成线程中记录
+        try {
+            synthesis.done().get(STREAM_HOLD_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.debug("流式TTS未正常结束 - 序号: {}", task.sentence.getSeq());
+        }
+    }
+
+    /**
+     * 一次进行中的流式合成
+     *
+     * @param thread 合成线程，已经结束时为null
+     * @param done   合成结束时完成
+     */
+    private record StreamingSynthesis(OpusStream stream, Thread thread, CompletableFuture<Void> done) {
+
+        /**
+         * 放弃合成：丢弃已编码的帧并中断合成线程
+         */
+        void cancel() {
+            stream.abort();
+            if (thread != null) {
+                thread.interrupt();
             }
-        });
+        }
     }
 
     /**
-     * 执行TTS任务（带超时和重试）
+     * 开始一次流式合成，收到首个分片后返回，合成继续在后台进行
+     * 等待首包期间被中断（超时或对冲落败）时放弃该流。
+     *
+     * @param primary 是否为主服务，只有主服务的结果写入缓存
      */
-    private void executeTtsTask(TtsTask task) {
-        CompletableFuture<String> future = CompletableFuture.supplyAsync(() -> {
+    private StreamingSynthesis startStreaming(TtsTask task, TtsService ttsService, boolean primary) throws Exception {
+        String encoderKey = task.sessionId + "_" + task.sentence.getSeq() + (primary ? "" : "_hedge");
+        String text = task.emoSentence.getTtsSentence();
+        OpusStream stream = new OpusStream(opusProcessor, encoderKey, ttsStreamPersist,
+                primary && ttsAudioCache.isCacheable(text));
+        CompletableFuture<Void> firstChunk = new CompletableFuture<>();
+        CompletableFuture<Void> done = new CompletableFuture<>();
+
+        Thread thread = Thread.startVirtualThread(() -> {
+            Throwable error = null;
             try {
-                long ttsStartTime = System.currentTimeMillis();
-                String audioPath = ttsFactory.getTtsService(task.ttsConfig, task.voiceName)
-                        .textToSpeech(task.emoSentence.getTtsSentence());
-                long ttsDuration = System.currentTimeMillis() - ttsStartTime;
-
-                // 记录TTS生成时间
-                task.sentence.setTtsGenerationTime(ttsDuration / 1000.0);
-                return audioPath;
-            } catch (Exception e) {
-                throw new CompletionException(e);
+                ttsService.streamTextToSpeech(text, pcm -> {
+                    stream.write(pcm);
+                    firstChunk.complete(null);
+                });
+            } catch (Throwable e) {
+                error = e;
+            }
+            // 被放弃的流不记录音频，也不写入缓存
+            boolean aborted = stream.isAborted();
+            if (error != null) {
+                firstChunk.completeExceptionally(error);
+                if (stream.hasData() && !aborted) {
+                    logger.warn("流式TTS中途失败 - 序号: {}, 错误: {}", task.sentence.getSeq(), error.getMessage());
+                }
+            } else if (ttsStreamPersist && !aborted) {
+                persistStream(task, stream);
             }
-        }, Thread::startVirtualThread);
+            stream.finish();
+            if (error == null && primary && !aborted) {
+                // 结束后帧才完整（含末尾残留数据）
+                ttsAudioCache.put(task.ttsConfig, task.voiceName, text, stream.getFrames(),
+                        task.cacheGeneration);
+            }
+            firstChunk.complete(null);
+            if (error != null) {
+                done.completeExceptionally(error);
+            } else {
+                done.complete(null);
+            }
+        });
+        StreamingSynthesis synthesis = new StreamingSynthesis(stream, thread, done);
 
         try {
-            // 设置超时
-            String audioPath = future.get(TTS_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-
-            // 成功生成音频
-            handleTtsSuccess(task, audioPath);
+            firstChunk.get();
+        } catch (InterruptedException e) {
+            synthesis.cancel();
+            throw e;
+        } catch (ExecutionException e) {
+            stream.abort();
+            throw e.getCause() instanceof Exception exception ? exception : e;
+        }
+        if (!stream.hasData()) {
+            throw new IllegalStateException("未返回音频数据");
+        }
+        return synthesis;
+    }
 
-        } catch (TimeoutException e) {
-            logger.warn("TTS生成超时 - 序号: {}, 重试次数: {}/{}, 内容: \"{}\"",
-                    task.sentence.getSeq(), task.retryCount, MAX_RETRY_COUNT, task.sentence.getText());
-            handleTtsFailure(task, "超时");
+    /**
+     * 用不支持流式的服务合成完整音频，解码后作为一个已结束的流播放，用于流式合成的对冲
+     */
+    private StreamingSynthesis synthesizeAsStream(TtsTask task, TtsService ttsService) throws Exception {
+        String audioPath = ttsService.textToSpeech(task.emoSentence.getTtsSentence());
+        String encoderKey = task.sessionId + "_" + task.sentence.getSeq() + "_hedge";
+        OpusStream stream = new OpusStream(opusProcessor, encoderKey, ttsStreamPersist, false);
+        try {
+            stream.write(AudioUtils.readAsPcm(audioPath));
+        } catch (Exception e) {
+            stream.abort();
+            throw e;
+        }
+        stream.finish();
+        if (!stream.hasData()) {
+            throw new IllegalStateException("未返回音频数据");
+        }
+        return new StreamingSynthesis(stream, null, CompletableFuture.completedFuture(null));
+    }
 
+    /**
+     * 删除对冲落败一方生成的音频文件
+     */
+    private static void deleteAudioFile(String audioPath) {
+        try {
+            Files.deleteIfExists(Path.of(audioPath));
         } catch (Exception e) {
-            logger.error("TTS生成失败 - 序号: {}, 重试次数: {}/{}, 错误: {}",
-                    task.sentence.getSeq(), task.retryCount, MAX_RETRY_COUNT, e.getMessage());
-            handleTtsFailure(task, e.getMessage());
+            logger.debug("删除音频文件失败 - 路径: {}, 错误: {}", audioPath, e.getMessage());
+        }
+    }
+
+    /**
+     * TTS缓存命中，直接使用缓存的Opus帧播放
+     * 助手录音需要PCM，短句解码只需几毫秒，同步解码以保证最后一句合并时已就绪。
+     */
+    private void handleTtsCacheHit(TtsTask task, List<byte[]> frames) {
+        task.sentence.setTtsGenerationTime(0);
+        task.sentence.setOpusFrames(frames);
+        DialogueTurn turn = task.sentence.getTurn();
+        if (turn != null) {
+            int seq = task.sentence.getSeq();
+            String decoderKey = task.sessionId + "_" + seq + "_cache";
+            try {
+                ByteArrayOutputStream pcm = new ByteArrayOutputStream();
+                for (byte[] frame : frames) {
+                    pcm.write(opusProcessor.opusToPcm(decoderKey, frame));
+                }
+                turn.addAudioPcm(seq, pcm.toByteArray());
+            } catch (Exception e) {
+                logger.warn("缓存音频解码失败 - 序号: {}, 错误: {}", seq, e.getMessage());
+            } finally {
+                opusProcessor.release(decoderKey);
+            }
+        }
+        handleTtsSuccess(task, null);
+    }
+
+    /**
+     * 记录流式合成的完整音频，供对话结束时合并
+     */
+    private void persistStream(TtsTask task, OpusStream stream) {
+        DialogueTurn turn = task.sentence.getTurn();
+        byte[] pcm = stream.getPcm();
+        if (turn == null || pcm == null || pcm.length == 0) {
+            return;
         }
+        turn.addAudioPcm(task.sentence.getSeq(), pcm);
     }
 
     /**
@@ -653,93 +980,113 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
         // 标记音频准备就绪
         task.sentence.setAudio(audioPath);
 
-        // 如果有对话ID，将音频路径添加到对应的映射中
-        if (task.sentence.getAssistantTimeMillis() != null && audioPath != null) {
-            dialogueAudioPaths.computeIfAbsent(task.sentence.getAssistantTimeMillis(), k -> new ConcurrentHashMap<>())
-                    .put(task.sentence.getSeq(), audioPath);
+        // 如果有对话轮次，将音频路径添加到该轮次中
+        if (task.sentence.getTurn() != null && audioPath != null) {
+            task.sentence.getTurn().addAudioPath(task.sentence.getSeq(), audioPath);
         }
 
-
         // 如果是首句，需要标记首句处理完成
+        AtomicBoolean firstDone = task.session.getDialoguePipeline().getFirstSentDone();
         if (task.isFirst) {
-            firstSentDone.get(task.sessionId).set(true);
+            firstDone.set(true);
         }
 
         // 尝试处理队列
-        AtomicBoolean firstDone = firstSentDone.get(task.sessionId);
-        if (firstDone != null && firstDone.get()) {
+        if (firstDone.get()) {
             processQueue(task.session, task.sessionId);
         }
     }
 
     /**
-     * 处理TTS失败
+     * 处理TTS失败，调度器重试用尽或熔断时调用
      */
-    private void handleTtsFailure(TtsTask task, String reason) {
-        task.retryCount++;
+    private void handleTtsFailure(TtsTask task, Throwable error) {
+        logger.error("TTS任务失败 - 序号: {}, 原因: {}", task.sentence.getSeq(), error.getMessage());
 
-        if (task.retryCount <= MAX_RETRY_COUNT) {
-            // 标记为重试任务并重新提交
-            task.isRetry = true;
-            logger.info("TTS任务重试 - 序号: {}, 重试次数: {}/{}, 原因: {}",
-                    task.sentence.getSeq(), task.retryCount, MAX_RETRY_COUNT, reason);
+        // 即使失败也标记为准备好，以便队列继续处理
+        task.sentence.setAudio(null);
+        task.sentence.setTtsGenerationTime(0);
 
-            // 延迟后重试
-            CompletableFuture.delayedExecutor(500 * task.retryCount, TimeUnit.MILLISECONDS)
-                    .execute(() -> submitTtsTask(task));
-        } else {
-            // 超过最大重试次数，标记为失败
-            logger.error("TTS任务失败 - 序号: {}, 已达最大重试次数, 原因: {}",
-                    task.sentence.getSeq(), reason);
-
-            // 即使失败也标记为准备好，以便队列继续处理
-            task.sentence.setAudio(null);
-            task.sentence.setTtsGenerationTime(0);
+        // 如果是首句，需要标记首句处理完成
+        AtomicBoolean firstDone = task.session.getDialoguePipeline().getFirstSentDone();
+        if (task.isFirst) {
+            firstDone.set(true);
+        }
+        // 尝试处理队列
+        if (firstDone.get()) {
+            processQueue(task.session, task.sessionId);
+        }
+    }
 
-            // 如果是首句，需要标记首句处理完成
-            if (task.isFirst) {
-                firstSentDone.get(task.sessionId).set(true);
-            }
-            // 尝试处理队列
-            if (firstSentDone.get(task.sessionId).get()) {
-                processQueue(task.session, task.sessionId);
-            }
+    /**
+     * 最后一句出队并播放完成后合并本轮音频，每轮只合并一次
+     * 合并会删除句子的音频文件，必须在所有句子都已读取用于播放之后进行。
+     */
+    private void saveTurnAudio(ChatSession session, Sentence lastSentence) {
+        DialogueTurn turn = lastSentence.getTurn();
+        if (turn == null || !turn.markAudioSaved()) {
+            return;
+        }
+        OpusStream audioStream = lastSentence.getAudioStream();
+        if (audioStream != null) {
+            // 流式句子在合成结束后才有完整音频
+            audioStream.getFinishFuture().thenRun(() -> saveAssistantResponseAsync(session, turn));
+        } else {
+            saveAssistantResponseAsync(session, turn);
         }
     }
 
     /**
-     * 保存助手的完整响应（文本和合并音频）
+     * 在虚拟线程中保存助手的完整响应音频，不占用句子队列的锁
+     * 录音路径在提交时确定，合并期间开始新的对话不会影响本轮的文件名。
      */
-    private void saveAssistantResponse(ChatSession session) {
-        Long assistantTimeMillis = session.getAssistantTimeMillis();
+    private void saveAssistantResponseAsync(ChatSession session, DialogueTurn turn) {
+        Path path = session.getAssistantAudioPath(turn.getAssistantTimeMillis());
+        Thread.startVirtualThread(() -> saveAssistantResponse(path, turn));
+    }
+
+    /**
+     * 按句子顺序把本轮的音频流式写入助手录音
+     * 已有PCM的句子直接写入，音频文件按格式拷贝数据区或边解码边写入，合并后删除句子的音频文件。
+     */
+    private void saveAssistantResponse(Path path, DialogueTurn turn) {
+        Long assistantTimeMillis = turn.getAssistantTimeMillis();
         try {
-            // 获取该对话的所有音频路径
-            Map<Integer, String> audioPaths = dialogueAudioPaths.get(assistantTimeMillis);
-            if (audioPaths == null || audioPaths.isEmpty()) {
-                logger.warn("对话 {} 没有可用的音频路径", assistantTimeMillis);
+            List<DialogueTurn.AudioSegment> segments = turn.getSortedSegments();
+            if (segments.isEmpty()) {
+                logger.warn("对话 {} 没有可用的音频", assistantTimeMillis);
                 return;
             }
 
-            // 按序号排序音频路径
-            List<Integer> sortedSeqs = new ArrayList<>(audioPaths.keySet());
-            sortedSeqs.sort(Integer::compareTo);
-
-            // 准备要合并的音频文件路径
-            List<String> audioFilesToMerge = new ArrayList<>();
-            for (Integer seq : sortedSeqs) {
-                String path = audioPaths.get(seq);
-                if (path != null) {
-                    audioFilesToMerge.add(path);
+            // 预先计算数据长度，写入文件头后逐段追加
+            List<Path> files = new ArrayList<>();
+            long expectedLength = 0;
+            for (DialogueTurn.AudioSegment segment : segments) {
+                if (segment.pcm() != null) {
+                    expectedLength += segment.pcm().length;
+                } else {
+                    String audioPath = segment.path();
+                    Path file = Path.of(audioPath.startsWith(AudioUtils.AUDIO_PATH) ? audioPath : AudioUtils.AUDIO_PATH + audioPath);
+                    files.add(file);
+                    expectedLength += Math.max(0, WavFileWriter.pcmLength(file));
                 }
             }
 
-            // 合并音频文件
-            if (!audioFilesToMerge.isEmpty()) {
-                Path path = session.getAssistantAudioPath();
-                AudioUtils.mergeAudioFiles(path,audioFilesToMerge);
-                // 保存合并后的音频路径
-                logger.info("对话 {} 的音频已合并: {}", assistantTimeMillis, path);
+            int fileIndex = 0;
+            try (WavFileWriter writer = new WavFileWriter(path, expectedLength)) {
+                for (DialogueTurn.AudioSegment segment : segments) {
+                    if (segment.pcm() != null) {
+                        writer.appendPcm(segment.pcm());
+                    } else {
+                        writer.appendFile(files.get(fileIndex++));
+                    }
+                }
+            }
+            // 合并成功后才删除句子的音频文件，失败时保留以便排查
+            for (Path file : files) {
+                Files.deleteIfExists(file);
             }
+            logger.info("对话 {} 的音频已合并: {}", assistantTimeMillis, path);
         } catch (Exception e) {
             logger.error("保存助手响应失败 - 对话ID: {}, 错误: {}", assistantTimeMillis, e.getMessage(), e);
         }
@@ -750,11 +1097,9 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
      * 在流式处理完成后或非首句音频生成完成后调用
      */
     private void processQueue(ChatSession session, String sessionId) {
+        DialoguePipeline pipeline = session.getDialoguePipeline();
         // 获取锁，确保线程安全
-        ReentrantLock lock = locks.get(sessionId);
-        if (lock == null) {
-            return;
-        }
+        ReentrantLock lock = pipeline.getQueueLock();
 
         // 尝试获取锁，避免多线程同时处理
         if (!lock.tryLock()) {
@@ -763,14 +1108,13 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
 
         try {
             // 获取句子队列
-            CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-            if (queue == null || queue.isEmpty()) {
+            SentenceBuffer queue = pipeline.getSentences();
+            if (queue.isEmpty()) {
                 return;
             }
 
             // 检查首句是否已经流式处理完成
-            AtomicBoolean firstDone = firstSentDone.get(sessionId);
-            if (firstDone == null || !firstDone.get()) {
+            if (!pipeline.getFirstSentDone().get()) {
                 // 首句尚未处理完成，等待
                 return;
             }
@@ -783,21 +1127,15 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                 return;
             }
 
-            // 找出最小序号
-            int minSeq = queue.stream()
-                    .mapToInt(Sentence::getSeq)
-                    .min()
-                    .orElse(Integer.MAX_VALUE);
-
-            // 找出该序号的句子
-            Sentence nextSentence = queue.stream()
-                    .filter(s -> s.getSeq() == minSeq)
-                    .findFirst()
-                    .orElse(null);
+            // 队头即序号最小的句子
+            Sentence nextSentence = queue.peek();
 
             if (nextSentence != null) {
                 // 检查句子是否准备好或超时
                 if (nextSentence.isReady() || nextSentence.isTimeout()) {
+                    if (nextSentence.isReady()) {
+                        recordFirstAudio(session, pipeline, nextSentence);
+                    }
                     // 如果句子超时但未准备好，标记为准备好但没有音频
                     if (nextSentence.isTimeout() && !nextSentence.isReady()) {
                         nextSentence.setAudio(null);
@@ -813,21 +1151,127 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                             false, // 不是开始消息
                             nextSentence.isLast() // 如果是最后一句，则是结束消息
                     ).thenRun(() -> {
+                        if (nextSentence.isLast()) {
+                            recordTurn(session, pipeline, nextSentence);
+                            // 最后一句播放完成后，合并并存储助手的完整音频
+                            saveTurnAudio(session, nextSentence);
+                        }
                         // 在播放完成后，递归调用处理下一个句子
                         processQueue(session, sessionId);
                     });
                 }
-                //logger.info("是否最后一个句子{}, 对话ID: {}",nextSentence.isLast, nextSentence.assistantTimeMillis);
-                // 如果是最后一个句子，合并并存储助手的完整音频
-                if (nextSentence.isLast() && nextSentence.getAssistantTimeMillis() != null) {
-                    saveAssistantResponse(session);
-                }
             }
         } finally {
             lock.unlock();
         }
     }
 
+    /**
+     * 统计每轮送入TTS的句子数和首句长度，用于按TTS提供商调整角色的分块参数
+     */
+    private void recordChunk(DialogueTurn turn, String text, boolean isLast) {
+        String provider = turn.getTtsProvider();
+        if (text != null && !text.isEmpty() && turn.addChunk() == 1) {
+            dialogueSummaries.computeIfAbsent("first.chunk.length:" + provider,
+                    key -> DistributionSummary.builder("xiaozhi.dialogue.first.chunk.length")
+                            .description("首句字符数")
+                            .tag("provider", provider)
+                            .register(meterRegistry))
+                    .record(text.length());
+        }
+        if (isLast) {
+            dialogueSummaries.computeIfAbsent("chunks:" + provider,
+                    key -> DistributionSummary.builder("xiaozhi.dialogue.chunks")
+                            .description("每轮回复送入TTS的句子数")
+                            .tag("provider", provider)
+                            .register(meterRegistry))
+                    .record(turn.getChunks());
+        }
+    }
+
+    /**
+     * 记录从用户说完到拿到最终识别结果的时间
+     */
+    private void recordSttLatency(ChatSession session, String provider) {
+        long speechEndTime = session.getDialoguePipeline().getSpeechEndTime();
+        if (speechEndTime <= 0) {
+            return;
+        }
+        dialogueTimers.computeIfAbsent("stt.latency:" + provider,
+                key -> Timer.builder("xiaozhi.stt.latency")
+                        .description("从语音结束到最终识别结果的时间")
+                        .tag("provider", provider)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.currentTimeMillis() - speechEndTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 记录从请求LLM到首句音频开始播放的时间，语音输入时另外记录从用户说完算起的时间，每轮只记录一次
+     */
+    private void recordFirstAudio(ChatSession session, DialoguePipeline pipeline, Sentence sentence) {
+        DialogueTurn turn = sentence.getTurn();
+        long startTime = pipeline.getLlmStartTime();
+        if (!sentence.isFirst() || turn == null || startTime <= 0
+                || !StringUtils.hasText(sentence.getText()) || !turn.markFirstAudioSent()) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        String provider = turn.getTtsProvider();
+        String role = roleTag(session);
+        dialogueTimers.computeIfAbsent("first.audio:" + provider + ":" + role,
+                key -> Timer.builder("xiaozhi.dialogue.first.audio")
+                        .description("从请求LLM到首句音频开始播放的时间")
+                        .tag("provider", provider)
+                        .tag("role", role)
+                        .publishPercentiles(0.5, 0.95, 0.99)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(now - startTime, TimeUnit.MILLISECONDS);
+        long speechEndTime = pipeline.getSpeechEndTime();
+        if (speechEndTime > 0) {
+            dialogueTimers.computeIfAbsent("response:" + provider + ":" + role,
+                    key -> Timer.builder("xiaozhi.dialogue.response")
+                            .description("从用户说完到首句音频开始播放的时间")
+                            .tag("provider", provider)
+                            .tag("role", role)
+                            .publishPercentileHistogram()
+                            .register(meterRegistry))
+                    .record(now - speechEndTime, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * 记录一轮对话从请求LLM到最后一句播放结束的总时间，被打断的轮次单独统计
+     */
+    private void recordTurn(ChatSession session, DialoguePipeline pipeline, Sentence sentence) {
+        DialogueTurn turn = sentence.getTurn();
+        long startTime = pipeline.getLlmStartTime();
+        if (turn == null || startTime <= 0) {
+            return;
+        }
+        String provider = turn.getTtsProvider();
+        String role = roleTag(session);
+        String outcome = turn.isInterrupted() ? "interrupted" : "completed";
+        dialogueTimers.computeIfAbsent("turn:" + provider + ":" + role + ":" + outcome,
+                key -> Timer.builder("xiaozhi.dialogue.turn")
+                        .description("一轮对话从请求LLM到最后一句播放结束的时间")
+                        .tag("provider", provider)
+                        .tag("role", role)
+                        .tag("outcome", outcome)
+                        .publishPercentileHistogram()
+                        .register(meterRegistry))
+                .record(System.currentTimeMillis() - startTime, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * 指标中的角色标签，使用角色ID
+     */
+    private static String roleTag(ChatSession session) {
+        SysDevice device = session.getSysDevice();
+        return device != null && device.getRoleId() != null ? String.valueOf(device.getRoleId()) : "none";
+    }
+
     /**
      * 处理语音唤醒
      */
@@ -867,7 +1311,7 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     public void handleText(ChatSession session, String inputText, Consumer<Long> textConsumer) {
         // 初始化对话状态
         String sessionId = session.getSessionId();
-        initChat(sessionId);
+        initChat(session);
         Thread.startVirtualThread(() -> {
             try {
                 SysDevice device = sessionManager.getDeviceConfig(sessionId);
@@ -926,17 +1370,13 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
                     huiBenService.stopHuiBen(sessionId);
                     return;
                 }
-                // 清空句子队列
-                CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
-                if (queue != null) {
-                    queue.clear();
-                }
+                // 清空句子队列，丢弃本轮尚未开始的合成任务
+                DialoguePipeline pipeline = session.getDialoguePipeline();
+                pipeline.clearSentences();
+                ttsScheduler.cancel(sessionId, session.getAssistantTimeMillis());
 
                 // 重置首句处理状态
-                AtomicBoolean firstDone = firstSentDone.get(sessionId);
-                if (firstDone != null) {
-                    firstDone.set(false);
-                }
+                pipeline.getFirstSentDone().set(false);
 
                 // 终止语音发送
                 audioService.sendStop(session);
@@ -949,23 +1389,13 @@ public class DialogueService implements ApplicationListener<ChatSessionCloseEven
     /**
      * 清理会话资源
      */
-    public void cleanupSession(String sessionId) {
-        seqCounters.remove(sessionId);
-        sttStartTimes.remove(sessionId);
-        llmStartTimes.remove(sessionId);
-        sentenceQueue.remove(sessionId);
-        firstSentDone.remove(sessionId);
-        locks.remove(sessionId);
-
-        // 新增：清理并发控制相关资源
-        sessionSemaphores.remove(sessionId);
-        PriorityBlockingQueue<TtsTask> taskQueue = sessionTaskQueues.remove(sessionId);
-        if (taskQueue != null) {
-            taskQueue.clear();
-        }
+    public void cleanupSession(ChatSession session) {
+        // 释放对话流水线状态，丢弃尚未开始的合成任务
+        session.getDialoguePipeline().close();
+        ttsScheduler.cancel(session.getSessionId());
 
         // 清理AudioService中的资源
-        audioService.cleanupSession(sessionId);
+        audioService.cleanupSession(session.getSessionId());
     }
 
 }
\ No newline at end of file
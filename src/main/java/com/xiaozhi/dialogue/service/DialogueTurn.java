@@ -0,0 +1,117 @@
+package com.xiaozhi.dialogue.service;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 一轮助手回复的状态，由该轮的句子引用，句子全部处理完后随之回收
+ */
+public class DialogueTurn {
+
+    // 对话ID，即助手消息的创建时间戳
+    private final Long assistantTimeMillis;
+    // 完整文本回复
+    private final StringBuffer response = new StringBuffer();
+    // 每个句子的音频路径，键为句子序号
+    private final Map<Integer, String> audioPaths = new ConcurrentHashMap<>();
+    // 缓存命中和流式合成的句子在本轮中已有PCM，直接用于助手录音，不再写临时文件
+    private final Map<Integer, byte[]> audioPcm = new ConcurrentHashMap<>();
+    // 本轮送入TTS的句子数
+    private final AtomicInteger chunks = new AtomicInteger();
+    // 首句音频是否已开始播放
+    private final AtomicBoolean firstAudioSent = new AtomicBoolean(false);
+    // 本轮音频是否已开始合并
+    private final AtomicBoolean audioSaved = new AtomicBoolean(false);
+    // 播放被打断（用户插话或中止）
+    private volatile boolean interrupted = false;
+    // 本轮使用的TTS服务提供商，用于按提供商统计
+    private volatile String ttsProvider;
+
+    /**
+     * 一个句子的音频，path 和 pcm 只有一个不为空
+     */
+    public record AudioSegment(String path, byte[] pcm) {
+    }
+
+    public DialogueTurn(Long assistantTimeMillis) {
+        this.assistantTimeMillis = assistantTimeMillis;
+    }
+
+    public Long getAssistantTimeMillis() {
+        return assistantTimeMillis;
+    }
+
+    public void appendResponse(String text) {
+        response.append(text);
+    }
+
+    public String getResponse() {
+        return response.toString();
+    }
+
+    public void addAudioPath(int seq, String audioPath) {
+        audioPaths.put(seq, audioPath);
+    }
+
+    public void addAudioPcm(int seq, byte[] pcm) {
+        audioPcm.put(seq, pcm);
+    }
+
+    /**
+     * 记录一个送入TTS的句子
+     *
+     * @return 本轮已有的句子数
+     */
+    public int addChunk() {
+        return chunks.incrementAndGet();
+    }
+
+    public int getChunks() {
+        return chunks.get();
+    }
+
+    /**
+     * 标记首句音频开始播放，只有第一次调用返回true
+     */
+    public boolean markFirstAudioSent() {
+        return firstAudioSent.compareAndSet(false, true);
+    }
+
+    /**
+     * 标记本轮音频开始合并，只有第一次调用返回true
+     */
+    public boolean markAudioSaved() {
+        return audioSaved.compareAndSet(false, true);
+    }
+
+    public void markInterrupted() {
+        interrupted = true;
+    }
+
+    public boolean isInterrupted() {
+        return interrupted;
+    }
+
+    public String getTtsProvider() {
+        return ttsProvider;
+    }
+
+    public void setTtsProvider(String ttsProvider) {
+        this.ttsProvider = ttsProvider;
+    }
+
+    /**
+     * 按句子序号排序的音频片段
+     */
+    public List<AudioSegment> getSortedSegments() {
+        TreeMap<Integer, AudioSegment> segments = new TreeMap<>();
+        audioPaths.forEach((seq, path) -> segments.put(seq, new AudioSegment(path, null)));
+        audioPcm.forEach((seq, pcm) -> segments.put(seq, new AudioSegment(null, pcm)));
+        return new ArrayList<>(segments.values());
+    }
+}
@@ -0,0 +1,319 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioUtils;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 全局Opus帧发送节拍器
+ * 所有会话的播放游标挂在同一个时间轮上，由一个节拍线程按槽位推进，到期的游标交给虚拟线程发送一帧。
+ * 时间轮只由节拍线程访问，其他线程通过待调度队列提交游标，每个槽位开始时转入对应槽位。
+ * 每个游标按"开始时间 + 已播放时长"计算下一帧的期望发送时间，调度误差不会累积；断流恢复后以当前时间重新对齐。
+ */
+@Component
+public class FramePacer {
+    private static final Logger logger = LoggerFactory.getLogger(FramePacer.class);
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(AudioUtils.OPUS_FRAME_DURATION_MS);
+
+    // 时间轮槽位精度（毫秒），游标最多晚一个槽位被处理
+    @Value("${audio.pacer.tick-ms:10}")
+    private long tickMs;
+
+    // 时间轮槽位数，一圈需覆盖至少一个帧间隔
+    @Value("${audio.pacer.wheel-size:64}")
+    private int wheelSize;
+
+    // 断流时重新尝试取帧的间隔（毫秒）
+    @Value("${audio.pacer.underrun-retry-ms:10}")
+    private long underrunRetryMs;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    private long tickNanos;
+    private int mask;
+    // 时间轮槽位，只由节拍线程访问
+    private ArrayDeque<Cursor>[] wheel;
+    // 时间轮的零点，槽位序号 = (时间 - 零点) / 槽位精度
+    private long wheelStartNanos;
+    // 待放入时间轮的游标
+    private final Queue<Cursor> pending = new ConcurrentLinkedQueue<>();
+
+    private final AtomicInteger activeCursors = new AtomicInteger();
+    private final ExecutorService sender = Executors.newVirtualThreadPerTaskExecutor();
+    private Thread tickThread;
+    private volatile boolean running = false;
+
+    // 每帧实际发送时间与期望时间之差
+    private Timer frameLateness;
+    // 节拍线程每次唤醒相对槽位边界的延迟
+    private Timer tickLateness;
+
+    /**
+     * 帧发送结果
+     */
+    public enum FrameResult {
+        /** 已发送一帧，还有后续帧 */
+        SENT,
+        /** 暂无可用帧（流式数据断流），稍后重试 */
+        UNDERRUN,
+        /** 播放结束（已发送最后一帧或被停止） */
+        FINISHED
+    }
+
+    /**
+     * 每次到期时调用，负责发送一帧
+     */
+    @FunctionalInterface
+    public interface FrameHandler {
+        FrameResult onFrame() throws Exception;
+    }
+
+    /**
+     * 一次播放的句柄
+     */
+    public static class Playback {
+        private final CompletableFuture<Void> future = new CompletableFuture<>();
+        private volatile boolean cancelled = false;
+
+        /**
+         * 播放结束（发送完毕、停止或出错）时完成
+         */
+        public CompletableFuture<Void> getFuture() {
+            return future;
+        }
+
+        /**
+         * 停止播放，尚未发送的帧不再发送
+         */
+        public void cancel() {
+            cancelled = true;
+        }
+
+        public boolean isCancelled() {
+            return cancelled;
+        }
+    }
+
+    /**
+     * 播放游标，同一时刻只会在时间轮上或正在发送，二者之一
+     */
+    private static class Cursor {
+        private final FrameHandler handler;
+        private final Playback playback;
+        // 播放时钟零点（纳秒）
+        private long startNanos;
+        // 已播放时长对应的帧数
+        private long position;
+        // 下一次处理的时间（纳秒）
+        private long deadline;
+        private boolean underrun = false;
+
+        Cursor(FrameHandler handler, Playback playback, long startNanos, long position) {
+            this.handler = handler;
+            this.playback = playback;
+            this.startNanos = startNanos;
+            this.position = position;
+            this.deadline = startNanos + position * FRAME_NANOS;
+        }
+    }
+
+    @PostConstruct
+    @SuppressWarnings("unchecked")
+    public void start() {
+        tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMs);
+        int size = Integer.highestOneBit(Math.max(wheelSize, 2) - 1) << 1;
+        if (size * tickNanos <= FRAME_NANOS) {
+            throw new IllegalStateException("时间轮一圈必须大于一个帧间隔");
+        }
+        mask = size - 1;
+        wheel = new ArrayDeque[size];
+        for (int i = 0; i < size; i++) {
+            wheel[i] = new ArrayDeque<>();
+        }
+
+        frameLateness = Timer.builder("xiaozhi.audio.frame.lateness")
+                .description("音频帧实际发送时间相对期望时间的延迟")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        tickLateness = Timer.builder("xiaozhi.audio.pacer.tick.lateness")
+                .description("帧节拍器每个槽位的处理延迟")
+                .publishPercentileHistogram()
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.audio.pacer.active", activeCursors, AtomicInteger::get)
+                .description("正在播放的游标数")
+                .register(meterRegistry);
+
+        wheelStartNanos = System.nanoTime();
+        running = true;
+        tickThread = Thread.ofPlatform().name("audio-pacer").daemon(true).start(this::tickLoop);
+        logger.info("帧节拍器已启动, 槽位精度: {}ms, 槽位数: {}", tickMs, size);
+    }
+
+    /**
+     * 开始一次播放
+     *
+     * @param startNanos 播放时钟零点（System.nanoTime）
+     * @param position   已经发送（预缓冲）的帧数，第一次回调的期望时间为 startNanos + position 帧
+     * @param handler    帧发送回调
+     * @return 播放句柄
+     */
+    public Playback start(long startNanos, long position, FrameHandler handler) {
+        return start(new Playback(), startNanos, position, handler);
+    }
+
+    /**
+     * 用调用方创建的句柄开始播放，调用方可以在第一次回调之前登记句柄
+     *
+     * @param playback   尚未开始的播放句柄
+     * @param startNanos 播放时钟零点（System.nanoTime）
+     * @param position   已经发送（预缓冲）的帧数
+     * @param handler    帧发送回调
+     * @return 传入的播放句柄
+     */
+    public Playback start(Playback playback, long startNanos, long position, FrameHandler handler) {
+        Cursor cursor = new Cursor(handler, playback, startNanos, position);
+        activeCursors.incrementAndGet();
+        schedule(cursor);
+        return playback;
+    }
+
+    private void schedule(Cursor cursor) {
+        pending.add(cursor);
+    }
+
+    private void tickLoop() {
+        long tick = 0;
+        while (running) {
+            long tickTime = wheelStartNanos + tick * tickNanos;
+            long wait = tickTime - System.nanoTime();
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+                continue;
+            }
+            tickLateness.record(-wait, TimeUnit.NANOSECONDS);
+
+            // 本槽位的截止时间，期望时间在此之前的游标都已到期
+            long slotEnd = tickTime + tickNanos;
+
+            // 新提交的游标放入对应槽位，已到期的直接发送
+            Cursor cursor;
+            while ((cursor = pending.poll()) != null) {
+                if (cursor.deadline < slotEnd) {
+                    process(cursor);
+                } else {
+                    wheel[(int) (((cursor.deadline - wheelStartNanos) / tickNanos) & mask)].add(cursor);
+                }
+            }
+
+            ArrayDeque<Cursor> slot = wheel[(int) (tick & mask)];
+            // 只处理当前已有的游标，不在本圈的放回槽位尾部
+            for (int n = slot.size(); n > 0; n--) {
+                cursor = slot.poll();
+                if (cursor.deadline >= slotEnd) {
+                    slot.add(cursor);
+                } else {
+                    process(cursor);
+                }
+            }
+            tick++;
+        }
+    }
+
+    private void process(Cursor cursor) {
+        if (cursor.playback.isCancelled()) {
+            finish(cursor, null);
+        } else {
+            sender.execute(() -> dispatch(cursor));
+        }
+    }
+
+    /**
+     * 在虚拟线程中发送到期的帧，已落后于期望时间时连续补发
+     */
+    private void dispatch(Cursor cursor) {
+        try {
+            while (true) {
+                if (cursor.playback.isCancelled()) {
+                    finish(cursor, null);
+                    return;
+                }
+                long now = System.nanoTime();
+                FrameResult result = cursor.handler.onFrame();
+                if (result == FrameResult.FINISHED) {
+                    finish(cursor, null);
+                    return;
+                }
+                if (result == FrameResult.UNDERRUN) {
+                    cursor.underrun = true;
+                    cursor.deadline = now + TimeUnit.MILLISECONDS.toNanos(underrunRetryMs);
+                    schedule(cursor);
+                    return;
+                }
+
+                if (cursor.underrun) {
+                    // 断流恢复后，以当前时间重新对齐播放时钟，避免连续补发
+                    cursor.underrun = false;
+                    cursor.startNanos = now - cursor.position * FRAME_NANOS;
+                } else {
+                    frameLateness.record(Math.max(0, now - cursor.deadline), TimeUnit.NANOSECONDS);
+                }
+                cursor.position++;
+                cursor.deadline = cursor.startNanos + cursor.position * FRAME_NANOS;
+
+                if (cursor.deadline > System.nanoTime()) {
+                    schedule(cursor);
+                    return;
+                }
+                // 已经落后，立即发送下一帧
+            }
+        } catch (Exception e) {
+            logger.error("帧发送失败", e);
+            finish(cursor, e);
+        }
+    }
+
+    private void finish(Cursor cursor, Throwable error) {
+        activeCursors.decrementAndGet();
+        if (error != null) {
+            cursor.playback.future.completeExceptionally(error);
+        } else {
+            cursor.playback.future.complete(null);
+        }
+    }
+
+    /**
+     * 当前正在播放的游标数
+     */
+    public int getActiveCount() {
+        return activeCursors.get();
+    }
+
+    @PreDestroy
+    public void stop() {
+        running = false;
+        if (tickThread != null) {
+            tickThread.interrupt();
+        }
+        sender.shutdownNow();
+    }
+}
@@ -11,10 +11,10 @@ import okhttp3.Response;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
+import java.io.InputStream;
 import java.util.*;
 import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
@@ -51,10 +51,21 @@ public class HuiBenService {
     @Autowired
     private AudioService audioService;
 
-    // 使用虚拟线程执行器处理定时任务
-    private final ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
-            Runtime.getRuntime().availableProcessors(),
-            Thread.ofVirtual().name("huiBen-scheduler-", 0).factory());
+    // 所有会话共用的帧节拍器
+    @Autowired
+    private FramePacer framePacer;
+
+    // 预读的最大帧数，决定每个播放中的设备占用的内存
+    @Value("${audio.playback.lookahead-frames:50}")
+    private int lookaheadFrames;
+
+    // 开始播放前缓冲的帧数
+    @Value("${audio.playback.prebuffer-frames:5}")
+    private int prebufferFrames;
+
+    // 等待缓冲的最长时间（毫秒）
+    @Value("${audio.playback.prebuffer-timeout-ms:10000}")
+    private long prebufferTimeoutMs;
 
     // 存储每个会话的当前文本信息
     private final Map<String, List<TextLine>> sessionTexts = new ConcurrentHashMap<>();
@@ -62,11 +73,11 @@ public class HuiBenService {
     // 存储每个会话的当前播放时间
     private final Map<String, AtomicLong> playTime = new ConcurrentHashMap<>();
 
-    // 存储每个会话的音频文件路径，用于播放完成后删除
-    private final Map<String, String> sessionAudioFiles = new ConcurrentHashMap<>();
+    // 存储每个会话的流式播放源，用于停止播放时关闭
+    private final Map<String, StreamingAudioSource> sessionSources = new ConcurrentHashMap<>();
 
-    // 存储每个会话的调度任务
-    private final Map<String, ScheduledFuture<?>> scheduledTasks = new ConcurrentHashMap<>();
+    // 存储每个会话的播放
+    private final Map<String, FramePacer.Playback> scheduledTasks = new ConcurrentHashMap<>();
 
     /**
      * 文本行数据结构 - 使用JDK 16+ Record类型
@@ -93,8 +104,8 @@ public class HuiBenService {
                 // 重置播放时间
                 playTime.computeIfAbsent(sessionId, k -> new AtomicLong()).set(0);
 
-                // 清理之前的音频文件（如果有）
-                cleanupAudioFile(sessionId);
+                // 停止之前的播放（如果有）
+                cleanupPlayback(sessionId);
 
                 // 1. 获取绘本信息
                 Map<String, String> huiBenInfo = getHuiBenInfo(bookId);
@@ -102,25 +113,30 @@ public class HuiBenService {
                     throw new RuntimeException("无法找到绘本: " + bookId);
                 }
 
-                // 2. 下载音频文件到本地临时目录，使用随机文件名避免冲突
+                // 2. 边下载边解码，只预读播放位置之后的一小段
                 String audioUrl = huiBenInfo.get("audioUrl");
-                String randomName = "huiBen_" + sessionId + "_" + UUID.randomUUID() + ".mp3";
-                String audioPath = downloadFile(audioUrl, randomName);
-
-                if (audioPath == null) {
+                InputStream audioStream = openAudioStream(audioUrl);
+                if (audioStream == null) {
                     throw new RuntimeException("下载音频文件失败");
                 }
-
-                // 保存音频文件路径，用于播放完成后删除
-                sessionAudioFiles.put(sessionId, audioPath);
+                StreamingAudioSource source = new StreamingAudioSource(opusProcessor,
+                        sessionId + "_huiBen_" + UUID.randomUUID(), lookaheadFrames, prebufferFrames);
+                source.start(audioStream);
+                sessionSources.put(sessionId, source);
+
+                // 缓冲几帧后再开始播放
+                if (!source.awaitReady(prebufferTimeoutMs, TimeUnit.MILLISECONDS)) {
+                    throw new RuntimeException("音频解码失败");
+                }
 
                 // 发送绘本开始消息
                 audioService.sendStart(session);
 
                 // 发送音频和同步文本
-                sendAudio(session, audioPath);
+                sendAudio(session, source);
 
             } catch (Exception e) {
+                cleanupPlayback(sessionId);
 
                 try {
                     audioService.sendSentenceStart(session, "播放绘本时发生错误: " + e.getMessage());
@@ -134,16 +150,12 @@ public class HuiBenService {
     }
 
     /**
-     * 清理之前的音频文件
+     * 停止之前的播放源
      */
-    private void cleanupAudioFile(String sessionId) {
-        String audioPath = sessionAudioFiles.remove(sessionId);
-        if (audioPath != null) {
-            try {
-                Files.deleteIfExists(Path.of(audioPath));
-            } catch (Exception e) {
-                logger.warn("删除音频文件失败: {}", audioPath, e);
-            }
+    private void cleanupPlayback(String sessionId) {
+        StreamingAudioSource source = sessionSources.remove(sessionId);
+        if (source != null) {
+            source.close();
         }
         // 清理会话的文本数据
         sessionTexts.remove(sessionId);
@@ -152,31 +164,10 @@ public class HuiBenService {
     /**
      * 发送音频和同步文本
      */
-    private void sendAudio(ChatSession session, String audioPath) {
+    private void sendAudio(ChatSession session, StreamingAudioSource source) {
         String sessionId = session.getSessionId();
 
         try {
-            // 读取音频文件
-            Path audioFilePath = Path.of(audioPath);
-            if (!Files.exists(audioFilePath)) {
-                logger.warn("音频文件不存在: {}", audioPath);
-                return;
-            }
-
-            // 将音频文件转换为PCM格式
-            byte[] audioData = AudioUtils.readAsPcm(audioPath);
-            if (audioData == null || audioData.length == 0) {
-                logger.warn("音频数据为空");
-                return;
-            }
-
-            // 将PCM转换为Opus帧
-            List<byte[]> frames = opusProcessor.pcmToOpus(sessionId, audioData, false);
-            if (frames == null || frames.isEmpty()) {
-                logger.warn("Opus帧转换失败或为空");
-                return;
-            }
-
             // 获取文本
             List<TextLine> texts = sessionTexts.getOrDefault(sessionId, Collections.emptyList());
             AtomicLong currPlayTime = playTime.computeIfAbsent(sessionId, k -> new AtomicLong(0));
@@ -186,26 +177,19 @@ public class HuiBenService {
             for (TextLine line : texts) {
                 // 计算文本对应的帧索引
                 int frameIndex = (int) (line.timeMs() / OPUS_FRAME_INTERVAL_MS);
-                if (frameIndex < frames.size()) {
-                    textFrameMap.put(frameIndex, line.text());
-                }
+                textFrameMap.put(frameIndex, line.text());
             }
 
-            // 创建帧发送任务，使用原子引用替代数组
+            // 创建帧发送任务，按已发送的帧数同步文本
             AtomicLong frameIndexRef = new AtomicLong(0);
-            Runnable frameTask = () -> {
+            FramePacer.FrameHandler frameTask = () -> {
                 try {
-                    if (scheduledTasks.get(sessionId) == null) {
-                        logger.error("{}任务已经终止", sessionId);
-
-                        return;
+                    // 从预读队列取帧，解码跟不上时按断流处理
+                    byte[] frame = source.poll();
+                    if (frame == null) {
+                        return source.isDrained() ? FramePacer.FrameResult.FINISHED : FramePacer.FrameResult.UNDERRUN;
                     }
                     int currentIndex = (int) frameIndexRef.get();
-                    if (currentIndex >= frames.size()) {
-                        // 所有帧已发送，取消任务
-                        audioService.cancelScheduledTask(sessionId);
-                        return;
-                    }
 
                     // 更新活跃时间
                     sessionManager.updateLastActivity(sessionId);
@@ -220,30 +204,37 @@ public class HuiBenService {
                     }
 
                     // 发送当前帧
-                    byte[] frame = frames.get(currentIndex);
                     audioService.sendOpusFrame(session, frame);
 
                     // 增加帧索引
                     frameIndexRef.incrementAndGet();
+                    return FramePacer.FrameResult.SENT;
 
                 } catch (Exception e) {
-                    // 发生错误，取消调度任务
+                    // 发生错误，结束任务
                     logger.error("发送音频帧时发生错误", e);
-                    audioService.cancelScheduledTask(sessionId);
+                    return FramePacer.FrameResult.FINISHED;
                 }
             };
 
-            // 启动定时任务，每隔OPUS_FRAME_INTERVAL_MS毫秒执行一次
-            ScheduledFuture<?> task = scheduler.scheduleAtFixedRate(
-                    frameTask,
-                    0,
-                    OPUS_FRAME_INTERVAL_MS,
-                    TimeUnit.MILLISECONDS);
-
-            // 存储任务引用，以便稍后取消
-            scheduledTasks.put(sessionId, task);
+            // 先登记播放再交给节拍器，开始播放后到达的停止请求都能在表中找到它
+            FramePacer.Playback task = new FramePacer.Playback();
+            FramePacer.Playback previous = scheduledTasks.put(sessionId, task);
+            if (previous != null) {
+                previous.cancel();
+            }
+            task.getFuture().whenComplete((v, e) -> {
+                scheduledTasks.remove(sessionId, task);
+                // 播放结束或被停止，关闭播放源
+                source.close();
+                sessionSources.remove(sessionId, source);
+            });
+
+            // 交给节拍器，每隔OPUS_FRAME_INTERVAL_MS毫秒发送一帧
+            framePacer.start(task, System.nanoTime(), 0, frameTask);
         } catch (Exception e) {
             logger.error("处理音频时发生错误 - SessionId: {}", sessionId, e);
+            source.close();
             try {
                 audioService.sendStop(session);
             } catch (Exception ex) {
@@ -306,34 +297,24 @@ public class HuiBenService {
     }
 
     /**
-     * 下载文件到临时目录
+     * 打开音频下载流，不落盘，由播放源边读边解码
      */
-    private String downloadFile(String fileUrl, String fileName) {
+    private InputStream openAudioStream(String fileUrl) {
         try {
-            // 确保音频目录存在
-            Path audioDir = Path.of(AudioUtils.AUDIO_PATH);
-            Files.createDirectories(audioDir);
-
-            // 将文件保存到音频目录
-            Path outputPath = audioDir.resolve(fileName);
-
             // 使用OkHttp3下载文件
             Request request = new Request.Builder()
                     .url(fileUrl)
                     .get()
                     .build();
 
-            try (Response response = okHttpClient.newCall(request).execute()) {
-                if (!response.isSuccessful() || response.body() == null) {
-                    logger.error("下载文件失败，响应码: {}", response.code());
-                    return null;
-                }
-
-                // 将响应体写入文件
-                Files.write(outputPath, response.body().bytes());
-
-                return outputPath.toAbsolutePath().toString();
+            Response response = okHttpClient.newCall(request).execute();
+            if (!response.isSuccessful() || response.body() == null) {
+                logger.error("下载文件失败，响应码: {}", response.code());
+                response.close();
+                return null;
             }
+            // 关闭输入流时一并释放连接
+            return response.body().byteStream();
         } catch (Exception e) {
             logger.error("下载文件时发生错误", e);
             return null;
@@ -348,13 +329,13 @@ public class HuiBenService {
     public void stopHuiBen(String sessionId) {
         Thread.startVirtualThread(() -> {
             try {
-                ScheduledFuture<?> task = scheduledTasks.remove(sessionId);
+                FramePacer.Playback task = scheduledTasks.remove(sessionId);
                 if (task != null) {
-                    task.cancel(true); // 取消任务
+                    task.cancel(); // 取消任务
                 }
 
-                // 清理音频文件
-                cleanupAudioFile(sessionId);
+                // 停止解码
+                cleanupPlayback(sessionId);
 
                 // 更新绘本播放状态
                 sessionManager.setMusicPlaying(sessionId, false);
@@ -0,0 +1,154 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.OpusProcessor;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * 流式TTS的Opus帧流
+ * TTS线程写入PCM分片（16kHz, 16bit, 单声道）并增量编码为Opus帧，发送线程按帧节奏取帧，合成与播放同时进行。
+ */
+public class OpusStream {
+
+    private final OpusProcessor opusProcessor;
+
+    // 编码器缓存键，每个句子独立，避免同一会话多个句子并发合成时共用编码器状态
+    private final String encoderKey;
+
+    // 已编码待发送的帧
+    private final ConcurrentLinkedQueue<byte[]> frames = new ConcurrentLinkedQueue<>();
+
+    // 可选的PCM副本，合成结束后用于落盘
+    private final ByteArrayOutputStream tee;
+
+    // 可选的完整帧副本，合成结束后用于写入TTS缓存
+    private final List<byte[]> encoded;
+
+    // 网络分片可能在样本中间截断，保留未配对的字节
+    private int pendingByte = -1;
+    private long pcmBytes = 0;
+    private volatile boolean finished = false;
+    private volatile boolean aborted = false;
+    private final CompletableFuture<Void> finishFuture = new CompletableFuture<>();
+
+    public OpusStream(OpusProcessor opusProcessor, String encoderKey, boolean keepPcm, boolean keepFrames) {
+        this.opusProcessor = opusProcessor;
+        this.encoderKey = encoderKey;
+        this.tee = keepPcm ? new ByteArrayOutputStream() : null;
+        this.encoded = keepFrames ? new ArrayList<>() : null;
+    }
+
+    /**
+     * 写入一段PCM数据并编码
+     */
+    public synchronized void write(byte[] pcm) {
+        if (finished || pcm == null || pcm.length == 0) {
+            return;
+        }
+        if (tee != null) {
+            tee.write(pcm, 0, pcm.length);
+        }
+        pcmBytes += pcm.length;
+
+        byte[] data = pcm;
+        if (pendingByte >= 0) {
+            data = new byte[pcm.length + 1];
+            data[0] = (byte) pendingByte;
+            System.arraycopy(pcm, 0, data, 1, pcm.length);
+            pendingByte = -1;
+        }
+        if (data.length % 2 != 0) {
+            pendingByte = data[data.length - 1] & 0xFF;
+            data = Arrays.copyOf(data, data.length - 1);
+        }
+        enqueue(opusProcessor.pcmToOpus(encoderKey, data, true));
+    }
+
+    private void enqueue(List<byte[]> opusFrames) {
+        frames.addAll(opusFrames);
+        if (encoded != null) {
+            encoded.addAll(opusFrames);
+        }
+    }
+
+    /**
+     * 合成结束，编码残留数据并释放编码器
+     */
+    public synchronized void finish() {
+        if (finished) {
+            return;
+        }
+        enqueue(opusProcessor.flushLeftover(encoderKey));
+        opusProcessor.release(encoderKey);
+        finished = true;
+        finishFuture.complete(null);
+    }
+
+    /**
+     * 放弃当前流，丢弃未发送的帧
+     */
+    public synchronized void abort() {
+        if (finished) {
+            return;
+        }
+        opusProcessor.release(encoderKey);
+        frames.clear();
+        if (encoded != null) {
+            encoded.clear();
+        }
+        aborted = true;
+        finished = true;
+        finishFuture.complete(null);
+    }
+
+    /**
+     * 取出下一帧，暂无可用帧时返回null
+     */
+    public byte[] poll() {
+        return frames.poll();
+    }
+
+    /**
+     * 合成已结束且所有帧都已取出
+     */
+    public boolean isDrained() {
+        return finished && frames.isEmpty();
+    }
+
+    /**
+     * 流已被放弃（超时或对冲落败），帧已丢弃
+     */
+    public boolean isAborted() {
+        return aborted;
+    }
+
+    public synchronized boolean hasData() {
+        return pcmBytes > 0;
+    }
+
+    /**
+     * 合成结束（或放弃）时完成
+     */
+    public CompletableFuture<Void> getFinishFuture() {
+        return finishFuture;
+    }
+
+    /**
+     * 获取完整的帧副本，未开启副本时返回null
+     */
+    public synchronized List<byte[]> getFrames() {
+        return encoded != null ? new ArrayList<>(encoded) : null;
+    }
+
+    /**
+     * 获取完整的PCM副本，未开启副本时返回null
+     */
+    public synchronized byte[] getPcm() {
+        return tee != null ? tee.toByteArray() : null;
+    }
+}
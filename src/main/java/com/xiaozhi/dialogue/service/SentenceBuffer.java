@@ -0,0 +1,88 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.dialogue.service.DialogueService.Sentence;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 按序号排列的待播放句子缓冲区
+ * 序号在追加时连续分配，用环形数组按序号取模定位，队头即下一个要播放的句子，不需要扫描查找最小序号。
+ */
+public class SentenceBuffer {
+
+    private static final int INITIAL_CAPACITY = 16;
+
+    // 容量始终为2的幂，序号 & (length - 1) 即槽位
+    private Sentence[] slots = new Sentence[INITIAL_CAPACITY];
+    // 下一个待播放的序号
+    private int head = 1;
+    // 最后分配的序号，序号在会话内递增，跨轮对话不重置
+    private int lastSeq = 0;
+
+    /**
+     * 分配下一个序号并追加句子
+     */
+    public synchronized Sentence append(String text, boolean isFirst, boolean isLast) {
+        int seq = lastSeq + 1;
+        if (seq - head >= slots.length) {
+            grow();
+        }
+        Sentence sentence = new Sentence(seq, text, isFirst, isLast);
+        slots[seq & (slots.length - 1)] = sentence;
+        lastSeq = seq;
+        return sentence;
+    }
+
+    /**
+     * 获取队头句子，队列为空时返回null
+     */
+    public synchronized Sentence peek() {
+        return head <= lastSeq ? slots[head & (slots.length - 1)] : null;
+    }
+
+    /**
+     * 移除队头句子，只有传入的句子仍是队头时才会移除
+     */
+    public synchronized boolean remove(Sentence sentence) {
+        int index = head & (slots.length - 1);
+        if (head > lastSeq || slots[index] != sentence) {
+            return false;
+        }
+        slots[index] = null;
+        head++;
+        return true;
+    }
+
+    /**
+     * 清空所有未播放的句子
+     *
+     * @return 被清除的句子
+     */
+    public synchronized List<Sentence> clear() {
+        List<Sentence> removed = new ArrayList<>(lastSeq - head + 1);
+        for (int seq = head; seq <= lastSeq; seq++) {
+            int index = seq & (slots.length - 1);
+            removed.add(slots[index]);
+            slots[index] = null;
+        }
+        head = lastSeq + 1;
+        return removed;
+    }
+
+    public synchronized int size() {
+        return lastSeq - head + 1;
+    }
+
+    public synchronized boolean isEmpty() {
+        return head > lastSeq;
+    }
+
+    private void grow() {
+        Sentence[] bigger = new Sentence[slots.length << 1];
+        for (int seq = head; seq <= lastSeq; seq++) {
+            bigger[seq & (bigger.length - 1)] = slots[seq & (slots.length - 1)];
+        }
+        slots = bigger;
+    }
+}
@@ -0,0 +1,158 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioTranscoder;
+import com.xiaozhi.utils.OpusProcessor;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 音乐、绘本等长音频的流式播放源
+ * 解码线程边下载边解码，重采样后增量编码为Opus帧，放入有界的预读队列；队列满时解码线程阻塞，下载也随之暂停（TCP流控），
+ * 每个播放中的设备只保留预读窗口内的帧，不再把整首歌的PCM和Opus帧放在堆上。
+ * 发送线程按帧节奏取帧，暂时取不到帧时由节拍器按断流处理，稍后重试。
+ */
+public class StreamingAudioSource implements AutoCloseable {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingAudioSource.class);
+
+    private final OpusProcessor opusProcessor;
+
+    // 编码器缓存键，每次播放独立
+    private final String encoderKey;
+
+    // 预读队列，容量即最多领先播放位置的帧数
+    private final BlockingQueue<byte[]> frames;
+
+    // 开始播放前需要缓冲的帧数
+    private final int prebufferFrames;
+
+    // 缓冲到足够的帧或解码结束时完成
+    private final CompletableFuture<Void> ready = new CompletableFuture<>();
+
+    private volatile boolean finished = false;
+    private volatile boolean closed = false;
+    private volatile InputStream input;
+    private volatile Thread decoder;
+
+    /**
+     * @param opusProcessor   Opus编码器
+     * @param encoderKey      编码器缓存键
+     * @param lookaheadFrames 预读的最大帧数
+     * @param prebufferFrames 开始播放前缓冲的帧数
+     */
+    public StreamingAudioSource(OpusProcessor opusProcessor, String encoderKey, int lookaheadFrames, int prebufferFrames) {
+        this.opusProcessor = opusProcessor;
+        this.encoderKey = encoderKey;
+        this.frames = new ArrayBlockingQueue<>(Math.max(1, lookaheadFrames));
+        this.prebufferFrames = Math.max(1, Math.min(prebufferFrames, lookaheadFrames));
+    }
+
+    /**
+     * 在虚拟线程中开始解码，输入流在解码结束或关闭播放源时关闭
+     */
+    public void start(InputStream in) {
+        input = in;
+        decoder = Thread.startVirtualThread(() -> decode(in));
+    }
+
+    private void decode(InputStream in) {
+        try (in) {
+            AudioTranscoder.decode(in, this::encode);
+            if (!closed) {
+                offer(opusProcessor.flushLeftover(encoderKey));
+            }
+        } catch (Exception e) {
+            if (!closed) {
+                logger.error("解码音频流失败 - {}", encoderKey, e);
+            }
+        } finally {
+            opusProcessor.release(encoderKey);
+            finished = true;
+            ready.complete(null);
+        }
+    }
+
+    private void encode(byte[] pcm) {
+        offer(opusProcessor.pcmToOpus(encoderKey, pcm, true));
+    }
+
+    private void offer(List<byte[]> opusFrames) {
+        try {
+            for (byte[] frame : opusFrames) {
+                // 预读队列满时阻塞，直到发送线程取走帧
+                frames.put(frame);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CancellationException("播放已停止");
+        }
+        if (closed) {
+            throw new CancellationException("播放已停止");
+        }
+        if (frames.size() >= prebufferFrames) {
+            ready.complete(null);
+        }
+    }
+
+    /**
+     * 等待缓冲足够的帧后再开始播放
+     *
+     * @return 是否可以开始播放（有可用的帧）
+     */
+    public boolean awaitReady(long timeout, TimeUnit unit) throws InterruptedException {
+        try {
+            ready.get(timeout, unit);
+        } catch (ExecutionException | TimeoutException e) {
+            logger.warn("等待音频缓冲超时 - {}", encoderKey);
+        }
+        return !frames.isEmpty();
+    }
+
+    /**
+     * 取出下一帧，暂无可用帧时返回null
+     */
+    public byte[] poll() {
+        return frames.poll();
+    }
+
+    /**
+     * 解码已结束且所有帧都已取出
+     */
+    public boolean isDrained() {
+        return finished && frames.isEmpty();
+    }
+
+    /**
+     * 停止解码，丢弃未发送的帧
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        Thread thread = decoder;
+        if (thread != null) {
+            thread.interrupt();
+        }
+        frames.clear();
+        InputStream in = input;
+        if (in != null) {
+            try {
+                in.close();
+            } catch (IOException e) {
+                logger.debug("关闭音频流失败 - {}", encoderKey);
+            }
+        }
+    }
+}
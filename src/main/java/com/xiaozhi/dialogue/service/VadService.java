@@ -1,10 +1,13 @@
 package com.xiaozhi.dialogue.service;
 
 import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.dialogue.vad.FloatRingBuffer;
+import com.xiaozhi.dialogue.vad.PcmRingBuffer;
 import com.xiaozhi.dialogue.vad.impl.SileroVadModel;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysRole;
 import com.xiaozhi.service.SysRoleService;
+import com.xiaozhi.utils.AudioUtils;
 import com.xiaozhi.utils.OpusProcessor;
 
 import org.slf4j.Logger;
@@ -15,8 +18,13 @@ import org.springframework.stereotype.Service;
 
 import jakarta.annotation.PreDestroy;
 import java.io.ByteArrayOutputStream;
+import java.io.IOException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 import java.util.concurrent.ConcurrentHashMap;
 
@@ -33,6 +41,19 @@ public class VadService {
     
     @Value("${vad.prebuffer.ms:200}")
     private int preBufferMs;
+
+    // 单次语音最多保留的时长（秒），超过后丢弃最早的音频
+    @Value("${vad.buffer.max-seconds:60}")
+    private int maxSpeechSeconds;
+    
+    // 16kHz, 16bit, mono = 32 bytes/ms
+    private static final int BYTES_PER_MS = 32;
+
+    // 语音缓冲区按1秒一块分配
+    private static final int SPEECH_CHUNK_BYTES = 1000 * BYTES_PER_MS;
+
+    // 保留的最近概率个数
+    private static final int PROB_WINDOW = 10;
     
     // 每10帧输出一次VAD状态
     private static final int LOG_FRAME_INTERVAL = 10;
@@ -73,29 +94,31 @@ public class VadService {
 
         // 音频分析
         private float avgEnergy = 0;
-        private final List<Float> probs = new ArrayList<>();
+        private final FloatRingBuffer probs = new FloatRingBuffer(PROB_WINDOW);
         
-        // 原始VAD概率列表
-        private final List<Float> originalProbs = new ArrayList<>();
+        // 原始VAD概率
+        private final FloatRingBuffer originalProbs = new FloatRingBuffer(PROB_WINDOW);
         
         // 帧计数器（用于每10帧输出一次）
         private int frameCounter = 0;
 
         // 预缓冲
-        private final LinkedList<byte[]> preBuffer = new LinkedList<>();
-        private int preBufferSize = 0;
-        private final int maxPreBufferSize;
+        private final PcmRingBuffer preBuffer;
 
-        // 音频数据
-        private final List<byte[]> pcmData = new ArrayList<>();
-        private final List<byte[]> opusData = new ArrayList<>();
+        // 音频数据，均有上限
+        private final PcmRingBuffer pcmData;
+        private final ArrayDeque<byte[]> opusData = new ArrayDeque<>();
+        private final int maxOpusFrames;
 
         // 短帧累积
         private final ByteArrayOutputStream pcmAccumulator = new ByteArrayOutputStream();
         private long lastAccumTime = 0;
 
         public VadState() {
-            this.maxPreBufferSize = preBufferMs * 32; // 16kHz, 16bit, mono = 32 bytes/ms
+            int maxPreBufferSize = preBufferMs * BYTES_PER_MS;
+            this.preBuffer = new PcmRingBuffer(maxPreBufferSize, maxPreBufferSize);
+            this.pcmData = new PcmRingBuffer(SPEECH_CHUNK_BYTES, maxSpeechSeconds * 1000 * BYTES_PER_MS);
+            this.maxOpusFrames = maxSpeechSeconds * 1000 / AudioUtils.OPUS_FRAME_DURATION_MS;
             this.lastAccumTime = System.currentTimeMillis();
         }
 
@@ -137,32 +160,26 @@ public class VadService {
 
         public void addProb(float prob) {
             probs.add(prob);
-            if (probs.size() > 10) {
-                probs.remove(0);
-            }
         }
         
         // 添加原始VAD概率
         public void addOriginalProb(float prob) {
             originalProbs.add(prob);
-            if (originalProbs.size() > 10) {
-                originalProbs.remove(0);
-            }
             
             // 增加帧计数器
             frameCounter++;
         }
         
         public float getLastOriginalProb() {
-            return originalProbs.isEmpty() ? 0.0f : originalProbs.get(originalProbs.size() - 1);
+            return originalProbs.last(0.0f);
         }
 
         public float getLastProb() {
-            return probs.isEmpty() ? 0.0f : probs.get(probs.size() - 1);
+            return probs.last(0.0f);
         }
 
-        public List<Float> getProbs() {
-            return probs;
+        public float[] getProbs() {
+            return probs.toArray();
         }
         
         public int getFrameCounter() {
@@ -175,30 +192,12 @@ public class VadService {
                 return;
             }
 
-            preBuffer.add(data.clone());
-            preBufferSize += data.length;
-
-            while (preBufferSize > maxPreBufferSize && !preBuffer.isEmpty()) {
-                byte[] removed = preBuffer.removeFirst();
-                preBufferSize -= removed.length;
-            }
+            preBuffer.write(data);
         }
 
         public byte[] drainPreBuffer() {
-            if (preBuffer.isEmpty()) {
-                return new byte[0];
-            }
-
-            byte[] result = new byte[preBufferSize];
-            int offset = 0;
-
-            for (byte[] chunk : preBuffer) {
-                System.arraycopy(chunk, 0, result, offset, chunk.length);
-                offset += chunk.length;
-            }
-
+            byte[] result = preBuffer.toByteArray();
             preBuffer.clear();
-            preBufferSize = 0;
             return result;
         }
 
@@ -230,19 +229,20 @@ public class VadService {
 
         // 音频数据管理
         public void addPcm(byte[] pcm) {
-            if (pcm != null && pcm.length > 0) {
-                pcmData.add(pcm.clone());
-            }
+            pcmData.write(pcm);
         }
 
         public void addOpus(byte[] opus) {
             if (opus != null && opus.length > 0) {
+                if (opusData.size() >= maxOpusFrames) {
+                    opusData.pollFirst();
+                }
                 opusData.add(opus.clone());
             }
         }
 
-        public List<byte[]> getPcmData() {
-            return new ArrayList<>(pcmData);
+        public byte[] getPcmData() {
+            return pcmData.toByteArray();
         }
 
         public List<byte[]> getOpusData() {
@@ -258,7 +258,6 @@ public class VadService {
             originalProbs.clear(); // 重置原始概率列表
             frameCounter = 0;      // 重置帧计数器
             preBuffer.clear();
-            preBufferSize = 0;
             pcmData.clear();
             opusData.clear();
             pcmAccumulator.reset();
@@ -279,6 +278,7 @@ public class VadService {
             } else {
                 state.reset();
             }
+            vadModel.reset(sessionId);
             
             logger.info("VAD会话已初始化: {}", sessionId);
         }
@@ -354,7 +354,7 @@ public class VadService {
                 state.updateEnergy(energy);
                 
                 // 获取VAD概率并乘以10（部分设备收音效果不好，这是一个奇怪但是很有效的解决方法。。。）
-                float speechProb = detectSpeech(samples) * 10;
+                float speechProb = detectSpeech(sessionId, samples) * 10;
                 
                 // 限制概率范围在[0,1]
                 speechProb = Math.min(1.0f, speechProb);
@@ -383,7 +383,7 @@ public class VadService {
                     // 重新分析累积后的音频
                     samples = bytesToFloats(pcmData);
                     energy = calcEnergy(samples);
-                    speechProb = detectSpeech(samples) * 10;
+                    speechProb = detectSpeech(sessionId, samples) * 10;
                     speechProb = Math.min(1.0f, speechProb);
                 }
 
@@ -408,6 +408,7 @@ public class VadService {
                 if (!state.isSpeaking() && isSpeech) {
                     // 语音开始
                     state.pcmData.clear();
+                    state.opusData.clear();
                     state.setSpeaking(true);
                     
                     // 预先格式化浮点数
@@ -464,9 +465,9 @@ public class VadService {
     }
 
     /**
-     * 执行语音检测
+     * 执行语音检测，模型状态按会话隔离
      */
-    private float detectSpeech(float[] samples) {
+    private float detectSpeech(String sessionId, float[] samples) {
         if (vadModel == null || samples == null || samples.length == 0) {
             logger.warn("VAD模型为空或样本为空");
             return 0.0f;
@@ -475,14 +476,14 @@ public class VadService {
         try {
             // 处理样本大小
             if (samples.length == VAD_SAMPLE_SIZE) {
-                return vadModel.getSpeechProbability(samples);
+                return vadModel.getSpeechProbability(sessionId, samples);
             }
 
             // 样本不足，需要填充
             if (samples.length < VAD_SAMPLE_SIZE) {
                 float[] padded = new float[VAD_SAMPLE_SIZE];
                 System.arraycopy(samples, 0, padded, 0, samples.length);
-                return vadModel.getSpeechProbability(padded);
+                return vadModel.getSpeechProbability(sessionId, padded);
             }
 
             // 样本过长，分段处理
@@ -490,7 +491,7 @@ public class VadService {
             for (int offset = 0; offset <= samples.length - VAD_SAMPLE_SIZE; offset += VAD_SAMPLE_SIZE / 2) {
                 float[] chunk = new float[VAD_SAMPLE_SIZE];
                 System.arraycopy(samples, offset, chunk, 0, VAD_SAMPLE_SIZE);
-                float prob = vadModel.getSpeechProbability(chunk);
+                float prob = vadModel.getSpeechProbability(sessionId, chunk);
                 maxProb = Math.max(maxProb, prob);
             }
             return maxProb;
@@ -539,6 +540,7 @@ public class VadService {
             }
             states.remove(sessionId);
             locks.remove(sessionId);
+            vadModel.reset(sessionId);
             
             logger.info("VAD会话已重置: {}", sessionId);
         }
@@ -569,11 +571,42 @@ public class VadService {
     /**
      * 获取音频数据
      */
-    public List<byte[]> getPcmData(String sessionId) {
+    public byte[] getPcmData(String sessionId) {
+        Object lock = getLock(sessionId);
+        synchronized (lock) {
+            VadState state = states.get(sessionId);
+            return state != null ? state.getPcmData() : new byte[0];
+        }
+    }
+
+    /**
+     * 将本次语音的PCM数据直接写入WAV文件，不复制中间数组
+     * 写入期间持有会话锁，语音结束后才调用，不影响正在进行的检测。
+     *
+     * @return 是否有数据写入
+     */
+    public boolean writePcmAsWav(String sessionId, Path path) throws IOException {
         Object lock = getLock(sessionId);
         synchronized (lock) {
             VadState state = states.get(sessionId);
-            return state != null ? state.getPcmData() : new ArrayList<>();
+            if (state == null || state.pcmData.isEmpty()) {
+                return false;
+            }
+            if (state.pcmData.getDroppedBytes() > 0) {
+                logger.warn("语音超过{}秒，已丢弃最早的 {} 字节 - SessionId: {}",
+                        maxSpeechSeconds, state.pcmData.getDroppedBytes(), sessionId);
+            }
+
+            Files.createDirectories(path.getParent());
+            try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE,
+                    StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                ByteBuffer header = AudioUtils.wavHeader(state.pcmData.size());
+                while (header.hasRemaining()) {
+                    channel.write(header);
+                }
+                state.pcmData.writeTo(channel);
+            }
+            return true;
         }
     }
 
@@ -0,0 +1,23 @@
+package com.xiaozhi.dialogue.stt;
+
+/**
+ * 流式识别的中间结果
+ *
+ * @param text   当前语音段到目前为止的完整文本（已结束的句子 + 当前句子的识别结果）
+ * @param stable 文本是否已稳定（句子结束，后续不会再修改这部分内容）
+ * @param last   是否为本次识别的最终结果
+ */
+public record PartialTranscript(String text, boolean stable, boolean last) {
+
+    public static PartialTranscript partial(String text) {
+        return new PartialTranscript(text, false, false);
+    }
+
+    public static PartialTranscript sentence(String text) {
+        return new PartialTranscript(text, true, false);
+    }
+
+    public static PartialTranscript result(String text) {
+        return new PartialTranscript(text, true, true);
+    }
+}
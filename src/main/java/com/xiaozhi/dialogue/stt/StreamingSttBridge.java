@@ -0,0 +1,233 @@
+package com.xiaozhi.dialogue.stt;
+
+import org.reactivestreams.Subscription;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import reactor.core.Disposable;
+import reactor.core.publisher.BaseSubscriber;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.FluxSink;
+import reactor.core.scheduler.Schedulers;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 流式识别适配器，把基于回调的识别SDK接入 {@link SttService#streamTranscripts(Flux)}
+ * 音频按需拉取：识别会话就绪后才订阅音频，每写完一块再请求下一块，由发送音频的线程直接写入识别会话，
+ * 不需要为每次识别准备队列和轮询线程。识别回调通过 {@link TranscriptSink} 输出中间结果，
+ * 超时后以当前已识别的文本结束。
+ */
+public final class StreamingSttBridge {
+    private static final Logger logger = LoggerFactory.getLogger(StreamingSttBridge.class);
+
+    private StreamingSttBridge() {
+    }
+
+    /**
+     * 一次识别会话，write 和 finish 按顺序调用，不会并发
+     */
+    public interface Session {
+
+        /**
+         * 会话就绪后才开始发送音频，默认创建后即可发送
+         */
+        default CompletionStage<Void> ready() {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        /**
+         * 发送一块音频
+         */
+        void write(byte[] audio) throws Exception;
+
+        /**
+         * 音频发送完毕，等待服务端返回最终结果
+         */
+        void finish() throws Exception;
+
+        /**
+         * 释放资源，可能被调用多次
+         */
+        void close();
+    }
+
+    /**
+     * 创建识别会话，识别结果写入传入的 TranscriptSink
+     */
+    @FunctionalInterface
+    public interface SessionFactory {
+        Session open(TranscriptSink sink) throws Exception;
+    }
+
+    /**
+     * 建立流式识别
+     *
+     * @param provider 服务提供商名称，用于日志
+     * @param audio    音频数据流
+     * @param timeout  整次识别的超时时间
+     * @param factory  识别会话工厂
+     */
+    public static Flux<PartialTranscript> bridge(String provider, Flux<byte[]> audio, Duration timeout,
+                                                 SessionFactory factory) {
+        return Flux.create(emitter -> {
+            TranscriptSink sink = new TranscriptSink(emitter);
+            Session session;
+            try {
+                session = factory.open(sink);
+            } catch (Exception e) {
+                logger.error("创建{}识别会话失败", provider, e);
+                emitter.error(e);
+                return;
+            }
+
+            AudioSubscriber upstream = new AudioSubscriber(provider, session, sink);
+            Disposable timer = Schedulers.parallel().schedule(() -> {
+                logger.warn("{}识别超时", provider);
+                sink.complete(null);
+            }, timeout.toMillis(), TimeUnit.MILLISECONDS);
+            emitter.onDispose(() -> {
+                timer.dispose();
+                upstream.dispose();
+                session.close();
+            });
+
+            session.ready().whenComplete((v, error) -> {
+                if (error != null) {
+                    logger.error("{}识别会话建立失败", provider, error);
+                    sink.error(error);
+                } else {
+                    audio.subscribe(upstream);
+                }
+            });
+        });
+    }
+
+    /**
+     * 逐块请求音频并写入识别会话
+     */
+    private static class AudioSubscriber extends BaseSubscriber<byte[]> {
+        private final String provider;
+        private final Session session;
+        private final TranscriptSink sink;
+
+        AudioSubscriber(String provider, Session session, TranscriptSink sink) {
+            this.provider = provider;
+            this.session = session;
+            this.sink = sink;
+        }
+
+        @Override
+        protected void hookOnSubscribe(Subscription subscription) {
+            request(1);
+        }
+
+        @Override
+        protected void hookOnNext(byte[] chunk) {
+            try {
+                session.write(chunk);
+                request(1);
+            } catch (Exception e) {
+                logger.error("发送音频数据到{}时发生错误", provider, e);
+                cancel();
+                sink.error(e);
+            }
+        }
+
+        @Override
+        protected void hookOnComplete() {
+            finish();
+        }
+
+        @Override
+        protected void hookOnError(Throwable throwable) {
+            // 音频流异常时按已收到的音频结束识别
+            logger.error("音频流处理错误", throwable);
+            finish();
+        }
+
+        private void finish() {
+            try {
+                session.finish();
+            } catch (Exception e) {
+                logger.error("结束{}识别时发生错误", provider, e);
+                sink.error(e);
+            }
+        }
+    }
+
+    /**
+     * 识别结果输出，负责拼接多句结果，可以在任意线程调用
+     */
+    public static final class TranscriptSink {
+        private final FluxSink<PartialTranscript> emitter;
+        // 已结束的句子
+        private final StringBuilder committed = new StringBuilder();
+        // 当前句子的识别结果
+        private String current = "";
+        private boolean done = false;
+
+        TranscriptSink(FluxSink<PartialTranscript> emitter) {
+            this.emitter = emitter;
+        }
+
+        /**
+         * 当前句子的非稳态结果，会被后续结果替换
+         */
+        public synchronized void partial(String text) {
+            if (done || text == null || text.isEmpty() || text.equals(current)) {
+                return;
+            }
+            current = text;
+            emitter.next(PartialTranscript.partial(committed + current));
+        }
+
+        /**
+         * 句子结束，结果不再变化
+         */
+        public synchronized void sentenceEnd(String text) {
+            if (done) {
+                return;
+            }
+            String sentence = text == null || text.isEmpty() ? current : text;
+            current = "";
+            if (sentence.isEmpty()) {
+                return;
+            }
+            committed.append(sentence);
+            emitter.next(PartialTranscript.sentence(committed.toString()));
+        }
+
+        /**
+         * 识别完成
+         *
+         * @param text 服务端返回的完整结果，为空时使用已拼接的结果
+         */
+        public synchronized void complete(String text) {
+            if (done) {
+                return;
+            }
+            done = true;
+            String result = text == null || text.isEmpty() ? committed + current : text;
+            emitter.next(PartialTranscript.result(result));
+            emitter.complete();
+        }
+
+        public synchronized void error(Throwable throwable) {
+            if (done) {
+                return;
+            }
+            done = true;
+            emitter.error(throwable);
+        }
+
+        /**
+         * 当前已识别的文本
+         */
+        public synchronized String text() {
+            return committed + current;
+        }
+    }
+}
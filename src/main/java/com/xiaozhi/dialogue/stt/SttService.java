@@ -1,7 +1,12 @@
 package com.xiaozhi.dialogue.stt;
 
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
 import reactor.core.publisher.Sinks;
 
+import java.io.ByteArrayOutputStream;
+import java.util.concurrent.CompletableFuture;
+
 /**
  * STT服务接口
  */
@@ -21,12 +26,32 @@ public interface SttService {
   String recognition(byte[] audioData);
 
   /**
-   * 流式处理音频数据
+   * 流式识别，音频数据流输入，识别结果流输出
+   * 按下游需求拉取音频，中间结果随识别进度输出，最后一个元素为最终结果（last 为 true）。
+   * 支持流式的实现应覆盖此方法，基于回调的SDK可以通过 {@link StreamingSttBridge} 接入；
+   * 默认实现收集完整音频后调用 {@link #recognition(byte[])}，只输出最终结果。
+   *
+   * @param audio 音频数据流
+   * @return 识别结果流
+   */
+  default Flux<PartialTranscript> streamTranscripts(Flux<byte[]> audio) {
+    return audio.collect(ByteArrayOutputStream::new, ByteArrayOutputStream::writeBytes)
+        .flatMap(pcm -> Mono.fromFuture(
+            CompletableFuture.supplyAsync(() -> recognition(pcm.toByteArray()), Thread::startVirtualThread)))
+        .map(PartialTranscript::result)
+        .flux();
+  }
+
+  /**
+   * 流式处理音频数据，阻塞等待最终结果
    * 
    * @param audioSink 音频数据流
-   * @return 识别的文本结果流
+   * @return 识别的文本结果
    */
-  String streamRecognition(Sinks.Many<byte[]> audioSink);
+  default String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    PartialTranscript result = streamTranscripts(audioSink.asFlux()).blockLast();
+    return result != null ? result.text() : null;
+  }
 
   /**
    * 检查服务是否支持流式处理
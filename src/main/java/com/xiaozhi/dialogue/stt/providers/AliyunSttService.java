@@ -2,6 +2,7 @@ package com.xiaozhi.dialogue.stt.providers;
 
 import com.alibaba.dashscope.audio.asr.recognition.Recognition;
 import com.alibaba.dashscope.audio.asr.recognition.RecognitionParam;
+import com.xiaozhi.dialogue.stt.PartialTranscript;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
@@ -10,12 +11,11 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import reactor.core.publisher.Flux;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Mono;
 
 import java.nio.ByteBuffer;
-import java.util.concurrent.TimeUnit;
+import java.time.Duration;
 
-import io.reactivex.BackpressureStrategy;
 import io.reactivex.Flowable;
 
 public class AliyunSttService implements SttService {
@@ -47,46 +47,47 @@ public class AliyunSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
-        var recognizer = new Recognition();
+    public Flux<PartialTranscript> streamTranscripts(Flux<byte[]> audio) {
+        return Flux.defer(() -> {
+            var recognizer = new Recognition();
 
-        // 创建识别参数
-        var param = RecognitionParam.builder()
-                .model(DEFAULT_MODEL)
-                .format("pcm")
-                .sampleRate(AudioUtils.SAMPLE_RATE) // 使用16000Hz采样率
-                .apiKey(apiKey)
-                .build();
+            // 创建识别参数
+            var param = RecognitionParam.builder()
+                    .model(DEFAULT_MODEL)
+                    .format("pcm")
+                    .sampleRate(AudioUtils.SAMPLE_RATE) // 使用16000Hz采样率
+                    .apiKey(apiKey)
+                    .build();
 
-        // 使用 Reactor 执行流式识别
-        var recognition = Flux.<String>create(sink -> {
+            // SDK按需拉取音频，请求数直接传递到上游音频流
+            Flowable<ByteBuffer> frames = Flowable.fromPublisher(audio.map(ByteBuffer::wrap));
+            // 已结束的句子
+            StringBuilder committed = new StringBuilder();
             try {
-                recognizer.streamCall(param, Flowable.create(emitter -> {
-                            audioSink.asFlux().subscribe(
-                                    chunk -> emitter.onNext(ByteBuffer.wrap(chunk)),
-                                    emitter::onError,
-                                    emitter::onComplete
-                            );
-                        }, BackpressureStrategy.BUFFER))
-                        .timeout(5, TimeUnit.SECONDS)
-                        .subscribe(result -> {
-                                    if (result.isSentenceEnd()) {
-                                        logger.info("语音识别结果: {}", result.getSentence().getText());
-                                        sink.next(result.getSentence().getText());
-                                    }
-                                },
-                                Throwable::printStackTrace,
-                                sink::complete
-                        );
+                return Flux.from(recognizer.streamCall(param, frames))
+                        .timeout(Duration.ofSeconds(5))
+                        .<PartialTranscript>handle((result, sink) -> {
+                            String text = result.getSentence() != null ? result.getSentence().getText() : null;
+                            if (text == null || text.isEmpty()) {
+                                return;
+                            }
+                            if (result.isSentenceEnd()) {
+                                logger.info("语音识别结果: {}", text);
+                                committed.append(text);
+                                sink.next(PartialTranscript.sentence(committed.toString()));
+                            } else {
+                                sink.next(PartialTranscript.partial(committed + text));
+                            }
+                        })
+                        .onErrorResume(e -> {
+                            logger.error("语音识别失败: {}", e.getMessage());
+                            return Flux.empty();
+                        })
+                        .concatWith(Mono.fromSupplier(() -> PartialTranscript.result(committed.toString())));
             } catch (Exception e) {
-                sink.error(e);
-                logger.info("语音识别失败: {}", e);
+                logger.error("语音识别失败", e);
+                return Flux.error(e);
             }
         });
-
-        return recognition.reduce(new StringBuffer(), StringBuffer::append)
-                .blockOptional()
-                .map(StringBuffer::toString)
-                .orElse("");
     }
-}
\ No newline at end of file
+}
@@ -2,6 +2,8 @@ package com.xiaozhi.dialogue.stt.providers;
 
 import com.alibaba.fastjson.JSON;
 import com.alibaba.fastjson.JSONObject;
+import com.xiaozhi.dialogue.stt.PartialTranscript;
+import com.xiaozhi.dialogue.stt.StreamingSttBridge;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.entity.SysConfig;
 
@@ -10,15 +12,12 @@ import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.handshake.ServerHandshake;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Flux;
 
 import java.net.URI;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 /**
  * FunASR STT服务实现
@@ -36,7 +35,6 @@ public class FunASRSttService implements SttService {
 
     private static final String SPEAKING_START = "{\"mode\":\"online\",\"wav_name\":\"voice.wav\",\"is_speaking\":true,\"wav_format\":\"pcm\",\"chunk_size\":[5,10,5],\"itn\":true}";
     private static final String SPEAKING_END = "{\"is_speaking\": false}";
-    private static final int QUEUE_TIMEOUT_MS = 100; // 队列等待超时时间
     private static final long RECOGNITION_TIMEOUT_MS = 30000; // 识别超时时间（30秒）
 
     private final String apiUrl;
@@ -62,106 +60,87 @@ public class FunASRSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
-        AtomicReference<String> finalResult = new AtomicReference<>("");
-        CountDownLatch recognitionLatch = new CountDownLatch(1);
-        
-        // 订阅Sink并将数据放入队列
-        audioSink.asFlux().subscribe(
-            data -> audioQueue.offer(data),
-            error -> {
-                logger.error("音频流处理错误", error);
-                isCompleted.set(true);
-            },
-            () -> isCompleted.set(true)
-        );
-        
-        // 创建WebSocket客户端
-        WebSocketClient webSocketClient = new WebSocketClient(URI.create(apiUrl)) {
-            @Override
-            public void onOpen(ServerHandshake handshake) {
-                logger.debug("FunASR WebSocket连接已打开");
-                send(SPEAKING_START);
-                
-                // 启动虚拟线程发送音频数据
-                Thread.startVirtualThread(() -> {
+    public Flux<PartialTranscript> streamTranscripts(Flux<byte[]> audio) {
+        return StreamingSttBridge.bridge(PROVIDER_NAME, audio, Duration.ofMillis(RECOGNITION_TIMEOUT_MS), sink -> {
+            CompletableFuture<Void> opened = new CompletableFuture<>();
+
+            // 创建WebSocket客户端
+            WebSocketClient webSocketClient = new WebSocketClient(URI.create(apiUrl)) {
+                // online模式下中间结果是逐段返回的
+                private final StringBuilder onlineText = new StringBuilder();
+
+                @Override
+                public void onOpen(ServerHandshake handshake) {
+                    logger.debug("FunASR WebSocket连接已打开");
+                    send(SPEAKING_START);
+                    opened.complete(null);
+                }
+
+                @Override
+                public void onMessage(String message) {
                     try {
-                        while (!isCompleted.get() || !audioQueue.isEmpty()) {
-                            byte[] audioChunk = null;
-                            try {
-                                audioChunk = audioQueue.poll(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                            } catch (InterruptedException e) {
-                                logger.warn("音频数据队列等待被中断", e);
-                                Thread.currentThread().interrupt(); // 重新设置中断标志
-                                break;
-                            }
-                            
-                            if (audioChunk != null && isOpen()) {
-                                send(audioChunk);
-                            }
-                        }
-                        
-                        // 发送结束信号
-                        if (isOpen()) {
-                            send(SPEAKING_END);
+                        JSONObject jsonObject = JSON.parseObject(message);
+                        String text = jsonObject.getString("text");
+                        if (jsonObject.getBooleanValue("is_final")) {
+                            // 识别完成
+                            sink.complete(text);
+                        } else if (StringUtils.isNotEmpty(text)) {
+                            onlineText.append(text);
+                            sink.partial(onlineText.toString());
                         }
                     } catch (Exception e) {
-                        logger.error("发送音频数据时发生错误", e);
-                    }
-                });
-            }
-
-            @Override
-            public void onMessage(String message) {
-                try {
-                    JSONObject jsonObject = JSON.parseObject(message);
-                    if (jsonObject.getBoolean("is_final")) {
-                        String text = jsonObject.getString("text");
-                        finalResult.set(text);
-                        recognitionLatch.countDown(); // 识别完成，释放锁
+                        logger.error("解析FunASR响应失败", e);
                     }
-                } catch (Exception e) {
-                    logger.error("解析FunASR响应失败", e);
                 }
-            }
-
-            @Override
-            public void onClose(int code, String reason, boolean remote) {
-                logger.info("FunASR WS关闭，原因：{}", reason);
-                // 确保锁被释放
-                recognitionLatch.countDown();
-            }
-
-            @Override
-            public void onError(Exception ex) {
-                logger.error("FunASR WS错误", ex);
-                // 确保锁被释放
-                recognitionLatch.countDown();
-            }
-        };
-
-        try {
-            // 连接WebSocket
+
+                @Override
+                public void onClose(int code, String reason, boolean remote) {
+                    logger.info("FunASR WS关闭，原因：{}", reason);
+                    opened.completeExceptionally(new IllegalStateException("FunASR连接已关闭: " + reason));
+                    // 确保识别结束
+                    sink.complete(null);
+                }
+
+                @Override
+                public void onError(Exception ex) {
+                    logger.error("FunASR WS错误", ex);
+                    opened.completeExceptionally(ex);
+                    sink.error(ex);
+                }
+            };
+
+            // 连接WebSocket，连接建立后才开始发送音频
             webSocketClient.connect();
-            
-            // 等待识别完成或超时
-            boolean recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            
-            if (!recognized) {
-                logger.warn("FunASR识别超时");
-            }
-        } catch (Exception e) {
-            logger.error("FunASR识别过程中发生错误", e);
-        } finally {
-            // 关闭WebSocket连接
-            if (webSocketClient.isOpen()) {
-                webSocketClient.close();
-            }
-        }
-        
-        return finalResult.get();
+
+            return new StreamingSttBridge.Session() {
+                @Override
+                public CompletionStage<Void> ready() {
+                    return opened;
+                }
+
+                @Override
+                public void write(byte[] audioChunk) {
+                    if (webSocketClient.isOpen()) {
+                        webSocketClient.send(audioChunk);
+                    }
+                }
+
+                @Override
+                public void finish() {
+                    // 发送结束信号
+                    if (webSocketClient.isOpen()) {
+                        webSocketClient.send(SPEAKING_END);
+                    }
+                }
+
+                @Override
+                public void close() {
+                    // 关闭WebSocket连接
+                    if (webSocketClient.isOpen()) {
+                        webSocketClient.close();
+                    }
+                }
+            };
+        });
     }
-}
\ No newline at end of file
+}
@@ -9,6 +9,8 @@ import com.tencent.asrv2.SpeechRecognizerRequest;
 import com.tencent.asrv2.SpeechRecognizerResponse;
 import com.tencent.core.ws.Credential;
 import com.tencent.core.ws.SpeechClient;
+import com.xiaozhi.dialogue.stt.PartialTranscript;
+import com.xiaozhi.dialogue.stt.StreamingSttBridge;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
@@ -17,7 +19,7 @@ import com.xiaozhi.utils.HttpUtil;
 import okhttp3.*;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Flux;
 
 import javax.crypto.Mac;
 import javax.crypto.spec.SecretKeySpec;
@@ -26,17 +28,12 @@ import java.nio.charset.StandardCharsets;
 import java.security.InvalidKeyException;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
 import java.time.ZoneId;
 import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.Base64;
 import java.util.UUID;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.CountDownLatch;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.ConcurrentHashMap;
 
 public class TencentSttService implements SttService {
@@ -46,7 +43,6 @@ public class TencentSttService implements SttService {
     private static final String API_VERSION = "2019-06-14";
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
     private static final String FORMAT = "pcm"; // 支持的音频格式：pcm, wav, mp3
-    private static final int QUEUE_TIMEOUT_MS = 100; // 队列等待超时时间
     private static final long RECOGNITION_TIMEOUT_MS = 30000; // 识别超时时间（30秒）
 
     // 使用腾讯云SDK的默认URL
@@ -133,33 +129,17 @@ public class TencentSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public Flux<PartialTranscript> streamTranscripts(Flux<byte[]> audio) {
         // 检查配置是否已设置
         if (secretId == null || secretKey == null || appId == null) {
             logger.error("腾讯云语音识别配置未设置，无法进行识别");
-            return null;
+            return Flux.empty();
         }
 
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
-        AtomicReference<String> finalResult = new AtomicReference<>("");
-        CountDownLatch recognitionLatch = new CountDownLatch(1);
-        
-        // 订阅Sink并将数据放入队列
-        audioSink.asFlux().subscribe(
-            data -> audioQueue.offer(data),
-            error -> {
-                logger.error("音频流处理错误", error);
-                isCompleted.set(true);
-            },
-            () -> isCompleted.set(true)
-        );
-
-        // 生成唯一的语音ID
-        String voiceId = UUID.randomUUID().toString();
+        return StreamingSttBridge.bridge(PROVIDER_NAME, audio, Duration.ofMillis(RECOGNITION_TIMEOUT_MS), sink -> {
+            // 生成唯一的语音ID
+            String voiceId = UUID.randomUUID().toString();
 
-        try {
             // 创建腾讯云凭证
             Credential credential = new Credential(appId, secretId, secretKey);
 
@@ -171,8 +151,6 @@ public class TencentSttService implements SttService {
 
             // 创建识别监听器
             SpeechRecognizerListener listener = new SpeechRecognizerListener() {
-                private final StringBuilder textBuilder = new StringBuilder();
-                
                 @Override
                 public void onRecognitionStart(SpeechRecognizerResponse response) {
                     logger.debug("腾讯云识别开始 - VoiceId: {}", voiceId);
@@ -186,66 +164,28 @@ public class TencentSttService implements SttService {
                 @Override
                 public void onRecognitionResultChange(SpeechRecognizerResponse response) {
                     // 非稳态结果，可能会变化
-                    if (response.getResult() != null && response.getResult().getVoiceTextStr() != null) {
-                        String text = response.getResult().getVoiceTextStr();
-                        if (!text.isEmpty()) {
-                            // 更新当前识别结果
-                            synchronized (textBuilder) {
-                                textBuilder.setLength(0);
-                                textBuilder.append(text);
-                            }
-                        }
-                    }
+                    sink.partial(voiceText(response));
                 }
 
                 @Override
                 public void onSentenceEnd(SpeechRecognizerResponse response) {
                     // 稳态结果，不再变化
-                    if (response.getResult() != null && response.getResult().getVoiceTextStr() != null) {
-                        String text = response.getResult().getVoiceTextStr();
-                        if (!text.isEmpty()) {
-                            // 更新最终结果
-                            synchronized (textBuilder) {
-                                textBuilder.setLength(0);
-                                textBuilder.append(text);
-                            }
-                            finalResult.set(text);
-                        }
-                    }
+                    sink.sentenceEnd(voiceText(response));
                 }
 
                 @Override
                 public void onRecognitionComplete(SpeechRecognizerResponse response) {
-                    // 识别完成，获取最终结果
-                    if (response.getResult() != null && response.getResult().getVoiceTextStr() != null) {
-                        String text = response.getResult().getVoiceTextStr();
-                        if (!text.isEmpty()) {
-                            finalResult.set(text);
-                        } else {
-                            // 如果最终结果为空，使用之前积累的结果
-                            synchronized (textBuilder) {
-                                if (textBuilder.length() > 0) {
-                                    finalResult.set(textBuilder.toString());
-                                }
-                            }
-                        }
-                    }
-                    
-                    // 释放锁，表示识别完成
-                    recognitionLatch.countDown();
-                    
+                    // 识别完成，使用已拼接的各句结果
+                    sink.complete(null);
                     // 从活跃识别器中移除
                     activeRecognizers.remove(voiceId);
                 }
 
                 @Override
                 public void onFail(SpeechRecognizerResponse response) {
-                    logger.error("识别失败 - VoiceId: {}, 错误: {}", voiceId,
-                            response.getMessage() != null ? response.getMessage() : "未知错误");
-                    
-                    // 释放锁，表示识别失败
-                    recognitionLatch.countDown();
-                    
+                    String message = response.getMessage() != null ? response.getMessage() : "未知错误";
+                    logger.error("识别失败 - VoiceId: {}, 错误: {}", voiceId, message);
+                    sink.error(new IllegalStateException("腾讯云识别失败: " + message));
                     // 从活跃识别器中移除
                     activeRecognizers.remove(voiceId);
                 }
@@ -265,67 +205,36 @@ public class TencentSttService implements SttService {
             // 启动识别器
             recognizer.start();
 
-            // 标记是否已经发送了停止信号
-            AtomicBoolean stopSent = new AtomicBoolean(false);
+            return new StreamingSttBridge.Session() {
+                @Override
+                public void write(byte[] audioChunk) throws Exception {
+                    recognizer.write(audioChunk);
+                }
 
-            // 启动虚拟线程发送音频数据
-            Thread.startVirtualThread(() -> {
-                try {
-                    while (!isCompleted.get() || !audioQueue.isEmpty()) {
-                        byte[] audioChunk = null;
-                        try {
-                            audioChunk = audioQueue.poll(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                        } catch (InterruptedException e) {
-                            logger.warn("音频数据队列等待被中断", e);
-                            Thread.currentThread().interrupt(); // 重新设置中断标志
-                            break;
-                        }
-                        
-                        if (audioChunk != null && activeRecognizers.containsKey(voiceId)) {
-                            try {
-                                recognizer.write(audioChunk);
-                            } catch (Exception e) {
-                                logger.error("发送音频数据时发生错误 - VoiceId: {}", voiceId, e);
-                                break;
-                            }
-                        }
-                    }
-                    
-                    // 发送停止信号
-                    if (activeRecognizers.containsKey(voiceId) && !stopSent.getAndSet(true)) {
+                @Override
+                public void finish() throws Exception {
+                    // 发送停止信号，等待最终结果
+                    recognizer.stop();
+                }
+
+                @Override
+                public void close() {
+                    // 识别完成前被取消或超时，清理资源
+                    if (activeRecognizers.remove(voiceId) != null) {
                         try {
                             recognizer.stop();
+                            recognizer.close();
                         } catch (Exception e) {
-                            logger.error("停止识别器时发生错误 - VoiceId: {}", voiceId, e);
+                            logger.error("清理识别器资源时发生错误 - VoiceId: {}", voiceId, e);
                         }
                     }
-                } catch (Exception e) {
-                    logger.error("处理音频流时发生错误 - VoiceId: {}", voiceId, e);
-                }
-            });
-
-            // 等待识别完成或超时
-            boolean recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            
-            if (!recognized) {
-                logger.warn("腾讯云识别超时 - VoiceId: {}", voiceId);
-                // 超时后清理资源
-                if (activeRecognizers.containsKey(voiceId)) {
-                    try {
-                        recognizer.stop();
-                        recognizer.close();
-                        activeRecognizers.remove(voiceId);
-                    } catch (Exception e) {
-                        logger.error("清理超时识别器资源时发生错误 - VoiceId: {}", voiceId, e);
-                    }
                 }
-            }
+            };
+        });
+    }
 
-        } catch (Exception e) {
-            logger.error("创建语音识别会话时发生错误", e);
-        }
-        
-        return finalResult.get();
+    private String voiceText(SpeechRecognizerResponse response) {
+        return response.getResult() != null ? response.getResult().getVoiceTextStr() : null;
     }
 
     // 在服务关闭时释放资源
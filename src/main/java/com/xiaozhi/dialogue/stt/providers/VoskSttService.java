@@ -1,5 +1,7 @@
 package com.xiaozhi.dialogue.stt.providers;
 
+import com.xiaozhi.dialogue.stt.PartialTranscript;
+import com.xiaozhi.dialogue.stt.StreamingSttBridge;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.utils.AudioUtils;
 import jakarta.annotation.PostConstruct;
@@ -10,17 +12,12 @@ import org.vosk.LibVosk;
 import org.vosk.LogLevel;
 import org.vosk.Model;
 import org.vosk.Recognizer;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Flux;
 
 import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.nio.file.Paths;
-import java.util.ArrayList;
-import java.util.List;
-import java.util.concurrent.BlockingQueue;
-import java.util.concurrent.LinkedBlockingQueue;
-import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
+import java.time.Duration;
 
 /**
  * Vosk STT服务实现
@@ -30,7 +27,7 @@ public class VoskSttService implements SttService {
 
     private static final Logger logger = LoggerFactory.getLogger(VoskSttService.class);
     private static final String PROVIDER_NAME = "vosk";
-    private static final int QUEUE_TIMEOUT_MS = 5000; // 队列等待超时时间
+    private static final long RECOGNITION_TIMEOUT_MS = 60000; // 识别超时时间（60秒）
 
     // Vosk模型相关对象
     private Model model;
@@ -133,82 +130,64 @@ public class VoskSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public Flux<PartialTranscript> streamTranscripts(Flux<byte[]> audio) {
         if (!isModelLoaded()) {
             logger.error("Vosk模型未加载，无法进行流式识别！");
-            return null;
+            return Flux.empty();
         }
 
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
-        List<String> recognizedText = new ArrayList<>();
-        StringBuilder finalResult = new StringBuilder();
-
-        // 订阅Sink并将数据放入队列
-        audioSink.asFlux().subscribe(
-                data -> audioQueue.offer(data),
-                error -> {
-                    logger.error("音频流处理错误", error);
-                    isCompleted.set(true);
-                },
-                () -> isCompleted.set(true)
-        );
-
-        // 使用虚拟线程处理音频识别
-        try {
-            Thread.startVirtualThread(() -> {
-                try (Recognizer recognizer = new Recognizer(model, AudioUtils.SAMPLE_RATE)) {
-                    while (!isCompleted.get() || !audioQueue.isEmpty()) {
-                        try {
-                            byte[] audioChunk = audioQueue.poll(100, TimeUnit.MILLISECONDS);
-                            if (audioChunk != null) {
-                                boolean hasResult = recognizer.acceptWaveForm(audioChunk, audioChunk.length);
-                                if (hasResult) {
-                                    // 提取部分识别结果中的文本
-                                    String result = recognizer.getResult();
-                                    JSONObject jsonResult = new JSONObject(result);
-                                    if (jsonResult.has("text") && !jsonResult.getString("text").isEmpty()) {
-                                        String text = jsonResult.getString("text").replaceAll("\\s+", "");
-                                        recognizedText.add(text);
-                                        logger.debug("Vosk识别中间结果: {}", text);
-                                    }
-                                }
-                            }
-
-                            // 如果已完成且队列为空，获取最终结果
-                            if (isCompleted.get() && audioQueue.isEmpty()) {
-                                String finalText = recognizer.getFinalResult();
-                                JSONObject jsonFinal = new JSONObject(finalText);
-                                if (jsonFinal.has("text")) {
-                                    String text = jsonFinal.getString("text").replaceAll("\\s+", "");
-                                    if (!text.isEmpty()) {
-                                        recognizedText.add(text);
-                                        logger.debug("Vosk识别最终结果: {}", text);
-                                    }
-                                }
-                                break;
-                            }
-                        } catch (InterruptedException e) {
-                            logger.warn("音频数据队列等待被中断", e);
-                            Thread.currentThread().interrupt(); // 重新设置中断标志
-                            break;
-                        }
+        return StreamingSttBridge.bridge(PROVIDER_NAME, audio, Duration.ofMillis(RECOGNITION_TIMEOUT_MS), sink -> {
+            Recognizer recognizer = new Recognizer(model, AudioUtils.SAMPLE_RATE);
+            // 本地识别，由发送音频的线程直接送入识别器
+            return new StreamingSttBridge.Session() {
+                private boolean closed = false;
+
+                @Override
+                public synchronized void write(byte[] audioChunk) {
+                    if (closed) {
+                        return;
+                    }
+                    if (recognizer.acceptWaveForm(audioChunk, audioChunk.length)) {
+                        // 一句话结束
+                        String text = extractText(recognizer.getResult());
+                        logger.debug("Vosk识别中间结果: {}", text);
+                        sink.sentenceEnd(text);
+                    } else {
+                        sink.partial(extractText(recognizer.getPartialResult(), "partial"));
                     }
+                }
 
-                    // 合并所有识别结果
-                    for (String text : recognizedText) {
-                        finalResult.append(text);
+                @Override
+                public synchronized void finish() {
+                    if (closed) {
+                        return;
                     }
+                    String text = extractText(recognizer.getFinalResult());
+                    logger.debug("Vosk识别最终结果: {}", text);
+                    sink.sentenceEnd(text);
+                    sink.complete(null);
+                }
 
-                } catch (Exception e) {
-                    logger.error("Vosk流式识别过程中发生错误", e);
+                @Override
+                public synchronized void close() {
+                    if (!closed) {
+                        closed = true;
+                        recognizer.close();
+                    }
                 }
-            }).join(); // 等待虚拟线程完成
-        } catch (Exception e) {
-            logger.error("启动虚拟线程失败", e);
-        }
+            };
+        });
+    }
 
-        return finalResult.toString();
+    private String extractText(String result) {
+        return extractText(result, "text");
+    }
+
+    /**
+     * 提取识别结果中的文本，去掉Vosk中文结果中的空格
+     */
+    private String extractText(String result, String key) {
+        JSONObject json = new JSONObject(result);
+        return json.has(key) ? json.getString(key).replaceAll("\\s+", "") : "";
     }
 }
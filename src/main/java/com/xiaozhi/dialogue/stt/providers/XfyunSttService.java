@@ -5,6 +5,8 @@ import cn.xfyun.model.response.iat.IatResponse;
 import cn.xfyun.model.response.iat.IatResult;
 import cn.xfyun.model.response.iat.Text;
 import cn.xfyun.service.iat.AbstractIatWebSocketListener;
+import com.xiaozhi.dialogue.stt.PartialTranscript;
+import com.xiaozhi.dialogue.stt.StreamingSttBridge;
 import com.xiaozhi.dialogue.stt.SttService;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
@@ -13,24 +15,21 @@ import okhttp3.WebSocket;
 import org.apache.commons.lang3.StringUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import reactor.core.publisher.Sinks;
+import reactor.core.publisher.Flux;
 
 import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
-import java.net.MalformedURLException;
-import java.security.SignatureException;
+import java.time.Duration;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.UUID;
 import java.util.concurrent.*;
-import java.util.concurrent.atomic.AtomicBoolean;
 
 public class XfyunSttService implements SttService {
     private static final Logger logger = LoggerFactory.getLogger(XfyunSttService.class);
 
     private static final String PROVIDER_NAME = "xfyun";
-    // 队列等待超时时间
-    private static final int QUEUE_TIMEOUT_MS = 60000;
     // 识别超时时间（60秒）
     private static final long RECOGNITION_TIMEOUT_MS = 60000;
 
@@ -166,151 +165,91 @@ public class XfyunSttService implements SttService {
     }
 
     @Override
-    public String streamRecognition(Sinks.Many<byte[]> audioSink) {
+    public Flux<PartialTranscript> streamTranscripts(Flux<byte[]> audio) {
         // 检查配置是否已设置
         if (secretId == null || secretKey == null || appId == null) {
             logger.error("讯飞云语音识别配置未设置，无法进行识别");
-            return null;
+            return Flux.empty();
         }
 
-        // 使用阻塞队列存储音频数据
-        BlockingQueue<byte[]> audioQueue = new LinkedBlockingQueue<>();
-        AtomicBoolean isCompleted = new AtomicBoolean(false);
-        CountDownLatch recognitionLatch = new CountDownLatch(1);
-        List<Text> resultSegments = new ArrayList<>();
-
-//        // 订阅Sink并将数据放入队列
-//        audioSink.asFlux().subscribe(
-//                data -> audioQueue.offer(data),
-//                error -> {
-//                    logger.error("音频流处理错误", error);
-//                    isCompleted.set(true);
-//                },
-//                () -> isCompleted.set(true)
-//        );
+        return StreamingSttBridge.bridge(PROVIDER_NAME, audio, Duration.ofMillis(RECOGNITION_TIMEOUT_MS), sink -> {
+            List<Text> resultSegments = new ArrayList<>();
 
-        // 处理合并后的完整字节数组
-        audioSink.asFlux()
-                .reduce((bytes1, bytes2) -> {
-                    // 创建新数组并合并两个字节数组
-                    byte[] merged = new byte[bytes1.length + bytes2.length];
-                    System.arraycopy(bytes1, 0, merged, 0, bytes1.length);
-                    System.arraycopy(bytes2, 0, merged, bytes1.length, bytes2.length);
-                    return merged;
-                })
-                .subscribe(audioQueue::offer,
-                        error -> {
-                            logger.error("音频流处理错误", error);
-                            isCompleted.set(true);
-                        },
-                        () -> isCompleted.set(true)
-                );
-
-        // 设置听写参数,这里的appid,apiKey,apiSecret是在开放平台控制台获得
-        IatClient iatClient = new IatClient.Builder()
-                .signature(appId, secretId, secretKey)
-                // 动态修正功能：值为wpgs时代表开启（包含修正功能的）流式听写
-                .dwa("wpgs")
-                .build();
-
-        // 生成唯一的语音ID
-        String voiceId = UUID.randomUUID().toString();
-        // 存储到活跃识别器映射中
-        activeRecognizers.put(voiceId, iatClient);
+            // 设置听写参数,这里的appid,apiKey,apiSecret是在开放平台控制台获得
+            IatClient iatClient = new IatClient.Builder()
+                    .signature(appId, secretId, secretKey)
+                    // 动态修正功能：值为wpgs时代表开启（包含修正功能的）流式听写
+                    .dwa("wpgs")
+                    .build();
 
-        AbstractIatWebSocketListener socketListener = new AbstractIatWebSocketListener() {
-            @Override
-            public void onSuccess(WebSocket webSocket, IatResponse iatResponse) {
-                if (iatResponse.getCode() != 0) {
-                    logger.warn("code：{}, error：{}, sid：{}", iatResponse.getCode(), iatResponse.getMessage(), iatResponse.getSid());
-                    logger.warn("错误码查询链接：https://www.xfyun.cn/document/error-code");
-                    return;
-                }
+            // 生成唯一的语音ID
+            String voiceId = UUID.randomUUID().toString();
+            // 存储到活跃识别器映射中
+            activeRecognizers.put(voiceId, iatClient);
 
-                if (iatResponse.getData() != null) {
-                    if (iatResponse.getData().getResult() != null) {
-                        // 解析服务端返回结果
-                        IatResult result = iatResponse.getData().getResult();
-                        Text textObject = result.getText();
-                        handleResultText(textObject, resultSegments);
-                        logger.info("中间识别结果：{}", getFinalResult(resultSegments));
+            AbstractIatWebSocketListener socketListener = new AbstractIatWebSocketListener() {
+                @Override
+                public void onSuccess(WebSocket webSocket, IatResponse iatResponse) {
+                    if (iatResponse.getCode() != 0) {
+                        logger.warn("code：{}, error：{}, sid：{}", iatResponse.getCode(), iatResponse.getMessage(), iatResponse.getSid());
+                        logger.warn("错误码查询链接：https://www.xfyun.cn/document/error-code");
+                        return;
                     }
-                    if (iatResponse.getData().getStatus() == 2) {
-                        // resp.data.status ==2 说明数据全部返回完毕，可以关闭连接，释放资源
-                        logger.info("session end ");
-                        recognitionLatch.countDown();
-                        iatClient.closeWebsocket();
-                    } else {
-                        // 根据返回的数据自定义处理逻辑
+
+                    if (iatResponse.getData() != null) {
+                        if (iatResponse.getData().getResult() != null) {
+                            // 解析服务端返回结果，带修正的结果每次都是完整文本
+                            IatResult result = iatResponse.getData().getResult();
+                            Text textObject = result.getText();
+                            handleResultText(textObject, resultSegments);
+                            sink.partial(getFinalResult(resultSegments));
+                        }
+                        if (iatResponse.getData().getStatus() == 2) {
+                            // resp.data.status ==2 说明数据全部返回完毕，可以关闭连接，释放资源
+                            logger.info("session end ");
+                            sink.complete(getFinalResult(resultSegments));
+                        }
                     }
                 }
-            }
-
-            @Override
-            public void onFail(WebSocket webSocket, Throwable t, Response response) {
-                // 自定义处理逻辑
-                // 释放锁，表示识别完成
-                recognitionLatch.countDown();
-                iatClient.closeWebsocket();
-                logger.error("xfyun stt fail，原因：{}", t.getMessage());
-            }
-        };
-
 
-        // 使用虚拟线程处理音频识别
-        try {
-            Thread.startVirtualThread(() -> {
-                while (!isCompleted.get() || !audioQueue.isEmpty()) {
+                @Override
+                public void onFail(WebSocket webSocket, Throwable t, Response response) {
+                    logger.error("xfyun stt fail，原因：{}", t.getMessage());
+                    sink.error(t);
+                }
+            };
 
-                    byte[] audioChunk = null;
-                    try {
-                        audioChunk = audioQueue.poll(QUEUE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-                    } catch (InterruptedException e) {
-                        logger.warn("音频数据队列等待被中断", e);
-                        Thread.currentThread().interrupt(); // 重新设置中断标志
-                        break;
-                    }
+            // 讯飞SDK以输入流发送音频，先在会话内缓存整段音频，说话结束后一次发送
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+            return new StreamingSttBridge.Session() {
+                @Override
+                public void write(byte[] audioChunk) {
+                    buffer.writeBytes(audioChunk);
+                }
 
-                    if (audioChunk != null && activeRecognizers.containsKey(voiceId)) {
+                @Override
+                public void finish() {
+                    Thread.startVirtualThread(() -> {
                         try {
-                            iatClient.send(new ByteArrayInputStream(audioChunk), socketListener);
-                        } catch (MalformedURLException e) {
-                            throw new RuntimeException(e);
-                        } catch (SignatureException e) {
-                            throw new RuntimeException(e);
+                            iatClient.send(new ByteArrayInputStream(buffer.toByteArray()), socketListener);
+                        } catch (Exception e) {
+                            logger.error("发送音频数据时发生错误 - VoiceId: {}", voiceId, e);
+                            sink.error(e);
                         }
-
-                        // 如果已完成且队列为空，获取最终结果
-                        if (isCompleted.get() && audioQueue.isEmpty()) {
-                            activeRecognizers.remove(voiceId);
-                            break;
-                        }
-                    }
+                    });
                 }
-            }).join(); // 等待虚拟线程完成
-        } catch (Exception e) {
-            logger.error("启动虚拟线程失败", e);
-        }
 
-        try {
-            // 等待识别完成或超时
-            boolean recognized = recognitionLatch.await(RECOGNITION_TIMEOUT_MS, TimeUnit.MILLISECONDS);
-            if (!recognized) {
-                logger.warn("讯飞云识别超时 - VoiceId: {}", voiceId);
-                // 超时后清理资源
-                if (activeRecognizers.containsKey(voiceId)) {
-                    try {
-                        iatClient.closeWebsocket();
-                        activeRecognizers.remove(voiceId);
-                    } catch (Exception e) {
-                        logger.error("清理超时识别器资源时发生错误 - VoiceId: {}", voiceId, e);
+                @Override
+                public void close() {
+                    if (activeRecognizers.remove(voiceId) != null) {
+                        try {
+                            iatClient.closeWebsocket();
+                        } catch (Exception e) {
+                            logger.error("清理识别器资源时发生错误 - VoiceId: {}", voiceId, e);
+                        }
                     }
                 }
-            }
-        } catch (Exception e) {
-            logger.error("创建语音识别会话时发生错误", e);
-        }
-
-        return getFinalResult(resultSegments);
+            };
+        });
     }
-}
\ No newline at end of file
+}
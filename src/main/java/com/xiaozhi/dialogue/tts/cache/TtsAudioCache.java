@@ -0,0 +1,442 @@
+package com.xiaozhi.dialogue.tts.cache;
+
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.utils.OpusFrameFile;
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.text.Normalizer;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * TTS音频缓存，缓存可直接发送的Opus帧
+ * 键为(provider, configId, 音色, 规范化文本)，内存层按字节数LRU淘汰，磁盘层每条一个带索引的帧文件（{@link OpusFrameFile}）。
+ * 磁盘层命中时更新文件修改时间，超过上限后按修改时间从旧到新删除，直到低于低水位。
+ * 配置修改时由 TtsServiceFactory#removeCache 触发失效。每个配置有一个代数，失效时加一；
+ * 调用方在合成开始前取得代数，写入时代数已变化说明结果来自旧配置，直接丢弃。
+ */
+@Component
+public class TtsAudioCache {
+    private static final Logger logger = LoggerFactory.getLogger(TtsAudioCache.class);
+
+    // 与 TtsServiceFactory 一致，未配置TTS时使用Edge
+    private static final String DEFAULT_PROVIDER = "edge";
+    // 每帧在内存中的额外开销估算（数组头和引用）
+    private static final int FRAME_OVERHEAD = 24;
+
+    @Value("${tts.cache.enabled:true}")
+    private boolean enabled;
+
+    // 只缓存不超过此长度的文本，常用短句重复率最高
+    @Value("${tts.cache.max-text-length:64}")
+    private int maxTextLength;
+
+    @Value("${tts.cache.memory.max-bytes:33554432}")
+    private long memoryMaxBytes;
+
+    @Value("${tts.cache.disk.enabled:true}")
+    private boolean diskEnabled;
+
+    @Value("${tts.cache.disk.path:audio/cache/tts}")
+    private String diskPath;
+
+    // 磁盘层上限，超过后淘汰最久未使用的文件
+    @Value("${tts.cache.disk.max-bytes:536870912}")
+    private long diskMaxBytes;
+
+    // 淘汰到上限的这个比例为止，避免每次写入都触发淘汰
+    @Value("${tts.cache.disk.low-water-ratio:0.8}")
+    private double diskLowWaterRatio;
+
+    @Autowired
+    private MeterRegistry meterRegistry;
+
+    // 访问顺序的LinkedHashMap，队首为最久未使用
+    private final LinkedHashMap<String, List<byte[]>> memory = new LinkedHashMap<>(256, 0.75f, true);
+    private long memoryBytes = 0;
+    private final AtomicLong diskBytes = new AtomicLong();
+    // 磁盘层的写入、淘汰和删除互斥，保证 diskBytes 与磁盘上的文件一致
+    private final ReentrantLock diskLock = new ReentrantLock();
+    // 正在写入的文件，同一条目并发写入时只写一次
+    private final Map<Path, Boolean> writing = new ConcurrentHashMap<>();
+    // 每个配置的代数，失效时加一
+    private final Map<String, AtomicLong> generations = new ConcurrentHashMap<>();
+
+    private Counter memoryHits;
+    private Counter diskHits;
+    private Counter misses;
+    private Counter evictions;
+    private Counter diskEvictions;
+
+    @PostConstruct
+    public void init() {
+        memoryHits = meterRegistry.counter("xiaozhi.tts.cache", "result", "hit", "tier", "memory");
+        diskHits = meterRegistry.counter("xiaozhi.tts.cache", "result", "hit", "tier", "disk");
+        misses = meterRegistry.counter("xiaozhi.tts.cache", "result", "miss", "tier", "none");
+        evictions = meterRegistry.counter("xiaozhi.tts.cache.evictions", "tier", "memory");
+        diskEvictions = meterRegistry.counter("xiaozhi.tts.cache.evictions", "tier", "disk");
+        Gauge.builder("xiaozhi.tts.cache.bytes", this, TtsAudioCache::getMemoryBytes)
+                .tag("tier", "memory")
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.tts.cache.bytes", diskBytes, AtomicLong::get)
+                .tag("tier", "disk")
+                .register(meterRegistry);
+
+        if (enabled && diskEnabled) {
+            try {
+                Path root = Path.of(diskPath);
+                Files.createDirectories(root);
+                try (Stream<Path> files = Files.walk(root)) {
+                    diskBytes.set(files.filter(Files::isRegularFile).mapToLong(this::sizeOf).sum());
+                }
+                if (diskBytes.get() > diskMaxBytes) {
+                    diskLock.lock();
+                    try {
+                        evictDisk();
+                    } finally {
+                        diskLock.unlock();
+                    }
+                }
+            } catch (IOException e) {
+                logger.warn("初始化TTS磁盘缓存失败，仅使用内存缓存: {}", e.getMessage());
+                diskEnabled = false;
+            }
+        }
+    }
+
+    /**
+     * 文本是否适合缓存
+     */
+    public boolean isCacheable(String text) {
+        return enabled && text != null && !text.isBlank() && text.length() <= maxTextLength;
+    }
+
+    /**
+     * 配置当前的代数，在合成开始前取得，写入缓存时传回
+     */
+    public long generation(SysConfig config) {
+        return generationOf(configIdOf(config)).get();
+    }
+
+    /**
+     * 查询缓存的Opus帧，未命中返回null
+     */
+    public List<byte[]> get(SysConfig config, String voiceName, String text) {
+        if (!isCacheable(text)) {
+            return null;
+        }
+        long generation = generation(config);
+        String key = createKey(config, voiceName, text);
+        List<byte[]> frames;
+        synchronized (memory) {
+            frames = memory.get(key);
+        }
+        if (frames != null) {
+            memoryHits.increment();
+            return frames;
+        }
+
+        if (diskEnabled) {
+            Path file = diskFile(key);
+            frames = readFrames(file);
+            if (frames != null) {
+                diskHits.increment();
+                touch(file);
+                putMemory(key, frames, generation);
+                return frames;
+            }
+        }
+        misses.increment();
+        return null;
+    }
+
+    /**
+     * 缓存合成结果，磁盘写入在虚拟线程中异步完成
+     *
+     * @param generation 合成开始前由 {@link #generation} 取得的代数，配置已失效时不写入
+     */
+    public void put(SysConfig config, String voiceName, String text, List<byte[]> frames, long generation) {
+        if (!isCacheable(text) || frames == null || frames.isEmpty()) {
+            return;
+        }
+        String key = createKey(config, voiceName, text);
+        List<byte[]> copy = List.copyOf(frames);
+        if (!putMemory(key, copy, generation)) {
+            return;
+        }
+        if (diskEnabled) {
+            Path file = diskFile(key);
+            if (writing.putIfAbsent(file, Boolean.TRUE) == null) {
+                Thread.startVirtualThread(() -> {
+                    try {
+                        writeFrames(file, copy, key, generation);
+                    } finally {
+                        writing.remove(file);
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * 使指定配置的缓存失效
+     */
+    public void invalidate(SysConfig config) {
+        if (config == null || config.getConfigId() == null) {
+            return;
+        }
+        String configId = String.valueOf(config.getConfigId());
+        synchronized (memory) {
+            // 先加代数，之后开始的写入都会被拒绝
+            generationOf(configId).incrementAndGet();
+            Iterator<Map.Entry<String, List<byte[]>>> it = memory.entrySet().iterator();
+            while (it.hasNext()) {
+                Map.Entry<String, List<byte[]>> entry = it.next();
+                String[] parts = entry.getKey().split(":", 3);
+                if (parts.length == 3 && parts[1].equals(configId)) {
+                    memoryBytes -= sizeOf(entry.getValue());
+                    it.remove();
+                }
+            }
+        }
+
+        if (diskEnabled) {
+            // 持有磁盘锁列目录，正在进行的写入要么先完成再被删除，要么在锁内发现代数已变化
+            diskLock.lock();
+            try (Stream<Path> dirs = Files.list(Path.of(diskPath))) {
+                dirs.filter(dir -> dir.getFileName().toString().endsWith("_" + configId))
+                        .forEach(this::deleteDirectory);
+            } catch (IOException e) {
+                logger.warn("清理TTS磁盘缓存失败: {}", e.getMessage());
+            } finally {
+                diskLock.unlock();
+            }
+        }
+    }
+
+    public long getMemoryBytes() {
+        synchronized (memory) {
+            return memoryBytes;
+        }
+    }
+
+    /**
+     * @return 代数是否仍然有效，已失效时不写入
+     */
+    private boolean putMemory(String key, List<byte[]> frames, long generation) {
+        long size = sizeOf(frames);
+        synchronized (memory) {
+            if (generationOf(configIdOf(key)).get() != generation) {
+                return false;
+            }
+            if (size > memoryMaxBytes) {
+                return true;
+            }
+            List<byte[]> previous = memory.put(key, frames);
+            if (previous != null) {
+                memoryBytes -= sizeOf(previous);
+            }
+            memoryBytes += size;
+            // 淘汰最久未使用的条目
+            Iterator<Map.Entry<String, List<byte[]>>> it = memory.entrySet().iterator();
+            while (memoryBytes > memoryMaxBytes && it.hasNext()) {
+                Map.Entry<String, List<byte[]>> eldest = it.next();
+                memoryBytes -= sizeOf(eldest.getValue());
+                it.remove();
+                evictions.increment();
+            }
+        }
+        return true;
+    }
+
+    private AtomicLong generationOf(String configId) {
+        return generations.computeIfAbsent(configId, k -> new AtomicLong());
+    }
+
+    private static String configIdOf(SysConfig config) {
+        return String.valueOf(config != null && config.getConfigId() != null ? config.getConfigId() : -1);
+    }
+
+    private static String configIdOf(String key) {
+        return key.split(":", 3)[1];
+    }
+
+    /**
+     * 缓存键：provider:configId:音色:规范化文本
+     */
+    private String createKey(SysConfig config, String voiceName, String text) {
+        String provider = config != null && config.getProvider() != null ? config.getProvider() : DEFAULT_PROVIDER;
+        return provider + ":" + configIdOf(config) + ":" + voiceName + ":" + normalize(text);
+    }
+
+    /**
+     * 文本规范化：全角半角统一、去除首尾空白、合并连续空白
+     */
+    private static String normalize(String text) {
+        return Normalizer.normalize(text, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * 磁盘文件路径：{provider}_{configId}/{sha256(键)}.frames
+     */
+    private Path diskFile(String key) {
+        String[] parts = key.split(":", 3);
+        return Path.of(diskPath, parts[0] + "_" + parts[1], sha256(key) + OpusFrameFile.SUFFIX);
+    }
+
+    /**
+     * 读取帧文件，格式见 {@link OpusFrameFile}
+     */
+    private List<byte[]> readFrames(Path file) {
+        if (!Files.exists(file)) {
+            return null;
+        }
+        try {
+            return OpusFrameFile.read(file).toList();
+        } catch (Exception e) {
+            logger.warn("读取TTS缓存文件失败: {}, {}", file, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeFrames(Path file, List<byte[]> frames, String key, long generation) {
+        diskLock.lock();
+        try {
+            if (generationOf(configIdOf(key)).get() != generation) {
+                // 等待磁盘锁期间配置已失效
+                return;
+            }
+            long previous = Files.exists(file) ? Files.size(file) : 0;
+            long size = OpusFrameFile.write(file, frames);
+            if (diskBytes.addAndGet(size - previous) > diskMaxBytes) {
+                evictDisk();
+            }
+        } catch (IOException e) {
+            logger.warn("写入TTS缓存文件失败: {}, {}", file, e.getMessage());
+        } finally {
+            diskLock.unlock();
+        }
+    }
+
+    /**
+     * 命中时更新修改时间，作为磁盘层的最近使用时间
+     */
+    private void touch(Path file) {
+        try {
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+        } catch (IOException e) {
+            // 文件可能刚被淘汰，不影响本次命中
+        }
+    }
+
+    /**
+     * 按修改时间从旧到新删除缓存文件，直到总大小不超过低水位，调用方持有 diskLock
+     * 遍历时顺便以实际文件大小校正 diskBytes
+     */
+    private void evictDisk() {
+        record Entry(Path file, long size, long modified) {
+        }
+        List<Entry> entries = new ArrayList<>();
+        try (Stream<Path> files = Files.walk(Path.of(diskPath))) {
+            files.filter(path -> path.getFileName().toString().endsWith(OpusFrameFile.SUFFIX)).forEach(path -> {
+                try {
+                    entries.add(new Entry(path, Files.size(path), Files.getLastModifiedTime(path).toMillis()));
+                } catch (IOException e) {
+                    // 文件已被删除
+                }
+            });
+        } catch (IOException e) {
+            logger.warn("淘汰TTS磁盘缓存失败: {}", e.getMessage());
+            return;
+        }
+        entries.sort(Comparator.comparingLong(Entry::modified));
+
+        long total = entries.stream().mapToLong(Entry::size).sum();
+        long lowWater = (long) (diskMaxBytes * diskLowWaterRatio);
+        int deleted = 0;
+        for (Entry entry : entries) {
+            if (total <= lowWater) {
+                break;
+            }
+            try {
+                Files.deleteIfExists(entry.file());
+                total -= entry.size();
+                deleted++;
+            } catch (IOException e) {
+                logger.warn("删除TTS缓存文件失败: {}", entry.file());
+            }
+        }
+        diskBytes.set(total);
+        diskEvictions.increment(deleted);
+        logger.info("TTS磁盘缓存淘汰 {} 个文件，剩余 {} 字节", deleted, total);
+    }
+
+    private void deleteDirectory(Path dir) {
+        diskLock.lock();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                try {
+                    long size = Files.size(file);
+                    Files.deleteIfExists(file);
+                    diskBytes.addAndGet(-size);
+                } catch (IOException e) {
+                    logger.warn("删除TTS缓存文件失败: {}", file);
+                }
+            });
+            Files.deleteIfExists(dir);
+        } catch (IOException e) {
+            logger.warn("删除TTS缓存目录失败: {}", dir);
+        } finally {
+            diskLock.unlock();
+        }
+    }
+
+    private long sizeOf(Path file) {
+        try {
+            return Files.size(file);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    private static long sizeOf(List<byte[]> frames) {
+        long size = 0;
+        for (byte[] frame : frames) {
+            size += frame.length + FRAME_OVERHEAD;
+        }
+        return size;
+    }
+
+    private static String sha256(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -1,11 +1,14 @@
 package com.xiaozhi.dialogue.tts.factory;
 
 import com.xiaozhi.dialogue.tts.TtsService;
+import com.xiaozhi.dialogue.tts.cache.TtsAudioCache;
 import com.xiaozhi.dialogue.tts.providers.*;
 import com.xiaozhi.entity.SysConfig;
 
+import jakarta.annotation.Resource;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.springframework.util.ObjectUtils;
 
@@ -21,6 +24,14 @@ public class TtsServiceFactory {
     // 缓存已初始化的服务：键为"provider:configId:voiceName"格式，确保音色变化时创建新实例
     private final Map<String, TtsService> serviceCache = new ConcurrentHashMap<>();
 
+    // 合成结果缓存，配置变化时一并失效
+    @Resource
+    private TtsAudioCache ttsAudioCache;
+
+    // MiniMax接口地址，只在压测配置（application-loadtest.properties）中设置，指向本地桩服务
+    @Value("${tts.minimax.api-url:}")
+    private String minimaxApiUrl;
+
     // 语音生成文件保存地址
     private static final String OUTPUT_PATH = "audio/";
 
@@ -30,6 +41,13 @@ public class TtsServiceFactory {
     // 默认 EDGE TTS 服务默认语音名称
     private static final String DEFAULT_VOICE = "zh-CN-XiaoyiNeural";
 
+    /**
+     * 配置对应的服务提供商名称，未配置时为默认的 edge
+     */
+    public static String providerOf(SysConfig config) {
+        return config != null && config.getProvider() != null ? config.getProvider() : DEFAULT_PROVIDER;
+    }
+
     /**
      * 获取默认TTS服务
      */
@@ -80,7 +98,9 @@ public class TtsServiceFactory {
             case "aliyun" -> new AliyunTtsService(config, voiceName, outputPath);
             case "volcengine" -> new VolcengineTtsService(config, voiceName, outputPath);
             case "xfyun" -> new XfyunTtsService(config, voiceName, outputPath);
-            case "minimax" -> new MiniMaxTtsService(config, voiceName, outputPath);
+            case "minimax" -> minimaxApiUrl.isBlank()
+                    ? new MiniMaxTtsService(config, voiceName, outputPath)
+                    : new MiniMaxTtsService(config, voiceName, outputPath, minimaxApiUrl);
             default -> new EdgeTtsService(voiceName, outputPath);
         };
     }
@@ -111,6 +131,9 @@ public class TtsServiceFactory {
             // 检查provider和configId是否匹配
             return keyProvider.equals(provider) && keyConfigId.equals(String.valueOf(configId));
         });
-        
+
+        // 音色或密钥可能已变化，清除该配置的合成结果缓存
+        ttsAudioCache.invalidate(config);
+
     }
 }
\ No newline at end of file
@@ -0,0 +1,49 @@
+package com.xiaozhi.dialogue.tts.hedge;
+
+import java.util.Arrays;
+
+/**
+ * 最近若干次TTS合成耗时的滑动窗口，用于估算分位数
+ * 窗口满后新样本覆盖最旧的样本，分位数随服务当前状况变化，不会被很久以前的慢请求拖住。
+ */
+final class LatencyWindow {
+
+    private final long[] samples;
+    private int next = 0;
+    private int size = 0;
+
+    LatencyWindow(int capacity) {
+        this.samples = new long[Math.max(1, capacity)];
+    }
+
+    synchronized void record(long nanos) {
+        samples[next] = nanos;
+        next = (next + 1) % samples.length;
+        if (size < samples.length) {
+            size++;
+        }
+    }
+
+    synchronized int size() {
+        return size;
+    }
+
+    /**
+     * 估算分位数（纳秒）
+     *
+     * @param quantile   分位，0~1
+     * @param minSamples 样本数不足时返回-1
+     */
+    long percentile(double quantile, int minSamples) {
+        long[] copy;
+        synchronized (this) {
+            if (size == 0 || size < minSamples) {
+                return -1;
+            }
+            copy = Arrays.copyOf(samples, size);
+        }
+        Arrays.sort(copy);
+        int index = (int) Math.ceil(quantile * copy.length) - 1;
+        return copy[Math.max(0, Math.min(copy.length - 1, index))];
+    }
+}
@@ -0,0 +1,406 @@
+package com.xiaozhi.dialogue.tts.hedge;
+
+import com.xiaozhi.dialogue.tts.TtsService;
+import com.xiaozhi.dialogue.tts.factory.TtsServiceFactory;
+import com.xiaozhi.entity.SysConfig;
+import com.xiaozhi.service.SysConfigService;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * TTS对冲请求
+ * 主请求在该服务近期耗时的分位数（默认p95）内没有返回时，向备用服务（或备用音色）再发一个请求，先成功的结果胜出，另一个被中断并丢弃。
+ * 主请求提前失败时立即改发备用服务。整体超时对两个请求共同生效。
+ * <p>
+ * 每个服务提供商分别统计最近的合成耗时，非流式按完整合成计时，流式按首个分片计时。样本不足时使用默认延迟。
+ * 落败被中断或超时的请求按被放弃时已耗费的时间计入（实际耗时的下限），否则慢请求永远不会进入统计，分位数会越来越偏低。
+ * 备用请求（对冲和主请求失败后的改发）不经过备用服务的调度通道，由 max-inflight 限制同时在途的数量，
+ * 避免主服务整体变慢或故障时备用服务被打满；名额用尽时只等待主请求。
+ * <pre>
+ * tts.hedge.enabled=true
+ * tts.hedge.fallback.config-id=12
+ * tts.hedge.fallback.voice=longxiaochun
+ * </pre>
+ */
+@Component
+public class TtsHedger {
+    private static final Logger logger = LoggerFactory.getLogger(TtsHedger.class);
+
+    private static final int PRIMARY = 0;
+    private static final int FALLBACK = 1;
+    // 竞争状态：尚无结果 / 已放弃（超时或调用方中断）
+    private static final int OPEN = -1;
+    private static final int CLOSED = -2;
+
+    /**
+     * 对冲的一方
+     *
+     * @param provider 服务提供商，用于统计耗时
+     * @param call     合成逻辑，被中断时应尽快放弃并释放资源
+     */
+    public record Leg<T>(String provider, Callable<T> call) {
+    }
+
+    /**
+     * 胜出的结果
+     *
+     * @param fallback 是否来自备用服务
+     */
+    public record Result<T>(T value, boolean fallback) {
+    }
+
+    /**
+     * 备用服务
+     */
+    public record Fallback(String provider, TtsService service) {
+    }
+
+    // 是否开启对冲
+    @Value("${tts.hedge.enabled:false}")
+    private boolean enabled;
+
+    // 备用服务的配置ID，不配置时使用默认的Edge
+    @Value("${tts.hedge.fallback.config-id:#{null}}")
+    private Integer fallbackConfigId;
+
+    // 备用服务使用的音色
+    @Value("${tts.hedge.fallback.voice:zh-CN-XiaoyiNeural}")
+    private String fallbackVoice;
+
+    // 按主服务耗时的哪个分位数确定对冲延迟
+    @Value("${tts.hedge.percentile:0.95}")
+    private double percentile;
+
+    // 对冲延迟下限（毫秒），避免服务很快时几乎每个请求都发两次
+    @Value("${tts.hedge.min-delay-ms:300}")
+    private long minDelayMs;
+
+    // 样本不足时的对冲延迟（毫秒）
+    @Value("${tts.hedge.default-delay-ms:2000}")
+    private long defaultDelayMs;
+
+    // 估算分位数至少需要的样本数
+    @Value("${tts.hedge.min-samples:20}")
+    private int minSamples;
+
+    // 每个服务保留最近多少次耗时
+    @Value("${tts.hedge.window:200}")
+    private int windowSize;
+
+    // 同时在途的对冲请求上限
+    @Value("${tts.hedge.max-inflight:16}")
+    private int maxInflight;
+
+    @Resource
+    private TtsServiceFactory ttsFactory;
+
+    @Resource
+    private SysConfigService configService;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, ProviderLatency> latencies = new ConcurrentHashMap<>();
+    private Semaphore hedgeSlots;
+
+    @PostConstruct
+    public void init() {
+        hedgeSlots = new Semaphore(Math.max(0, maxInflight));
+        if (enabled) {
+            logger.info("TTS对冲已开启 - 备用配置: {}, 备用音色: {}, 分位数: {}, 最小延迟: {}ms",
+                    fallbackConfigId, fallbackVoice, percentile, minDelayMs);
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * 当前配置的备用服务，未开启对冲或配置不存在时返回null
+     */
+    public Fallback fallback() {
+        if (!enabled) {
+            return null;
+        }
+        SysConfig config = null;
+        if (fallbackConfigId != null) {
+            config = configService.selectConfigById(fallbackConfigId);
+            if (config == null) {
+                logger.warn("TTS对冲的备用配置不存在 - 配置ID: {}", fallbackConfigId);
+                return null;
+            }
+        }
+        return new Fallback(TtsServiceFactory.providerOf(config), ttsFactory.getTtsService(config, fallbackVoice));
+    }
+
+    /**
+     * 执行一次可对冲的合成
+     *
+     * @param stream    是否为流式合成，流式和非流式分别统计耗时
+     * @param primary   主请求
+     * @param fallback  备用请求，为null时只执行主请求
+     * @param timeoutMs 整体超时
+     * @param discard   落败一方晚到的结果，由调用方释放（删除文件、关闭流等）
+     * @return 先成功的结果
+     * @throws TimeoutException 超时仍没有成功的结果
+     * @throws Exception        所有请求都失败时，抛出主请求的异常
+     */
+    public <T> Result<T> call(boolean stream, Leg<T> primary, Leg<T> fallback, long timeoutMs, Consumer<T> discard)
+            throws Exception {
+        long now = System.nanoTime();
+        long deadline = now + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        Race<T> race = new Race<>(stream, discard);
+        race.start(PRIMARY, primary, null);
+        int running = 1;
+
+        boolean fallbackPending = fallback != null;
+        long hedgeAt = fallbackPending ? now + hedgeDelayNanos(primary.provider(), stream) : deadline;
+        Throwable primaryError = null;
+
+        try {
+            while (true) {
+                now = System.nanoTime();
+                if (fallbackPending && now - hedgeAt >= 0) {
+                    fallbackPending = false;
+                    if (hedgeSlots.tryAcquire()) {
+                        race.start(FALLBACK, fallback, hedgeSlots::release);
+                        running++;
+                        count("fired", primary.provider());
+                    } else {
+                        count("skipped", primary.provider());
+                    }
+                }
+                if (running == 0) {
+                    throw primaryError instanceof Exception e ? e : new IllegalStateException(primaryError);
+                }
+                if (deadline - now <= 0) {
+                    if (race.close()) {
+                        throw new TimeoutException("TTS生成超时");
+                    }
+                    // 超时的同时有一方刚刚胜出，结果已在路上
+                    return race.win(race.awaitWinner());
+                }
+
+                long wait = fallbackPending ? Math.min(deadline, hedgeAt) - now : deadline - now;
+                Outcome<T> outcome = race.outcomes.poll(wait, TimeUnit.NANOSECONDS);
+                if (outcome == null) {
+                    continue;
+                }
+                if (outcome.error == null) {
+                    return race.win(outcome);
+                }
+
+                running--;
+                if (primaryError == null || outcome.index == PRIMARY) {
+                    primaryError = outcome.error;
+                }
+                if (outcome.index == PRIMARY && fallbackPending) {
+                    // 主请求提前失败，不必等到对冲延迟，立即改发备用服务；同样占用对冲名额
+                    fallbackPending = false;
+                    if (hedgeSlots.tryAcquire()) {
+                        race.start(FALLBACK, fallback, hedgeSlots::release);
+                        running++;
+                        count("failover", primary.provider());
+                    } else {
+                        count("skipped", primary.provider());
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            race.abandon();
+            Thread.currentThread().interrupt();
+            throw e;
+        } finally {
+            race.cancelLosers();
+        }
+    }
+
+    /**
+     * 当前的对冲延迟（纳秒）：主服务近期耗时的分位数，样本不足时为默认值
+     */
+    long hedgeDelayNanos(String provider, boolean stream) {
+        return hedgeDelayNanos(latency(provider, stream).window);
+    }
+
+    private long hedgeDelayNanos(LatencyWindow window) {
+        long p = window.percentile(percentile, minSamples);
+        if (p < 0) {
+            return TimeUnit.MILLISECONDS.toNanos(defaultDelayMs);
+        }
+        return Math.max(TimeUnit.MILLISECONDS.toNanos(minDelayMs), p);
+    }
+
+    private void record(String provider, boolean stream, long nanos) {
+        ProviderLatency latency = latency(provider, stream);
+        latency.window.record(nanos);
+        latency.timer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private ProviderLatency latency(String provider, boolean stream) {
+        return latencies.computeIfAbsent(provider + (stream ? ":stream" : ":full"),
+                key -> new ProviderLatency(provider, stream));
+    }
+
+    private void count(String outcome, String provider) {
+        meterRegistry.counter("xiaozhi.tts.hedge", "outcome", outcome, "provider", provider).increment();
+    }
+
+    /**
+     * 一个服务提供商在一种合成方式下的耗时统计
+     */
+    private final class ProviderLatency {
+        final LatencyWindow window = new LatencyWindow(windowSize);
+        final Timer timer;
+
+        ProviderLatency(String provider, boolean stream) {
+            String mode = stream ? "stream" : "full";
+            timer = Timer.builder("xiaozhi.tts.latency")
+                    .description("TTS合成耗时，流式为首个分片的耗时")
+                    .tags("provider", provider, "mode", mode)
+                    .publishPercentileHistogram()
+                    .register(meterRegistry);
+            Gauge.builder("xiaozhi.tts.hedge.delay", this,
+                    latency -> hedgeDelayNanos(latency.window) / 1_000_000d)
+                    .description("当前的对冲延迟（毫秒）")
+                    .tags("provider", provider, "mode", mode)
+                    .register(meterRegistry);
+        }
+    }
+
+    private record Outcome<T>(int index, T value, Throwable error) {
+    }
+
+    /**
+     * 一次对冲中的两个请求，各自在虚拟线程中执行
+     * 第一个成功的请求通过CAS成为胜者并投递结果，之后成功的请求直接丢弃结果。
+     */
+    private final class Race<T> {
+        private final boolean stream;
+        private final Consumer<T> discard;
+        private final BlockingQueue<Outcome<T>> outcomes = new LinkedBlockingQueue<>();
+        private final AtomicInteger winner = new AtomicInteger(OPEN);
+        private final Thread[] threads = new Thread[2];
+        private final String[] providers = new String[2];
+        private final long[] starts = new long[2];
+        // 每个请求的耗时只记录一次：自己结束时记录实际耗时，被放弃时记录已耗费的时间
+        private final AtomicBoolean[] settled = { new AtomicBoolean(), new AtomicBoolean() };
+
+        Race(boolean stream, Consumer<T> discard) {
+            this.stream = stream;
+            this.discard = discard;
+        }
+
+        void start(int index, Leg<T> leg, Runnable onFinish) {
+            providers[index] = leg.provider();
+            starts[index] = System.nanoTime();
+            threads[index] = Thread.startVirtualThread(() -> {
+                try {
+                    T value = leg.call().call();
+                    if (settled[index].compareAndSet(false, true)) {
+                        record(leg.provider(), stream, System.nanoTime() - starts[index]);
+                    }
+                    if (winner.compareAndSet(OPEN, index)) {
+                        outcomes.add(new Outcome<>(index, value, null));
+                    } else {
+                        release(value);
+                    }
+                } catch (Throwable e) {
+                    // 失败的耗时不代表服务的正常耗时，不计入
+                    settled[index].set(true);
+                    outcomes.add(new Outcome<>(index, null, e));
+                } finally {
+                    if (onFinish != null) {
+                        onFinish.run();
+                    }
+                }
+            });
+        }
+
+        Result<T> win(Outcome<T> outcome) {
+            if (threads[FALLBACK] != null) {
+                meterRegistry.counter("xiaozhi.tts.hedge.won", "leg", outcome.index == PRIMARY ? "primary" : "fallback",
+                        "provider", providers[outcome.index]).increment();
+            }
+            return new Result<>(outcome.value, outcome.index == FALLBACK);
+        }
+
+        /**
+         * 放弃本次竞争，之后成功的请求都丢弃结果
+         *
+         * @return false 表示已有胜者
+         */
+        boolean close() {
+            return winner.compareAndSet(OPEN, CLOSED);
+        }
+
+        Outcome<T> awaitWinner() throws InterruptedException {
+            while (true) {
+                Outcome<T> outcome = outcomes.take();
+                if (outcome.error == null) {
+                    return outcome;
+                }
+            }
+        }
+
+        /**
+         * 调用方被中断，已经胜出的结果没有人接收，在后台取出后释放
+         */
+        void abandon() {
+            if (!close()) {
+                Thread.startVirtualThread(() -> {
+                    try {
+                        release(awaitWinner().value);
+                    } catch (InterruptedException ignored) {
+                    }
+                });
+            }
+        }
+
+        /**
+         * 中断胜者以外仍在执行的请求，并把已耗费的时间作为耗时下限计入统计
+         */
+        void cancelLosers() {
+            int won = winner.get();
+            long now = System.nanoTime();
+            for (int i = 0; i < threads.length; i++) {
+                if (i != won && threads[i] != null) {
+                    if (settled[i].compareAndSet(false, true)) {
+                        record(providers[i], stream, now - starts[i]);
+                    }
+                    threads[i].interrupt();
+                }
+            }
+        }
+
+        private void release(T value) {
+            if (value == null || discard == null) {
+                return;
+            }
+            try {
+                discard.accept(value);
+            } catch (Exception e) {
+                logger.warn("释放落败的TTS结果失败: {}", e.getMessage());
+            }
+        }
+    }
+}
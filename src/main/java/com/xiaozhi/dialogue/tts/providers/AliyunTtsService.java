@@ -7,6 +7,8 @@ import com.alibaba.dashscope.aigc.multimodalconversation.MultiModalConversationR
 import com.alibaba.dashscope.audio.tts.SpeechSynthesisAudioFormat;
 import com.alibaba.dashscope.audio.tts.SpeechSynthesisParam;
 import com.alibaba.dashscope.audio.tts.SpeechSynthesizer;
+import com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisResult;
+import com.alibaba.dashscope.common.ResultCallback;
 import com.xiaozhi.dialogue.tts.TtsService;
 import com.xiaozhi.entity.SysConfig;
 import com.xiaozhi.utils.AudioUtils;
@@ -22,11 +24,14 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.net.URL;
 import java.nio.ByteBuffer;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 public class AliyunTtsService implements TtsService {
     private static final Logger logger = LoggerFactory.getLogger(AliyunTtsService.class);
@@ -38,6 +43,8 @@ public class AliyunTtsService implements TtsService {
     private static final long RETRY_DELAY_MS = 1000;
     // 添加TTS操作超时时间（秒）
     private static final long TTS_TIMEOUT_SECONDS = 5;
+    // 流式合成整句的超时时间（秒）
+    private static final long TTS_STREAM_TIMEOUT_SECONDS = 30;
 
     // 阿里云配置
     private final String apiKey;
@@ -72,6 +79,58 @@ public class AliyunTtsService implements TtsService {
         }
     }
 
+    @Override
+    public boolean isSupportStreamTts() {
+        // 只有CosyVoice支持流式输出
+        return !voiceName.contains("sambert") && getVoiceByName(voiceName) == null;
+    }
+
+    @Override
+    public void streamTextToSpeech(String text, Consumer<byte[]> audioDataConsumer) throws Exception {
+        com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisParam param =
+                com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisParam.builder()
+                        .apiKey(apiKey)
+                        .model("cosyvoice-v1")
+                        .voice(voiceName)
+                        .format(com.alibaba.dashscope.audio.ttsv2.SpeechSynthesisAudioFormat.PCM_16000HZ_MONO_16BIT)
+                        .build();
+
+        CountDownLatch latch = new CountDownLatch(1);
+        AtomicReference<Exception> error = new AtomicReference<>();
+        com.alibaba.dashscope.audio.ttsv2.SpeechSynthesizer synthesizer =
+                new com.alibaba.dashscope.audio.ttsv2.SpeechSynthesizer(param, new ResultCallback<SpeechSynthesisResult>() {
+                    @Override
+                    public void onEvent(SpeechSynthesisResult result) {
+                        ByteBuffer frame = result.getAudioFrame();
+                        if (frame != null && frame.hasRemaining()) {
+                            byte[] pcm = new byte[frame.remaining()];
+                            frame.get(pcm);
+                            audioDataConsumer.accept(pcm);
+                        }
+                    }
+
+                    @Override
+                    public void onComplete() {
+                        latch.countDown();
+                    }
+
+                    @Override
+                    public void onError(Exception e) {
+                        error.set(e);
+                        latch.countDown();
+                    }
+                });
+
+        synthesizer.call(text);
+        if (!latch.await(TTS_STREAM_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+            throw new TimeoutException("语音合成aliyun - 流式合成超时");
+        }
+        if (error.get() != null) {
+            logger.error("语音合成aliyun - 使用{}模型流式合成失败：", voiceName, error.get());
+            throw error.get();
+        }
+    }
+
     private String ttsQwen(String text) {
         int attempts = 0;
         while (attempts < MAX_RETRY_ATTEMPTS) {
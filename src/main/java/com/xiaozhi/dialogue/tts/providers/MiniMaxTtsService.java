@@ -24,9 +24,11 @@ import java.util.HexFormat;
 public class MiniMaxTtsService implements TtsService {
 
     private static final String PROVIDER_NAME = "minimax";
+    private static final String API_URL = "https://api.minimaxi.com/v1/t2a_v2";
 
     private final String groupId;
     private final String apiKey;
+    private final String apiUrl;
 
     private final String outputPath;
     private final String voiceName;
@@ -35,8 +37,16 @@ public class MiniMaxTtsService implements TtsService {
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
 
     public MiniMaxTtsService(SysConfig config, String voiceName, String outputPath) {
+        this(config, voiceName, outputPath, API_URL);
+    }
+
+    /**
+     * 指定接口地址，只用于压测时指向本地桩服务（tts.minimax.api-url）
+     */
+    public MiniMaxTtsService(SysConfig config, String voiceName, String outputPath, String apiUrl) {
         this.groupId = config.getAppId();
         this.apiKey = config.getApiKey();
+        this.apiUrl = apiUrl;
         this.voiceName = voiceName;
         this.outputPath = outputPath;
     }
@@ -61,7 +71,7 @@ public class MiniMaxTtsService implements TtsService {
     private void sendRequest(String text, String filepath) {
         var params = new Text2AudioParams(voiceName, text);
         var request = new Request.Builder()
-                .url("https://api.minimaxi.com/v1/t2a_v2?Groupid=%s".formatted(groupId))
+                .url("%s?Groupid=%s".formatted(apiUrl, groupId))
                 .addHeader("Content-Type", "application/json")
                 .addHeader("Authorization", "Bearer %s".formatted(apiKey)) // 添加Authorization头
                 .post(RequestBody.create(JsonUtil.toJson(params), JSON))
@@ -8,21 +8,40 @@ import com.xiaozhi.utils.AudioUtils;
 import com.xiaozhi.utils.HttpUtil;
 
 import okhttp3.*;
+import okio.ByteString;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.Base64;
 import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.zip.GZIPInputStream;
 
 public class VolcengineTtsService implements TtsService {
     private static final Logger logger = LoggerFactory.getLogger(VolcengineTtsService.class);
 
     private static final String PROVIDER_NAME = "volcengine";
     private static final String API_URL = "https://openspeech.bytedance.com/api/v1/tts";
+    private static final String WS_URL = "wss://openspeech.bytedance.com/api/v1/tts/ws_binary";
     private static final MediaType JSON = MediaType.parse("application/json; charset=utf-8");
 
+    // 完整客户端请求：协议版本1、头部4字节，消息类型1，JSON序列化，不压缩
+    private static final byte[] FULL_CLIENT_REQUEST_HEADER = { 0x11, 0x10, 0x10, 0x00 };
+    private static final int MESSAGE_AUDIO_ONLY_RESPONSE = 0xB;
+    private static final int MESSAGE_ERROR = 0xF;
+    private static final int COMPRESSION_GZIP = 1;
+    // 两个分片之间的最长等待时间
+    private static final long STREAM_IDLE_TIMEOUT_MS = 30000;
+
     // 音频名称
     private String voiceName;
 
@@ -60,9 +79,14 @@ public class VolcengineTtsService implements TtsService {
             String audioFilePath = outputPath + audioFileName;
 
             // 发送POST请求
-            boolean success = sendRequest(text, audioFilePath);
+            byte[] audioData = sendRequest(text, "wav");
 
-            if (success) {
+            if (audioData != null) {
+                // 保存音频文件
+                File audioFile = new File(audioFilePath);
+                try (FileOutputStream fout = new FileOutputStream(audioFile)) {
+                    fout.write(audioData);
+                }
                 return audioFilePath;
             } else {
                 throw new Exception("语音合成失败");
@@ -73,45 +97,192 @@ public class VolcengineTtsService implements TtsService {
         }
     }
 
+    @Override
+    public boolean isSupportStreamTts() {
+        return true;
+    }
+
+    /**
+     * 通过二进制WebSocket接口流式合成，每收到一个音频分片就交给消费者
+     * 分片在WebSocket线程中放入队列，由调用线程交给消费者；调用线程被中断时关闭连接。
+     */
+    @Override
+    public void streamTextToSpeech(String text, Consumer<byte[]> audioDataConsumer) throws Exception {
+        if (text == null || text.isEmpty()) {
+            logger.warn("文本内容为空！");
+            return;
+        }
+        BlockingQueue<StreamEvent> events = new LinkedBlockingQueue<>();
+        Request request = new Request.Builder()
+                .url(WS_URL)
+                .addHeader("Authorization", "Bearer; " + accessToken)
+                .build();
+        WebSocket webSocket = client.newWebSocket(request, new WebSocketListener() {
+            @Override
+            public void onMessage(WebSocket webSocket, ByteString bytes) {
+                StreamEvent event;
+                try {
+                    event = parseResponse(bytes.toByteArray());
+                } catch (RuntimeException e) {
+                    event = StreamEvent.error("消息格式错误: " + e.getMessage());
+                }
+                if (event != null) {
+                    events.add(event);
+                }
+            }
+
+            @Override
+            public void onClosing(WebSocket webSocket, int code, String reason) {
+                events.add(StreamEvent.error("服务端关闭连接: " + code + " " + reason));
+            }
+
+            @Override
+            public void onFailure(WebSocket webSocket, Throwable t, Response response) {
+                events.add(StreamEvent.error("连接失败: " + t.getMessage()));
+            }
+
+            @Override
+            public void onClosed(WebSocket webSocket, int code, String reason) {
+                events.add(StreamEvent.error("连接已关闭: " + code + " " + reason));
+            }
+        });
+
+        try {
+            byte[] payload = buildRequest(text, "pcm", "submit").toString().getBytes(StandardCharsets.UTF_8);
+            webSocket.send(ByteString.of(ByteBuffer.allocate(8 + payload.length)
+                    .put(FULL_CLIENT_REQUEST_HEADER)
+                    .putInt(payload.length)
+                    .put(payload)
+                    .array()));
+            while (true) {
+                StreamEvent event = events.poll(STREAM_IDLE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+                if (event == null) {
+                    throw new Exception("语音合成超时");
+                }
+                if (event.error() != null) {
+                    throw new Exception("语音合成失败: " + event.error());
+                }
+                if (event.audio().length > 0) {
+                    audioDataConsumer.accept(event.audio());
+                }
+                if (event.last()) {
+                    webSocket.close(1000, null);
+                    return;
+                }
+            }
+        } finally {
+            // 正常结束时已关闭，异常或中断时立即断开
+            webSocket.cancel();
+        }
+    }
+
+    /**
+     * 流式合成的一个事件：音频分片（last 表示最后一片）或错误
+     */
+    private record StreamEvent(byte[] audio, boolean last, String error) {
+        static StreamEvent error(String message) {
+            return new StreamEvent(null, true, message);
+        }
+    }
+
+    /**
+     * 解析服务端消息：[版本|头长度][消息类型|标志][序列化|压缩][保留]，之后为负载
+     * 音频消息的标志不为0时负载为 [序号 int32][长度 int32][音频]，序号为负表示最后一片；标志为0的是确认消息，没有音频
+     * 错误消息的负载为 [错误码 int32][长度 int32][错误信息]
+     *
+     * @return 音频或错误事件，无需处理的消息返回null
+     */
+    private StreamEvent parseResponse(byte[] message) {
+        if (message.length < 4) {
+            return StreamEvent.error("消息格式错误");
+        }
+        ByteBuffer buffer = ByteBuffer.wrap(message);
+        int headerSize = (message[0] & 0x0F) * 4;
+        int messageType = (message[1] & 0xF0) >> 4;
+        int flags = message[1] & 0x0F;
+        int compression = message[2] & 0x0F;
+        buffer.position(headerSize);
+
+        if (messageType == MESSAGE_AUDIO_ONLY_RESPONSE) {
+            if (flags == 0) {
+                return null;
+            }
+            int sequence = buffer.getInt();
+            byte[] audio = new byte[buffer.getInt()];
+            buffer.get(audio);
+            return new StreamEvent(audio, sequence < 0, null);
+        }
+        if (messageType == MESSAGE_ERROR) {
+            int code = buffer.getInt();
+            byte[] error = new byte[buffer.getInt()];
+            buffer.get(error);
+            if (compression == COMPRESSION_GZIP) {
+                try (GZIPInputStream in = new GZIPInputStream(new ByteArrayInputStream(error))) {
+                    error = in.readAllBytes();
+                } catch (IOException e) {
+                    return StreamEvent.error("code=" + code);
+                }
+            }
+            String errorMessage = new String(error, StandardCharsets.UTF_8);
+            logger.error("TTS流式请求返回错误: code={}, message={}", code, errorMessage);
+            return StreamEvent.error("code=" + code + ", message=" + errorMessage);
+        }
+        // 其他消息（如前端信息）不含音频
+        return null;
+    }
+
+    /**
+     * 构建请求参数
+     *
+     * @param encoding  音频编码，wav 或 pcm
+     * @param operation query 为一次性返回，submit 为流式返回
+     */
+    private JsonObject buildRequest(String text, String encoding, String operation) {
+        JsonObject requestJson = new JsonObject();
+
+        // app部分
+        JsonObject app = new JsonObject();
+        app.addProperty("appid", appId);
+        app.addProperty("token", accessToken);
+        app.addProperty("cluster", "volcano_tts");
+        requestJson.add("app", app);
+
+        // user部分
+        JsonObject user = new JsonObject();
+        user.addProperty("uid", UUID.randomUUID().toString());
+        requestJson.add("user", user);
+
+        // audio部分
+        JsonObject audio = new JsonObject();
+        audio.addProperty("voice_type", voiceName);
+        audio.addProperty("encoding", encoding);
+        audio.addProperty("speed_ratio", 1.0);
+        audio.addProperty("volume_ratio", 1.0);
+        audio.addProperty("pitch_ratio", 1.0);
+        audio.addProperty("rate", AudioUtils.SAMPLE_RATE);
+        requestJson.add("audio", audio);
+
+        // request部分
+        JsonObject request_JsonObject = new JsonObject();
+        request_JsonObject.addProperty("reqid", UUID.randomUUID().toString());
+        request_JsonObject.addProperty("text", text);
+        request_JsonObject.addProperty("text_type", "plain");
+        request_JsonObject.addProperty("operation", operation);
+        request_JsonObject.addProperty("with_frontend", 1);
+        request_JsonObject.addProperty("frontend_type", "unitTson");
+        requestJson.add("request", request_JsonObject);
+        return requestJson;
+    }
+
     /**
      * 发送POST请求到火山引擎API，获取语音合成结果
+     *
+     * @param encoding 音频编码，wav 或 pcm
+     * @return 音频数据，失败时返回null
      */
-    private boolean sendRequest(String text, String audioFilePath) throws Exception {
+    private byte[] sendRequest(String text, String encoding) throws Exception {
         try {
-            // 构建请求参数
-            JsonObject requestJson = new JsonObject();
-
-            // app部分
-            JsonObject app = new JsonObject();
-            app.addProperty("appid", appId);
-            app.addProperty("token", accessToken);
-            app.addProperty("cluster", "volcano_tts");
-            requestJson.add("app", app);
-
-            // user部分
-            JsonObject user = new JsonObject();
-            user.addProperty("uid", UUID.randomUUID().toString());
-            requestJson.add("user", user);
-
-            // audio部分
-            JsonObject audio = new JsonObject();
-            audio.addProperty("voice_type", voiceName);
-            audio.addProperty("encoding", "wav");
-            audio.addProperty("speed_ratio", 1.0);
-            audio.addProperty("volume_ratio", 1.0);
-            audio.addProperty("pitch_ratio", 1.0);
-            audio.addProperty("rate", AudioUtils.SAMPLE_RATE);
-            requestJson.add("audio", audio);
-
-            // request部分
-            JsonObject request_JsonObject = new JsonObject();
-            request_JsonObject.addProperty("reqid", UUID.randomUUID().toString());
-            request_JsonObject.addProperty("text", text);
-            request_JsonObject.addProperty("text_type", "plain");
-            request_JsonObject.addProperty("operation", "query");
-            request_JsonObject.addProperty("with_frontend", 1);
-            request_JsonObject.addProperty("frontend_type", "unitTson");
-            requestJson.add("request", request_JsonObject);
+            JsonObject requestJson = buildRequest(text, encoding, "query");
 
             // 使用Bearer Token鉴权方式
             String bearerToken = "Bearer; " + accessToken; // 注意分号是火山引擎的特殊格式
@@ -130,7 +301,7 @@ public class VolcengineTtsService implements TtsService {
                 if (!response.isSuccessful()) {
                     String errorBody = response.body() != null ? response.body().string() : "无响应体";
                     logger.error("TTS请求失败: {} {}, 错误信息: {}, 原始内容: {}", response.code(), response.message(), errorBody, text);
-                    return false;
+                    return null;
                 }
 
                 // 解析响应
@@ -143,28 +314,20 @@ public class VolcengineTtsService implements TtsService {
                         logger.error("TTS请求返回错误: code={}, message={}",
                                 jsonResponse.get("code").getAsInt(),
                                 jsonResponse.get("message").getAsString());
-                        return false;
+                        return null;
                     }
 
                     // 获取音频数据
                     if (jsonResponse.has("data")) {
                         String base64Audio = jsonResponse.get("data").getAsString();
-                        byte[] audioData = Base64.getDecoder().decode(base64Audio);
-
-                        // 保存音频文件
-                        File audioFile = new File(audioFilePath);
-                        try (FileOutputStream fout = new FileOutputStream(audioFile)) {
-                            fout.write(audioData);
-                        }
-
-                        return true;
+                        return Base64.getDecoder().decode(base64Audio);
                     } else {
                         logger.error("TTS响应中未找到音频数据: {}", responseBody);
-                        return false;
+                        return null;
                     }
                 } else {
                     logger.error("TTS响应体为空");
-                    return false;
+                    return null;
                 }
             }
         } catch (Exception e) {
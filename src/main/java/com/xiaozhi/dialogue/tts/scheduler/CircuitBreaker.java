@@ -0,0 +1,79 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+/**
+ * TTS服务的熔断器
+ * 连续失败达到阈值后打开，打开期间不再发出请求；到期后半开，只放行一个探测请求，成功则关闭，失败则重新打开。
+ * 非线程安全，由所属的 {@link ProviderLane} 在锁内调用。
+ */
+final class CircuitBreaker {
+
+    enum State {
+        CLOSED, HALF_OPEN, OPEN
+    }
+
+    private final int failureThreshold;
+    private final long openNanos;
+    private State state = State.CLOSED;
+    private int failures = 0;
+    private long openUntil = 0;
+    private boolean probing = false;
+
+    CircuitBreaker(int failureThreshold, long openNanos) {
+        this.failureThreshold = Math.max(1, failureThreshold);
+        this.openNanos = openNanos;
+    }
+
+    /**
+     * 当前是否可以发出请求，半开状态下放行后需要调用 {@link #onDispatch()}
+     */
+    boolean allowRequest(long now) {
+        if (state == State.OPEN && now - openUntil >= 0) {
+            state = State.HALF_OPEN;
+            probing = false;
+        }
+        return switch (state) {
+            case CLOSED -> true;
+            case HALF_OPEN -> !probing;
+            case OPEN -> false;
+        };
+    }
+
+    void onDispatch() {
+        if (state == State.HALF_OPEN) {
+            probing = true;
+        }
+    }
+
+    void onSuccess() {
+        state = State.CLOSED;
+        failures = 0;
+        probing = false;
+    }
+
+    /**
+     * 记录一次失败
+     *
+     * @return 是否因此次失败打开了熔断器
+     */
+    boolean onFailure(long now) {
+        failures++;
+        if (state == State.HALF_OPEN || (state == State.CLOSED && failures >= failureThreshold)) {
+            state = State.OPEN;
+            openUntil = now + openNanos;
+            probing = false;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * 距离半开还需等待的纳秒数，未打开时为0
+     */
+    long remainingOpenNanos(long now) {
+        return state == State.OPEN ? Math.max(0, openUntil - now) : 0;
+    }
+
+    State getState() {
+        return state;
+    }
+}
@@ -0,0 +1,444 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 一个TTS服务提供商的调度通道，所有会话共享
+ * <ul>
+ * <li>总并发不超过 maxConcurrent，单个会话不超过 perSession</li>
+ * <li>令牌桶限制每秒发出的请求数，令牌不足时定时唤醒再调度</li>
+ * <li>有待处理任务的会话按轮转顺序出队，首句和重试任务优先</li>
+ * <li>会话关闭或一轮对话中止时丢弃相应的排队任务，不再重试</li>
+ * <li>熔断器打开时排队的任务立即失败，新任务直接拒绝，不再等待超时；失败的任务按指数退避加随机抖动重试</li>
+ * </ul>
+ * 状态只在锁内修改，合成在虚拟线程中执行，不持有锁。
+ */
+final class ProviderLane {
+    private static final Logger logger = LoggerFactory.getLogger(ProviderLane.class);
+
+    /**
+     * 通道的限制参数
+     */
+    record Limits(int maxConcurrent, int perSession, double ratePerSecond, int burst,
+            int failureThreshold, long openMs, int maxRetries, long backoffMs, long maxBackoffMs) {
+    }
+
+    /**
+     * 一个会话在该通道中的待处理任务
+     */
+    static final class SessionQueue {
+        final String sessionId;
+        final PriorityQueue<TtsJob> jobs = new PriorityQueue<>();
+        int inFlight = 0;
+        // 等待退避后重新入队的任务数，期间不回收队列，会话关闭时才能找到并丢弃
+        int retrying = 0;
+        boolean inReady = false;
+        boolean cancelled = false;
+        // 被中止的一轮对话，该轮的任务不再合成和重试
+        Long cancelledDialogue = null;
+
+        SessionQueue(String sessionId) {
+            this.sessionId = sessionId;
+        }
+
+        /**
+         * 会话已关闭或任务所属的对话已中止
+         */
+        boolean drops(TtsJob job) {
+            return cancelled || (job.dialogueId != null && job.dialogueId.equals(cancelledDialogue));
+        }
+    }
+
+    private final String provider;
+    private final Limits limits;
+    private final TokenBucket bucket;
+    private final CircuitBreaker breaker;
+    private final ScheduledExecutorService timer;
+
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Map<String, SessionQueue> sessions = new HashMap<>();
+    // 可以出队的会话，按轮转顺序排列
+    private final ArrayDeque<SessionQueue> ready = new ArrayDeque<>();
+    private int queued = 0;
+    private int urgent = 0;
+    private int inFlight = 0;
+    private boolean wakeupScheduled = false;
+
+    private final Timer queueWait;
+    private final Timer synthesisSuccess;
+    private final Timer synthesisFailure;
+    private final Counter retries;
+    private final Counter rejected;
+
+    ProviderLane(String provider, Limits limits, ScheduledExecutorService timer, MeterRegistry meterRegistry) {
+        this.provider = provider;
+        this.limits = limits;
+        this.bucket = new TokenBucket(limits.ratePerSecond(), limits.burst());
+        this.breaker = new CircuitBreaker(limits.failureThreshold(), TimeUnit.MILLISECONDS.toNanos(limits.openMs()));
+        this.timer = timer;
+
+        Gauge.builder("xiaozhi.tts.scheduler.queued", this, lane -> lane.queued)
+                .description("排队等待合成的句子数")
+                .tag("provider", provider)
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.tts.scheduler.inflight", this, lane -> lane.inFlight)
+                .description("正在合成的句子数")
+                .tag("provider", provider)
+                .register(meterRegistry);
+        Gauge.builder("xiaozhi.tts.scheduler.breaker", this, lane -> lane.breaker.getState().ordinal())
+                .description("熔断器状态：0关闭 1半开 2打开")
+                .tag("provider", provider)
+                .register(meterRegistry);
+        queueWait = Timer.builder("xiaozhi.tts.queue.wait")
+                .description("句子排队等待合成的时间")
+                .tag("provider", provider)
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        synthesisSuccess = Timer.builder("xiaozhi.tts.synthesis")
+                .description("单次合成耗时，不含排队")
+                .tags("provider", provider, "result", "success")
+                .publishPercentiles(0.5, 0.95, 0.99)
+                .register(meterRegistry);
+        synthesisFailure = Timer.builder("xiaozhi.tts.synthesis")
+                .description("单次合成耗时，不含排队")
+                .tags("provider", provider, "result", "failure")
+                .register(meterRegistry);
+        retries = meterRegistry.counter("xiaozhi.tts.scheduler.retries", "provider", provider);
+        rejected = meterRegistry.counter("xiaozhi.tts.scheduler.rejected", "provider", provider);
+    }
+
+    /**
+     * 提交任务，熔断器打开期间直接拒绝，会话已关闭时直接丢弃
+     */
+    void submit(TtsJob job) {
+        boolean accepted;
+        lock.lock();
+        try {
+            SessionQueue queue = sessions.computeIfAbsent(job.sessionId, SessionQueue::new);
+            if (queue.drops(job)) {
+                return;
+            }
+            accepted = breaker.remainingOpenNanos(System.nanoTime()) == 0;
+            if (accepted) {
+                enqueue(job, queue);
+            } else {
+                release(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!accepted) {
+            reject(List.of(job));
+            return;
+        }
+        dispatch();
+    }
+
+    /**
+     * 会话关闭，丢弃其排队和等待重试的任务，正在合成的任务完成后不再重试。
+     * 仍有任务在合成时保留队列，之后提交的同一会话任务不会另建队列绕过会话并发限制。
+     */
+    void cancel(String sessionId) {
+        lock.lock();
+        try {
+            SessionQueue queue = sessions.get(sessionId);
+            if (queue == null) {
+                return;
+            }
+            queue.cancelled = true;
+            for (TtsJob job : queue.jobs) {
+                queued--;
+                if (job.isUrgent()) {
+                    urgent--;
+                }
+            }
+            queue.jobs.clear();
+            if (queue.inReady) {
+                ready.remove(queue);
+                queue.inReady = false;
+            }
+            release(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * 中止一轮对话，丢弃该轮排队的任务，该轮正在合成和等待重试的任务不再重试，失败时也不回调。
+     * 会话的其他任务不受影响。
+     */
+    void cancel(String sessionId, Long dialogueId) {
+        lock.lock();
+        try {
+            SessionQueue queue = sessions.get(sessionId);
+            if (queue == null) {
+                return;
+            }
+            queue.cancelledDialogue = dialogueId;
+            for (Iterator<TtsJob> it = queue.jobs.iterator(); it.hasNext();) {
+                TtsJob job = it.next();
+                if (queue.drops(job)) {
+                    it.remove();
+                    queued--;
+                    if (job.isUrgent()) {
+                        urgent--;
+                    }
+                }
+            }
+            if (queue.inReady && queue.jobs.isEmpty()) {
+                ready.remove(queue);
+                queue.inReady = false;
+            }
+            release(queue);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void enqueue(TtsJob job, SessionQueue queue) {
+        job.queue = queue;
+        job.enqueuedAt = System.nanoTime();
+        queue.jobs.add(job);
+        queued++;
+        if (job.isUrgent()) {
+            urgent++;
+        }
+        markReady(queue);
+    }
+
+    private void markReady(SessionQueue queue) {
+        if (!queue.inReady && !queue.jobs.isEmpty() && queue.inFlight < limits.perSession()) {
+            ready.addLast(queue);
+            queue.inReady = true;
+        }
+    }
+
+    /**
+     * 在并发、限速和熔断允许的范围内尽可能多地发出任务
+     */
+    private void dispatch() {
+        List<TtsJob> started = new ArrayList<>();
+        lock.lock();
+        try {
+            while (inFlight < limits.maxConcurrent() && !ready.isEmpty()) {
+                long now = System.nanoTime();
+                if (!breaker.allowRequest(now)) {
+                    // 打开时等到半开再调度，半开时等探测请求完成
+                    long wait = breaker.remainingOpenNanos(now);
+                    if (wait > 0) {
+                        scheduleWakeup(wait);
+                    }
+                    break;
+                }
+                long wait = bucket.tryAcquire(now);
+                if (wait > 0) {
+                    scheduleWakeup(wait);
+                    break;
+                }
+
+                SessionQueue queue = pollReady();
+                TtsJob job = queue.jobs.poll();
+                queue.inReady = false;
+                queued--;
+                if (job.isUrgent()) {
+                    urgent--;
+                }
+                queue.inFlight++;
+                inFlight++;
+                breaker.onDispatch();
+                markReady(queue);
+                started.add(job);
+            }
+        } finally {
+            lock.unlock();
+        }
+        for (TtsJob job : started) {
+            Thread.startVirtualThread(() -> run(job));
+        }
+    }
+
+    /**
+     * 轮转取出下一个会话，有首句或重试任务时优先取队头为这类任务的会话
+     */
+    private SessionQueue pollReady() {
+        if (urgent > 0) {
+            for (Iterator<SessionQueue> it = ready.iterator(); it.hasNext();) {
+                SessionQueue queue = it.next();
+                if (queue.jobs.peek().isUrgent()) {
+                    it.remove();
+                    return queue;
+                }
+            }
+        }
+        return ready.pollFirst();
+    }
+
+    private void scheduleWakeup(long nanos) {
+        if (wakeupScheduled) {
+            return;
+        }
+        wakeupScheduled = true;
+        timer.schedule(() -> {
+            lock.lock();
+            try {
+                wakeupScheduled = false;
+            } finally {
+                lock.unlock();
+            }
+            dispatch();
+        }, nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private void run(TtsJob job) {
+        long start = System.nanoTime();
+        queueWait.record(start - job.enqueuedAt, TimeUnit.NANOSECONDS);
+        Throwable error = null;
+        try {
+            job.attempt.run();
+        } catch (Throwable e) {
+            error = e;
+        }
+        (error == null ? synthesisSuccess : synthesisFailure).record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+        complete(job, error);
+    }
+
+    private void complete(TtsJob job, Throwable error) {
+        SessionQueue queue = job.queue;
+        List<TtsJob> dropped = List.of();
+        boolean retry = false;
+        boolean discarded;
+        lock.lock();
+        try {
+            inFlight--;
+            queue.inFlight--;
+            discarded = queue.drops(job);
+            if (error == null) {
+                breaker.onSuccess();
+            } else if (breaker.onFailure(System.nanoTime())) {
+                logger.warn("TTS服务 {} 连续失败，熔断 {} 毫秒", provider, limits.openMs());
+                dropped = drainQueued();
+            } else if (!discarded && job.retries < limits.maxRetries()) {
+                retry = true;
+                queue.retrying++;
+            }
+            if (!queue.cancelled) {
+                markReady(queue);
+            }
+            release(queue);
+        } finally {
+            lock.unlock();
+        }
+
+        if (retry) {
+            job.retries++;
+            retries.increment();
+            long delay = backoff(job.retries);
+            logger.info("TTS任务重试 - 服务: {}, 序号: {}, 重试次数: {}/{}, {}毫秒后重试, 原因: {}",
+                    provider, job.seq, job.retries, limits.maxRetries(), delay, error.getMessage());
+            timer.schedule(() -> retry(job), delay, TimeUnit.MILLISECONDS);
+        } else if (error != null && !discarded) {
+            giveUp(job, error);
+        }
+        reject(dropped);
+        dispatch();
+    }
+
+    private void retry(TtsJob job) {
+        SessionQueue queue = job.queue;
+        boolean accepted;
+        boolean discarded;
+        lock.lock();
+        try {
+            queue.retrying--;
+            discarded = queue.drops(job);
+            accepted = !discarded && breaker.remainingOpenNanos(System.nanoTime()) == 0;
+            if (accepted) {
+                enqueue(job, queue);
+            } else {
+                release(queue);
+            }
+        } finally {
+            lock.unlock();
+        }
+        if (!accepted && !discarded) {
+            reject(List.of(job));
+        }
+        dispatch();
+    }
+
+    /**
+     * 会话没有排队、合成中和等待重试的任务时回收队列
+     */
+    private void release(SessionQueue queue) {
+        if (idle(queue)) {
+            sessions.remove(queue.sessionId, queue);
+        }
+    }
+
+    private static boolean idle(SessionQueue queue) {
+        return queue.jobs.isEmpty() && queue.inFlight == 0 && queue.retrying == 0;
+    }
+
+    /**
+     * 熔断器打开，取出所有排队的任务
+     */
+    private List<TtsJob> drainQueued() {
+        List<TtsJob> drained = new ArrayList<>(queued);
+        for (SessionQueue queue : sessions.values()) {
+            drained.addAll(queue.jobs);
+            queue.jobs.clear();
+            queue.inReady = false;
+        }
+        ready.clear();
+        queued = 0;
+        urgent = 0;
+        // 仍有任务在合成或等待重试的会话保留队列，否则新提交的任务会另建队列，超出会话并发限制
+        sessions.values().removeIf(ProviderLane::idle);
+        return drained;
+    }
+
+    private void reject(List<TtsJob> jobs) {
+        if (jobs.isEmpty()) {
+            return;
+        }
+        RejectedExecutionException error = new RejectedExecutionException("TTS服务 " + provider + " 熔断中");
+        for (TtsJob job : jobs) {
+            rejected.increment();
+            giveUp(job, error);
+        }
+    }
+
+    private void giveUp(TtsJob job, Throwable error) {
+        try {
+            job.onGiveUp.accept(error);
+        } catch (Exception e) {
+            logger.error("处理TTS失败回调出错 - 服务: {}, 序号: {}", provider, job.seq, e);
+        }
+    }
+
+    /**
+     * 指数退避，取 [delay/2, delay] 之间的随机值，避免同一时刻失败的任务同时重试
+     */
+    private long backoff(int attempt) {
+        long delay = Math.min(limits.maxBackoffMs(), limits.backoffMs() << Math.min(attempt - 1, 20));
+        return delay / 2 + ThreadLocalRandom.current().nextLong(delay / 2 + 1);
+    }
+}
@@ -0,0 +1,43 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+/**
+ * 令牌桶，限制每秒发往TTS服务的请求数
+ * 非线程安全，由所属的 {@link ProviderLane} 在锁内调用。
+ */
+final class TokenBucket {
+
+    private final double capacity;
+    // 每纳秒补充的令牌数
+    private final double refillPerNano;
+    private double tokens;
+    private long lastRefill;
+
+    /**
+     * @param ratePerSecond 每秒补充的令牌数，不大于0表示不限速
+     * @param burst         桶容量，允许的突发请求数
+     */
+    TokenBucket(double ratePerSecond, int burst) {
+        this.capacity = Math.max(1, burst);
+        this.refillPerNano = ratePerSecond / 1_000_000_000d;
+        this.tokens = capacity;
+        this.lastRefill = System.nanoTime();
+    }
+
+    /**
+     * 尝试取一个令牌
+     *
+     * @return 0 表示已取得，否则为需要等待的纳秒数
+     */
+    long tryAcquire(long now) {
+        if (refillPerNano <= 0) {
+            return 0;
+        }
+        tokens = Math.min(capacity, tokens + (now - lastRefill) * refillPerNano);
+        lastRefill = now;
+        if (tokens >= 1) {
+            tokens -= 1;
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / refillPerNano);
+    }
+}
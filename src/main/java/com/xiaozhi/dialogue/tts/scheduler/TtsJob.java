@@ -0,0 +1,53 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+import java.util.function.Consumer;
+
+/**
+ * 排队等待发往TTS服务的一次合成
+ * 同一会话内的优先级：重试 > 首句 > 序号小的句子。
+ */
+final class TtsJob implements Comparable<TtsJob> {
+
+    final String sessionId;
+    // 对话ID，即该轮助手消息的创建时间戳，用于中止一轮对话时丢弃其任务
+    final Long dialogueId;
+    final boolean first;
+    final int seq;
+    final TtsScheduler.Attempt attempt;
+    final Consumer<Throwable> onGiveUp;
+
+    // 所属会话的队列，由 ProviderLane 在锁内维护
+    ProviderLane.SessionQueue queue;
+    int retries = 0;
+    long enqueuedAt;
+
+    TtsJob(String sessionId, Long dialogueId, boolean first, int seq, TtsScheduler.Attempt attempt,
+            Consumer<Throwable> onGiveUp) {
+        this.sessionId = sessionId;
+        this.dialogueId = dialogueId;
+        this.first = first;
+        this.seq = seq;
+        this.attempt = attempt;
+        this.onGiveUp = onGiveUp;
+    }
+
+    /**
+     * 首句和重试跨会话优先调度
+     */
+    boolean isUrgent() {
+        return first || retries > 0;
+    }
+
+    @Override
+    public int compareTo(TtsJob other) {
+        boolean retry = retries > 0;
+        boolean otherRetry = other.retries > 0;
+        if (retry != otherRetry) {
+            return retry ? -1 : 1;
+        }
+        if (first != other.first) {
+            return first ? -1 : 1;
+        }
+        return Integer.compare(seq, other.seq);
+    }
+}
@@ -0,0 +1,153 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.annotation.Resource;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.core.env.Environment;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.function.Consumer;
+
+/**
+ * 所有会话共享的TTS调度器
+ * 每个服务提供商一个调度通道（{@link ProviderLane}），限制总并发、每秒请求数和单个会话的并发，会话之间轮转调度，首句优先。
+ * 合成失败由调度器按指数退避重试，连续失败时熔断，熔断期间排队和新提交的任务立即失败，避免大量请求等待超时后集中重试。
+ * <p>
+ * 默认参数对所有提供商生效，可以按提供商覆盖，例如：
+ * <pre>
+ * tts.scheduler.providers.aliyun.max-concurrent=10
+ * tts.scheduler.providers.aliyun.rate=5
+ * </pre>
+ */
+@Component
+public class TtsScheduler {
+    private static final Logger logger = LoggerFactory.getLogger(TtsScheduler.class);
+
+    /**
+     * 一次合成，抛出异常表示失败
+     */
+    @FunctionalInterface
+    public interface Attempt {
+        void run() throws Exception;
+    }
+
+    // 每个提供商的最大并发合成数
+    @Value("${tts.scheduler.max-concurrent:32}")
+    private int maxConcurrent;
+
+    // 每个会话的最大并发合成数
+    @Value("${tts.scheduler.per-session:3}")
+    private int perSession;
+
+    // 每个提供商每秒最多发出的请求数，0表示不限
+    @Value("${tts.scheduler.rate:20}")
+    private double rate;
+
+    // 令牌桶容量，允许的突发请求数
+    @Value("${tts.scheduler.burst:40}")
+    private int burst;
+
+    // 连续失败多少次后熔断
+    @Value("${tts.scheduler.breaker.failure-threshold:5}")
+    private int failureThreshold;
+
+    // 熔断持续时间（毫秒），之后放行一个探测请求
+    @Value("${tts.scheduler.breaker.open-ms:10000}")
+    private long openMs;
+
+    // 最大重试次数
+    @Value("${tts.scheduler.retry.max:2}")
+    private int maxRetries;
+
+    // 首次重试的退避时间（毫秒），之后每次翻倍
+    @Value("${tts.scheduler.retry.backoff-ms:500}")
+    private long backoffMs;
+
+    // 退避时间上限（毫秒）
+    @Value("${tts.scheduler.retry.max-backoff-ms:4000}")
+    private long maxBackoffMs;
+
+    @Resource
+    private Environment environment;
+
+    @Resource
+    private MeterRegistry meterRegistry;
+
+    private final Map<String, ProviderLane> lanes = new ConcurrentHashMap<>();
+    private ScheduledExecutorService timer;
+
+    @PostConstruct
+    public void init() {
+        timer = Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform()
+                .name("tts-scheduler")
+                .daemon()
+                .factory());
+    }
+
+    @PreDestroy
+    public void destroy() {
+        if (timer != null) {
+            timer.shutdownNow();
+        }
+    }
+
+    /**
+     * 提交一次合成
+     *
+     * @param provider  TTS服务提供商
+     * @param sessionId 会话ID，同一会话的任务共享会话并发限制
+     * @param dialogueId 对话ID，中止该轮对话时丢弃其任务
+     * @param first     是否为首句
+     * @param seq       句子序号，同一会话内序号小的先合成
+     * @param attempt   合成逻辑，失败时抛出异常，调度器决定是否重试
+     * @param onGiveUp  重试用尽或熔断时调用，会话关闭后丢弃的任务不会调用
+     */
+    public void submit(String provider, String sessionId, Long dialogueId, boolean first, int seq, Attempt attempt,
+            Consumer<Throwable> onGiveUp) {
+        lanes.computeIfAbsent(provider, this::createLane)
+                .submit(new TtsJob(sessionId, dialogueId, first, seq, attempt, onGiveUp));
+    }
+
+    /**
+     * 会话关闭时丢弃其尚未开始的任务
+     */
+    public void cancel(String sessionId) {
+        for (ProviderLane lane : lanes.values()) {
+            lane.cancel(sessionId);
+        }
+    }
+
+    /**
+     * 中止一轮对话时丢弃该轮尚未开始的任务，会话之后的对话照常调度
+     */
+    public void cancel(String sessionId, Long dialogueId) {
+        for (ProviderLane lane : lanes.values()) {
+            lane.cancel(sessionId, dialogueId);
+        }
+    }
+
+    private ProviderLane createLane(String provider) {
+        String prefix = "tts.scheduler.providers." + provider + ".";
+        ProviderLane.Limits limits = new ProviderLane.Limits(
+                environment.getProperty(prefix + "max-concurrent", Integer.class, maxConcurrent),
+                environment.getProperty(prefix + "per-session", Integer.class, perSession),
+                environment.getProperty(prefix + "rate", Double.class, rate),
+                environment.getProperty(prefix + "burst", Integer.class, burst),
+                environment.getProperty(prefix + "breaker.failure-threshold", Integer.class, failureThreshold),
+                environment.getProperty(prefix + "breaker.open-ms", Long.class, openMs),
+                environment.getProperty(prefix + "retry.max", Integer.class, maxRetries),
+                backoffMs,
+                maxBackoffMs);
+        logger.info("创建TTS调度通道 - 服务: {}, 并发: {}, 单会话并发: {}, 速率: {}/秒, 突发: {}",
+                provider, limits.maxConcurrent(), limits.perSession(), limits.ratePerSecond(), limits.burst());
+        return new ProviderLane(provider, limits, timer, meterRegistry);
+    }
+}
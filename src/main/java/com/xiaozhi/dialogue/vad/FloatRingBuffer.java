@@ -0,0 +1,55 @@
+package com.xiaozhi.dialogue.vad;
+
+/**
+ * 定长float环形缓冲区，保存最近N个值，避免装箱和列表头部删除
+ * 非线程安全，由调用方加锁。
+ */
+public class FloatRingBuffer {
+    private final float[] values;
+    // 下一个写入位置
+    private int next = 0;
+    private int size = 0;
+
+    public FloatRingBuffer(int capacity) {
+        this.values = new float[Math.max(1, capacity)];
+    }
+
+    public void add(float value) {
+        values[next] = value;
+        next = (next + 1) % values.length;
+        if (size < values.length) {
+            size++;
+        }
+    }
+
+    /**
+     * 最近写入的值，为空时返回默认值
+     */
+    public float last(float defaultValue) {
+        if (size == 0) {
+            return defaultValue;
+        }
+        return values[(next - 1 + values.length) % values.length];
+    }
+
+    /**
+     * 按写入顺序复制出全部值
+     */
+    public float[] toArray() {
+        float[] result = new float[size];
+        int start = (next - size + values.length) % values.length;
+        for (int i = 0; i < size; i++) {
+            result[i] = values[(start + i) % values.length];
+        }
+        return result;
+    }
+
+    public void clear() {
+        next = 0;
+        size = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+}
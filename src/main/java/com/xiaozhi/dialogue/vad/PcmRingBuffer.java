@@ -0,0 +1,150 @@
+package com.xiaozhi.dialogue.vad;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+
+/**
+ * 有上限的分块PCM环形缓冲区
+ * 按固定大小的块按需分配，增长时不复制已有数据；块数达到上限后作为环形缓冲区覆盖最旧的数据，
+ * 单个会话占用的内存不超过上限。清空时只保留第一块，空闲会话只占一块内存。非线程安全，由调用方加锁。
+ */
+public class PcmRingBuffer {
+
+    private final int chunkSize;
+    private final byte[][] chunks;
+    // 已分配的块数
+    private int allocated = 0;
+    // 最旧数据的逻辑位置，只有块数达到上限后才会不为0
+    private int head = 0;
+    private int size = 0;
+    // 超过上限被覆盖的字节数
+    private long droppedBytes = 0;
+
+    /**
+     * @param chunkSize   每块大小（字节），按16位样本对齐
+     * @param maxCapacity 容量上限（字节），向上取整到整块
+     */
+    public PcmRingBuffer(int chunkSize, int maxCapacity) {
+        this.chunkSize = Math.max(2, chunkSize & ~1);
+        int maxChunks = Math.max(1, (maxCapacity + this.chunkSize - 1) / this.chunkSize);
+        this.chunks = new byte[maxChunks][];
+    }
+
+    public void write(byte[] data) {
+        if (data != null) {
+            write(data, 0, data.length);
+        }
+    }
+
+    public void write(byte[] data, int offset, int length) {
+        if (length <= 0) {
+            return;
+        }
+        int maxCapacity = chunks.length * chunkSize;
+        // 单次写入超过上限时只保留末尾部分
+        if (length > maxCapacity) {
+            int skip = length - maxCapacity;
+            droppedBytes += skip;
+            offset += skip;
+            length = maxCapacity;
+        }
+
+        while (allocated * chunkSize < size + length && allocated < chunks.length) {
+            chunks[allocated++] = new byte[chunkSize];
+        }
+        int capacity = allocated * chunkSize;
+
+        // 已达上限，覆盖最旧的数据
+        int overflow = size + length - capacity;
+        if (overflow > 0) {
+            head = (head + overflow) % capacity;
+            size -= overflow;
+            droppedBytes += overflow;
+        }
+
+        int position = (head + size) % capacity;
+        int remaining = length;
+        while (remaining > 0) {
+            int chunkOffset = position % chunkSize;
+            int n = Math.min(remaining, chunkSize - chunkOffset);
+            System.arraycopy(data, offset, chunks[position / chunkSize], chunkOffset, n);
+            offset += n;
+            remaining -= n;
+            position = (position + n) % capacity;
+        }
+        size += length;
+    }
+
+    /**
+     * 复制出全部数据
+     */
+    public byte[] toByteArray() {
+        byte[] result = new byte[size];
+        int capacity = allocated * chunkSize;
+        int position = head;
+        int written = 0;
+        while (written < size) {
+            int chunkOffset = position % chunkSize;
+            int n = Math.min(size - written, chunkSize - chunkOffset);
+            System.arraycopy(chunks[position / chunkSize], chunkOffset, result, written, n);
+            written += n;
+            position = (position + n) % capacity;
+        }
+        return result;
+    }
+
+    /**
+     * 直接将缓冲区内容写入通道，不产生中间数组
+     *
+     * @return 写入的字节数
+     */
+    public long writeTo(WritableByteChannel channel) throws IOException {
+        int capacity = allocated * chunkSize;
+        int position = head;
+        int written = 0;
+        while (written < size) {
+            int chunkOffset = position % chunkSize;
+            int n = Math.min(size - written, chunkSize - chunkOffset);
+            ByteBuffer slice = ByteBuffer.wrap(chunks[position / chunkSize], chunkOffset, n);
+            while (slice.hasRemaining()) {
+                channel.write(slice);
+            }
+            written += n;
+            position = (position + n) % capacity;
+        }
+        return size;
+    }
+
+    /**
+     * 清空数据，只保留第一块
+     */
+    public void clear() {
+        for (int i = 1; i < allocated; i++) {
+            chunks[i] = null;
+        }
+        allocated = Math.min(allocated, 1);
+        head = 0;
+        size = 0;
+        droppedBytes = 0;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 当前分配的容量
+     */
+    public int capacity() {
+        return allocated * chunkSize;
+    }
+
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+}
@@ -11,19 +11,35 @@ public interface VadModel {
 
     /**
      * 获取语音概率
-     * 
+     *
      * @param samples 音频样本数据
      * @return 语音概率 (0.0-1.0)
      */
     float getSpeechProbability(float[] samples);
 
+    /**
+     * 获取指定会话的语音概率，模型的循环状态按会话隔离
+     *
+     * @param sessionId 会话ID
+     * @param samples   音频样本数据
+     * @return 语音概率 (0.0-1.0)
+     */
+    float getSpeechProbability(String sessionId, float[] samples);
+
     /**
      * 重置模型状态
      */
     void reset();
 
+    /**
+     * 重置指定会话的模型状态
+     *
+     * @param sessionId 会话ID
+     */
+    void reset(String sessionId);
+
     /**
      * 关闭模型资源
      */
     void close();
-}
\ No newline at end of file
+}
@@ -15,24 +15,83 @@ import com.xiaozhi.utils.AudioUtils;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
 /**
  * Silero VAD模型实现
+ * 模型的循环状态按会话保存，所有会话的窗口在一个很短的聚合窗口内合并成一次 [N,512] 的批量推理。
  */
 @Component
 public class SileroVadModel implements VadModel {
     private static final Logger logger = LoggerFactory.getLogger(SileroVadModel.class);
 
+    // 16kHz的窗口大小
+    private static final int WINDOW_SIZE = 512;
+    // 模型状态的维度 [2, N, 128]
+    private static final int STATE_LAYERS = 2;
+    private static final int STATE_DIM = 128;
+    private static final int STATE_SIZE = STATE_LAYERS * STATE_DIM;
+    // 不带会话的调用共用此状态（兼容旧接口）
+    private static final String DEFAULT_SESSION = "default";
+    // 等待批量推理结果的超时时间（毫秒）
+    private static final long INFERENCE_TIMEOUT_MS = 1000;
+
     @Value("${vad.model.path:models/silero_vad.onnx}")
     private String modelPath;
 
+    // 是否启用跨会话批量推理，关闭后每帧单独推理
+    @Value("${vad.batch.enabled:true}")
+    private boolean batchEnabled;
+
+    // 批量聚合窗口（毫秒）
+    @Value("${vad.batch.window-ms:5}")
+    private long batchWindowMs;
+
+    // 单批最大会话数
+    @Value("${vad.batch.max-size:256}")
+    private int maxBatchSize;
+
     private OrtEnvironment env;
     private OrtSession session;
-    private float[][][] state;
-    private float[][] context;
-    private final int windowSize = 512; // 16kHz的窗口大小
+    private OnnxTensor srTensor;
+
+    // 每个会话的循环状态，按 [layer][dim] 展平
+    private final Map<String, float[]> states = new ConcurrentHashMap<>();
+
+    // 待推理的请求
+    private final LinkedBlockingQueue<InferenceRequest> pending = new LinkedBlockingQueue<>();
+    private Thread batchThread;
+    private volatile boolean running = false;
+
+    // 批量推理复用的直接内存输入，只由批量线程访问
+    private FloatBuffer inputBuffer;
+    private FloatBuffer stateBuffer;
+    // 按批大小缓存的输入张量，下标为 batchSize - 1，共享上面的直接内存
+    private OnnxTensor[] inputTensors;
+    private OnnxTensor[] stateTensors;
+    // 推理后的状态先写入这里，确认请求仍在等待后再复制回会话状态，只由批量线程访问
+    private final float[] stateScratch = new float[STATE_SIZE];
+
+    /**
+     * 一次推理请求，调用方阻塞等待结果。
+     * 同一会话的调用在 VadService 中按会话加锁串行，因此同一批次内不会出现同一会话的两个请求。
+     * 调用方超时或被中断时取消请求，批量线程只在完成请求成功时写回状态，被放弃的请求不会改动下一帧使用的状态。
+     */
+    private record InferenceRequest(float[] state, float[] samples, CompletableFuture<Float> result) {
+    }
 
     @PostConstruct
     @Override
@@ -48,72 +107,229 @@ public class SileroVadModel implements VadModel {
 
             // 创建会话
             session = env.createSession(modelPath, opts);
+            srTensor = OnnxTensor.createTensor(env, new long[] { AudioUtils.SAMPLE_RATE });
 
             // 初始化状态
             reset();
 
-            logger.info("Silero VAD模型初始化成功");
+            if (batchEnabled) {
+                startBatchThread();
+            }
+
+            logger.info("Silero VAD模型初始化成功, 批量推理: {}, 聚合窗口: {}ms, 最大批大小: {}",
+                    batchEnabled, batchWindowMs, maxBatchSize);
         } catch (OrtException e) {
             logger.error("Silero VAD模型初始化失败", e);
             throw new RuntimeException("VAD模型初始化失败", e);
         }
     }
 
+    private void startBatchThread() {
+        inputBuffer = ByteBuffer.allocateDirect(maxBatchSize * WINDOW_SIZE * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        stateBuffer = ByteBuffer.allocateDirect(maxBatchSize * STATE_SIZE * Float.BYTES)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        inputTensors = new OnnxTensor[maxBatchSize];
+        stateTensors = new OnnxTensor[maxBatchSize];
+
+        running = true;
+        batchThread = Thread.ofPlatform().name("vad-batch").daemon(true).start(this::batchLoop);
+    }
+
     @Override
     public float getSpeechProbability(float[] samples) {
+        return getSpeechProbability(DEFAULT_SESSION, samples);
+    }
+
+    @Override
+    public float getSpeechProbability(String sessionId, float[] samples) {
+        if (samples.length != WINDOW_SIZE) {
+            throw new IllegalArgumentException("样本数量必须是" + WINDOW_SIZE);
+        }
+        float[] state = states.computeIfAbsent(sessionId, k -> new float[STATE_SIZE]);
+
+        if (!batchEnabled || !running) {
+            return runSingle(state, samples);
+        }
+
+        InferenceRequest request = new InferenceRequest(state, samples, new CompletableFuture<>());
+        pending.add(request);
         try {
-            if (samples.length != windowSize) {
-                throw new IllegalArgumentException("样本数量必须是" + windowSize);
-            }
+            return request.result().get(INFERENCE_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return abandon(request);
+        } catch (ExecutionException e) {
+            logger.error("VAD模型推理失败", e.getCause());
+            return 0.0f;
+        } catch (TimeoutException e) {
+            logger.warn("VAD批量推理超时: {}", sessionId);
+            return abandon(request);
+        }
+    }
 
-            // 准备输入数据
-            float[][] x = new float[][] { samples };
+    /**
+     * 放弃等待：取消成功时批量线程不会再写回该请求的状态；取消时恰好已完成，则使用已写回状态对应的结果
+     */
+    private float abandon(InferenceRequest request) {
+        if (request.result().cancel(false)) {
+            return 0.0f;
+        }
+        try {
+            return request.result().getNow(0.0f);
+        } catch (CompletionException e) {
+            return 0.0f;
+        }
+    }
 
-            // 创建输入张量
-            OnnxTensor inputTensor = OnnxTensor.createTensor(env, x);
-            OnnxTensor stateTensor = OnnxTensor.createTensor(env, state);
-            OnnxTensor srTensor = OnnxTensor.createTensor(env, new long[] { AudioUtils.SAMPLE_RATE });
+    /**
+     * 单帧推理，每次调用单独创建张量并运行模型
+     */
+    private float runSingle(float[] state, float[] samples) {
+        try (OnnxTensor inputTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(samples), new long[] { 1, WINDOW_SIZE });
+                OnnxTensor stateTensor = OnnxTensor.createTensor(env, FloatBuffer.wrap(state),
+                        new long[] { STATE_LAYERS, 1, STATE_DIM })) {
 
-            // 准备输入映射
             Map<String, OnnxTensor> inputs = new HashMap<>();
             inputs.put("input", inputTensor);
             inputs.put("sr", srTensor);
             inputs.put("state", stateTensor);
 
+            try (OrtSession.Result result = session.run(inputs)) {
+                FloatBuffer output = ((OnnxTensor) result.get(0)).getFloatBuffer();
+                FloatBuffer newState = ((OnnxTensor) result.get(1)).getFloatBuffer();
+                newState.get(0, state, 0, STATE_SIZE);
+                return output.get(0);
+            }
+        } catch (OrtException e) {
+            logger.error("VAD模型推理失败", e);
+            return 0.0f;
+        }
+    }
+
+    /**
+     * 批量推理线程：取到第一个请求后等待一个聚合窗口，把窗口内到达的所有请求合并为一次推理
+     */
+    private void batchLoop() {
+        long windowNanos = TimeUnit.MILLISECONDS.toNanos(batchWindowMs);
+        List<InferenceRequest> batch = new ArrayList<>(maxBatchSize);
+
+        while (running) {
             try {
-                // 运行模型
-                OrtSession.Result result = session.run(inputs);
+                batch.add(pending.take());
+                long deadline = System.nanoTime() + windowNanos;
+                while (batch.size() < maxBatchSize) {
+                    pending.drainTo(batch, maxBatchSize - batch.size());
+                    long remaining = deadline - System.nanoTime();
+                    if (batch.size() >= maxBatchSize || remaining <= 0) {
+                        break;
+                    }
+                    InferenceRequest next = pending.poll(remaining, TimeUnit.NANOSECONDS);
+                    if (next == null) {
+                        break;
+                    }
+                    batch.add(next);
+                }
+                runBatch(batch);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                logger.error("VAD批量推理失败, 批大小: {}", batch.size(), e);
+                batch.forEach(request -> request.result().completeExceptionally(e));
+            } finally {
+                batch.clear();
+            }
+        }
 
-                // 获取输出
-                float[][] output = (float[][]) result.get(0).getValue();
-                state = (float[][][]) result.get(1).getValue();
+        // 唤醒所有仍在等待的调用方
+        InferenceRequest request;
+        while ((request = pending.poll()) != null) {
+            request.result().complete(0.0f);
+        }
+    }
 
-                // 更新上下文
-                context = x;
+    private void runBatch(List<InferenceRequest> batch) throws OrtException {
+        // 调用方已放弃的请求不再推理
+        batch.removeIf(request -> request.result().isDone());
+        int n = batch.size();
+        if (n == 0) {
+            return;
+        }
 
-                // 返回语音概率
-                return output[0][0];
-            } finally {
-                // 释放资源
-                inputTensor.close();
-                stateTensor.close();
-                srTensor.close();
+        // 填充输入 [N,512] 和状态 [2,N,128]
+        for (int i = 0; i < n; i++) {
+            InferenceRequest request = batch.get(i);
+            inputBuffer.put(i * WINDOW_SIZE, request.samples());
+            for (int layer = 0; layer < STATE_LAYERS; layer++) {
+                stateBuffer.put((layer * n + i) * STATE_DIM, request.state(), layer * STATE_DIM, STATE_DIM);
             }
-        } catch (OrtException e) {
-            logger.error("VAD模型推理失败", e);
-            return 0.0f;
         }
+
+        Map<String, OnnxTensor> inputs = new HashMap<>();
+        inputs.put("input", batchTensor(inputTensors, inputBuffer, n, new long[] { n, WINDOW_SIZE }));
+        inputs.put("sr", srTensor);
+        inputs.put("state", batchTensor(stateTensors, stateBuffer, n, new long[] { STATE_LAYERS, n, STATE_DIM }));
+
+        try (OrtSession.Result result = session.run(inputs)) {
+            FloatBuffer output = ((OnnxTensor) result.get(0)).getFloatBuffer();
+            FloatBuffer newState = ((OnnxTensor) result.get(1)).getFloatBuffer();
+            for (int i = 0; i < n; i++) {
+                InferenceRequest request = batch.get(i);
+                for (int layer = 0; layer < STATE_LAYERS; layer++) {
+                    newState.get((layer * n + i) * STATE_DIM, stateScratch, layer * STATE_DIM, STATE_DIM);
+                }
+                // 完成成功说明调用方没有放弃，之后才写回状态；下一帧的请求要等本批结束后才会被批量线程处理
+                if (request.result().complete(output.get(i))) {
+                    System.arraycopy(stateScratch, 0, request.state(), 0, STATE_SIZE);
+                }
+            }
+        }
+    }
+
+    /**
+     * 获取指定批大小的张量，张量直接引用共享的直接内存，首次使用时创建后一直复用
+     */
+    private OnnxTensor batchTensor(OnnxTensor[] cache, FloatBuffer buffer, int n, long[] shape) throws OrtException {
+        OnnxTensor tensor = cache[n - 1];
+        if (tensor == null) {
+            int elements = 1;
+            for (long dim : shape) {
+                elements *= (int) dim;
+            }
+            tensor = OnnxTensor.createTensor(env, buffer.duplicate().position(0).limit(elements), shape);
+            cache[n - 1] = tensor;
+        }
+        return tensor;
     }
 
     @Override
     public void reset() {
-        state = new float[2][1][128];
-        context = new float[0][];
+        states.clear();
+    }
+
+    @Override
+    public void reset(String sessionId) {
+        states.remove(sessionId);
     }
 
     @PreDestroy
     @Override
     public void close() {
+        running = false;
+        if (batchThread != null) {
+            batchThread.interrupt();
+            try {
+                batchThread.join(TimeUnit.SECONDS.toMillis(1));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+        closeTensors(inputTensors);
+        closeTensors(stateTensors);
+        if (srTensor != null) {
+            srTensor.close();
+        }
         try {
             if (session != null) {
                 session.close();
@@ -123,4 +339,15 @@ public class SileroVadModel implements VadModel {
             logger.error("关闭VAD模型失败", e);
         }
     }
-}
\ No newline at end of file
+
+    private void closeTensors(OnnxTensor[] tensors) {
+        if (tensors == null) {
+            return;
+        }
+        for (OnnxTensor tensor : tensors) {
+            if (tensor != null) {
+                tensor.close();
+            }
+        }
+    }
+}
@@ -96,6 +96,21 @@ public class SysRole extends Base<SysRole> {
      */
     private Integer vadSilenceMs;
 
+    /**
+     * 首句最小字符数，遇到停顿标点即可断出，越小首句越早开始合成，更新时传-1恢复默认
+     */
+    private Integer firstChunkLength;
+
+    /**
+     * 首句最多等待的token数，达到后不等标点直接断出，0或空表示不限制，更新时传-1恢复默认
+     */
+    private Integer firstChunkTokens;
+
+    /**
+     * 后续句子的最小字符数，较短的句子合并后再合成，更新时传-1恢复默认
+     */
+    private Integer chunkLength;
+
     /**
      * 模型提供商
      */
@@ -21,6 +21,14 @@ public interface SysMessageService {
    */
   int add(SysMessage message);
 
+  /**
+   * 批量新增记录
+   * 
+   * @param messages
+   * @return
+   */
+  int addBatch(List<SysMessage> messages);
+
   /**
    * 查询聊天记录
    * 指定分页信息
@@ -3,6 +3,7 @@ package com.xiaozhi.service.impl;
 import com.github.pagehelper.PageHelper;
 import com.xiaozhi.common.web.PageFilter;
 import com.xiaozhi.dao.ConfigMapper;
+import com.xiaozhi.dialogue.llm.factory.ChatModelFactory;
 import com.xiaozhi.dialogue.stt.factory.SttServiceFactory;
 import com.xiaozhi.dialogue.tts.factory.TtsServiceFactory;
 import com.xiaozhi.entity.SysConfig;
@@ -11,6 +12,7 @@ import jakarta.annotation.Resource;
 import org.springframework.cache.annotation.CacheEvict;
 import org.springframework.cache.annotation.Cacheable;
 import org.springframework.cache.annotation.Caching;
+import org.springframework.context.annotation.Lazy;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
 
@@ -39,6 +41,11 @@ public class SysConfigServiceImpl extends BaseServiceImpl implements SysConfigSe
     @Resource
     private TtsServiceFactory ttsServiceFactory;
 
+    // ChatModelFactory依赖本服务查询配置，延迟注入避免循环依赖
+    @Lazy
+    @Resource
+    private ChatModelFactory chatModelFactory;
+
     /**
      * 添加配置
      * 
@@ -76,6 +83,7 @@ public class SysConfigServiceImpl extends BaseServiceImpl implements SysConfigSe
         if (rows > 0) {
             sttServiceFactory.removeCache(config);
             ttsServiceFactory.removeCache(config);
+            chatModelFactory.removeCache(config);
         }
         return rows;
     }
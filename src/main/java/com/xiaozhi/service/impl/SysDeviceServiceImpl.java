@@ -8,6 +8,7 @@ import com.xiaozhi.dao.ConfigMapper;
 import com.xiaozhi.dao.DeviceMapper;
 import com.xiaozhi.dao.MessageMapper;
 import com.xiaozhi.dao.RoleMapper;
+import com.xiaozhi.dialogue.llm.memory.ConversationWindowCache;
 import com.xiaozhi.entity.SysDevice;
 import com.xiaozhi.entity.SysMessage;
 import com.xiaozhi.entity.SysRole;
@@ -56,6 +57,9 @@ public class SysDeviceServiceImpl extends BaseServiceImpl implements SysDeviceSe
     @Resource
     private SessionManager sessionManager;
 
+    @Resource
+    private ConversationWindowCache windowCache;
+
     /**
      * 添加设备
      *
@@ -114,8 +118,9 @@ public class SysDeviceServiceImpl extends BaseServiceImpl implements SysDeviceSe
             SysMessage message = new SysMessage();
             message.setUserId(device.getUserId());
             message.setDeviceId(device.getDeviceId());
-            // 清空设备聊天记录
+            // 清空设备聊天记录及其对话窗口缓存
             messageMapper.delete(message);
+            windowCache.evict(device.getDeviceId());
         }
         return row;
     }
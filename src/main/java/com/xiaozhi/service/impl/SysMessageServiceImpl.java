@@ -3,11 +3,13 @@ package com.xiaozhi.service.impl;
 import com.github.pagehelper.PageHelper;
 import com.xiaozhi.common.web.PageFilter;
 import com.xiaozhi.dao.MessageMapper;
+import com.xiaozhi.dialogue.llm.memory.ConversationWindowCache;
 import com.xiaozhi.entity.SysMessage;
 import com.xiaozhi.service.SysMessageService;
 import jakarta.annotation.Resource;
 import org.springframework.stereotype.Service;
 import org.springframework.transaction.annotation.Transactional;
+import org.springframework.util.StringUtils;
 
 import java.util.List;
 
@@ -24,6 +26,9 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
     @Resource
     private MessageMapper messageMapper;
 
+    @Resource
+    private ConversationWindowCache windowCache;
+
     /**
      * 新增聊天记录
      *
@@ -36,6 +41,21 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
         return messageMapper.add(message);
     }
 
+    /**
+     * 批量新增聊天记录，单条多行INSERT
+     *
+     * @param messages
+     * @return
+     */
+    @Override
+    @Transactional(transactionManager = "transactionManager")
+    public int addBatch(List<SysMessage> messages) {
+        if (messages == null || messages.isEmpty()) {
+            return 0;
+        }
+        return messageMapper.addBatch(messages);
+    }
+
     /**
      * 查询聊天记录
      *
@@ -52,6 +72,7 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
 
     /**
      * 删除记忆
+     * 同时移除设备的对话窗口缓存，未指定设备时可能涉及多个设备，移除所有窗口
      * 
      * @param message
      * @return
@@ -59,7 +80,15 @@ public class SysMessageServiceImpl extends BaseServiceImpl implements SysMessage
     @Override
     @Transactional(transactionManager = "transactionManager")
     public int delete(SysMessage message) {
-        return messageMapper.delete(message);
+        int rows = messageMapper.delete(message);
+        if (rows > 0) {
+            if (StringUtils.hasText(message.getDeviceId())) {
+                windowCache.evict(message.getDeviceId());
+            } else {
+                windowCache.evictAll();
+            }
+        }
+        return rows;
     }
 
 }
\ No newline at end of file
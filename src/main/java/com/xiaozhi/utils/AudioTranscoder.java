@@ -0,0 +1,209 @@
+package com.xiaozhi.utils;
+
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.ffmpeg.global.avutil;
+import org.bytedeco.javacv.FFmpegFrameGrabber;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.bytedeco.javacv.Frame;
+import org.bytedeco.javacv.FrameGrabber;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.Semaphore;
+import java.util.function.Consumer;
+
+/**
+ * 进程内音频编解码
+ * 使用javacv内置的FFmpeg解码并通过swresample重采样为16kHz单声道16位PCM，不再为每次转换启动ffmpeg进程，也不产生临时文件。
+ * 解码在调用线程中进行，大量虚拟线程同时解码会占满载体线程，因此同时解码的线程数限制为CPU核数的一半。
+ */
+public class AudioTranscoder {
+    private static final Logger logger = LoggerFactory.getLogger(AudioTranscoder.class);
+
+    // 同时进行的本地解码数
+    private static final Semaphore DECODE_PERMITS =
+            new Semaphore(Math.max(1, Runtime.getRuntime().availableProcessors() / 2));
+
+    static {
+        try {
+            // 提前加载本地库，避免第一次解码时加载
+            FFmpegFrameGrabber.tryLoad();
+            avutil.av_log_set_level(avutil.AV_LOG_ERROR);
+        } catch (FrameGrabber.Exception e) {
+            logger.error("加载FFmpeg本地库失败", e);
+        }
+    }
+
+    private AudioTranscoder() {
+    }
+
+    /**
+     * 解码音频文件为PCM
+     *
+     * @param path 音频文件路径，支持FFmpeg能识别的格式
+     * @return 16kHz单声道16位小端序PCM
+     */
+    public static byte[] decode(Path path) throws IOException {
+        PcmCollector collector = new PcmCollector();
+        decode(path, collector);
+        return collector.toByteArray();
+    }
+
+    /**
+     * 解码内存中的音频数据为PCM
+     */
+    public static byte[] decode(ByteBuffer audio) throws IOException {
+        PcmCollector collector = new PcmCollector();
+        decode(toInputStream(audio), collector);
+        return collector.toByteArray();
+    }
+
+    /**
+     * 解码音频文件，按FFmpeg的解码帧分块输出PCM
+     *
+     * @param path     音频文件路径
+     * @param consumer PCM块回调，每块为一个解码帧重采样后的数据
+     * @return PCM总字节数
+     */
+    public static long decode(Path path, Consumer<byte[]> consumer) throws IOException {
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(path.toFile())) {
+            return decode(grabber, consumer);
+        }
+    }
+
+    /**
+     * 解码音频流，按FFmpeg的解码帧分块输出PCM，边读边解码
+     *
+     * @param in       音频输入流，不需要支持随机访问，由调用方关闭
+     * @param consumer PCM块回调
+     * @return PCM总字节数
+     */
+    public static long decode(InputStream in, Consumer<byte[]> consumer) throws IOException {
+        try (FFmpegFrameGrabber grabber = new FFmpegFrameGrabber(in, 0)) {
+            // 只探测开头一小段数据，网络流下载到几百毫秒即可开始输出
+            grabber.setOption("probesize", "32768");
+            grabber.setOption("analyzeduration", "500000");
+            return decode(grabber, consumer);
+        }
+    }
+
+    /**
+     * 将PCM编码为MP3文件
+     *
+     * @param pcm  16kHz单声道16位小端序PCM
+     * @param path 输出文件路径
+     */
+    public static void encodeMp3(byte[] pcm, Path path) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(path.toFile(), AudioUtils.CHANNELS)) {
+            recorder.setFormat("mp3");
+            recorder.setAudioCodec(avcodec.AV_CODEC_ID_MP3);
+            recorder.setSampleRate(AudioUtils.SAMPLE_RATE);
+            recorder.setAudioBitrate(AudioUtils.BITRATE);
+            recorder.setAudioQuality(0); // 最高质量
+            recorder.start();
+            ShortBuffer samples = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            recorder.recordSamples(AudioUtils.SAMPLE_RATE, AudioUtils.CHANNELS, samples);
+            recorder.stop();
+        }
+    }
+
+    private static long decode(FFmpegFrameGrabber grabber, Consumer<byte[]> consumer) throws IOException {
+        // 指定输出格式后由swresample完成重采样和声道转换
+        grabber.setSampleRate(AudioUtils.SAMPLE_RATE);
+        grabber.setAudioChannels(AudioUtils.CHANNELS);
+        grabber.setSampleFormat(AudioUtils.SAMPLE_FORMAT);
+
+        long total = 0;
+        acquire();
+        try {
+            grabber.start();
+        } finally {
+            DECODE_PERMITS.release();
+        }
+        if (consumer instanceof PcmCollector collector) {
+            // 按时长预分配，避免扩容复制
+            collector.reserve(grabber.getLengthInTime() * AudioUtils.SAMPLE_RATE * AudioUtils.CHANNELS * 2 / 1_000_000);
+        }
+        while (true) {
+            byte[] pcm;
+            // 只在解码时占用许可，回调中阻塞不会影响其他解码
+            acquire();
+            try {
+                Frame frame = grabber.grabSamples();
+                if (frame == null) {
+                    break;
+                }
+                if (frame.samples == null) {
+                    continue;
+                }
+                ShortBuffer samples = (ShortBuffer) frame.samples[0];
+                pcm = new byte[samples.remaining() * 2];
+                ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().put(samples);
+            } finally {
+                DECODE_PERMITS.release();
+            }
+            total += pcm.length;
+            consumer.accept(pcm);
+        }
+        grabber.stop();
+        return total;
+    }
+
+    private static void acquire() throws InterruptedIOException {
+        try {
+            DECODE_PERMITS.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("音频解码被中断");
+        }
+    }
+
+    /**
+     * 收集完整PCM，解码开始后按音频时长预分配
+     */
+    private static class PcmCollector implements Consumer<byte[]> {
+        private byte[] data = new byte[0];
+        private int size = 0;
+
+        void reserve(long expected) {
+            if (expected > data.length && expected < Integer.MAX_VALUE - 8) {
+                data = Arrays.copyOf(data, (int) expected);
+            }
+        }
+
+        @Override
+        public void accept(byte[] pcm) {
+            if (size + pcm.length > data.length) {
+                data = Arrays.copyOf(data, Math.max(size + pcm.length, data.length * 2));
+            }
+            System.arraycopy(pcm, 0, data, size, pcm.length);
+            size += pcm.length;
+        }
+
+        byte[] toByteArray() {
+            return size == data.length ? data : Arrays.copyOf(data, size);
+        }
+    }
+
+    private static InputStream toInputStream(ByteBuffer buffer) {
+        if (buffer.hasArray()) {
+            return new ByteArrayInputStream(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        }
+        byte[] copy = new byte[buffer.remaining()];
+        buffer.duplicate().get(copy);
+        return new ByteArrayInputStream(copy);
+    }
+}
@@ -7,7 +7,9 @@ import org.slf4j.Logger;
 import java.io.DataOutputStream;
 import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.Paths;
@@ -36,71 +38,13 @@ public class AudioUtils {
         String fileName = uuid + ".mp3";
         String filePath = AUDIO_PATH + fileName;
 
-        // 创建临时PCM文件
-        String tempPcmPath = AUDIO_PATH + uuid + ".pcm";
-
         try {
-            // 确保音频目录存在
-            Files.createDirectories(Paths.get(AUDIO_PATH));
-
-            // 先将PCM数据写入临时文件
-            try (FileOutputStream fos = new FileOutputStream(tempPcmPath)) {
-                fos.write(audio);
-            }
-
-            // 构建ffmpeg命令：将PCM转换为MP3
-            String[] command = {
-                    "ffmpeg",
-                    "-f", "s16le", // 输入格式：16位有符号小端序PCM
-                    "-ar", String.valueOf(SAMPLE_RATE), // 采样率
-                    "-ac", String.valueOf(CHANNELS), // 声道数
-                    "-i", tempPcmPath, // 输入文件
-                    "-b:a", String.valueOf(BITRATE), // 比特率
-                    "-f", "mp3", // 输出格式
-                    "-q:a", "0", // 最高质量
-                    filePath // 输出文件
-            };
-
-            // 执行命令
-            Process process = Runtime.getRuntime().exec(command);
-
-            // 读取错误输出以便调试
-            StringBuilder errorOutput = new StringBuilder();
-            try (InputStream errorStream = process.getErrorStream()) {
-                byte[] buffer = new byte[1024];
-                int bytesRead;
-                while ((bytesRead = errorStream.read(buffer)) != -1) {
-                    errorOutput.append(new String(buffer, 0, bytesRead));
-                }
-            }
-
-            // 等待进程完成
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                logger.error("ffmpeg转换失败，退出代码: {}，错误信息: {}", exitCode, errorOutput.toString());
-                return null;
-            }
-
-            // 检查输出文件是否存在
-            if (!Files.exists(Paths.get(filePath))) {
-                logger.error("ffmpeg转换后的MP3文件不存在");
-                return null;
-            }
-
+            // 进程内编码，不再经过临时PCM文件
+            AudioTranscoder.encodeMp3(audio, Paths.get(filePath));
             return fileName;
-        } catch (IOException | InterruptedException e) {
+        } catch (IOException e) {
             logger.error("保存MP3文件时发生错误", e);
-            if (e instanceof InterruptedException) {
-                Thread.currentThread().interrupt();
-            }
             return null;
-        } finally {
-            // 删除临时PCM文件
-            try {
-                Files.deleteIfExists(Paths.get(tempPcmPath));
-            } catch (IOException e) {
-                logger.warn("删除临时PCM文件失败", e);
-            }
         }
     }
 
@@ -118,10 +62,6 @@ public class AudioUtils {
      * @return 文件名
      */
     public static void saveAsWav(Path path, byte[] audioData) {
-
-        // WAV文件参数
-        int bitsPerSample = 16; // 16位采样
-
         try {
             // 确保音频目录存在
             Files.createDirectories(path.getParent());
@@ -130,24 +70,7 @@ public class AudioUtils {
                  DataOutputStream dos = new DataOutputStream(fos)) {
 
                 // 写入WAV文件头
-                // RIFF头
-                dos.writeBytes("RIFF");
-                dos.writeInt(Integer.reverseBytes(36 + audioData.length)); // 文件长度
-                dos.writeBytes("WAVE");
-
-                // fmt子块
-                dos.writeBytes("fmt ");
-                dos.writeInt(Integer.reverseBytes(16)); // 子块大小
-                dos.writeShort(Short.reverseBytes((short) 1)); // 音频格式 (1 = PCM)
-                dos.writeShort(Short.reverseBytes((short) CHANNELS)); // 通道数
-                dos.writeInt(Integer.reverseBytes(SAMPLE_RATE)); // 采样率
-                dos.writeInt(Integer.reverseBytes(SAMPLE_RATE * CHANNELS * bitsPerSample / 8)); // 字节率
-                dos.writeShort(Short.reverseBytes((short) (CHANNELS * bitsPerSample / 8))); // 块对齐
-                dos.writeShort(Short.reverseBytes((short) bitsPerSample)); // 每个样本的位数
-
-                // data子块
-                dos.writeBytes("data");
-                dos.writeInt(Integer.reverseBytes(audioData.length)); // 数据大小
+                dos.write(wavHeader(audioData.length).array());
 
                 // 写入音频数据
                 dos.write(audioData);
@@ -159,71 +82,63 @@ public class AudioUtils {
         }
     }
 
+    /**
+     * 生成44字节的WAV文件头（16位PCM）
+     *
+     * @param dataLength PCM数据长度
+     * @return 可直接写入的文件头
+     */
+    public static ByteBuffer wavHeader(int dataLength) {
+        int bitsPerSample = 16; // 16位采样
+        ByteBuffer header = ByteBuffer.allocate(44).order(ByteOrder.LITTLE_ENDIAN);
+        // RIFF头
+        header.put("RIFF".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(36 + dataLength); // 文件长度
+        header.put("WAVE".getBytes(StandardCharsets.US_ASCII));
+
+        // fmt子块
+        header.put("fmt ".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(16); // 子块大小
+        header.putShort((short) 1); // 音频格式 (1 = PCM)
+        header.putShort((short) CHANNELS); // 通道数
+        header.putInt(SAMPLE_RATE); // 采样率
+        header.putInt(SAMPLE_RATE * CHANNELS * bitsPerSample / 8); // 字节率
+        header.putShort((short) (CHANNELS * bitsPerSample / 8)); // 块对齐
+        header.putShort((short) bitsPerSample); // 每个样本的位数
+
+        // data子块
+        header.put("data".getBytes(StandardCharsets.US_ASCII));
+        header.putInt(dataLength); // 数据大小
+        header.flip();
+        return header;
+    }
+
     /**
      * 合并多个音频文件为一个WAV文件
-     * 支持合并的格式： wav, mp3, pcm
+     * 支持合并的格式： wav, mp3, pcm。格式一致的wav/pcm直接拷贝数据区，mp3边解码边写入，合并后删除源文件。
      *
+     * @param path       合并后的WAV文件路径
      * @param audioPaths 要合并的音频文件路径列表
-     * @return 合并后的WAV文件名
      */
     public static void mergeAudioFiles(Path path, List<String> audioPaths) {
-        if (audioPaths.size() == 1) {
-            // TODO 考虑改为文件迁移mv 或rename
-//            return Paths.get(audioPaths.getFirst()).getFileName().toString();
-        }
-//        var uuid = UUID.randomUUID().toString().replace("-", "");
-//        var outputFileName = uuid + ".wav";
-//        var outputPath = Paths.get(AUDIO_PATH, outputFileName).toString();
-
         try {
-            // 确保音频目录存在
-            Files.createDirectories(path.getParent());
-            // 计算所有PCM数据的总大小
-            var totalPcmSize = 0L;
-            var audioChunks = new ArrayList<byte[]>();
+            List<Path> files = new ArrayList<>(audioPaths.size());
+            // 预先计算数据长度，全部可直接拷贝时不需要回写文件头
+            long expectedLength = 0;
             for (var audioPath : audioPaths) {
-                var fullPath = audioPath.startsWith(AUDIO_PATH) ? audioPath : AUDIO_PATH + audioPath;
-                byte[] pcmData = readAsPcm(fullPath);
-                totalPcmSize += pcmData.length;
-                audioChunks.add(pcmData);
-
+                var fullPath = Paths.get(audioPath.startsWith(AUDIO_PATH) ? audioPath : AUDIO_PATH + audioPath);
+                files.add(fullPath);
+                expectedLength += Math.max(0, WavFileWriter.pcmLength(fullPath));
             }
 
-            // 创建输出WAV文件
-            try (FileOutputStream fos = new FileOutputStream(path.toFile());
-                 DataOutputStream dos = new DataOutputStream(fos)) {
-
-                // 写入WAV文件头
-                int bitsPerSample = 16; // 16位采样
-
-                // RIFF头
-                dos.writeBytes("RIFF");
-                dos.writeInt(Integer.reverseBytes(36 + (int) totalPcmSize)); // 文件长度
-                dos.writeBytes("WAVE");
-
-                // fmt子块
-                dos.writeBytes("fmt ");
-                dos.writeInt(Integer.reverseBytes(16)); // 子块大小
-                dos.writeShort(Short.reverseBytes((short) 1)); // 音频格式 (1 = PCM)
-                dos.writeShort(Short.reverseBytes((short) CHANNELS)); // 通道数
-                dos.writeInt(Integer.reverseBytes(SAMPLE_RATE)); // 采样率
-                dos.writeInt(Integer.reverseBytes(SAMPLE_RATE * CHANNELS * bitsPerSample / 8)); // 字节率
-                dos.writeShort(Short.reverseBytes((short) (CHANNELS * bitsPerSample / 8))); // 块对齐
-                dos.writeShort(Short.reverseBytes((short) bitsPerSample)); // 每个样本的位数
-
-                // data子块
-                dos.writeBytes("data");
-                dos.writeInt(Integer.reverseBytes((int) totalPcmSize)); // 数据大小
-
-                // 依次写入每个文件的PCM数据
-                for (var pcmData : audioChunks) {
-                    dos.write(pcmData);
+            try (WavFileWriter writer = new WavFileWriter(path, expectedLength)) {
+                for (Path file : files) {
+                    writer.appendFile(file);
                 }
             }
             // 目前采用的处理策略是删除已经合并了的文件。
-            for (var audioPath : audioPaths) {
-                var fullPath = audioPath.startsWith(AUDIO_PATH) ? audioPath : AUDIO_PATH + audioPath;
-                Files.deleteIfExists(Paths.get(fullPath));
+            for (Path file : files) {
+                Files.deleteIfExists(file);
             }
 
         } catch (Exception e) {
@@ -310,50 +225,11 @@ public class AudioUtils {
      */
     public static byte[] mp3ToPcm(String mp3Path) throws IOException {
         try {
-            // 创建临时PCM文件
-            String tempPcmPath = AUDIO_PATH + UUID.randomUUID().toString().replace("-", "") + ".pcm";
-
-            // 构建ffmpeg命令：将MP3转换为16kHz, 单声道, 16位PCM
-            String[] command = {
-                    "ffmpeg",
-                    "-i", mp3Path,
-                    "-ar", String.valueOf(SAMPLE_RATE),
-                    "-ac", String.valueOf(CHANNELS),
-                    "-f", "s16le", // 16位有符号小端序PCM
-                    tempPcmPath
-            };
-
-            // 执行命令
-            Process process = Runtime.getRuntime().exec(command);
-
-            // 读取错误输出以便调试
-            try (InputStream errorStream = process.getErrorStream()) {
-                byte[] buffer = new byte[1024];
-                while (errorStream.read(buffer) != -1) {
-                    // 可以选择记录错误输出
-                    // logger.debug(new String(buffer));
-                }
-            }
-
-            // 等待进程完成
-            int exitCode = process.waitFor();
-            if (exitCode != 0) {
-                throw new IOException("ffmpeg转换失败，退出代码: " + exitCode);
-            }
-
-            // 读取生成的PCM文件
-            byte[] pcmData = Files.readAllBytes(Paths.get(tempPcmPath));
-
-            // 删除临时文件
-            Files.delete(Paths.get(tempPcmPath));
-
-            return pcmData;
-        } catch (InterruptedException e) {
-            Thread.currentThread().interrupt();
-            throw new IOException("ffmpeg处理被中断", e);
-        } catch (Exception e) {
-            logger.error("使用ffmpeg转换MP3失败", e);
-            throw new IOException("使用ffmpeg转换MP3失败: " + e.getMessage(), e);
+            // 进程内解码并重采样为16kHz, 单声道, 16位PCM
+            return AudioTranscoder.decode(Paths.get(mp3Path));
+        } catch (IOException e) {
+            logger.error("转换MP3失败", e);
+            throw new IOException("转换MP3失败: " + e.getMessage(), e);
         }
     }
 
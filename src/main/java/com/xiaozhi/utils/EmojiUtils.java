@@ -168,6 +168,92 @@ public class EmojiUtils {
         return matcher.find();
     }
 
+    /**
+     * 检查文本是否以颜文字结尾，与 {@link #containsKaomoji} 使用相同的规则
+     * 文本逐字追加时，只有新字符结尾的位置可能产生新的匹配，因此每追加一个字符调用一次即可增量判断是否包含颜文字，
+     * 只回看最多12个码点，不需要对整个文本做正则匹配。
+     *
+     * @param text 要检查的文本
+     * @return 如果存在以最后一个字符结尾的颜文字返回true
+     */
+    public static boolean endsWithKaomoji(CharSequence text) {
+        int end = text.length();
+        if (end < 2) {
+            return false;
+        }
+        int last = Character.codePointBefore(text, end);
+        int beforeLast = end - Character.charCount(last);
+        int prev1 = codePointBefore(text, beforeLast);
+        int prev2 = prev1 < 0 ? -1 : codePointBefore(text, beforeLast - Character.charCount(prev1));
+        int prev3 = prev2 < 0 ? -1 : codePointBefore(text, beforeLast - Character.charCount(prev1) - Character.charCount(prev2));
+
+        switch (last) {
+            case ')' -> {
+                // (^_^) 或 :-) ;-)
+                return bracketed(text, beforeLast, '(', '（', ')', '）')
+                        || prev1 == ':' || prev1 == ';'
+                        || (prev1 == '-' && (prev2 == ':' || prev2 == ';'));
+            }
+            case '）' -> {
+                return bracketed(text, beforeLast, '(', '（', ')', '）');
+            }
+            case '>', '＞' -> {
+                return bracketed(text, beforeLast, '<', '＜', '>', '＞');
+            }
+            case '\\', '¯', '*' -> {
+                // \_/ \*_*\ 这类：两侧为 \ ¯ * ，中间1到2个 _ 或 -
+                return isDash(prev1) && (isKaomojiEdge(prev2) || (isDash(prev2) && isKaomojiEdge(prev3)));
+            }
+            case 'D', '(' -> {
+                // :D :-(
+                return prev1 == ':' || (prev1 == '-' && prev2 == ':');
+            }
+            case '/' -> {
+                // \o/ 或 =/ =\/
+                return (prev1 == 'o' && prev2 == '\\') || prev1 == '=' || (prev1 == '\\' && prev2 == '=');
+            }
+            case '_' -> {
+                // =_ =\_
+                return prev1 == '=' || (prev1 == '\\' && prev2 == '=');
+            }
+            default -> {
+                return false;
+            }
+        }
+    }
+
+    /**
+     * 从 end 向前查找开括号，括号内为1到10个非闭括号字符
+     */
+    private static boolean bracketed(CharSequence text, int end, char open, char fullOpen, char close, char fullClose) {
+        int inner = 0;
+        int index = end;
+        while (index > 0 && inner <= 10) {
+            int codePoint = Character.codePointBefore(text, index);
+            if (codePoint == close || codePoint == fullClose) {
+                return false;
+            }
+            if ((codePoint == open || codePoint == fullOpen) && inner >= 1) {
+                return true;
+            }
+            inner++;
+            index -= Character.charCount(codePoint);
+        }
+        return false;
+    }
+
+    private static int codePointBefore(CharSequence text, int index) {
+        return index > 0 ? Character.codePointBefore(text, index) : -1;
+    }
+
+    private static boolean isDash(int codePoint) {
+        return codePoint == '_' || codePoint == '-';
+    }
+
+    private static boolean isKaomojiEdge(int codePoint) {
+        return codePoint == '\\' || codePoint == '¯' || codePoint == '*';
+    }
+
     /**
      * 过滤文本中的颜文字
      *
@@ -0,0 +1,114 @@
+package com.xiaozhi.utils;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.stream.Stream;
+
+/**
+ * 将已有的 .opus/.ogg/.wav/.mp3 音频转换为带索引的Opus帧文件（{@link OpusFrameFile}）
+ * opus/ogg 直接提取帧数据，其他格式解码重采样后编码为Opus。转换结果与源文件同目录，扩展名为 .frames。
+ * 批量转换已有素材时直接运行 main 方法，参数为目录或文件，目录下已是最新的帧文件会跳过。
+ */
+public final class OpusFrameConverter {
+    private static final Logger logger = LoggerFactory.getLogger(OpusFrameConverter.class);
+
+    private OpusFrameConverter() {
+    }
+
+    /**
+     * 是否为可以转换的音频文件
+     */
+    public static boolean isConvertible(Path path) {
+        String name = path.getFileName().toString().toLowerCase(Locale.ROOT);
+        return name.endsWith(".opus") || name.endsWith(".ogg") || name.endsWith(".wav") || name.endsWith(".mp3");
+    }
+
+    /**
+     * 转换后的帧文件路径
+     */
+    public static Path targetOf(Path source) {
+        String name = source.getFileName().toString();
+        int dot = name.lastIndexOf('.');
+        String base = dot > 0 ? name.substring(0, dot) : name;
+        return source.resolveSibling(base + OpusFrameFile.SUFFIX);
+    }
+
+    /**
+     * 转换单个文件
+     *
+     * @return 帧数
+     */
+    public static int convert(OpusProcessor opusProcessor, Path source, Path target) throws IOException {
+        List<byte[]> frames;
+        String name = source.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".opus") || name.endsWith(".ogg")) {
+            frames = opusProcessor.readOpus(source.toFile());
+        } else {
+            String encoderKey = "convert_" + UUID.randomUUID();
+            try {
+                frames = opusProcessor.pcmToOpus(encoderKey, AudioTranscoder.decode(source), false);
+            } finally {
+                opusProcessor.release(encoderKey);
+            }
+        }
+        if (frames.isEmpty()) {
+            throw new IOException("没有读取到音频帧: " + source);
+        }
+        OpusFrameFile.write(target, frames);
+        return frames.size();
+    }
+
+    /**
+     * 转换目录下（含子目录）所有尚未转换或源文件更新过的音频文件
+     *
+     * @return 转换的文件数
+     */
+    public static int convertAll(OpusProcessor opusProcessor, Path root) throws IOException {
+        List<Path> sources;
+        try (Stream<Path> walk = Files.walk(root)) {
+            sources = walk.filter(Files::isRegularFile).filter(OpusFrameConverter::isConvertible).toList();
+        }
+        int converted = 0;
+        for (Path source : sources) {
+            Path target = targetOf(source);
+            if (Files.exists(target)
+                    && Files.getLastModifiedTime(target).compareTo(Files.getLastModifiedTime(source)) >= 0) {
+                continue;
+            }
+            try {
+                int count = convert(opusProcessor, source, target);
+                logger.info("已转换: {} -> {}, {} 帧", source, target.getFileName(), count);
+                converted++;
+            } catch (Exception e) {
+                logger.error("转换失败: {}", source, e);
+            }
+        }
+        return converted;
+    }
+
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("用法: OpusFrameConverter <目录或文件>...");
+            System.exit(1);
+        }
+        OpusProcessor opusProcessor = new OpusProcessor();
+        int converted = 0;
+        for (String arg : args) {
+            Path path = Path.of(arg);
+            if (Files.isDirectory(path)) {
+                converted += convertAll(opusProcessor, path);
+            } else {
+                convert(opusProcessor, path, targetOf(path));
+                converted++;
+            }
+        }
+        logger.info("共转换 {} 个文件", converted);
+    }
+}
@@ -0,0 +1,211 @@
+package com.xiaozhi.utils;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 带索引的Opus帧文件
+ * 格式（大端序）：
+ * <pre>
+ * [魔数 "XZOI" 4字节][版本 2字节][帧时长ms 2字节][采样率 4字节][帧数 N 4字节]
+ * [帧偏移表 (N+1)*4字节，相对数据区起点，第 i 帧为 offset[i]..offset[i+1]]
+ * [数据区：所有帧连续存放]
+ * </pre>
+ * 播放时用 {@link #open} 内存映射整个文件，按索引直接切出每一帧，不需要逐帧分配数组，发送时可以直接使用切片；
+ * 只需要复制出帧列表时用 {@link #read} 直接读入堆内存。
+ * 映射由打开它的一方持有，用完后 {@link #close}，之后不能再读取帧。
+ */
+public final class OpusFrameFile implements Closeable {
+
+    // 魔数 "XZOI"
+    public static final int MAGIC = 0x585A4F49;
+    public static final short VERSION = 1;
+    public static final String SUFFIX = ".frames";
+    private static final int HEADER_SIZE = 16;
+
+    private final Path path;
+    private volatile ByteBuffer buffer;
+    private final int frameDurationMs;
+    private final int sampleRate;
+    private final int frameCount;
+    private final int payloadStart;
+
+    private OpusFrameFile(Path path, ByteBuffer buffer) throws IOException {
+        this.path = path;
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("不是Opus帧文件: " + path);
+        }
+        if (buffer.getShort(4) != VERSION) {
+            throw new IOException("不支持的Opus帧文件版本: " + buffer.getShort(4) + ", " + path);
+        }
+        this.frameDurationMs = buffer.getShort(6);
+        this.sampleRate = buffer.getInt(8);
+        this.frameCount = buffer.getInt(12);
+        long tableEnd = HEADER_SIZE + (frameCount + 1L) * 4;
+        if (frameCount < 0 || tableEnd > buffer.capacity()) {
+            throw new IOException("Opus帧文件已损坏: " + path);
+        }
+        this.payloadStart = (int) tableEnd;
+        if ((long) payloadStart + offset(buffer, frameCount) > buffer.capacity()) {
+            throw new IOException("Opus帧文件已损坏: " + path);
+        }
+    }
+
+    /**
+     * 内存映射打开帧文件，用于按切片逐帧发送，用完后需要关闭
+     */
+    public static OpusFrameFile open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new OpusFrameFile(path, buffer);
+        }
+    }
+
+    /**
+     * 把帧文件读入堆内存，用于随即复制出帧列表的场景，不建立映射
+     */
+    public static OpusFrameFile read(Path path) throws IOException {
+        return new OpusFrameFile(path, ByteBuffer.wrap(Files.readAllBytes(path)));
+    }
+
+    /**
+     * 是否为帧文件（检查魔数）
+     */
+    public static boolean isFrameFile(Path path) {
+        if (!Files.isRegularFile(path)) {
+            return false;
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            ByteBuffer magic = ByteBuffer.allocate(4);
+            return channel.read(magic) == 4 && magic.getInt(0) == MAGIC;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 写入帧文件，先写临时文件再原子替换，读取方不会看到写了一半的文件
+     *
+     * @return 文件字节数
+     */
+    public static long write(Path path, List<byte[]> frames) throws IOException {
+        int payloadSize = 0;
+        for (byte[] frame : frames) {
+            payloadSize += frame.length;
+        }
+        int size = HEADER_SIZE + (frames.size() + 1) * 4 + payloadSize;
+        ByteBuffer buffer = ByteBuffer.allocate(size);
+        buffer.putInt(MAGIC)
+                .putShort(VERSION)
+                .putShort((short) AudioUtils.OPUS_FRAME_DURATION_MS)
+                .putInt(AudioUtils.SAMPLE_RATE)
+                .putInt(frames.size());
+        int offset = 0;
+        buffer.putInt(offset);
+        for (byte[] frame : frames) {
+            offset += frame.length;
+            buffer.putInt(offset);
+        }
+        for (byte[] frame : frames) {
+            buffer.put(frame);
+        }
+        buffer.flip();
+
+        Path parent = path.toAbsolutePath().getParent();
+        Files.createDirectories(parent);
+        Path temp = Files.createTempFile(parent, "frames", ".tmp");
+        try {
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer);
+                }
+            }
+            Files.move(temp, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(temp);
+        }
+        return size;
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int frameCount() {
+        return frameCount;
+    }
+
+    public int getFrameDurationMs() {
+        return frameDurationMs;
+    }
+
+    public int getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * 音频总时长（毫秒）
+     */
+    public long durationMs() {
+        return (long) frameCount * frameDurationMs;
+    }
+
+    /**
+     * 第 index 帧的切片（只读映射），与映射共享内存，不复制数据
+     */
+    public ByteBuffer frame(int index) {
+        ByteBuffer buffer = buffer();
+        int start = offset(buffer, index);
+        int end = offset(buffer, index + 1);
+        return buffer.slice(payloadStart + start, end - start);
+    }
+
+    /**
+     * 复制出所有帧，用于需要 byte[] 的旧接口
+     */
+    public List<byte[]> toList() {
+        ByteBuffer buffer = buffer();
+        List<byte[]> frames = new ArrayList<>(frameCount);
+        for (int i = 0; i < frameCount; i++) {
+            int start = offset(buffer, i);
+            byte[] frame = new byte[offset(buffer, i + 1) - start];
+            buffer.get(payloadStart + start, frame);
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    /**
+     * 释放对映射的引用，之后不能再读取帧
+     * 映射本身在已发出的切片也不再被引用后由GC回收（Java 21 不能显式解除映射）
+     */
+    @Override
+    public void close() {
+        buffer = null;
+    }
+
+    private ByteBuffer buffer() {
+        ByteBuffer buffer = this.buffer;
+        if (buffer == null) {
+            throw new IllegalStateException("帧文件已关闭: " + path);
+        }
+        return buffer;
+    }
+
+    private int offset(ByteBuffer buffer, int index) {
+        if (index < 0 || index > frameCount) {
+            throw new IndexOutOfBoundsException("帧序号越界: " + index + ", 帧数: " + frameCount);
+        }
+        return buffer.getInt(HEADER_SIZE + index * 4);
+    }
+}
@@ -393,6 +393,18 @@ public class OpusProcessor {
         return packets;
     }
 
+    /**
+     * 读取音频文件并转换为Opus帧
+     * opus文件和帧文件直接读取帧数据，其他格式先转为PCM再编码
+     */
+    public List<byte[]> readAsOpus(String sid, String path) throws IOException {
+        if (path.contains(".opus") || path.endsWith(OpusFrameFile.SUFFIX)) {
+            return readOpus(new File(path));
+        }
+        byte[] audioData = AudioUtils.readAsPcm(path);
+        return pcmToOpus(sid, audioData, false);
+    }
+
     /**
      * 读取Opus文件
      */
@@ -412,6 +424,11 @@ public class OpusProcessor {
             fis.read(header, 0, Math.min(8, (int) size));
             fis.getChannel().position(0);
 
+            // 检查带索引的帧文件
+            if (isFrameFile(header)) {
+                return OpusFrameFile.read(file.toPath()).toList();
+            }
+
             // 检查OGG格式
             if (isOgg(header)) {
                 return readOgg(file);
@@ -435,6 +452,13 @@ public class OpusProcessor {
         }
     }
 
+    /**
+     * 检查帧文件魔数
+     */
+    private boolean isFrameFile(byte[] data) {
+        return data.length >= 4 && ByteBuffer.wrap(data).getInt() == OpusFrameFile.MAGIC;
+    }
+
     /**
      * 检查OGG格式
      */
@@ -548,13 +572,9 @@ public class OpusProcessor {
             System.arraycopy(buffer, 0, frame, 0, frameSize);
             frames.add(frame);
             good++;
-
-            // 5个有效帧就认为格式正确
-            if (good >= 5)
-                return frames;
         }
 
-        // 帧太少，可能不是正确格式
+        // 至少5个有效帧才认为格式正确
         if (good < 5)
             frames.clear();
 
@@ -798,7 +818,19 @@ public class OpusProcessor {
     }
 
     /**
-     * 清理会话
+     * 释放单个键的编解码状态
+     * 每个句子、每路流独占的键用它释放；{@link #cleanup(String)} 会连带删除以该键为前缀的其他键，
+     * 比如同一句子的对冲流和缓存编码，不能用于单个流结束时的释放
+     */
+    public void release(String key) {
+        decoders.remove(key);
+        encoders.remove(key);
+        overlaps.remove(key);
+        leftoverStates.remove(key);
+    }
+
+    /**
+     * 清理会话，包括以 sid + "_" 为前缀的所有键
      */
     public void cleanup(String sid) {
         decoders.remove(sid);
@@ -806,6 +838,7 @@ public class OpusProcessor {
         leftoverStates.remove(sid); // 清理残留数据状态
 
         // 清理编码器
+        encoders.remove(sid);
         List<String> toRemove = new ArrayList<>();
         for (String key : encoders.keySet()) {
             if (key.startsWith(sid + "_")) {
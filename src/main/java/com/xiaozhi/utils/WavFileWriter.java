@@ -0,0 +1,169 @@
+package com.xiaozhi.utils;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Locale;
+
+/**
+ * 流式写入16kHz单声道16位WAV文件
+ * 先写入按预估长度生成的文件头，音频数据逐段追加：格式一致的WAV/PCM文件用 FileChannel.transferTo 直接拷贝数据区，
+ * 其他格式边解码边写入，不在堆上拼接完整音频。关闭时实际长度与预估不同才回写文件头。
+ */
+public class WavFileWriter implements AutoCloseable {
+
+    private static final int HEADER_SIZE = 44;
+    // 解析WAV文件头时最多读取的字节数
+    private static final int HEADER_PROBE_SIZE = 4096;
+
+    private final FileChannel channel;
+    private final long expectedLength;
+    private long dataLength = 0;
+
+    /**
+     * @param path           输出文件路径
+     * @param expectedLength 预估的PCM数据长度，可用 {@link #pcmLength(Path)} 计算
+     */
+    public WavFileWriter(Path path, long expectedLength) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        this.channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.WRITE,
+                StandardOpenOption.TRUNCATE_EXISTING);
+        this.expectedLength = expectedLength;
+        writeFully(AudioUtils.wavHeader((int) expectedLength), 0);
+        channel.position(HEADER_SIZE);
+    }
+
+    /**
+     * 追加一段PCM数据
+     */
+    public void appendPcm(byte[] pcm) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(pcm);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+        dataLength += pcm.length;
+    }
+
+    /**
+     * 追加音频文件，格式一致的WAV和PCM直接拷贝数据区，其他格式解码重采样后写入
+     */
+    public void appendFile(Path file) throws IOException {
+        DataRegion region = dataRegion(file);
+        if (region == null) {
+            try {
+                AudioTranscoder.decode(file, pcm -> {
+                    try {
+                        appendPcm(pcm);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            return;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long position = region.offset();
+            long end = region.offset() + region.length();
+            while (position < end) {
+                long transferred = in.transferTo(position, end - position, channel);
+                if (transferred <= 0) {
+                    break;
+                }
+                position += transferred;
+            }
+            dataLength += position - region.offset();
+        }
+    }
+
+    /**
+     * 已写入的PCM字节数
+     */
+    public long getDataLength() {
+        return dataLength;
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            if (dataLength != expectedLength) {
+                writeFully(AudioUtils.wavHeader((int) dataLength), 0);
+            }
+        } finally {
+            channel.close();
+        }
+    }
+
+    private void writeFully(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += channel.write(buffer, position);
+        }
+    }
+
+    /**
+     * 文件中可以直接拷贝的PCM数据长度，需要解码的格式返回 -1
+     */
+    public static long pcmLength(Path file) throws IOException {
+        DataRegion region = dataRegion(file);
+        return region == null ? -1 : region.length();
+    }
+
+    /**
+     * 定位可以直接拷贝的PCM数据区：.pcm 为整个文件，16kHz单声道16位的WAV为data块，其他情况返回null
+     */
+    private static DataRegion dataRegion(Path file) throws IOException {
+        String name = file.getFileName().toString().toLowerCase(Locale.ROOT);
+        if (name.endsWith(".pcm")) {
+            return new DataRegion(0, Files.size(file));
+        }
+        if (!name.endsWith(".wav")) {
+            return null;
+        }
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            long fileSize = in.size();
+            ByteBuffer header = ByteBuffer.allocate((int) Math.min(HEADER_PROBE_SIZE, fileSize))
+                    .order(ByteOrder.LITTLE_ENDIAN);
+            while (header.hasRemaining()) {
+                if (in.read(header) <= 0) {
+                    break;
+                }
+            }
+            header.flip();
+            if (header.remaining() < 12 || header.getInt(0) != 0x46464952 || header.getInt(8) != 0x45564157) {
+                // 不是 RIFF/WAVE
+                return null;
+            }
+            boolean matched = false;
+            int position = 12;
+            while (position + 8 <= header.limit()) {
+                int id = header.getInt(position);
+                long size = Integer.toUnsignedLong(header.getInt(position + 4));
+                int body = position + 8;
+                if (id == 0x20746D66 && body + 16 <= header.limit()) {
+                    // "fmt "
+                    matched = header.getShort(body) == 1
+                            && header.getShort(body + 2) == AudioUtils.CHANNELS
+                            && header.getInt(body + 4) == AudioUtils.SAMPLE_RATE
+                            && header.getShort(body + 14) == 16;
+                } else if (id == 0x61746164) {
+                    // "data"，流式生成的WAV长度字段可能未回填，以文件实际长度为准
+                    long length = size == 0 || size == 0xFFFFFFFFL ? fileSize - body : Math.min(size, fileSize - body);
+                    return matched ? new DataRegion(body, length & ~1L) : null;
+                }
+                position = body + (int) Math.min(size + (size & 1), HEADER_PROBE_SIZE);
+            }
+            return null;
+        }
+    }
+
+    private record DataRegion(long offset, long length) {
+    }
+}
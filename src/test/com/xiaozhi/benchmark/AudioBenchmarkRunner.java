@@ -0,0 +1,37 @@
+package com.xiaozhi.benchmark;
+
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.File;
+
+/**
+ * 运行音频热点路径的基准测试（OpusCodecBenchmark、VadHotPathBenchmark、WavParseBenchmark），
+ * 输出每秒操作数，并固定开启GC分析（等同 -prof gc），报告中 gc.alloc.rate.norm 为每次操作分配的字节数。
+ * 结果另存为 JSON，优化前后各运行一次，用 JMH Visualizer 等工具对比即可发现回退。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.AudioBenchmarkRunner
+ * <p>
+ * 只运行部分测试：-Dbenchmark=OpusCodecBenchmark.opusToPcm（JMH的正则表达式）
+ */
+public class AudioBenchmarkRunner {
+
+    private static final String AUDIO_BENCHMARKS = "(OpusCodec|VadHotPath|WavParse)Benchmark";
+    private static final String RESULT_FILE = "target/jmh-audio.json";
+
+    public static void main(String[] args) throws Exception {
+        String include = args.length > 0 && !args[0].contains("*") ? args[0] : AUDIO_BENCHMARKS;
+        new File(RESULT_FILE).getParentFile().mkdirs();
+        Options options = new OptionsBuilder()
+                .include(include)
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.JSON)
+                .result(RESULT_FILE)
+                .build();
+        new Runner(options).run();
+        System.out.println("结果已写入: " + new File(RESULT_FILE).getAbsolutePath());
+    }
+}
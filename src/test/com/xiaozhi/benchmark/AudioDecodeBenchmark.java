@@ -0,0 +1,141 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.utils.AudioTranscoder;
+import com.xiaozhi.utils.AudioUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+/**
+ * MP3解码为16kHz单声道PCM：启动ffmpeg进程与进程内解码的对比。
+ * 每次操作按顺序解码语料中的一个文件，SampleTime 给出单次解码延迟分布，Throughput 给出每秒解码的文件数，
+ * decodeParallel 模拟多个会话同时解码。
+ * 默认语料为启动时生成的 2/5/15/60 秒合成语音MP3（24kbps，与TTS输出一致），也可以用 -p corpus=目录 指定真实的MP3文件。
+ * subprocess 模式需要系统中安装 ffmpeg。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode({ Mode.SampleTime, Mode.Throughput })
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class AudioDecodeBenchmark {
+
+    @Param({ "subprocess", "inprocess" })
+    private String mode;
+
+    // MP3目录，为空时生成合成语料
+    @Param({ "" })
+    private String corpus;
+
+    private Path workDir;
+    private List<Path> files;
+    private final AtomicInteger next = new AtomicInteger();
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workDir = Files.createTempDirectory("decode-bench");
+        if (corpus.isEmpty()) {
+            files = new ArrayList<>();
+            Random random = new Random(42);
+            for (int seconds : new int[] { 2, 5, 15, 60 }) {
+                Path file = workDir.resolve("speech-" + seconds + "s.mp3");
+                AudioTranscoder.encodeMp3(syntheticSpeech(seconds, random), file);
+                files.add(file);
+            }
+        } else {
+            try (Stream<Path> list = Files.list(Path.of(corpus))) {
+                files = list.filter(p -> p.toString().toLowerCase().endsWith(".mp3")).sorted().toList();
+            }
+        }
+        if (files.isEmpty()) {
+            throw new IllegalStateException("语料目录中没有MP3文件: " + corpus);
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> walk = Files.walk(workDir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] decode() throws Exception {
+        return decode(files.get(Math.floorMod(next.getAndIncrement(), files.size())));
+    }
+
+    @Benchmark
+    @Threads(8)
+    public byte[] decodeParallel() throws Exception {
+        return decode(files.get(Math.floorMod(next.getAndIncrement(), files.size())));
+    }
+
+    private byte[] decode(Path file) throws Exception {
+        if ("subprocess".equals(mode)) {
+            return subprocessDecode(file);
+        }
+        return AudioTranscoder.decode(file);
+    }
+
+    /**
+     * 改造前的 AudioUtils.mp3ToPcm：启动ffmpeg进程写临时PCM文件后读回
+     */
+    private byte[] subprocessDecode(Path mp3) throws Exception {
+        Path tempPcm = workDir.resolve(UUID.randomUUID().toString().replace("-", "") + ".pcm");
+        String[] command = {
+                "ffmpeg",
+                "-i", mp3.toString(),
+                "-ar", String.valueOf(AudioUtils.SAMPLE_RATE),
+                "-ac", String.valueOf(AudioUtils.CHANNELS),
+                "-f", "s16le",
+                tempPcm.toString()
+        };
+        Process process = Runtime.getRuntime().exec(command);
+        try (InputStream errorStream = process.getErrorStream()) {
+            errorStream.transferTo(OutputStream.nullOutputStream());
+        }
+        int exitCode = process.waitFor();
+        if (exitCode != 0) {
+            throw new IOException("ffmpeg转换失败，退出代码: " + exitCode);
+        }
+        byte[] pcm = Files.readAllBytes(tempPcm);
+        Files.delete(tempPcm);
+        return pcm;
+    }
+
+    /**
+     * 带音节起伏的合成语音：基频和共振峰随时间变化，叠加少量噪声，避免编码器对纯音过度压缩
+     */
+    private static byte[] syntheticSpeech(int seconds, Random random) {
+        int samples = seconds * AudioUtils.SAMPLE_RATE;
+        byte[] pcm = new byte[samples * 2];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / AudioUtils.SAMPLE_RATE;
+            double pitch = 140 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / AudioUtils.SAMPLE_RATE;
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 3 * t));
+            double value = envelope * (0.5 * Math.sin(phase) + 0.25 * Math.sin(3 * phase) + 0.1 * Math.sin(7 * phase))
+                    + random.nextGaussian() * 0.02;
+            short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value * 12000));
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
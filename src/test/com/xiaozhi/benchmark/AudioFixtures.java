@@ -0,0 +1,77 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.utils.AudioUtils;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+/**
+ * 音频基准测试共用的输入数据，固定随机种子生成，每次运行完全一致，便于前后对比
+ */
+final class AudioFixtures {
+
+    private static final long SEED = 42;
+
+    private AudioFixtures() {
+    }
+
+    /**
+     * 带音节起伏的合成语音（16kHz单声道16位小端序），与 AudioDecodeBenchmark 相同
+     */
+    static byte[] speech(int ms) {
+        Random random = new Random(SEED);
+        int samples = ms * AudioUtils.SAMPLE_RATE / 1000;
+        byte[] pcm = new byte[samples * 2];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / AudioUtils.SAMPLE_RATE;
+            double pitch = 140 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / AudioUtils.SAMPLE_RATE;
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 3 * t));
+            double value = envelope * (0.5 * Math.sin(phase) + 0.25 * Math.sin(3 * phase) + 0.1 * Math.sin(7 * phase))
+                    + random.nextGaussian() * 0.02;
+            short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value * 12000));
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * 归一化到[-1,1]的样本，与 VadService 的转换一致
+     */
+    static float[] floats(byte[] pcm) {
+        ByteBuffer buffer = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN);
+        float[] samples = new float[pcm.length / 2];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = buffer.getShort() / 32768.0f;
+        }
+        return samples;
+    }
+
+    /**
+     * 封装为WAV。metadataBytes 大于0时在 fmt 和 data 之间插入一个 LIST 块，
+     * 编辑软件和ffmpeg导出的文件通常带有这类元数据
+     */
+    static byte[] wav(byte[] pcm, int metadataBytes) {
+        int listChunk = metadataBytes > 0 ? 8 + metadataBytes : 0;
+        ByteBuffer wav = ByteBuffer.allocate(44 + listChunk + pcm.length).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(36 + listChunk + pcm.length).put("WAVE".getBytes());
+        wav.put("fmt ".getBytes()).putInt(16)
+                .putShort((short) 1)
+                .putShort((short) AudioUtils.CHANNELS)
+                .putInt(AudioUtils.SAMPLE_RATE)
+                .putInt(AudioUtils.SAMPLE_RATE * AudioUtils.CHANNELS * 2)
+                .putShort((short) (AudioUtils.CHANNELS * 2))
+                .putShort((short) 16);
+        if (listChunk > 0) {
+            byte[] info = new byte[metadataBytes];
+            Arrays.fill(info, (byte) ' ');
+            wav.put("LIST".getBytes()).putInt(metadataBytes).put(info);
+        }
+        wav.put("data".getBytes()).putInt(pcm.length).put(pcm);
+        return wav.array();
+    }
+}
@@ -0,0 +1,138 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.dialogue.service.FramePacer;
+import com.xiaozhi.utils.AudioUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 帧节拍抖动负载测试：模拟大量会话同时播放，统计每帧实际发送时间相对理想时钟（开始时间 + n × 60ms）的偏差。
+ * legacy 为改造前每帧向 ScheduledThreadPool 重新提交一次任务的做法，pacer 为共享时间轮。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.FramePacerLoadTest -Dbenchmark=1000,5000
+ */
+public class FramePacerLoadTest {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(AudioUtils.OPUS_FRAME_DURATION_MS);
+    // 每个会话播放的帧数（10秒）
+    private static final int FRAMES = 10_000 / AudioUtils.OPUS_FRAME_DURATION_MS;
+    // 模拟一次WebSocket发送的耗时
+    private static final long SEND_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+
+    public static void main(String[] args) throws Exception {
+        String spec = args.length > 0 && !args[0].contains("*") ? args[0] : "1000,5000";
+        for (String s : spec.split(",")) {
+            int sessions = Integer.parseInt(s.trim());
+            report("legacy", sessions, runLegacy(sessions));
+            report("pacer", sessions, runPacer(sessions));
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 共享时间轮
+     */
+    private static long[][] runPacer(int sessions) throws Exception {
+        FramePacer pacer = new FramePacer();
+        ReflectionTestUtils.setField(pacer, "tickMs", 10L);
+        ReflectionTestUtils.setField(pacer, "wheelSize", 64);
+        ReflectionTestUtils.setField(pacer, "underrunRetryMs", 10L);
+        ReflectionTestUtils.setField(pacer, "meterRegistry", new SimpleMeterRegistry());
+        pacer.start();
+
+        long[][] lateness = new long[sessions][FRAMES];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(sessions);
+        Random random = new Random(42);
+        long base = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (int i = 0; i < sessions; i++) {
+            // 会话在一个帧间隔内随机开始
+            long start = base + (long) (random.nextDouble() * FRAME_NANOS);
+            long[] record = lateness[i];
+            int[] index = { 0 };
+            FramePacer.Playback playback = pacer.start(start, 0, () -> {
+                int n = index[0]++;
+                record[n] = System.nanoTime() - (start + n * FRAME_NANOS);
+                LockSupport.parkNanos(SEND_NANOS);
+                return n + 1 >= FRAMES ? FramePacer.FrameResult.FINISHED : FramePacer.FrameResult.SENT;
+            });
+            futures.add(playback.getFuture());
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(2, TimeUnit.MINUTES);
+        pacer.stop();
+        return lateness;
+    }
+
+    /**
+     * 改造前：每个会话每帧按"开始时间 + 已播放时长"计算延迟，重新提交到调度线程池
+     */
+    private static long[][] runLegacy(int sessions) throws Exception {
+        ScheduledExecutorService scheduler = Executors.newScheduledThreadPool(
+                Runtime.getRuntime().availableProcessors(),
+                Thread.ofVirtual().name("audio-scheduler-", 0).factory());
+
+        long[][] lateness = new long[sessions][FRAMES];
+        List<CompletableFuture<Void>> futures = new ArrayList<>(sessions);
+        Random random = new Random(42);
+        long base = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (int i = 0; i < sessions; i++) {
+            long start = base + (long) (random.nextDouble() * FRAME_NANOS);
+            long[] record = lateness[i];
+            CompletableFuture<Void> done = new CompletableFuture<>();
+            futures.add(done);
+            Runnable task = new Runnable() {
+                private int n = 0;
+
+                @Override
+                public void run() {
+                    record[n] = System.nanoTime() - (start + n * FRAME_NANOS);
+                    LockSupport.parkNanos(SEND_NANOS);
+                    n++;
+                    if (n >= FRAMES) {
+                        done.complete(null);
+                        return;
+                    }
+                    long delay = start + n * FRAME_NANOS - System.nanoTime();
+                    scheduler.schedule(this, Math.max(delay, 0), TimeUnit.NANOSECONDS);
+                }
+            };
+            scheduler.schedule(task, start - System.nanoTime(), TimeUnit.NANOSECONDS);
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(2, TimeUnit.MINUTES);
+        scheduler.shutdownNow();
+        return lateness;
+    }
+
+    private static void report(String mode, int sessions, long[][] lateness) {
+        long[] all = Arrays.stream(lateness).flatMapToLong(Arrays::stream).sorted().toArray();
+        // 帧间隔抖动：相邻两帧实际间隔与60ms之差
+        long[] jitter = Arrays.stream(lateness).flatMapToLong(frames -> {
+            long[] diffs = new long[frames.length - 1];
+            for (int i = 1; i < frames.length; i++) {
+                diffs[i - 1] = Math.abs(frames[i] - frames[i - 1]);
+            }
+            return Arrays.stream(diffs);
+        }).sorted().toArray();
+        System.out.printf("%-6s sessions=%-5d lateness p50=%6.2fms p99=%6.2fms max=%7.2fms | jitter p50=%6.2fms p99=%6.2fms max=%7.2fms%n",
+                mode, sessions,
+                ms(percentile(all, 0.50)), ms(percentile(all, 0.99)), ms(all[all.length - 1]),
+                ms(percentile(jitter, 0.50)), ms(percentile(jitter, 0.99)), ms(jitter[jitter.length - 1]));
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
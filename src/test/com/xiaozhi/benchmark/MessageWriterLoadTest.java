@@ -0,0 +1,254 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.common.web.PageFilter;
+import com.xiaozhi.dao.MessageMapper;
+import com.xiaozhi.dialogue.llm.memory.MessageBatchWriter;
+import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.service.SysMessageService;
+import com.zaxxer.hikari.HikariConfig;
+import com.zaxxer.hikari.HikariDataSource;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.apache.ibatis.builder.xml.XMLMapperBuilder;
+import org.apache.ibatis.io.Resources;
+import org.apache.ibatis.mapping.Environment;
+import org.apache.ibatis.session.Configuration;
+import org.apache.ibatis.session.SqlSession;
+import org.apache.ibatis.session.SqlSessionFactory;
+import org.apache.ibatis.session.SqlSessionFactoryBuilder;
+import org.apache.ibatis.transaction.jdbc.JdbcTransactionFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+
+/**
+ * 聊天消息持久化负载测试，使用MySQL兼容模式的内嵌H2和与线上相同的连接池上限（15）。
+ * 模拟大量会话同时结束一轮对话（每轮两条消息），对比改造前每条消息一个虚拟线程单行插入和 MessageBatchWriter 批量写入，
+ * 统计全部落库耗时、等待连接的线程数峰值和批大小，并校验写入行数。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.MessageWriterLoadTest -Dbenchmark=1000,10000
+ */
+public class MessageWriterLoadTest {
+
+    private static final int POOL_SIZE = 15;
+
+    public static void main(String[] args) throws Exception {
+        String spec = args.length > 0 && !args[0].contains("*") ? args[0] : "1000,10000";
+        try (HikariDataSource dataSource = createDataSource()) {
+            SqlSessionFactory factory = createSessionFactory(dataSource);
+            SysMessageService service = createService(factory);
+            for (String s : spec.split(",")) {
+                int turns = Integer.parseInt(s.trim());
+                runLegacy(dataSource, service, turns);
+                runWriter(dataSource, service, turns);
+            }
+        }
+        System.exit(0);
+    }
+
+    /**
+     * 改造前：每条消息一个虚拟线程，单行插入
+     */
+    private static void runLegacy(HikariDataSource dataSource, SysMessageService service, int turns) throws Exception {
+        truncate(dataSource);
+        int total = turns * 2;
+        CountDownLatch done = new CountDownLatch(total);
+        AtomicInteger failures = new AtomicInteger();
+        PoolSampler sampler = new PoolSampler(dataSource);
+
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            SysMessage message = message(i);
+            Thread.startVirtualThread(() -> {
+                try {
+                    service.add(message);
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    done.countDown();
+                }
+            });
+        }
+        done.await();
+        long elapsed = System.nanoTime() - start;
+        sampler.stop();
+
+        System.out.printf("%-7s turns=%-6d rows=%-6d time=%8.1fms awaitingConnection(max)=%-5d failures=%d%n",
+                "legacy", turns, count(dataSource), elapsed / 1e6, sampler.maxAwaiting, failures.get());
+    }
+
+    /**
+     * 批量写入
+     */
+    private static void runWriter(HikariDataSource dataSource, SysMessageService service, int turns) throws Exception {
+        truncate(dataSource);
+        int total = turns * 2;
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        MessageBatchWriter writer = new MessageBatchWriter();
+        ReflectionTestUtils.setField(writer, "queueCapacity", 10000);
+        ReflectionTestUtils.setField(writer, "batchSize", 100);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 200L);
+        ReflectionTestUtils.setField(writer, "offerTimeoutMs", 50L);
+        ReflectionTestUtils.setField(writer, "overflowPolicy", MessageBatchWriter.OverflowPolicy.SPILL);
+        ReflectionTestUtils.setField(writer, "spillPath", Files.createTempFile("message-spill", ".jsonl").toString());
+        ReflectionTestUtils.setField(writer, "shutdownTimeoutMs", 30000L);
+        ReflectionTestUtils.setField(writer, "messageService", service);
+        ReflectionTestUtils.setField(writer, "meterRegistry", registry);
+        writer.start();
+        PoolSampler sampler = new PoolSampler(dataSource);
+
+        CountDownLatch submitted = new CountDownLatch(total);
+        long start = System.nanoTime();
+        for (int i = 0; i < total; i++) {
+            SysMessage message = message(i);
+            Thread.startVirtualThread(() -> {
+                writer.submit(message);
+                submitted.countDown();
+            });
+        }
+        submitted.await();
+        // 关闭时写完队列中的消息
+        writer.stop();
+        long elapsed = System.nanoTime() - start;
+        sampler.stop();
+
+        DistributionSummary batches = registry.find("xiaozhi.chat.message.batch.size").summary();
+        double overflowed = registry.find("xiaozhi.chat.message.overflow").counters().stream()
+                .mapToDouble(c -> c.count()).sum();
+        System.out.printf("%-7s turns=%-6d rows=%-6d time=%8.1fms awaitingConnection(max)=%-5d batches=%d mean=%.1f max=%.0f overflow=%.0f%n",
+                "writer", turns, count(dataSource), elapsed / 1e6, sampler.maxAwaiting,
+                batches.count(), batches.mean(), batches.max(), overflowed);
+    }
+
+    private static SysMessage message(int i) {
+        SysMessage message = new SysMessage();
+        message.setDeviceId("device-" + (i / 2) % 500);
+        message.setSessionId("session-" + i / 2);
+        message.setSender(i % 2 == 0 ? "user" : "assistant");
+        message.setMessage("消息内容 " + i);
+        message.setRoleId(1);
+        message.setMessageType(SysMessage.MESSAGE_TYPE_NORMAL);
+        message.setCreateTime(new Date());
+        return message;
+    }
+
+    private static HikariDataSource createDataSource() throws Exception {
+        HikariConfig config = new HikariConfig();
+        config.setJdbcUrl("jdbc:h2:mem:xiaozhi;MODE=MySQL;DATABASE_TO_LOWER=TRUE;DB_CLOSE_DELAY=-1");
+        config.setMaximumPoolSize(POOL_SIZE);
+        config.setConnectionTimeout(60000);
+        HikariDataSource dataSource = new HikariDataSource(config);
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("""
+                    CREATE TABLE sys_message (
+                      messageId bigint NOT NULL AUTO_INCREMENT PRIMARY KEY,
+                      deviceId varchar(30) NOT NULL,
+                      sessionId varchar(100) NOT NULL,
+                      sender varchar(10) NOT NULL,
+                      roleId bigint,
+                      message text,
+                      messageType varchar(20),
+                      audioPath varchar(100),
+                      state varchar(1) DEFAULT '1',
+                      createTime timestamp NULL DEFAULT CURRENT_TIMESTAMP
+                    )""");
+        }
+        return dataSource;
+    }
+
+    private static SqlSessionFactory createSessionFactory(HikariDataSource dataSource) throws Exception {
+        Configuration configuration = new Configuration(new Environment("benchmark", new JdbcTransactionFactory(), dataSource));
+        String resource = "com/xiaozhi/mapper/MessageMapper.xml";
+        try (InputStream in = Resources.getResourceAsStream(resource)) {
+            new XMLMapperBuilder(in, configuration, resource, configuration.getSqlFragments()).parse();
+        }
+        return new SqlSessionFactoryBuilder().build(configuration);
+    }
+
+    /**
+     * 与 SysMessageServiceImpl 相同的写入方式，每次调用一个自动提交的会话
+     */
+    private static SysMessageService createService(SqlSessionFactory factory) {
+        return new SysMessageService() {
+            private <T> T execute(Function<MessageMapper, T> action) {
+                try (SqlSession session = factory.openSession(true)) {
+                    return action.apply(session.getMapper(MessageMapper.class));
+                }
+            }
+
+            @Override
+            public int add(SysMessage message) {
+                return execute(mapper -> mapper.add(message));
+            }
+
+            @Override
+            public int addBatch(List<SysMessage> messages) {
+                return execute(mapper -> mapper.addBatch(messages));
+            }
+
+            @Override
+            public List<SysMessage> query(SysMessage message, PageFilter pageFilter) {
+                return execute(mapper -> mapper.query(message));
+            }
+
+            @Override
+            public int delete(SysMessage message) {
+                return execute(mapper -> mapper.delete(message));
+            }
+        };
+    }
+
+    private static void truncate(HikariDataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection(); Statement statement = connection.createStatement()) {
+            statement.execute("TRUNCATE TABLE sys_message");
+        }
+    }
+
+    private static long count(HikariDataSource dataSource) throws Exception {
+        try (Connection connection = dataSource.getConnection();
+             Statement statement = connection.createStatement();
+             ResultSet rs = statement.executeQuery("SELECT COUNT(*) FROM sys_message")) {
+            rs.next();
+            return rs.getLong(1);
+        }
+    }
+
+    /**
+     * 每毫秒采样一次等待连接的线程数
+     */
+    private static class PoolSampler {
+        private volatile boolean running = true;
+        private volatile int maxAwaiting = 0;
+        private final Thread thread;
+
+        PoolSampler(HikariDataSource dataSource) {
+            thread = Thread.ofPlatform().daemon(true).start(() -> {
+                while (running) {
+                    var pool = dataSource.getHikariPoolMXBean();
+                    if (pool != null) {
+                        maxAwaiting = Math.max(maxAwaiting, pool.getThreadsAwaitingConnection());
+                    }
+                    try {
+                        Thread.sleep(1);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                }
+            });
+        }
+
+        void stop() throws InterruptedException {
+            running = false;
+            thread.join();
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusProcessor;
+import io.github.jaredmdobson.concentus.OpusException;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * OpusProcessor 的编解码和拼接：
+ * opusToPcm 解码一个60ms上行帧（每个设备每秒约17次），pcmToOpus 把一句TTS的PCM编码为下行帧，
+ * smoothJoinPcm 把多段PCM交叉淡变拼接。配合 -prof gc 看每次操作的分配量，运行方式见 {@link AudioBenchmarkRunner}。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class OpusCodecBenchmark {
+
+    private static final String SID = "bench";
+
+    private OpusProcessor opusProcessor;
+    private byte[] frame;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        opusProcessor = new OpusProcessor();
+        // 取语音中段的一帧，避开开头的淡入
+        List<byte[]> frames = opusProcessor.pcmToOpus("fixture", AudioFixtures.speech(1000), false);
+        frame = frames.get(frames.size() / 2);
+        opusProcessor.cleanup("fixture");
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        opusProcessor.cleanup();
+    }
+
+    /**
+     * 编码输入：一句TTS的时长，以及是否按流式（保留残留样本）编码
+     */
+    @State(Scope.Thread)
+    public static class EncodeInput {
+        @Param({ "60", "2000" })
+        int pcmMs;
+
+        @Param({ "false", "true" })
+        boolean stream;
+
+        byte[] pcm;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            pcm = AudioFixtures.speech(pcmMs);
+        }
+    }
+
+    /**
+     * 拼接输入：若干段60ms的PCM
+     */
+    @State(Scope.Thread)
+    public static class JoinInput {
+        @Param({ "10", "100" })
+        int chunks;
+
+        List<byte[]> pcmChunks;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            byte[] pcm = AudioFixtures.speech(chunks * AudioUtils.OPUS_FRAME_DURATION_MS);
+            int chunkBytes = pcm.length / chunks;
+            pcmChunks = new ArrayList<>(chunks);
+            for (int i = 0; i < chunks; i++) {
+                byte[] chunk = new byte[chunkBytes];
+                System.arraycopy(pcm, i * chunkBytes, chunk, 0, chunkBytes);
+                pcmChunks.add(chunk);
+            }
+        }
+    }
+
+    @Benchmark
+    public byte[] opusToPcm() throws OpusException {
+        return opusProcessor.opusToPcm(SID, frame);
+    }
+
+    @Benchmark
+    public List<byte[]> pcmToOpus(EncodeInput input) {
+        return opusProcessor.pcmToOpus(SID, input.pcm, input.stream);
+    }
+
+    @Benchmark
+    public byte[] smoothJoinPcm(JoinInput input) {
+        return opusProcessor.smoothJoinPcm(input.pcmChunks);
+    }
+}
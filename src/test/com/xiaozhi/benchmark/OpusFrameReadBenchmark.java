@@ -0,0 +1,152 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusFrameFile;
+import com.xiaozhi.utils.OpusProcessor;
+import org.bytedeco.ffmpeg.global.avcodec;
+import org.bytedeco.javacv.FFmpegFrameRecorder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Stream;
+
+/**
+ * 播放前读取Opus帧的开销：旧的 OpusProcessor.readOpus（ogg / 2字节长度前缀的 .opus）与带索引的帧文件对比。
+ * readList 读出完整的 List&lt;byte[]&gt;（旧接口），playback 模拟播放时逐帧交给发送方：
+ * 旧格式先读出列表再包装，帧文件内存映射后直接切片。
+ * 音频为 {@code seconds} 秒的合成语音，配合 -prof gc 可以看到每次播放的分配量。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 3)
+@Measurement(iterations = 5, time = 5)
+@Fork(1)
+public class OpusFrameReadBenchmark {
+
+    @Param({ "ogg", "framed", "frames" })
+    private String format;
+
+    @Param({ "5", "60" })
+    private int seconds;
+
+    private final OpusProcessor opusProcessor = new OpusProcessor();
+    private Path workDir;
+    private Path file;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        workDir = Files.createTempDirectory("opus-read-bench");
+        byte[] pcm = syntheticSpeech(seconds, new Random(42));
+        file = switch (format) {
+            case "ogg" -> writeOgg(pcm, workDir.resolve("speech.ogg"));
+            case "framed" -> writeFramed(encode(pcm), workDir.resolve("speech.opus"));
+            default -> {
+                Path path = workDir.resolve("speech" + OpusFrameFile.SUFFIX);
+                OpusFrameFile.write(path, encode(pcm));
+                yield path;
+            }
+        };
+        // 预热页缓存，只比较解析开销
+        Files.readAllBytes(file);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        try (Stream<Path> walk = Files.walk(workDir)) {
+            for (Path path : walk.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+
+    @Benchmark
+    public List<byte[]> readList() throws IOException {
+        return opusProcessor.readOpus(file.toFile());
+    }
+
+    @Benchmark
+    public void playback(Blackhole blackhole) throws IOException {
+        if ("frames".equals(format)) {
+            try (OpusFrameFile frameFile = OpusFrameFile.open(file)) {
+                for (int i = 0; i < frameFile.frameCount(); i++) {
+                    blackhole.consume(frameFile.frame(i));
+                }
+            }
+        } else {
+            for (byte[] frame : opusProcessor.readOpus(file.toFile())) {
+                blackhole.consume(ByteBuffer.wrap(frame));
+            }
+        }
+    }
+
+    private List<byte[]> encode(byte[] pcm) {
+        try {
+            return opusProcessor.pcmToOpus("bench", pcm, false);
+        } finally {
+            opusProcessor.cleanup("bench");
+        }
+    }
+
+    /**
+     * 2字节小端长度前缀 + 帧数据，readOpus 的帧格式分支
+     */
+    private static Path writeFramed(List<byte[]> frames, Path path) throws IOException {
+        try (OutputStream out = Files.newOutputStream(path)) {
+            for (byte[] frame : frames) {
+                out.write(frame.length & 0xFF);
+                out.write(frame.length >> 8);
+                out.write(frame);
+            }
+        }
+        return path;
+    }
+
+    private static Path writeOgg(byte[] pcm, Path path) throws IOException {
+        File output = path.toFile();
+        try (FFmpegFrameRecorder recorder = new FFmpegFrameRecorder(output, AudioUtils.CHANNELS)) {
+            recorder.setFormat("ogg");
+            recorder.setAudioCodec(avcodec.AV_CODEC_ID_OPUS);
+            recorder.setSampleRate(AudioUtils.SAMPLE_RATE);
+            recorder.setAudioBitrate(AudioUtils.BITRATE);
+            recorder.start();
+            ShortBuffer samples = ByteBuffer.wrap(pcm).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer();
+            recorder.recordSamples(AudioUtils.SAMPLE_RATE, AudioUtils.CHANNELS, samples);
+            recorder.stop();
+        }
+        return path;
+    }
+
+    /**
+     * 带音节起伏的合成语音，与 AudioDecodeBenchmark 相同
+     */
+    private static byte[] syntheticSpeech(int seconds, Random random) {
+        int samples = seconds * AudioUtils.SAMPLE_RATE;
+        byte[] pcm = new byte[samples * 2];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / AudioUtils.SAMPLE_RATE;
+            double pitch = 140 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / AudioUtils.SAMPLE_RATE;
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 3 * t));
+            double value = envelope * (0.5 * Math.sin(phase) + 0.25 * Math.sin(3 * phase) + 0.1 * Math.sin(7 * phase))
+                    + random.nextGaussian() * 0.02;
+            short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value * 12000));
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+}
@@ -0,0 +1,134 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.dialogue.service.DialogueService.Sentence;
+import com.xiaozhi.dialogue.service.DialoguePipeline;
+import com.xiaozhi.dialogue.service.SentenceBuffer;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * handleSentence → processQueue 的句子队列吞吐对比。
+ * legacy 复刻改造前按 sessionId 查多张 ConcurrentHashMap、CopyOnWriteArrayList 加 stream().min() 扫描的做法，
+ * pipeline 为会话上的 DialoguePipeline 环形缓冲区。每次操作模拟一轮回复：LLM 连续产出 sentences 个句子，
+ * 播放速度慢于合成，句子先积压再逐个出队。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(java.util.concurrent.TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Threads(8)
+@Fork(1)
+public class SentenceQueueBenchmark {
+
+    // 与线上同量级的并发会话数，决定各张 Map 的大小
+    private static final int SESSIONS = 1000;
+
+    @Param({ "8", "32", "128" })
+    private int sentences;
+
+    private String sessionId;
+
+    // 改造前的会话状态
+    private final Map<String, AtomicInteger> seqCounters = new ConcurrentHashMap<>();
+    private final Map<String, Long> llmStartTimes = new ConcurrentHashMap<>();
+    private final Map<String, CopyOnWriteArrayList<Sentence>> sentenceQueue = new ConcurrentHashMap<>();
+    private final Map<String, AtomicBoolean> firstSentDone = new ConcurrentHashMap<>();
+    private final Map<String, ReentrantLock> locks = new ConcurrentHashMap<>();
+    private final Map<Long, StringBuilder> dialogueResponses = new ConcurrentHashMap<>();
+
+    private DialoguePipeline pipeline;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        for (int i = 0; i < SESSIONS; i++) {
+            String id = "session-" + i;
+            seqCounters.put(id, new AtomicInteger());
+            llmStartTimes.put(id, System.currentTimeMillis());
+            sentenceQueue.put(id, new CopyOnWriteArrayList<>());
+            firstSentDone.put(id, new AtomicBoolean(true));
+            locks.put(id, new ReentrantLock());
+        }
+        sessionId = "session-" + Thread.currentThread().threadId() % SESSIONS;
+        pipeline = new DialoguePipeline();
+        pipeline.startChat();
+        pipeline.getFirstSentDone().set(true);
+    }
+
+    @Benchmark
+    public void legacy(Blackhole bh) {
+        long assistantTimeMillis = System.nanoTime();
+        dialogueResponses.put(assistantTimeMillis, new StringBuilder());
+        for (int i = 0; i < sentences; i++) {
+            int seq = seqCounters.get(sessionId).incrementAndGet();
+            dialogueResponses.computeIfAbsent(assistantTimeMillis, k -> new StringBuilder()).append("句子");
+            Long startTime = llmStartTimes.get(sessionId);
+            Sentence sentence = new Sentence(seq, "句子", i == 0, i == sentences - 1);
+            sentence.setModelResponseTime(startTime != null ? startTime : 0);
+            sentence.setAssistantTimeMillis(assistantTimeMillis);
+            sentenceQueue.get(sessionId).add(sentence);
+            sentence.setAudio("audio/" + seq + ".wav");
+        }
+        for (int i = 0; i < sentences; i++) {
+            ReentrantLock lock = locks.get(sessionId);
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                CopyOnWriteArrayList<Sentence> queue = sentenceQueue.get(sessionId);
+                if (queue == null || queue.isEmpty() || !firstSentDone.get(sessionId).get()) {
+                    continue;
+                }
+                int minSeq = queue.stream().mapToInt(Sentence::getSeq).min().orElse(Integer.MAX_VALUE);
+                Sentence next = queue.stream().filter(s -> s.getSeq() == minSeq).findFirst().orElse(null);
+                if (next != null && next.isReady()) {
+                    queue.remove(next);
+                    bh.consume(next);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        dialogueResponses.remove(assistantTimeMillis);
+    }
+
+    @Benchmark
+    public void pipeline(Blackhole bh) {
+        long assistantTimeMillis = System.nanoTime();
+        var turn = pipeline.turn(assistantTimeMillis);
+        SentenceBuffer queue = pipeline.getSentences();
+        for (int i = 0; i < sentences; i++) {
+            turn.appendResponse("句子");
+            long startTime = pipeline.getLlmStartTime();
+            Sentence sentence = queue.append("句子", i == 0, i == sentences - 1);
+            sentence.setModelResponseTime(startTime);
+            sentence.setTurn(turn);
+            sentence.setAudio("audio/" + sentence.getSeq() + ".wav");
+        }
+        for (int i = 0; i < sentences; i++) {
+            ReentrantLock lock = pipeline.getQueueLock();
+            if (!lock.tryLock()) {
+                continue;
+            }
+            try {
+                if (queue.isEmpty() || !pipeline.getFirstSentDone().get()) {
+                    continue;
+                }
+                Sentence next = queue.peek();
+                if (next != null && next.isReady()) {
+                    queue.remove(next);
+                    bh.consume(next);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+}
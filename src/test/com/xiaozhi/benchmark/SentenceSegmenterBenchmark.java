@@ -0,0 +1,94 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.dialogue.llm.LegacySentenceSegmenter;
+import com.xiaozhi.dialogue.llm.SentenceSegmenter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 流式断句的开销：legacy 为改造前的逐字符正则实现 {@link LegacySentenceSegmenter}，
+ * segmenter 为 SentenceSegmenter。输入为录制的中文、英文模型输出 token 流（含表情符号和颜文字），
+ * 每次操作处理一轮完整回复。setup 中先校验两种实现断出的句子完全一致，配合 -prof gc 对比分配量。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class SentenceSegmenterBenchmark {
+
+    // 中文回复，按常见模型输出切成1到3个字的 token
+    private static final String[] CHINESE = {
+            "好的", "，", "我", "来", "给你", "讲", "一个", "小", "故事", "吧", "！", "从前", "有", "一只", "小", "兔子",
+            "，", "它", "住在", "森林", "边", "的", "树洞", "里", "。", "每天", "早上", "，", "小", "兔子", "都会", "去",
+            "河边", "喝水", "😊", "。", "有一天", "，", "它", "遇到", "了", "一只", "迷路", "的", "小", "鸭子", "(・ω・)",
+            "，", "小", "鸭子", "说", "：", "“", "我", "找不到", "妈妈", "了", "。", "”", "\n", "小", "兔子", "想了想",
+            "，", "决定", "帮", "它", "一起", "找", "。", "它们", "走了", "大约", "3.5", "公里", "，", "终于", "在",
+            "湖边", "找到", "了", "鸭", "妈妈", "！", "鸭", "妈妈", "非常", "感谢", "，", "送", "给", "小", "兔子",
+            "一篮", "胡萝卜", "🥕", "。", "你", "喜欢", "这个", "故事", "吗", "？", "要", "不要", "再", "听", "一个", "呢",
+            "(^_^)", "～" };
+
+    // 英文回复，按 BPE 子词切分
+    private static final String[] ENGLISH = {
+            "Sure", "!", " Here", "'s", " a", " quick", " summary", " of", " today", "'s", " weather", ":", " it", "'s",
+            " partly", " cloudy", " with", " a", " high", " of", " 23", ".", "5", " degrees", ",", " and", " a", " light",
+            " breeze", " from", " the", " east", ".", " There", "'s", " a", " 30", "%", " chance", " of", " rain", " in",
+            " the", " evening", ",", " so", " you", " might", " want", " to", " bring", " an", " umbrella", " ☔", ".",
+            "\n", "Tomorrow", " looks", " sunny", " :", ")", " Temperatures", " will", " climb", " to", " about", " 27",
+            " degrees", ";", " perfect", " for", " a", " walk", " in", " the", " park", "!", " Is", " there", " anything",
+            " else", " you", "'d", " like", " to", " know", "?", " I", " can", " also", " check", " the", " air",
+            " quality", " for", " you", " \\o/" };
+
+    @Param({ "chinese", "english" })
+    private String language;
+
+    private String[] tokens;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        tokens = "chinese".equals(language) ? CHINESE : ENGLISH;
+        List<String> expected = new ArrayList<>();
+        LegacySentenceSegmenter legacy = new LegacySentenceSegmenter();
+        for (String token : tokens) {
+            legacy.onToken(token, expected::add);
+        }
+        expected.add(legacy.remaining());
+
+        List<String> actual = new ArrayList<>();
+        SentenceSegmenter segmenter = new SentenceSegmenter();
+        for (String token : tokens) {
+            segmenter.append(token, actual::add);
+        }
+        actual.add(segmenter.remaining());
+
+        if (!expected.equals(actual)) {
+            throw new IllegalStateException("断句结果不一致\nlegacy:    " + expected + "\nsegmenter: " + actual);
+        }
+    }
+
+    @Benchmark
+    public void legacy(Blackhole blackhole) {
+        LegacySentenceSegmenter legacy = new LegacySentenceSegmenter();
+        Consumer<String> consumer = blackhole::consume;
+        for (String token : tokens) {
+            legacy.onToken(token, consumer);
+        }
+        blackhole.consume(legacy.remaining());
+    }
+
+    @Benchmark
+    public void segmenter(Blackhole blackhole) {
+        SentenceSegmenter segmenter = new SentenceSegmenter();
+        Consumer<String> consumer = blackhole::consume;
+        for (String token : tokens) {
+            segmenter.append(token, consumer);
+        }
+        blackhole.consume(segmenter.remaining());
+    }
+}
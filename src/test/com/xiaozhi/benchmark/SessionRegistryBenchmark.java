@@ -0,0 +1,158 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.entity.SysDevice;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 会话注册表在大量在线设备下的开销对比。
+ * lookup：按设备ID查找会话，legacy 为改造前遍历全部会话，index 为设备ID索引。
+ * expiry：10秒内的不活跃检查开销，legacy 为改造前每10秒遍历全部会话并计算 Duration，
+ * wheel 为超时时间轮每秒推进一次、共10次。所有会话保持活跃，测的是稳态下的检查成本。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class SessionRegistryBenchmark {
+
+    private static final long SECOND_NANOS = TimeUnit.SECONDS.toNanos(1);
+    private static final long TIMEOUT_SECONDS = 60;
+
+    @Param({ "50000" })
+    private int sessions;
+
+    private SessionManager manager;
+    private Map<String, ChatSession> registry;
+    private BenchSession[] all;
+    private String[] deviceIds;
+    // 时间轮使用的模拟时钟，每次推进1秒
+    private long now;
+
+    /**
+     * 只用于测试的会话，额外保留改造前的 Instant 活动时间
+     */
+    private static class BenchSession extends ChatSession {
+        Instant lastActivityTime = Instant.now();
+
+        BenchSession(String sessionId) {
+            super(sessionId);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public boolean isAudioChannelOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void sendTextMessage(String message) {
+        }
+
+        @Override
+        public void sendBinaryMessage(byte[] message) {
+        }
+    }
+
+    @Setup(Level.Trial)
+    @SuppressWarnings("unchecked")
+    public void setup() {
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger(SessionManager.class))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+        manager = new SessionManager();
+        registry = (Map<String, ChatSession>) ReflectionTestUtils.getField(manager, "sessions");
+        all = new BenchSession[sessions];
+        deviceIds = new String[sessions];
+        Random random = new Random(42);
+        now = System.nanoTime();
+        for (int i = 0; i < sessions; i++) {
+            BenchSession session = new BenchSession("session-" + i);
+            // 最后活动时间分散在一个超时周期内，会话均匀分布在各个槽位上
+            session.setLastActivityNanos(now - (long) (random.nextDouble() * TIMEOUT_SECONDS * SECOND_NANOS));
+            deviceIds[i] = String.format("%02x:%02x:%02x:%02x:%02x:%02x",
+                    random.nextInt(256), random.nextInt(256), random.nextInt(256),
+                    random.nextInt(256), random.nextInt(256), i & 0xff);
+            manager.registerSession(session.getSessionId(), session);
+            manager.registerDevice(session.getSessionId(), new SysDevice().setDeviceId(deviceIds[i]));
+            all[i] = session;
+        }
+    }
+
+    /**
+     * 设备持续有音频往来：每次检查前所有会话刚刚活跃过（不计入耗时），只用于 expiry
+     */
+    @State(Scope.Benchmark)
+    public static class Activity {
+        @Setup(Level.Invocation)
+        public void touch(SessionRegistryBenchmark benchmark) {
+            for (BenchSession session : benchmark.all) {
+                session.setLastActivityNanos(benchmark.now);
+            }
+        }
+    }
+
+    @Benchmark
+    public ChatSession lookupLegacy() {
+        String deviceId = deviceIds[ThreadLocalRandom.current().nextInt(deviceIds.length)];
+        for (ChatSession chatSession : registry.values()) {
+            if (chatSession.getSysDevice() != null && deviceId.equals(chatSession.getSysDevice().getDeviceId())) {
+                return chatSession;
+            }
+        }
+        return null;
+    }
+
+    @Benchmark
+    public ChatSession lookupIndex() {
+        return manager.getSessionByDeviceId(deviceIds[ThreadLocalRandom.current().nextInt(deviceIds.length)]);
+    }
+
+    /**
+     * 改造前：一次全量扫描（每10秒一次）
+     */
+    @Benchmark
+    public void expiryLegacy(Activity activity, Blackhole bh) {
+        Instant current = Instant.now();
+        registry.values().forEach(chatSession -> {
+            Instant lastActivity = ((BenchSession) chatSession).lastActivityTime;
+            if (lastActivity != null) {
+                Duration inactiveDuration = Duration.between(lastActivity, current);
+                bh.consume(inactiveDuration.getSeconds() > TIMEOUT_SECONDS);
+            }
+        });
+    }
+
+    /**
+     * 时间轮：同样10秒内推进10个槽位
+     */
+    @Benchmark
+    public void expiryWheel(Activity activity, Blackhole bh) {
+        for (int i = 0; i < 10; i++) {
+            now += SECOND_NANOS;
+            List<ChatSession> expired = ReflectionTestUtils.invokeMethod(manager, "expireInactiveSessions", now);
+            bh.consume(expired);
+        }
+    }
+}
@@ -0,0 +1,223 @@
+package com.xiaozhi.benchmark;
+
+import com.sun.net.httpserver.HttpServer;
+import com.xiaozhi.dialogue.tts.TtsService;
+import com.xiaozhi.dialogue.tts.hedge.TtsHedger;
+import com.xiaozhi.utils.AudioUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * TTS对冲负载测试：本地启动两个HTTP桩服务模拟TTS接口，主服务大部分请求200~400ms返回，少量请求长尾3秒；
+ * 备用服务稍慢但长尾很少。对比只请求主服务和开启对冲两种方式的端到端耗时分位数，以及对冲额外发出的请求数。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.TtsHedgeLoadTest -Dbenchmark=2000
+ */
+public class TtsHedgeLoadTest {
+
+    // 并发合成数
+    private static final int CONCURRENCY = 32;
+    private static final long TIMEOUT_MS = 10000;
+    // 桩服务返回0.5秒静音
+    private static final byte[] WAV = wav(AudioUtils.SAMPLE_RATE / 2);
+
+    public static void main(String[] args) throws Exception {
+        String spec = args.length > 0 && !args[0].contains("*") ? args[0] : "2000";
+        HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+        StubEndpoint primary = new StubEndpoint("/primary", 200, 400, 0.05, 3000);
+        StubEndpoint fallback = new StubEndpoint("/fallback", 300, 500, 0.005, 3000);
+        primary.bind(server);
+        fallback.bind(server);
+        server.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+        server.start();
+        String base = "http://127.0.0.1:" + server.getAddress().getPort();
+
+        Path dir = Files.createTempDirectory("tts-hedge");
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        TtsService primaryService = new StubTtsService("primary", client, base + primary.path, dir);
+        TtsService fallbackService = new StubTtsService("fallback", client, base + fallback.path, dir);
+        try {
+            for (String s : spec.split(",")) {
+                int requests = Integer.parseInt(s.trim());
+                run("single", requests, primaryService, null, primary, fallback);
+                run("hedged", requests, primaryService, fallbackService, primary, fallback);
+            }
+        } finally {
+            server.stop(0);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, int requests, TtsService primaryService, TtsService fallbackService,
+            StubEndpoint primary, StubEndpoint fallback) throws Exception {
+        SimpleMeterRegistry registry = new SimpleMeterRegistry();
+        TtsHedger hedger = new TtsHedger();
+        ReflectionTestUtils.setField(hedger, "enabled", true);
+        ReflectionTestUtils.setField(hedger, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedger, "minDelayMs", 300L);
+        ReflectionTestUtils.setField(hedger, "defaultDelayMs", 2000L);
+        ReflectionTestUtils.setField(hedger, "minSamples", 20);
+        ReflectionTestUtils.setField(hedger, "windowSize", 200);
+        ReflectionTestUtils.setField(hedger, "maxInflight", 16);
+        ReflectionTestUtils.setField(hedger, "meterRegistry", registry);
+        hedger.init();
+        primary.received.set(0);
+        fallback.received.set(0);
+
+        long[] latencies = new long[requests];
+        AtomicInteger failures = new AtomicInteger();
+        AtomicInteger fallbackWins = new AtomicInteger();
+        Semaphore permits = new Semaphore(CONCURRENCY);
+        List<CompletableFuture<Void>> futures = new ArrayList<>(requests);
+        for (int i = 0; i < requests; i++) {
+            permits.acquire();
+            int index = i;
+            CompletableFuture<Void> future = new CompletableFuture<>();
+            futures.add(future);
+            Thread.startVirtualThread(() -> {
+                long start = System.nanoTime();
+                try {
+                    TtsHedger.Result<String> result = hedger.call(false,
+                            new TtsHedger.Leg<>("primary", () -> primaryService.textToSpeech("你好")),
+                            fallbackService != null
+                                    ? new TtsHedger.Leg<>("fallback", () -> fallbackService.textToSpeech("你好"))
+                                    : null,
+                            TIMEOUT_MS, TtsHedgeLoadTest::delete);
+                    if (result.fallback()) {
+                        fallbackWins.incrementAndGet();
+                    }
+                    delete(result.value());
+                } catch (Exception e) {
+                    failures.incrementAndGet();
+                } finally {
+                    latencies[index] = System.nanoTime() - start;
+                    permits.release();
+                    future.complete(null);
+                }
+            });
+        }
+        CompletableFuture.allOf(futures.toArray(new CompletableFuture[0])).get(10, TimeUnit.MINUTES);
+
+        Arrays.sort(latencies);
+        int extra = fallback.received.get();
+        System.out.printf("%-6s requests=%-5d p50=%7.1fms p95=%7.1fms p99=%7.1fms max=%7.1fms | 备用请求=%d (%.1f%%) 备用胜出=%d 失败=%d 当前对冲延迟=%.0fms%n",
+                mode, requests,
+                ms(percentile(latencies, 0.50)), ms(percentile(latencies, 0.95)), ms(percentile(latencies, 0.99)),
+                ms(latencies[latencies.length - 1]),
+                extra, extra * 100.0 / requests, fallbackWins.get(), failures.get(),
+                registry.find("xiaozhi.tts.hedge.delay").tag("provider", "primary").gauge() != null
+                        ? registry.find("xiaozhi.tts.hedge.delay").tag("provider", "primary").gauge().value()
+                        : 0);
+    }
+
+    /**
+     * 本地TTS桩服务：耗时在 [minMs, maxMs) 内均匀分布，按 tailRatio 的概率返回长尾耗时
+     */
+    private static final class StubEndpoint {
+        final String path;
+        final long minMs;
+        final long maxMs;
+        final double tailRatio;
+        final long tailMs;
+        final AtomicInteger received = new AtomicInteger();
+
+        StubEndpoint(String path, long minMs, long maxMs, double tailRatio, long tailMs) {
+            this.path = path;
+            this.minMs = minMs;
+            this.maxMs = maxMs;
+            this.tailRatio = tailRatio;
+            this.tailMs = tailMs;
+        }
+
+        void bind(HttpServer server) {
+            server.createContext(path, exchange -> {
+                received.incrementAndGet();
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                long delay = random.nextDouble() < tailRatio ? tailMs : random.nextLong(minMs, maxMs);
+                try {
+                    Thread.sleep(delay);
+                    exchange.sendResponseHeaders(200, WAV.length);
+                    try (OutputStream out = exchange.getResponseBody()) {
+                        out.write(WAV);
+                    }
+                } catch (Exception e) {
+                    // 客户端已取消
+                } finally {
+                    exchange.close();
+                }
+            });
+        }
+    }
+
+    /**
+     * 通过HTTP请求桩服务的TTS，结果写入临时文件
+     */
+    private static final class StubTtsService implements TtsService {
+        private final String name;
+        private final HttpClient client;
+        private final URI uri;
+        private final Path dir;
+
+        StubTtsService(String name, HttpClient client, String url, Path dir) {
+            this.name = name;
+            this.client = client;
+            this.uri = URI.create(url);
+            this.dir = dir;
+        }
+
+        @Override
+        public String getProviderName() {
+            return name;
+        }
+
+        @Override
+        public String textToSpeech(String text) throws Exception {
+            HttpResponse<byte[]> response = client.send(HttpRequest.newBuilder(uri).GET().build(),
+                    HttpResponse.BodyHandlers.ofByteArray());
+            Path path = dir.resolve(getAudioFileName());
+            Files.write(path, response.body());
+            return path.toString();
+        }
+    }
+
+    private static byte[] wav(int samples) {
+        ByteBuffer header = AudioUtils.wavHeader(samples * 2);
+        byte[] data = new byte[header.remaining() + samples * 2];
+        header.get(data, 0, header.remaining());
+        return data;
+    }
+
+    private static void delete(String path) {
+        try {
+            Files.deleteIfExists(Path.of(path));
+        } catch (Exception ignored) {
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
@@ -0,0 +1,384 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.communication.common.ChatSession;
+import com.xiaozhi.communication.common.MessageHandler;
+import com.xiaozhi.communication.common.SessionManager;
+import com.xiaozhi.communication.domain.UdpParams;
+import com.xiaozhi.communication.server.udp.UdpAudioChannel;
+import com.xiaozhi.communication.server.udp.UdpAudioServer;
+import com.xiaozhi.entity.SysDevice;
+import com.xiaozhi.utils.AudioUtils;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.slf4j.LoggerFactory;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import javax.crypto.Cipher;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.DatagramChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * UDP音频通道回环负载测试：N个模拟设备与服务端之间按60ms节拍双向发送音频帧，帧内携带发送时间，
+ * 统计下行（服务端到设备）和上行（设备到服务端流水线入口）的帧延迟分位数与送达比例。
+ * udp 走 UdpAudioServer/UdpAudioChannel 的真实收发、加解密和乱序缓冲；
+ * websocket 为同样节拍下经TCP发送WebSocket二进制帧（只含分帧，不含Spring的发送队列）。
+ * <p>
+ * 回环网络不会丢包，丢包率大于0时由发送方模拟：UDP直接丢弃该帧；TCP按最小重传超时（200ms）推迟该帧，
+ * 其后的帧排在它后面（队头阻塞），这是对TCP重传的建模，不是真实网络的测量结果。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.UdpAudioLoadTest -Dbenchmark=200,1000
+ */
+public class UdpAudioLoadTest {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(AudioUtils.OPUS_FRAME_DURATION_MS);
+    // 每个会话每个方向发送的帧数（10秒）
+    private static final int FRAMES = 10_000 / AudioUtils.OPUS_FRAME_DURATION_MS;
+    // 典型的Opus帧大小
+    private static final int FRAME_SIZE = 120;
+    private static final double[] LOSS_RATES = { 0, 0.02 };
+    private static final long TCP_RTO_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    public static void main(String[] args) throws Exception {
+        String spec = args.length > 0 && !args[0].contains("*") ? args[0] : "200,1000";
+        ((ch.qos.logback.classic.Logger) LoggerFactory.getLogger("com.xiaozhi"))
+                .setLevel(ch.qos.logback.classic.Level.WARN);
+        // 预热：加解密和收发路径完成JIT编译后再计时
+        runUdp(50, 0, false);
+        runWebSocket(50, 0, false);
+        for (String s : spec.split(",")) {
+            int sessions = Integer.parseInt(s.trim());
+            for (double loss : LOSS_RATES) {
+                runUdp(sessions, loss, true);
+                runWebSocket(sessions, loss, true);
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void runUdp(int sessions, double loss, boolean report) throws Exception {
+        Recorder down = new Recorder(sessions);
+        Recorder up = new Recorder(sessions);
+        SessionManager sessionManager = new SessionManager();
+        MessageHandler messageHandler = new MessageHandler() {
+            @Override
+            public void handleBinaryMessage(String sessionId, byte[] opusData) {
+                up.record(opusData);
+            }
+        };
+        UdpAudioServer server = new UdpAudioServer();
+        ReflectionTestUtils.setField(server, "enabled", true);
+        ReflectionTestUtils.setField(server, "port", 0);
+        ReflectionTestUtils.setField(server, "jitterDepth", 3);
+        ReflectionTestUtils.setField(server, "jitterMaxDelayMs", 60L);
+        ReflectionTestUtils.setField(server, "messageHandler", messageHandler);
+        ReflectionTestUtils.setField(server, "sessionManager", sessionManager);
+        ReflectionTestUtils.setField(server, "meterRegistry", new SimpleMeterRegistry());
+        server.start();
+        InetSocketAddress serverAddress = new InetSocketAddress(InetAddress.getLoopbackAddress(), server.getPort());
+
+        List<UdpDevice> devices = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            LoadSession session = new LoadSession("udp-" + i);
+            sessionManager.registerSession(session.getSessionId(), session);
+            sessionManager.registerDevice(session.getSessionId(), new SysDevice().setDeviceId("device-" + i));
+            UdpAudioChannel channel = server.open(session, false);
+            UdpDevice device = new UdpDevice(channel, server.params(channel, "127.0.0.1"), serverAddress);
+            // 空负载的首包，服务端据此登记设备地址
+            device.send(0, new byte[0]);
+            devices.add(device);
+        }
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!devices.stream().allMatch(d -> d.channel.isOpen()) && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+        }
+
+        List<Thread> threads = new ArrayList<>();
+        for (UdpDevice device : devices) {
+            Thread.startVirtualThread(() -> device.receive(down));
+        }
+        long base = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100);
+        for (UdpDevice device : devices) {
+            long start = base + ThreadLocalRandom.current().nextLong(FRAME_NANOS);
+            threads.add(Thread.startVirtualThread(() -> {
+                ThreadLocalRandom random = ThreadLocalRandom.current();
+                for (int n = 0; n < FRAMES; n++) {
+                    sleepUntil(start + n * FRAME_NANOS);
+                    if (random.nextDouble() >= loss) {
+                        device.channel.send(ByteBuffer.wrap(stamp()));
+                    }
+                    if (random.nextDouble() >= loss) {
+                        device.send(n + 1, stamp());
+                    }
+                }
+            }));
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        // 等待在途的包和乱序缓冲超时
+        Thread.sleep(500);
+        for (UdpDevice device : devices) {
+            device.channel.close();
+            device.datagram.close();
+        }
+        server.stop();
+        if (report) {
+            down.report("udp", "down", sessions, loss);
+            up.report("udp", "up", sessions, loss);
+        }
+    }
+
+    private static void runWebSocket(int sessions, double loss, boolean report) throws Exception {
+        Recorder down = new Recorder(sessions);
+        Recorder up = new Recorder(sessions);
+        List<Socket> sockets = new ArrayList<>(sessions * 2);
+        List<Thread> threads = new ArrayList<>();
+        long base = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(100 + sessions / 10);
+        try (ServerSocket listener = new ServerSocket(0, sessions, InetAddress.getLoopbackAddress())) {
+            for (int i = 0; i < sessions; i++) {
+                Socket device = new Socket(InetAddress.getLoopbackAddress(), listener.getLocalPort());
+                Socket server = listener.accept();
+                device.setTcpNoDelay(true);
+                server.setTcpNoDelay(true);
+                sockets.add(device);
+                sockets.add(server);
+                Thread.startVirtualThread(() -> readFrames(device, down));
+                Thread.startVirtualThread(() -> readFrames(server, up));
+                long start = base + ThreadLocalRandom.current().nextLong(FRAME_NANOS);
+                threads.add(Thread.startVirtualThread(() -> sendFrames(server, start, loss, false)));
+                threads.add(Thread.startVirtualThread(() -> sendFrames(device, start, loss, true)));
+            }
+            for (Thread thread : threads) {
+                thread.join();
+            }
+            Thread.sleep(500);
+        } finally {
+            for (Socket socket : sockets) {
+                socket.close();
+            }
+        }
+        if (report) {
+            down.report("websocket", "down", sessions, loss);
+            up.report("websocket", "up", sessions, loss);
+        }
+    }
+
+    /**
+     * 按节拍发送WebSocket二进制帧，设备发出的帧按协议加掩码
+     */
+    private static void sendFrames(Socket socket, long start, double loss, boolean masked) {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        try {
+            OutputStream out = socket.getOutputStream();
+            for (int n = 0; n < FRAMES; n++) {
+                sleepUntil(start + n * FRAME_NANOS);
+                byte[] payload = stamp();
+                if (random.nextDouble() < loss) {
+                    // 模拟丢包后的重传：该帧推迟一个RTO送达，后续帧排在其后
+                    LockSupport.parkNanos(TCP_RTO_NANOS);
+                }
+                ByteBuffer frame = ByteBuffer.allocate(2 + (masked ? 4 : 0) + payload.length);
+                frame.put((byte) 0x82).put((byte) ((masked ? 0x80 : 0) | payload.length));
+                if (masked) {
+                    byte[] mask = new byte[4];
+                    random.nextBytes(mask);
+                    frame.put(mask);
+                    for (int i = 0; i < payload.length; i++) {
+                        frame.put((byte) (payload[i] ^ mask[i & 3]));
+                    }
+                } else {
+                    frame.put(payload);
+                }
+                out.write(frame.array());
+            }
+        } catch (IOException e) {
+            // 连接已关闭
+        }
+    }
+
+    private static void readFrames(Socket socket, Recorder recorder) {
+        try {
+            DataInputStream in = new DataInputStream(socket.getInputStream());
+            while (true) {
+                in.readUnsignedByte();
+                int second = in.readUnsignedByte();
+                int length = second & 0x7F;
+                if (length == 126) {
+                    length = in.readUnsignedShort();
+                }
+                byte[] mask = null;
+                if ((second & 0x80) != 0) {
+                    mask = new byte[4];
+                    in.readFully(mask);
+                }
+                byte[] payload = new byte[length];
+                in.readFully(payload);
+                if (mask != null) {
+                    for (int i = 0; i < length; i++) {
+                        payload[i] ^= mask[i & 3];
+                    }
+                }
+                recorder.record(payload);
+            }
+        } catch (IOException e) {
+            // 连接已关闭
+        }
+    }
+
+    /**
+     * 模拟设备：按固件协议加密发送，接收并解密下行的包
+     */
+    private static final class UdpDevice {
+        final UdpAudioChannel channel;
+        final DatagramChannel datagram;
+        final SecretKeySpec key;
+        final byte[] nonce;
+        final Cipher encryptor;
+        final Cipher decryptor;
+
+        UdpDevice(UdpAudioChannel channel, UdpParams params, InetSocketAddress server) throws Exception {
+            this.channel = channel;
+            this.key = new SecretKeySpec(HexFormat.of().parseHex(params.getKey()), "AES");
+            this.nonce = HexFormat.of().parseHex(params.getNonce());
+            this.encryptor = Cipher.getInstance("AES/CTR/NoPadding");
+            this.decryptor = Cipher.getInstance("AES/CTR/NoPadding");
+            this.datagram = DatagramChannel.open();
+            datagram.bind(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0));
+            datagram.connect(server);
+        }
+
+        void send(int sequence, byte[] payload) {
+            try {
+                byte[] header = nonce.clone();
+                ByteBuffer.wrap(header)
+                        .putShort(2, (short) payload.length)
+                        .putInt(8, (int) TimeUnit.NANOSECONDS.toMillis(System.nanoTime()))
+                        .putInt(12, sequence);
+                ByteBuffer packet = ByteBuffer.allocate(header.length + payload.length).put(header);
+                encryptor.init(Cipher.ENCRYPT_MODE, key, new IvParameterSpec(header));
+                encryptor.doFinal(ByteBuffer.wrap(payload), packet);
+                datagram.write(packet.flip());
+            } catch (Exception e) {
+                // 通道已关闭
+            }
+        }
+
+        void receive(Recorder recorder) {
+            ByteBuffer buffer = ByteBuffer.allocate(2048);
+            byte[] header = new byte[16];
+            try {
+                while (true) {
+                    datagram.receive(buffer.clear());
+                    buffer.flip();
+                    buffer.get(header);
+                    byte[] payload = new byte[buffer.remaining()];
+                    decryptor.init(Cipher.DECRYPT_MODE, key, new IvParameterSpec(header));
+                    decryptor.doFinal(buffer, ByteBuffer.wrap(payload));
+                    recorder.record(payload);
+                }
+            } catch (Exception e) {
+                // 通道已关闭
+            }
+        }
+    }
+
+    /**
+     * 只用于测试的会话，音频经协商出的UDP通道发送
+     */
+    private static final class LoadSession extends ChatSession {
+        LoadSession(String sessionId) {
+            super(sessionId);
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public boolean isAudioChannelOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+
+        @Override
+        public void sendTextMessage(String message) {
+        }
+
+        @Override
+        public void sendBinaryMessage(byte[] message) {
+            audioChannel.send(ByteBuffer.wrap(message));
+        }
+    }
+
+    /**
+     * 记录帧延迟，帧的前8字节为发送时的 System.nanoTime
+     */
+    private static final class Recorder {
+        final long[] latencies;
+        final AtomicInteger count = new AtomicInteger();
+
+        Recorder(int sessions) {
+            latencies = new long[sessions * FRAMES];
+        }
+
+        void record(byte[] frame) {
+            long latency = System.nanoTime() - ByteBuffer.wrap(frame).getLong();
+            int index = count.getAndIncrement();
+            if (index < latencies.length) {
+                latencies[index] = latency;
+            }
+        }
+
+        void report(String transport, String direction, int sessions, double loss) {
+            int received = Math.min(count.get(), latencies.length);
+            long[] sorted = Arrays.copyOf(latencies, received);
+            Arrays.sort(sorted);
+            System.out.printf("%-9s %-4s sessions=%-5d loss=%.0f%% p50=%7.2fms p99=%7.2fms max=%7.2fms 送达=%.1f%%%n",
+                    transport, direction, sessions, loss * 100,
+                    ms(percentile(sorted, 0.50)), ms(percentile(sorted, 0.99)),
+                    ms(received > 0 ? sorted[received - 1] : 0),
+                    received * 100.0 / latencies.length);
+        }
+    }
+
+    private static byte[] stamp() {
+        byte[] frame = new byte[FRAME_SIZE];
+        ByteBuffer.wrap(frame).putLong(System.nanoTime());
+        return frame;
+    }
+
+    private static void sleepUntil(long deadline) {
+        long remaining;
+        while ((remaining = deadline - System.nanoTime()) > 0) {
+            LockSupport.parkNanos(remaining);
+        }
+    }
+
+    private static long percentile(long[] sorted, double p) {
+        return sorted.length == 0 ? 0 : sorted[Math.min(sorted.length - 1, (int) (sorted.length * p))];
+    }
+
+    private static double ms(long nanos) {
+        return nanos / 1_000_000.0;
+    }
+}
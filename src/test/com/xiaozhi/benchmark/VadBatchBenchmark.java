@@ -0,0 +1,69 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.dialogue.vad.impl.SileroVadModel;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Silero VAD 单帧推理与跨会话批量推理的吞吐对比。
+ * 每次操作模拟所有会话各送入一个 512 样本窗口，得分乘以 sessions 即为每秒处理的窗口数。
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 2, time = 5)
+@Measurement(iterations = 3, time = 10)
+@Fork(1)
+public class VadBatchBenchmark {
+
+    @Param({ "50", "200", "1000" })
+    private int sessions;
+
+    @Param({ "false", "true" })
+    private boolean batched;
+
+    private SileroVadModel model;
+    private ExecutorService executor;
+    private List<Callable<Float>> round;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        model = new SileroVadModel();
+        ReflectionTestUtils.setField(model, "modelPath", "models/silero_vad.onnx");
+        ReflectionTestUtils.setField(model, "batchEnabled", batched);
+        ReflectionTestUtils.setField(model, "batchWindowMs", 5L);
+        ReflectionTestUtils.setField(model, "maxBatchSize", 256);
+        model.initialize();
+
+        executor = Executors.newVirtualThreadPerTaskExecutor();
+        Random random = new Random(42);
+        round = new ArrayList<>(sessions);
+        for (int s = 0; s < sessions; s++) {
+            String sessionId = "session-" + s;
+            float[] window = new float[512];
+            for (int i = 0; i < window.length; i++) {
+                window[i] = (float) (Math.sin(i * 0.05 * (s % 7 + 1)) * 0.3 + random.nextGaussian() * 0.05);
+            }
+            round.add(() -> model.getSpeechProbability(sessionId, window));
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        executor.shutdownNow();
+        model.close();
+    }
+
+    @Benchmark
+    public void frameRound() throws Exception {
+        executor.invokeAll(round);
+    }
+}
@@ -0,0 +1,193 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.dialogue.vad.FloatRingBuffer;
+import com.xiaozhi.dialogue.vad.PcmRingBuffer;
+import com.xiaozhi.utils.AudioUtils;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.function.Supplier;
+
+/**
+ * VAD语音缓冲区内存测试：模拟大量会话同时说话，统计说话结束时每个会话保留的堆内存，以及保存用户音频过程中的分配量。
+ * legacy 复刻改造前 VadState 的 List&lt;byte[]&gt;、ArrayList&lt;Float&gt;、LinkedList 预缓冲和 saveUserAudio 合并复制，
+ * ring 为分块环形缓冲区（上限60秒）。
+ * <p>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.VadBufferMemoryTest -Dbenchmark=500:10,30,90
+ */
+public class VadBufferMemoryTest {
+
+    private static final int BYTES_PER_MS = 32;
+    // 每帧PCM大小（60ms）
+    private static final int PCM_FRAME_BYTES = AudioUtils.OPUS_FRAME_DURATION_MS * BYTES_PER_MS;
+    // 24kbps下60ms的Opus包大小
+    private static final int OPUS_FRAME_BYTES = 180;
+    private static final int PRE_BUFFER_BYTES = 200 * BYTES_PER_MS;
+    private static final int MAX_SPEECH_SECONDS = 60;
+
+    public static void main(String[] args) throws Exception {
+        String spec = args.length > 0 && !args[0].contains("*") ? args[0] : "500:10,30,90";
+        String[] parts = spec.split(":");
+        int sessions = Integer.parseInt(parts[0].trim());
+        for (String s : parts[1].split(",")) {
+            int seconds = Integer.parseInt(s.trim());
+            // legacy 保留全部PCM，超过可用堆时跳过
+            long legacyEstimate = (long) sessions * seconds * 1000 * BYTES_PER_MS * 2;
+            if (legacyEstimate < Runtime.getRuntime().maxMemory() * 0.7) {
+                run("legacy", sessions, seconds, LegacyState::new);
+            } else {
+                System.out.printf("%-6s sessions=%-4d speech=%3ds skipped, needs about %dMB heap%n",
+                        "legacy", sessions, seconds, legacyEstimate >> 20);
+            }
+            run("ring", sessions, seconds, RingState::new);
+        }
+        System.exit(0);
+    }
+
+    private static void run(String mode, int sessions, int seconds, Supplier<State> factory) throws Exception {
+        byte[] pcm = new byte[PCM_FRAME_BYTES];
+        byte[] opus = new byte[OPUS_FRAME_BYTES];
+        int frames = seconds * 1000 / AudioUtils.OPUS_FRAME_DURATION_MS;
+        CountingChannel sink = new CountingChannel();
+
+        long baseline = usedHeap();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+
+        List<State> states = new ArrayList<>(sessions);
+        for (int i = 0; i < sessions; i++) {
+            states.add(factory.get());
+        }
+        // 所有会话交替收帧，和线上多个会话同时说话一致
+        for (int f = 0; f < frames; f++) {
+            for (State state : states) {
+                state.addFrame(opus, pcm, f * 0.001f);
+            }
+        }
+        long retained = usedHeap() - baseline;
+
+        for (State state : states) {
+            state.save(sink);
+        }
+        long allocated = threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+        System.out.printf("%-6s sessions=%-4d speech=%3ds retained=%7.1fMB (%7.1fKB/session) allocated=%8.1fMB saved=%7.1fMB%n",
+                mode, sessions, seconds, mb(retained), retained / 1024.0 / sessions, mb(allocated), mb(sink.bytes));
+        states.clear();
+    }
+
+    private static long usedHeap() throws InterruptedException {
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+            Thread.sleep(100);
+        }
+        return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+    }
+
+    private static double mb(long bytes) {
+        return bytes / 1024.0 / 1024.0;
+    }
+
+    private interface State {
+        void addFrame(byte[] opus, byte[] pcm, float prob);
+
+        void save(WritableByteChannel channel) throws Exception;
+    }
+
+    /**
+     * 改造前的 VadState
+     */
+    private static class LegacyState implements State {
+        private final List<Float> probs = new ArrayList<>();
+        private final LinkedList<byte[]> preBuffer = new LinkedList<>();
+        private int preBufferSize = 0;
+        private final List<byte[]> pcmData = new ArrayList<>();
+        private final List<byte[]> opusData = new ArrayList<>();
+
+        @Override
+        public void addFrame(byte[] opus, byte[] pcm, float prob) {
+            opusData.add(opus.clone());
+            probs.add(prob);
+            if (probs.size() > 10) {
+                probs.remove(0);
+            }
+            preBuffer.add(pcm.clone());
+            preBufferSize += pcm.length;
+            while (preBufferSize > PRE_BUFFER_BYTES && !preBuffer.isEmpty()) {
+                preBufferSize -= preBuffer.removeFirst().length;
+            }
+            pcmData.add(pcm.clone());
+        }
+
+        @Override
+        public void save(WritableByteChannel channel) throws Exception {
+            List<byte[]> frames = new ArrayList<>(pcmData);
+            int totalSize = frames.stream().mapToInt(frame -> frame.length).sum();
+            byte[] full = new byte[totalSize];
+            int offset = 0;
+            for (byte[] frame : frames) {
+                System.arraycopy(frame, 0, full, offset, frame.length);
+                offset += frame.length;
+            }
+            channel.write(AudioUtils.wavHeader(full.length));
+            channel.write(ByteBuffer.wrap(full));
+        }
+    }
+
+    /**
+     * 改造后的 VadState
+     */
+    private static class RingState implements State {
+        private final FloatRingBuffer probs = new FloatRingBuffer(10);
+        private final PcmRingBuffer preBuffer = new PcmRingBuffer(PRE_BUFFER_BYTES, PRE_BUFFER_BYTES);
+        private final PcmRingBuffer pcmData = new PcmRingBuffer(1000 * BYTES_PER_MS, MAX_SPEECH_SECONDS * 1000 * BYTES_PER_MS);
+        private final ArrayDeque<byte[]> opusData = new ArrayDeque<>();
+        private final int maxOpusFrames = MAX_SPEECH_SECONDS * 1000 / AudioUtils.OPUS_FRAME_DURATION_MS;
+
+        @Override
+        public void addFrame(byte[] opus, byte[] pcm, float prob) {
+            if (opusData.size() >= maxOpusFrames) {
+                opusData.pollFirst();
+            }
+            opusData.add(opus.clone());
+            probs.add(prob);
+            preBuffer.write(pcm);
+            pcmData.write(pcm);
+        }
+
+        @Override
+        public void save(WritableByteChannel channel) throws Exception {
+            channel.write(AudioUtils.wavHeader(pcmData.size()));
+            pcmData.writeTo(channel);
+        }
+    }
+
+    /**
+     * 只计数的通道，模拟写文件
+     */
+    private static class CountingChannel implements WritableByteChannel {
+        private long bytes = 0;
+
+        @Override
+        public int write(ByteBuffer src) {
+            int n = src.remaining();
+            src.position(src.limit());
+            bytes += n;
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return true;
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
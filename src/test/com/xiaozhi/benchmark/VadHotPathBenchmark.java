@@ -0,0 +1,94 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.dialogue.service.VadService;
+import com.xiaozhi.dialogue.vad.impl.SileroVadModel;
+import com.xiaozhi.utils.AudioUtils;
+import org.openjdk.jmh.annotations.*;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * VadService 每收到一个上行帧都要执行的计算：PCM转浮点、能量计算、Silero模型推理。
+ * 输入为一个60ms帧（960样本），detectSpeech 按512样本窗口、半窗步长切分后推理两次，
+ * speechProbability 直接推理一个512样本窗口。批量推理关闭，测的是单次推理本身。
+ * 这些方法是私有的，通过 MethodHandle 调用：static final 的句柄会被JIT内联，
+ * 不像反射那样分配参数数组和装箱返回值，-prof gc 看到的就是方法本身的分配。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class VadHotPathBenchmark {
+
+    private static final String SID = "bench";
+    private static final int WINDOW_SIZE = 512;
+
+    private static final MethodHandle BYTES_TO_FLOATS = privateMethod("bytesToFloats", float[].class, byte[].class);
+    private static final MethodHandle CALC_ENERGY = privateMethod("calcEnergy", float.class, float[].class);
+    private static final MethodHandle DETECT_SPEECH = privateMethod("detectSpeech", float.class, String.class, float[].class);
+
+    private SileroVadModel model;
+    private VadService vadService;
+    private byte[] pcm;
+    private float[] samples;
+    private float[] window;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        model = new SileroVadModel();
+        ReflectionTestUtils.setField(model, "modelPath", "models/silero_vad.onnx");
+        ReflectionTestUtils.setField(model, "batchEnabled", false);
+        model.initialize();
+        vadService = new VadService();
+        ReflectionTestUtils.setField(vadService, "vadModel", model);
+
+        // 取语音中段的一帧
+        byte[] speech = AudioFixtures.speech(1000);
+        int frameBytes = AudioUtils.FRAME_SIZE * 2;
+        pcm = new byte[frameBytes];
+        System.arraycopy(speech, speech.length / 2, pcm, 0, frameBytes);
+        samples = AudioFixtures.floats(pcm);
+        window = new float[WINDOW_SIZE];
+        System.arraycopy(samples, 0, window, 0, WINDOW_SIZE);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        model.close();
+    }
+
+    @Benchmark
+    public float[] bytesToFloats() throws Throwable {
+        return (float[]) BYTES_TO_FLOATS.invokeExact(vadService, pcm);
+    }
+
+    @Benchmark
+    public float calcEnergy() throws Throwable {
+        return (float) CALC_ENERGY.invokeExact(vadService, samples);
+    }
+
+    @Benchmark
+    public float detectSpeech() throws Throwable {
+        return (float) DETECT_SPEECH.invokeExact(vadService, SID, samples);
+    }
+
+    @Benchmark
+    public float speechProbability() {
+        return model.getSpeechProbability(SID, window);
+    }
+
+    private static MethodHandle privateMethod(String name, Class<?> returnType, Class<?>... parameterTypes) {
+        try {
+            return MethodHandles.privateLookupIn(VadService.class, MethodHandles.lookup())
+                    .findVirtual(VadService.class, name, MethodType.methodType(returnType, parameterTypes));
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("找不到 VadService." + name, e);
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package com.xiaozhi.benchmark;
+
+import com.xiaozhi.utils.AudioUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * AudioUtils.wavBytesToPcm：逐字节查找 data 块后复制PCM。
+ * metadataBytes 为 data 之前的 LIST 元数据长度，逐字节查找的开销随之增长；seconds 决定复制量。
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 3)
+@Fork(1)
+public class WavParseBenchmark {
+
+    @Param({ "1", "10" })
+    private int seconds;
+
+    @Param({ "0", "4096" })
+    private int metadataBytes;
+
+    private byte[] wav;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        wav = AudioFixtures.wav(AudioFixtures.speech(seconds * 1000), metadataBytes);
+    }
+
+    @Benchmark
+    public byte[] wavBytesToPcm() throws IOException {
+        return AudioUtils.wavBytesToPcm(wav);
+    }
+}
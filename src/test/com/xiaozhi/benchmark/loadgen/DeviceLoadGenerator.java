@@ -0,0 +1,236 @@
+package com.xiaozhi.benchmark.loadgen;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusProcessor;
+
+import java.io.IOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 端到端负载测试：模拟N台ESP32设备连接服务端，每台设备循环进行语音对话，统计连接耗时、说完到识别结果、
+ * 说完到首帧音频、音频帧间隔、整轮耗时和错误，输出HDR直方图分位数，用于容量规划。
+ * STT/LLM/TTS使用进程内的 {@link StubProviders}，离线运行且耗时稳定，测到的是服务端自身的开销。
+ * <p>
+ * 准备：
+ * <ol>
+ * <li>执行 {@code -Dbenchmark=sql,devices=N} 输出的SQL，创建指向桩服务的STT/LLM/TTS配置、压测角色和
+ * loadtest-00000 起编号的设备（已绑定角色）</li>
+ * <li>以 loadtest 配置启动服务端（--spring.profiles.active=dev,loadtest），MiniMax TTS 指向桩服务；
+ * 修改了 stub-port 时同时指定 --tts.minimax.api-url。默认地址 ws://127.0.0.1:8091/ws/xiaozhi/v1/</li>
+ * <li>运行压测，桩服务随压测进程启动，端口固定，与SQL中的地址一致</li>
+ * </ol>
+ * 运行：mvn -Pbenchmark test-compile exec:exec -Dbenchmark.main=com.xiaozhi.benchmark.loadgen.DeviceLoadGenerator
+ * -Dbenchmark=devices=200,ramp=20,duration=120,utterance=/path/to/question.wav,report=target/loadgen
+ * <p>
+ * 参数（逗号分隔的 key=value）：
+ * <ul>
+ * <li>devices：设备数，默认50；多个值用 / 分隔依次运行，如 devices=100/200/500</li>
+ * <li>ramp：在多少秒内逐台建立连接，默认10</li>
+ * <li>duration：每次运行的总时长（秒），默认60</li>
+ * <li>url：服务端WebSocket地址</li>
+ * <li>utterance：每轮发送的录音，支持wav/mp3/pcm（16kHz单声道）、.opus和 .frames 帧文件。
+ * 服务端用Silero VAD判断说话，需要真实的人声录音；未指定时使用合成音频，VAD可能检测不到</li>
+ * <li>prefix：设备ID前缀，默认 loadtest-</li>
+ * <li>stubs：是否在本进程启动桩服务，默认true；桩服务单独部署时设为false</li>
+ * <li>stub-port / stt-port：桩服务的HTTP和WebSocket端口，默认18090 / 18091</li>
+ * <li>llm-first-token-ms / llm-token-ms / tts-ms / stt-ms：桩服务的耗时，默认300 / 30 / 200 / 100</li>
+ * <li>report：导出 .hgrm 分布文件的目录，不指定则只打印</li>
+ * </ul>
+ * 服务端的VAD在检测到持续静音后才结束一句话，首帧音频和整轮耗时包含角色配置的静音时长（vadSilenceMs）。
+ */
+public class DeviceLoadGenerator {
+
+    private static final long REPORT_INTERVAL_SECONDS = 10;
+
+    public static void main(String[] args) throws Exception {
+        Map<String, String> options = parse(args.length > 0 && !args[0].contains("*") ? args[0] : "");
+        int stubPort = Integer.parseInt(options.getOrDefault("stub-port", "18090"));
+        int sttPort = Integer.parseInt(options.getOrDefault("stt-port", "18091"));
+        String prefix = options.getOrDefault("prefix", "loadtest-");
+        String[] deviceCounts = options.getOrDefault("devices", "50").split("/");
+
+        if (options.containsKey("sql")) {
+            int max = 0;
+            for (String count : deviceCounts) {
+                max = Math.max(max, Integer.parseInt(count.trim()));
+            }
+            System.out.println(setupSql(max, prefix, stubPort, sttPort));
+            return;
+        }
+
+        StubProviders stubs = null;
+        if (Boolean.parseBoolean(options.getOrDefault("stubs", "true"))) {
+            stubs = new StubProviders(stubPort, sttPort,
+                    Long.parseLong(options.getOrDefault("llm-first-token-ms", "300")),
+                    Long.parseLong(options.getOrDefault("llm-token-ms", "30")),
+                    Long.parseLong(options.getOrDefault("tts-ms", "200")),
+                    Long.parseLong(options.getOrDefault("stt-ms", "100")));
+            stubs.start();
+            System.out.printf("桩服务已启动 - LLM: %s, TTS: %s, STT: %s%n", stubs.llmUrl(), stubs.ttsUrl(), stubs.sttUrl());
+        }
+
+        OpusProcessor opusProcessor = new OpusProcessor();
+        List<byte[]> utterance = loadUtterance(opusProcessor, options.get("utterance"));
+        byte[] silence = opusProcessor.pcmToOpus("loadgen-silence", new byte[AudioUtils.FRAME_SIZE * 2], false).get(0);
+        opusProcessor.cleanup("loadgen-silence");
+        System.out.printf("每轮发送 %d 帧（%.1f秒）%n", utterance.size(),
+                utterance.size() * AudioUtils.OPUS_FRAME_DURATION_MS / 1000.0);
+
+        URI uri = URI.create(options.getOrDefault("url", "ws://127.0.0.1:8091/ws/xiaozhi/v1/"));
+        long ramp = Long.parseLong(options.getOrDefault("ramp", "10"));
+        long duration = Long.parseLong(options.getOrDefault("duration", "60"));
+        Path reportDir = options.containsKey("report") ? Path.of(options.get("report")) : null;
+        try {
+            for (String count : deviceCounts) {
+                run(Integer.parseInt(count.trim()), prefix, uri, utterance, silence, ramp, duration, reportDir);
+            }
+        } finally {
+            if (stubs != null) {
+                System.out.printf("桩服务请求数 - LLM: %d, TTS: %d, STT: %d%n",
+                        stubs.llmRequests.get(), stubs.ttsRequests.get(), stubs.sttRequests.get());
+                stubs.close();
+            }
+        }
+        System.exit(0);
+    }
+
+    private static void run(int deviceCount, String prefix, URI uri, List<byte[]> utterance, byte[] silence,
+            long rampSeconds, long durationSeconds, Path reportDir) throws Exception {
+        LoadReport report = new LoadReport();
+        HttpClient client = HttpClient.newBuilder().executor(Executors.newVirtualThreadPerTaskExecutor()).build();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(durationSeconds);
+        long rampNanos = TimeUnit.SECONDS.toNanos(rampSeconds);
+        List<SimulatedDevice> devices = new ArrayList<>(deviceCount);
+        List<Thread> threads = new ArrayList<>(deviceCount);
+        System.out.printf("%n开始运行 - 设备: %d, 建立连接: %d秒, 时长: %d秒, 服务端: %s%n",
+                deviceCount, rampSeconds, durationSeconds, uri);
+
+        Thread reporter = Thread.ofPlatform().daemon(true).name("loadgen-report").start(() -> {
+            try {
+                while (true) {
+                    Thread.sleep(TimeUnit.SECONDS.toMillis(REPORT_INTERVAL_SECONDS));
+                    report.interval(System.out, online(devices));
+                }
+            } catch (InterruptedException e) {
+                // 运行结束
+            }
+        });
+
+        long start = System.nanoTime();
+        for (int i = 0; i < deviceCount; i++) {
+            // 连接在 ramp 内均匀铺开，避免同时握手
+            long delay = start + rampNanos * i / deviceCount - System.nanoTime();
+            if (delay > 0) {
+                TimeUnit.NANOSECONDS.sleep(delay);
+            }
+            SimulatedDevice device = new SimulatedDevice(client, uri, String.format("%s%05d", prefix, i),
+                    utterance, silence, report, deadline);
+            synchronized (devices) {
+                devices.add(device);
+            }
+            threads.add(Thread.ofVirtual().name("device-" + i).start(device::run));
+        }
+        for (Thread thread : threads) {
+            // 最后一轮对话最多再持续一个超时周期
+            thread.join(TimeUnit.SECONDS.toMillis(60));
+        }
+        reporter.interrupt();
+        report.summary(System.out, deviceCount, reportDir);
+        client.close();
+    }
+
+    private static int online(List<SimulatedDevice> devices) {
+        synchronized (devices) {
+            return (int) devices.stream().filter(SimulatedDevice::isConnected).count();
+        }
+    }
+
+    private static List<byte[]> loadUtterance(OpusProcessor opusProcessor, String path) throws IOException {
+        try {
+            if (path != null) {
+                return opusProcessor.readAsOpus("loadgen", path);
+            }
+            System.out.println("未指定 utterance，使用3秒合成音频，服务端VAD可能检测不到说话");
+            return opusProcessor.pcmToOpus("loadgen", syntheticSpeech(3, new Random(42)), false);
+        } finally {
+            opusProcessor.cleanup("loadgen");
+        }
+    }
+
+    /**
+     * 带音节起伏的合成语音，与 AudioDecodeBenchmark 相同
+     */
+    private static byte[] syntheticSpeech(int seconds, Random random) {
+        int samples = seconds * AudioUtils.SAMPLE_RATE;
+        byte[] pcm = new byte[samples * 2];
+        double phase = 0;
+        for (int i = 0; i < samples; i++) {
+            double t = (double) i / AudioUtils.SAMPLE_RATE;
+            double pitch = 140 + 40 * Math.sin(2 * Math.PI * 0.7 * t);
+            phase += 2 * Math.PI * pitch / AudioUtils.SAMPLE_RATE;
+            double envelope = Math.max(0, Math.sin(2 * Math.PI * 3 * t));
+            double value = envelope * (0.5 * Math.sin(phase) + 0.25 * Math.sin(3 * phase) + 0.1 * Math.sin(7 * phase))
+                    + random.nextGaussian() * 0.02;
+            short sample = (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, value * 12000));
+            pcm[i * 2] = (byte) sample;
+            pcm[i * 2 + 1] = (byte) (sample >> 8);
+        }
+        return pcm;
+    }
+
+    /**
+     * 压测所需的配置、角色和设备。userId 为1（管理员），重复执行前先删除 loadtest 开头的记录
+     */
+    static String setupSql(int devices, String prefix, int stubPort, int sttPort) {
+        StringBuilder sql = new StringBuilder();
+        sql.append("-- 压测桩服务配置和角色\n");
+        sql.append("INSERT INTO xiaozhi.sys_config (userId, configType, modelType, provider, configName, configDesc, apiKey, apiUrl, state) VALUES ")
+                .append(String.format("(1, 'llm', 'chat', 'openai', 'loadtest-stub', 'loadtest', 'stub', 'http://127.0.0.1:%d/v1', '1');%n", stubPort));
+        sql.append("SET @llm = LAST_INSERT_ID();\n");
+        sql.append("INSERT INTO xiaozhi.sys_config (userId, configType, provider, configName, configDesc, apiUrl, state) VALUES ")
+                .append(String.format("(1, 'stt', 'funasr', 'loadtest-stub', 'loadtest', 'ws://127.0.0.1:%d', '1');%n", sttPort));
+        sql.append("SET @stt = LAST_INSERT_ID();\n");
+        // MiniMax的接口地址由服务端的 loadtest 配置指定，不读取 apiUrl
+        sql.append("INSERT INTO xiaozhi.sys_config (userId, configType, provider, configName, configDesc, appId, apiKey, state) VALUES ")
+                .append("(1, 'tts', 'minimax', 'loadtest-stub', 'loadtest', 'stub', 'stub', '1');\n");
+        sql.append("SET @tts = LAST_INSERT_ID();\n");
+        sql.append("INSERT INTO xiaozhi.sys_role (roleName, roleDesc, ttsId, modelId, sttId, voiceName, state, userId) ")
+                .append("VALUES ('loadtest', '你是一个简洁的助手', @tts, @llm, @stt, 'loadtest', '1', 1);\n");
+        sql.append("SET @role = LAST_INSERT_ID();\n");
+        sql.append("-- 压测设备\n");
+        for (int i = 0; i < devices; i += 500) {
+            sql.append("INSERT INTO xiaozhi.sys_device (deviceId, deviceName, roleId, userId) VALUES\n");
+            int end = Math.min(devices, i + 500);
+            for (int j = i; j < end; j++) {
+                String id = String.format("%s%05d", prefix, j);
+                sql.append(String.format("  ('%s', '%s', @role, 1)%s%n", id, id, j == end - 1 ? ";" : ","));
+            }
+        }
+        return sql.toString();
+    }
+
+    private static Map<String, String> parse(String spec) {
+        Map<String, String> options = new HashMap<>();
+        for (String part : spec.split(",")) {
+            if (part.isBlank()) {
+                continue;
+            }
+            int eq = part.indexOf('=');
+            if (eq < 0) {
+                options.put(part.trim(), "true");
+            } else {
+                options.put(part.substring(0, eq).trim(), part.substring(eq + 1).trim());
+            }
+        }
+        return options;
+    }
+}
@@ -0,0 +1,174 @@
+package com.xiaozhi.benchmark.loadgen;
+
+import org.HdrHistogram.Histogram;
+import org.HdrHistogram.Recorder;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 负载测试的统计：各项耗时记入HDR直方图（微秒），按间隔输出当期分位数，结束时输出全程分位数、
+ * 错误分类和表现最差的设备，并可导出 .hgrm 分布文件，用 HdrHistogram 的绘图工具对比不同设备数下的曲线。
+ */
+final class LoadReport {
+
+    // 直方图上限60秒，3位有效数字
+    private static final long MAX_MICROS = TimeUnit.SECONDS.toMicros(60);
+
+    /**
+     * 一项耗时：设备线程并发写入 Recorder，报告线程按间隔取出并累加到全程直方图
+     */
+    static final class Metric {
+        final String name;
+        final String description;
+        private final Recorder recorder = new Recorder(MAX_MICROS, 3);
+        private final Histogram total = new Histogram(MAX_MICROS, 3);
+        private Histogram interval;
+
+        Metric(String name, String description) {
+            this.name = name;
+            this.description = description;
+        }
+
+        void record(long nanos) {
+            recorder.recordValue(Math.min(MAX_MICROS, Math.max(0, TimeUnit.NANOSECONDS.toMicros(nanos))));
+        }
+
+        private Histogram roll() {
+            interval = recorder.getIntervalHistogram(interval);
+            total.add(interval);
+            return interval;
+        }
+    }
+
+    /**
+     * 单个模拟设备的统计，只由该设备的线程写入
+     */
+    static final class DeviceStats {
+        final String deviceId;
+        volatile int turns;
+        volatile int errors;
+        volatile long maxFirstAudioNanos;
+        volatile long maxGapNanos;
+
+        DeviceStats(String deviceId) {
+            this.deviceId = deviceId;
+        }
+    }
+
+    final Metric connect = new Metric("connect", "连接+hello");
+    final Metric stt = new Metric("stt", "说完->识别结果");
+    final Metric firstAudio = new Metric("first_audio", "说完->首帧音频");
+    final Metric gap = new Metric("frame_gap", "音频帧间隔");
+    final Metric turn = new Metric("turn", "说完->播放结束");
+    private final List<Metric> metrics = List.of(connect, stt, firstAudio, gap, turn);
+
+    private final Map<String, LongAdder> errors = new ConcurrentHashMap<>();
+    private final List<DeviceStats> devices = new ArrayList<>();
+    private final LongAdder framesReceived = new LongAdder();
+    private final long startNanos = System.nanoTime();
+
+    synchronized DeviceStats device(String deviceId) {
+        DeviceStats stats = new DeviceStats(deviceId);
+        devices.add(stats);
+        return stats;
+    }
+
+    void error(DeviceStats device, String kind) {
+        device.errors++;
+        errors.computeIfAbsent(kind, k -> new LongAdder()).increment();
+    }
+
+    void frame() {
+        framesReceived.increment();
+    }
+
+    /**
+     * 输出一个间隔内的统计
+     *
+     * @param online 当前在线的设备数
+     */
+    void interval(PrintStream out, int online) {
+        StringBuilder line = new StringBuilder(String.format("[%4ds] online=%-5d",
+                TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - startNanos), online));
+        for (Metric metric : metrics) {
+            Histogram h = metric.roll();
+            if (metric == connect || metric == stt) {
+                continue;
+            }
+            line.append(String.format(" | %s n=%d p50=%.0f p99=%.0f", metric.name, h.getTotalCount(),
+                    ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(99))));
+        }
+        line.append(" | errors=").append(errors.values().stream().mapToLong(LongAdder::sum).sum());
+        out.println(line);
+    }
+
+    /**
+     * 输出全程统计，outputDir 不为空时为每项耗时导出 .hgrm 分布文件
+     */
+    void summary(PrintStream out, int deviceCount, Path outputDir) throws IOException {
+        for (Metric metric : metrics) {
+            metric.roll();
+        }
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        long turns = turn.total.getTotalCount();
+        out.printf("%n==== %d台设备, %.0f秒, 完成对话 %d 轮 (%.2f 轮/秒), 收到音频帧 %d ====%n",
+                deviceCount, seconds, turns, turns / seconds, framesReceived.sum());
+        out.printf("%-12s %-16s %8s %8s %8s %8s %8s %8s %8s%n",
+                "metric", "", "count", "p50", "p90", "p99", "p99.9", "max", "(ms)");
+        for (Metric metric : metrics) {
+            Histogram h = metric.total;
+            out.printf("%-12s %-16s %8d %8.1f %8.1f %8.1f %8.1f %8.1f%n", metric.name, metric.description,
+                    h.getTotalCount(), ms(h.getValueAtPercentile(50)), ms(h.getValueAtPercentile(90)),
+                    ms(h.getValueAtPercentile(99)), ms(h.getValueAtPercentile(99.9)), ms(h.getMaxValue()));
+        }
+
+        out.println();
+        if (errors.isEmpty()) {
+            out.println("错误: 无");
+        } else {
+            out.println("错误:");
+            errors.entrySet().stream()
+                    .sorted(Map.Entry.comparingByKey())
+                    .forEach(e -> out.printf("  %-16s %d%n", e.getKey(), e.getValue().sum()));
+        }
+
+        List<DeviceStats> worst;
+        synchronized (this) {
+            worst = devices.stream()
+                    .sorted(Comparator.comparingLong((DeviceStats d) -> d.maxFirstAudioNanos).reversed())
+                    .limit(10)
+                    .toList();
+        }
+        out.println("首帧最慢的设备:");
+        for (DeviceStats d : worst) {
+            out.printf("  %-20s turns=%-4d errors=%-3d max_first_audio=%.0fms max_gap=%.0fms%n",
+                    d.deviceId, d.turns, d.errors, d.maxFirstAudioNanos / 1e6, d.maxGapNanos / 1e6);
+        }
+
+        if (outputDir != null) {
+            Files.createDirectories(outputDir);
+            for (Metric metric : metrics) {
+                Path file = outputDir.resolve(metric.name + "-" + deviceCount + ".hgrm");
+                try (PrintStream hgrm = new PrintStream(Files.newOutputStream(file))) {
+                    // 以毫秒为单位输出，便于直接对比
+                    metric.total.outputPercentileDistribution(hgrm, 1000.0);
+                }
+            }
+            out.println("分布文件已写入: " + outputDir.toAbsolutePath());
+        }
+    }
+
+    private static double ms(long micros) {
+        return micros / 1000.0;
+    }
+}
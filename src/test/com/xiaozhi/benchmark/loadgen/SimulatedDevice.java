@@ -0,0 +1,277 @@
+package com.xiaozhi.benchmark.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.JsonUtil;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.WebSocket;
+import java.nio.ByteBuffer;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * 一台模拟的ESP32设备，与固件的WebSocket协议一致：
+ * 带 device-id 请求头建立连接，发送hello并等待服务端hello；每轮对话发送 listen start（auto模式），
+ * 按60ms一帧的实时节奏发送录音，说完后继续发送静音帧直到服务端开始回复（设备麦克风不会停），
+ * 然后接收TTS音频直到 tts stop，停顿片刻开始下一轮。连接断开后重新连接，直到测试结束。
+ * <p>
+ * 设备在自己的虚拟线程中按顺序执行，只有这个线程发送消息；接收回调只记录时间并把控制消息放入队列。
+ */
+final class SimulatedDevice implements WebSocket.Listener {
+
+    private static final long FRAME_NANOS = TimeUnit.MILLISECONDS.toNanos(AudioUtils.OPUS_FRAME_DURATION_MS);
+    private static final long HELLO_TIMEOUT_MS = 10_000;
+    // 说完后最多再发送的静音时长，超过仍未开始回复视为VAD没有检测到说话结束
+    private static final long MAX_SILENCE_MS = 5_000;
+    private static final long TURN_TIMEOUT_MS = 30_000;
+    private static final long RECONNECT_DELAY_MS = 1_000;
+
+    private static final String HELLO = """
+            {"type":"hello","version":1,"transport":"websocket",\
+            "audio_params":{"format":"opus","sample_rate":16000,"channels":1,"frame_duration":60}}""";
+    private static final String LISTEN_START = "{\"type\":\"listen\",\"state\":\"start\",\"mode\":\"auto\"}";
+
+    // 接收回调放入队列的事件
+    private record Event(String type, String state, long nanos) {
+        static final Event CLOSED = new Event("closed", null, 0);
+    }
+
+    private final HttpClient client;
+    private final URI uri;
+    private final List<byte[]> utterance;
+    private final byte[] silence;
+    private final LoadReport report;
+    private final LoadReport.DeviceStats stats;
+    private final long deadlineNanos;
+
+    private final BlockingQueue<Event> events = new LinkedBlockingQueue<>();
+    private final StringBuilder text = new StringBuilder();
+    private volatile WebSocket socket;
+    private volatile boolean connected;
+
+    // 当前一轮的时间点，接收回调写入，设备线程在 tts stop 后读取
+    private volatile boolean inTurn;
+    private volatile long speechEndNanos;
+    private volatile long firstAudioNanos;
+    private volatile long lastAudioNanos;
+
+    SimulatedDevice(HttpClient client, URI uri, String deviceId, List<byte[]> utterance, byte[] silence,
+            LoadReport report, long deadlineNanos) {
+        this.client = client;
+        this.uri = uri;
+        this.utterance = utterance;
+        this.silence = silence;
+        this.report = report;
+        this.stats = report.device(deviceId);
+        this.deadlineNanos = deadlineNanos;
+    }
+
+    boolean isConnected() {
+        return connected;
+    }
+
+    void run() {
+        while (System.nanoTime() < deadlineNanos) {
+            try {
+                if (!connected && !connect()) {
+                    Thread.sleep(RECONNECT_DELAY_MS);
+                    continue;
+                }
+                converse();
+                // 两轮对话之间停顿1~3秒
+                Thread.sleep(ThreadLocalRandom.current().nextLong(1000, 3000));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                break;
+            } catch (Exception e) {
+                report.error(stats, "exception");
+                disconnect();
+            }
+        }
+        disconnect();
+    }
+
+    private boolean connect() throws InterruptedException {
+        long start = System.nanoTime();
+        events.clear();
+        try {
+            socket = client.newWebSocketBuilder()
+                    .header("device-id", stats.deviceId)
+                    .header("client-id", UUID.randomUUID().toString())
+                    .header("protocol-version", "1")
+                    .connectTimeout(Duration.ofMillis(HELLO_TIMEOUT_MS))
+                    .buildAsync(uri, this)
+                    .get(HELLO_TIMEOUT_MS, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            throw e;
+        } catch (Exception e) {
+            report.error(stats, "connect");
+            return false;
+        }
+        connected = true;
+        socket.sendText(HELLO, true).join();
+        Event event = await("hello", null, HELLO_TIMEOUT_MS);
+        if (event == null) {
+            report.error(stats, connected ? "hello_timeout" : "closed");
+            disconnect();
+            return false;
+        }
+        report.connect.record(event.nanos - start);
+        return true;
+    }
+
+    /**
+     * 一轮对话
+     */
+    private void converse() throws InterruptedException {
+        events.clear();
+        firstAudioNanos = 0;
+        lastAudioNanos = 0;
+        socket.sendText(LISTEN_START, true).join();
+
+        long next = System.nanoTime();
+        for (byte[] frame : utterance) {
+            next = pace(next);
+            socket.sendBinary(ByteBuffer.wrap(frame), true).join();
+        }
+        speechEndNanos = System.nanoTime();
+        inTurn = true;
+        try {
+            // 继续发送静音，直到服务端开始回复
+            long silenceEnd = speechEndNanos + TimeUnit.MILLISECONDS.toNanos(MAX_SILENCE_MS);
+            boolean replying = false;
+            while (!replying && connected && next < silenceEnd) {
+                next = pace(next);
+                socket.sendBinary(ByteBuffer.wrap(silence), true).join();
+                Event event;
+                while ((event = events.poll()) != null) {
+                    if (event == Event.CLOSED) {
+                        report.error(stats, "closed");
+                        return;
+                    }
+                    if ("stt".equals(event.type)) {
+                        report.stt.record(event.nanos - speechEndNanos);
+                    } else if ("tts".equals(event.type) && "start".equals(event.state)) {
+                        replying = true;
+                    }
+                }
+            }
+            if (!replying) {
+                report.error(stats, connected ? "no_reply" : "closed");
+                return;
+            }
+
+            Event stop = await("tts", "stop", TURN_TIMEOUT_MS);
+            if (stop == null) {
+                report.error(stats, connected ? "turn_timeout" : "closed");
+                return;
+            }
+            if (firstAudioNanos == 0) {
+                report.error(stats, "no_audio");
+                return;
+            }
+            long firstAudio = firstAudioNanos - speechEndNanos;
+            report.firstAudio.record(firstAudio);
+            report.turn.record(stop.nanos - speechEndNanos);
+            stats.maxFirstAudioNanos = Math.max(stats.maxFirstAudioNanos, firstAudio);
+            stats.turns++;
+        } finally {
+            inTurn = false;
+        }
+    }
+
+    /**
+     * 等待到下一帧的发送时间，返回再下一帧的时间
+     */
+    private static long pace(long next) {
+        long delay = next - System.nanoTime();
+        if (delay > 0) {
+            LockSupport.parkNanos(delay);
+        }
+        return next + FRAME_NANOS;
+    }
+
+    /**
+     * 等待指定的控制消息，其他消息中记录识别结果的时间；超时或连接关闭时返回 null
+     */
+    private Event await(String type, String state, long timeoutMs) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeoutMs);
+        while (true) {
+            Event event = events.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+            if (event == null || event == Event.CLOSED) {
+                return null;
+            }
+            if ("stt".equals(event.type) && inTurn) {
+                report.stt.record(event.nanos - speechEndNanos);
+            }
+            if (type.equals(event.type) && (state == null || state.equals(event.state))) {
+                return event;
+            }
+        }
+    }
+
+    private void disconnect() {
+        WebSocket ws = socket;
+        connected = false;
+        if (ws != null && !ws.isOutputClosed()) {
+            ws.sendClose(WebSocket.NORMAL_CLOSURE, "").orTimeout(1, TimeUnit.SECONDS).exceptionally(e -> null);
+        }
+    }
+
+    @Override
+    public CompletionStage<?> onText(WebSocket webSocket, CharSequence data, boolean last) {
+        text.append(data);
+        if (last) {
+            long now = System.nanoTime();
+            try {
+                JsonNode message = JsonUtil.OBJECT_MAPPER.readTree(text.toString());
+                events.add(new Event(message.path("type").asText(), message.path("state").asText(null), now));
+            } catch (Exception e) {
+                report.error(stats, "bad_message");
+            }
+            text.setLength(0);
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onBinary(WebSocket webSocket, ByteBuffer data, boolean last) {
+        if (last && inTurn) {
+            long now = System.nanoTime();
+            report.frame();
+            if (firstAudioNanos == 0) {
+                firstAudioNanos = now;
+            } else {
+                long gap = now - lastAudioNanos;
+                report.gap.record(gap);
+                stats.maxGapNanos = Math.max(stats.maxGapNanos, gap);
+            }
+            lastAudioNanos = now;
+        }
+        webSocket.request(1);
+        return null;
+    }
+
+    @Override
+    public CompletionStage<?> onClose(WebSocket webSocket, int statusCode, String reason) {
+        connected = false;
+        events.add(Event.CLOSED);
+        return null;
+    }
+
+    @Override
+    public void onError(WebSocket webSocket, Throwable error) {
+        connected = false;
+        events.add(Event.CLOSED);
+    }
+}
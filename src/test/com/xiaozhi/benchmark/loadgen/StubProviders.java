@@ -0,0 +1,274 @@
+package com.xiaozhi.benchmark.loadgen;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import com.xiaozhi.utils.AudioTranscoder;
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.JsonUtil;
+import org.java_websocket.WebSocket;
+import org.java_websocket.handshake.ClientHandshake;
+import org.java_websocket.server.WebSocketServer;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HexFormat;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 负载测试用的本地STT/LLM/TTS桩服务，离线运行，耗时可配置，不消耗真实服务的额度。
+ * <ul>
+ * <li>LLM：OpenAI兼容的 /v1/chat/completions，流式请求按SSE逐块返回固定回复，非流式返回完整回复</li>
+ * <li>TTS：MiniMax兼容的 /v1/t2a_v2，返回十六进制编码的MP3提示音，时长与文本长度成正比</li>
+ * <li>STT：FunASR协议的WebSocket，收到结束信号后返回固定识别结果</li>
+ * </ul>
+ * 服务端通过配置把角色指向这些地址，SQL见 {@link DeviceLoadGenerator#setupSql}。
+ */
+public final class StubProviders implements AutoCloseable {
+
+    // 桩服务固定返回的识别结果和回复，回复含多个句子，覆盖首句和后续句子的合成
+    static final String TRANSCRIPT = "今天天气怎么样";
+    static final String REPLY = "今天是晴天，气温二十五度左右，空气质量不错。适合出门散步，记得带上水。傍晚可能会起风，出门最好多穿一件外套。";
+
+    // 每个字对应的提示音时长，接近正常语速
+    private static final int MS_PER_CHAR = 200;
+    private static final int MAX_CHARS = 60;
+    // LLM流式回复每块的字数
+    private static final int CHARS_PER_CHUNK = 2;
+
+    private final long llmFirstTokenMs;
+    private final long llmTokenMs;
+    private final long ttsMs;
+    private final long sttMs;
+
+    private final HttpServer http;
+    private final WebSocketServer stt;
+    private final Path workDir;
+    // 字数 -> 十六进制MP3，相同长度的句子复用，避免每次请求都编码
+    private final Map<Integer, String> tones = new ConcurrentHashMap<>();
+
+    final AtomicLong llmRequests = new AtomicLong();
+    final AtomicLong ttsRequests = new AtomicLong();
+    final AtomicLong sttRequests = new AtomicLong();
+
+    /**
+     * @param httpPort        LLM和TTS的HTTP端口
+     * @param sttPort         STT的WebSocket端口
+     * @param llmFirstTokenMs LLM首个token的耗时
+     * @param llmTokenMs      LLM后续每块的间隔
+     * @param ttsMs           TTS每次合成的耗时
+     * @param sttMs           STT收到结束信号后返回结果的耗时
+     */
+    public StubProviders(int httpPort, int sttPort, long llmFirstTokenMs, long llmTokenMs, long ttsMs, long sttMs)
+            throws IOException {
+        this.llmFirstTokenMs = llmFirstTokenMs;
+        this.llmTokenMs = llmTokenMs;
+        this.ttsMs = ttsMs;
+        this.sttMs = sttMs;
+        this.workDir = Files.createTempDirectory("loadgen-stub");
+
+        http = HttpServer.create(new InetSocketAddress(httpPort), 0);
+        http.createContext("/v1/chat/completions", this::chatCompletions);
+        http.createContext("/v1/t2a_v2", this::textToAudio);
+        http.setExecutor(Executors.newVirtualThreadPerTaskExecutor());
+
+        stt = new FunAsrStub(new InetSocketAddress(sttPort));
+        stt.setReuseAddr(true);
+    }
+
+    public void start() throws InterruptedException {
+        http.start();
+        stt.start();
+        // WebSocketServer 在后台线程绑定端口，等待绑定完成
+        while (stt.getPort() == 0) {
+            Thread.sleep(10);
+        }
+    }
+
+    public String llmUrl() {
+        return "http://127.0.0.1:" + http.getAddress().getPort() + "/v1";
+    }
+
+    public String ttsUrl() {
+        return "http://127.0.0.1:" + http.getAddress().getPort() + "/v1/t2a_v2";
+    }
+
+    public String sttUrl() {
+        return "ws://127.0.0.1:" + stt.getPort();
+    }
+
+    @Override
+    public void close() throws Exception {
+        http.stop(0);
+        stt.stop(1000);
+    }
+
+    private void chatCompletions(HttpExchange exchange) throws IOException {
+        llmRequests.incrementAndGet();
+        try (exchange) {
+            JsonNode request = JsonUtil.OBJECT_MAPPER.readTree(exchange.getRequestBody());
+            String model = request.path("model").asText("stub");
+            Thread.sleep(llmFirstTokenMs);
+            if (!request.path("stream").asBoolean(false)) {
+                ObjectNode message = JsonUtil.OBJECT_MAPPER.createObjectNode()
+                        .put("role", "assistant")
+                        .put("content", REPLY);
+                byte[] body = completion("chat.completion", model, message, "message", "stop").toString()
+                        .getBytes(StandardCharsets.UTF_8);
+                exchange.getResponseHeaders().set("Content-Type", "application/json");
+                exchange.sendResponseHeaders(200, body.length);
+                exchange.getResponseBody().write(body);
+                return;
+            }
+
+            exchange.getResponseHeaders().set("Content-Type", "text/event-stream");
+            exchange.sendResponseHeaders(200, 0);
+            OutputStream out = exchange.getResponseBody();
+            for (int i = 0; i < REPLY.length(); i += CHARS_PER_CHUNK) {
+                if (i > 0) {
+                    Thread.sleep(llmTokenMs);
+                }
+                ObjectNode delta = JsonUtil.OBJECT_MAPPER.createObjectNode()
+                        .put("content", REPLY.substring(i, Math.min(REPLY.length(), i + CHARS_PER_CHUNK)));
+                if (i == 0) {
+                    delta.put("role", "assistant");
+                }
+                event(out, completion("chat.completion.chunk", model, delta, "delta", null).toString());
+            }
+            event(out, completion("chat.completion.chunk", model, JsonUtil.OBJECT_MAPPER.createObjectNode(),
+                    "delta", "stop").toString());
+            event(out, "[DONE]");
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            // 服务端已取消请求
+        }
+    }
+
+    private static ObjectNode completion(String object, String model, ObjectNode content, String field,
+            String finishReason) {
+        ObjectNode root = JsonUtil.OBJECT_MAPPER.createObjectNode()
+                .put("id", "chatcmpl-stub")
+                .put("object", object)
+                .put("created", System.currentTimeMillis() / 1000)
+                .put("model", model);
+        ArrayNode choices = root.putArray("choices");
+        ObjectNode choice = choices.addObject().put("index", 0);
+        choice.set(field, content);
+        choice.put("finish_reason", finishReason);
+        if (finishReason != null) {
+            root.putObject("usage")
+                    .put("prompt_tokens", 20)
+                    .put("completion_tokens", REPLY.length())
+                    .put("total_tokens", 20 + REPLY.length());
+        }
+        return root;
+    }
+
+    private static void event(OutputStream out, String data) throws IOException {
+        out.write(("data: " + data + "\n\n").getBytes(StandardCharsets.UTF_8));
+        out.flush();
+    }
+
+    private void textToAudio(HttpExchange exchange) throws IOException {
+        ttsRequests.incrementAndGet();
+        try (exchange) {
+            JsonNode request = JsonUtil.OBJECT_MAPPER.readTree(exchange.getRequestBody());
+            int chars = Math.max(1, Math.min(MAX_CHARS, request.path("text").asText("").length()));
+            Thread.sleep(ttsMs);
+            ObjectNode root = JsonUtil.OBJECT_MAPPER.createObjectNode();
+            root.putObject("data").put("status", 2).put("audio", tone(chars));
+            root.putObject("base_resp").put("status_code", 0).put("status_msg", "success");
+            byte[] body = root.toString().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "application/json");
+            exchange.sendResponseHeaders(200, body.length);
+            exchange.getResponseBody().write(body);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * 指定字数对应时长的440Hz提示音，编码为MP3后以十六进制返回，与MiniMax的 output_format=hex 一致
+     */
+    private String tone(int chars) {
+        return tones.computeIfAbsent(chars, n -> {
+            int samples = AudioUtils.SAMPLE_RATE * n * MS_PER_CHAR / 1000;
+            int fade = AudioUtils.SAMPLE_RATE / 100;
+            byte[] pcm = new byte[samples * 2];
+            for (int i = 0; i < samples; i++) {
+                double envelope = Math.min(1.0, Math.min(i, samples - 1 - i) / (double) fade);
+                short sample = (short) (envelope * 6000 * Math.sin(2 * Math.PI * 440 * i / AudioUtils.SAMPLE_RATE));
+                pcm[i * 2] = (byte) sample;
+                pcm[i * 2 + 1] = (byte) (sample >> 8);
+            }
+            try {
+                Path path = workDir.resolve("tone-" + n + ".mp3");
+                AudioTranscoder.encodeMp3(pcm, path);
+                return HexFormat.of().formatHex(Files.readAllBytes(path));
+            } catch (IOException e) {
+                throw new IllegalStateException("生成提示音失败", e);
+            }
+        });
+    }
+
+    /**
+     * FunASR协议：先收到开始配置，然后是PCM音频，最后收到 is_speaking=false，返回 is_final 的识别结果
+     */
+    private final class FunAsrStub extends WebSocketServer {
+
+        FunAsrStub(InetSocketAddress address) {
+            super(address);
+        }
+
+        @Override
+        public void onOpen(WebSocket conn, ClientHandshake handshake) {
+            sttRequests.incrementAndGet();
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, String message) {
+            if (!message.replace(" ", "").contains("\"is_speaking\":false")) {
+                return;
+            }
+            Thread.startVirtualThread(() -> {
+                try {
+                    Thread.sleep(sttMs);
+                    if (conn.isOpen()) {
+                        conn.send("{\"mode\":\"offline\",\"wav_name\":\"voice.wav\",\"text\":\"" + TRANSCRIPT
+                                + "\",\"is_final\":true}");
+                    }
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            });
+        }
+
+        @Override
+        public void onMessage(WebSocket conn, ByteBuffer message) {
+            // 音频内容不参与识别
+        }
+
+        @Override
+        public void onClose(WebSocket conn, int code, String reason, boolean remote) {
+        }
+
+        @Override
+        public void onError(WebSocket conn, Exception ex) {
+        }
+
+        @Override
+        public void onStart() {
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package com.xiaozhi.communication.server.udp;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 乱序缓冲的重排、丢包跳过、序号重置和32位回绕
+ */
+class JitterBufferTest {
+
+    private static final long MAX_DELAY = TimeUnit.MILLISECONDS.toNanos(60);
+
+    private final List<Integer> out = new ArrayList<>();
+
+    private static byte[] frame(long seq) {
+        return new byte[] { (byte) seq };
+    }
+
+    private void offer(JitterBuffer buffer, long seq, long now) {
+        buffer.offer(seq, frame(seq), now, frame -> out.add(Byte.toUnsignedInt(frame[0])));
+    }
+
+    @Test
+    void deliversInOrderPacketsImmediately() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        for (int seq = 1; seq <= 5; seq++) {
+            offer(buffer, seq, 0);
+        }
+        assertEquals(List.of(1, 2, 3, 4, 5), out);
+        assertFalse(buffer.hasPending());
+        assertEquals(0, buffer.getLost());
+    }
+
+    @Test
+    void reordersWithinDepth() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        offer(buffer, 1, 0);
+        offer(buffer, 3, 0);
+        offer(buffer, 4, 0);
+        assertEquals(List.of(1), out);
+        assertTrue(buffer.hasPending());
+
+        offer(buffer, 2, 0);
+        assertEquals(List.of(1, 2, 3, 4), out);
+        assertFalse(buffer.hasPending());
+        assertEquals(0, buffer.getLost());
+    }
+
+    @Test
+    void skipsHoleWhenDepthExceeded() {
+        JitterBuffer buffer = new JitterBuffer(2, MAX_DELAY);
+        offer(buffer, 1, 0);
+        offer(buffer, 3, 0);
+        offer(buffer, 4, 0);
+        assertEquals(List.of(1), out);
+
+        offer(buffer, 5, 0);
+        assertEquals(List.of(1, 3, 4, 5), out);
+        assertEquals(1, buffer.getLost());
+
+        // 空洞已跳过，迟到的包丢弃
+        offer(buffer, 2, 0);
+        assertEquals(List.of(1, 3, 4, 5), out);
+        assertEquals(1, buffer.getLate());
+    }
+
+    @Test
+    void flushSkipsHoleAfterMaxDelay() {
+        JitterBuffer buffer = new JitterBuffer(10, MAX_DELAY);
+        offer(buffer, 1, 0);
+        offer(buffer, 3, 10);
+
+        buffer.flush(MAX_DELAY, frame -> out.add(Byte.toUnsignedInt(frame[0])));
+        assertEquals(List.of(1), out);
+
+        buffer.flush(MAX_DELAY + 11, frame -> out.add(Byte.toUnsignedInt(frame[0])));
+        assertEquals(List.of(1, 3), out);
+        assertEquals(1, buffer.getLost());
+        assertFalse(buffer.hasPending());
+    }
+
+    @Test
+    void dropsDuplicates() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        offer(buffer, 1, 0);
+        offer(buffer, 3, 0);
+        offer(buffer, 3, 0);
+        offer(buffer, 1, 0);
+        offer(buffer, 2, 0);
+        assertEquals(List.of(1, 2, 3), out);
+        assertEquals(2, buffer.getLate());
+    }
+
+    @Test
+    void jumpBeyondWindowCatchesUp() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        offer(buffer, 1, 0);
+        offer(buffer, 3, 0);
+        offer(buffer, 100, 0);
+        assertEquals(List.of(1, 3, 100), out);
+        assertEquals(1 + 96, buffer.getLost());
+
+        offer(buffer, 101, 0);
+        assertEquals(List.of(1, 3, 100, 101), out);
+    }
+
+    @Test
+    void largeStepBackIsTreatedAsReset() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        offer(buffer, 5000, 0);
+        offer(buffer, 5002, 0);
+        // 设备重新计数，缓存的包先交出
+        offer(buffer, 1, 0);
+        offer(buffer, 2, 0);
+        assertEquals(List.of(5000 & 0xFF, 5002 & 0xFF, 1, 2), out);
+        assertFalse(buffer.hasPending());
+    }
+
+    @Test
+    void smallStepBackIsLate() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        offer(buffer, 500, 0);
+        offer(buffer, 10, 0);
+        offer(buffer, 501, 0);
+        assertEquals(List.of(500 & 0xFF, 501 & 0xFF), out);
+        assertEquals(1, buffer.getLate());
+    }
+
+    @Test
+    void sequenceWrapsAround() {
+        JitterBuffer buffer = new JitterBuffer(3, MAX_DELAY);
+        long max = 0xFFFFFFFFL;
+        offer(buffer, max - 1, 0);
+        offer(buffer, max, 0);
+        offer(buffer, 0, 0);
+        offer(buffer, 2, 0);
+        offer(buffer, 1, 0);
+        assertEquals(List.of(0xFE, 0xFF, 0, 1, 2), out);
+        assertFalse(buffer.hasPending());
+        assertEquals(0, buffer.getLost());
+    }
+}
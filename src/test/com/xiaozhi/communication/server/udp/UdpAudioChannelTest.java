@@ -0,0 +1,239 @@
+package com.xiaozhi.communication.server.udp;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import javax.crypto.AEADBadTagException;
+import javax.crypto.Cipher;
+import javax.crypto.Mac;
+import javax.crypto.spec.IvParameterSpec;
+import javax.crypto.spec.SecretKeySpec;
+import java.net.InetSocketAddress;
+import java.net.SocketAddress;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * UDP音频包的编解码、认证标签和设备地址的更新规则
+ */
+class UdpAudioChannelTest {
+
+    private static final int CONNECTION_ID = 0x12345678;
+    private static final SocketAddress DEVICE = new InetSocketAddress("10.0.0.2", 40000);
+    private static final SocketAddress ROAMED = new InetSocketAddress("10.0.0.2", 40001);
+    private static final SocketAddress ATTACKER = new InetSocketAddress("203.0.113.9", 5000);
+
+    private final byte[] key = new byte[16];
+    private RecordingServer server;
+
+    /**
+     * 记录发出的包和交给流水线的帧，不打开socket
+     */
+    private static final class RecordingServer extends UdpAudioServer {
+        final List<SocketAddress> targets = new ArrayList<>();
+        final List<ByteBuffer> packets = new ArrayList<>();
+        final List<byte[]> delivered = new CopyOnWriteArrayList<>();
+
+        @Override
+        void send(ByteBuffer packet, SocketAddress target) {
+            targets.add(target);
+            packets.add(packet);
+        }
+
+        @Override
+        void dispatch(String sessionId, byte[] frame) {
+            delivered.add(frame);
+        }
+
+        @Override
+        void remove(UdpAudioChannel channel) {
+        }
+    }
+
+    @BeforeEach
+    void setUp() {
+        new Random(7).nextBytes(key);
+        server = new RecordingServer();
+    }
+
+    private UdpAudioChannel channel(boolean authenticated) {
+        return new UdpAudioChannel(server, "session", CONNECTION_ID, key,
+                new JitterBuffer(0, TimeUnit.MILLISECONDS.toNanos(60)), authenticated);
+    }
+
+    /**
+     * 按设备的方式打包：包头作为CTR初始计数器，认证时在密文后附加标签
+     */
+    private ByteBuffer packet(long seq, byte[] payload, boolean authenticated) throws Exception {
+        byte[] header = new byte[UdpAudioChannel.HEADER_SIZE];
+        ByteBuffer.wrap(header).put((byte) 1).put((byte) 0).putShort((short) payload.length)
+                .putInt(CONNECTION_ID).putInt(0).putInt((int) seq);
+        Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+        cipher.init(Cipher.ENCRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(header));
+        byte[] body = cipher.doFinal(payload);
+        ByteBuffer packet = ByteBuffer.allocate(header.length + body.length + (authenticated ? UdpAudioChannel.TAG_SIZE : 0));
+        packet.put(header).put(body);
+        if (authenticated) {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(UdpAudioChannel.macKey(key));
+            mac.update(packet.array(), 0, header.length + body.length);
+            packet.put(mac.doFinal(), 0, UdpAudioChannel.TAG_SIZE);
+        }
+        return packet.flip();
+    }
+
+    private SocketAddress downlinkTarget(UdpAudioChannel channel) {
+        int before = server.targets.size();
+        channel.send(ByteBuffer.wrap(new byte[] { 1, 2, 3 }));
+        return server.targets.size() > before ? server.targets.get(server.targets.size() - 1) : null;
+    }
+
+    @Test
+    void nonceCarriesConnectionId() {
+        byte[] nonce = HexFormat.of().parseHex(channel(false).getNonce());
+        assertEquals(UdpAudioChannel.HEADER_SIZE, nonce.length);
+        assertEquals(1, nonce[0]);
+        assertEquals(CONNECTION_ID, ByteBuffer.wrap(nonce).getInt(4));
+    }
+
+    @Test
+    void decryptsUplinkAndDelivers() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        byte[] frame = { 10, 20, 30, 40, 50 };
+        channel.receive(1, packet(1, frame, false), DEVICE, 0);
+        awaitDelivered(1);
+        assertArrayEquals(frame, server.delivered.get(0));
+        assertTrue(channel.isOpen());
+    }
+
+    @Test
+    void encryptsDownlinkWithIncreasingSequence() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        assertNull(downlinkTarget(channel), "地址确定之前不发送");
+        channel.receive(1, packet(1, new byte[0], false), DEVICE, 0);
+
+        byte[] frame = { 9, 8, 7, 6 };
+        channel.send(ByteBuffer.wrap(frame));
+        channel.send(ByteBuffer.wrap(frame));
+        assertEquals(2, server.packets.size());
+        for (int i = 0; i < 2; i++) {
+            ByteBuffer packet = server.packets.get(i);
+            assertEquals(UdpAudioChannel.HEADER_SIZE + frame.length, packet.remaining());
+            assertEquals(frame.length, packet.getShort(2));
+            assertEquals(CONNECTION_ID, packet.getInt(4));
+            assertEquals(i + 1, packet.getInt(12));
+            byte[] header = Arrays.copyOf(packet.array(), UdpAudioChannel.HEADER_SIZE);
+            Cipher cipher = Cipher.getInstance("AES/CTR/NoPadding");
+            cipher.init(Cipher.DECRYPT_MODE, new SecretKeySpec(key, "AES"), new IvParameterSpec(header));
+            assertArrayEquals(frame, cipher.doFinal(packet.array(), UdpAudioChannel.HEADER_SIZE, frame.length));
+        }
+    }
+
+    @Test
+    void followsDeviceWithinSequenceWindow() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        channel.receive(10, packet(10, new byte[0], false), DEVICE, 0);
+        channel.receive(11, packet(11, new byte[0], false), ROAMED, 0);
+        assertEquals(ROAMED, downlinkTarget(channel));
+    }
+
+    @Test
+    void unauthenticatedFarJumpDoesNotMoveAddress() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        channel.receive(10, packet(10, new byte[0], false), DEVICE, 0);
+        channel.receive(0xFFFFFFFFL, packet(0xFFFFFFFFL, new byte[0], false), ATTACKER, 0);
+        assertEquals(DEVICE, downlinkTarget(channel));
+
+        // 伪造的大序号没有被采纳，设备之后仍然可以换地址
+        channel.receive(11, packet(11, new byte[0], false), ROAMED, 0);
+        assertEquals(ROAMED, downlinkTarget(channel));
+    }
+
+    @Test
+    void spoofedHighSequenceFromDeviceAddressIsRecoveredByReset() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        channel.receive(10, packet(10, new byte[0], false), DEVICE, 0);
+        // 伪造源地址为设备地址的大序号会被采纳
+        channel.receive(0xFFFFFFFFL, packet(0xFFFFFFFFL, new byte[0], false), DEVICE, 0);
+        // 设备的下一个包大幅回退，视为重新计数
+        channel.receive(11, packet(11, new byte[0], false), DEVICE, 0);
+        channel.receive(12, packet(12, new byte[0], false), ROAMED, 0);
+        assertEquals(ROAMED, downlinkTarget(channel));
+    }
+
+    @Test
+    void unauthenticatedResetFromNewAddressIsIgnored() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        channel.receive(5000, packet(5000, new byte[0], false), DEVICE, 0);
+        channel.receive(1, packet(1, new byte[0], false), ATTACKER, 0);
+        channel.receive(2, packet(2, new byte[0], false), ATTACKER, 0);
+        assertEquals(DEVICE, downlinkTarget(channel));
+    }
+
+    @Test
+    void authenticatedRoundTrip() throws Exception {
+        UdpAudioChannel channel = channel(true);
+        byte[] frame = { 1, 1, 2, 3, 5, 8 };
+        channel.receive(1, packet(1, frame, true), DEVICE, 0);
+        awaitDelivered(1);
+        assertArrayEquals(frame, server.delivered.get(0));
+
+        channel.send(ByteBuffer.wrap(frame));
+        ByteBuffer sent = server.packets.get(0);
+        assertEquals(UdpAudioChannel.HEADER_SIZE + frame.length + UdpAudioChannel.TAG_SIZE, sent.remaining());
+        assertEquals(frame.length, sent.getShort(2));
+        Mac mac = Mac.getInstance("HmacSHA256");
+        mac.init(UdpAudioChannel.macKey(key));
+        mac.update(sent.array(), 0, UdpAudioChannel.HEADER_SIZE + frame.length);
+        assertArrayEquals(Arrays.copyOf(mac.doFinal(), UdpAudioChannel.TAG_SIZE),
+                Arrays.copyOfRange(sent.array(), UdpAudioChannel.HEADER_SIZE + frame.length, sent.remaining()));
+    }
+
+    @Test
+    void authenticatedChannelRejectsForgedTag() throws Exception {
+        UdpAudioChannel channel = channel(true);
+        channel.receive(1, packet(1, new byte[0], true), DEVICE, 0);
+
+        ByteBuffer forged = packet(2, new byte[] { 1, 2, 3 }, true);
+        forged.put(forged.limit() - 1, (byte) (forged.get(forged.limit() - 1) ^ 1));
+        assertThrows(AEADBadTagException.class, () -> channel.receive(2, forged, ATTACKER, 0));
+        // 未认证格式的包同样被拒绝
+        ByteBuffer plain = packet(3, new byte[UdpAudioChannel.TAG_SIZE], false);
+        assertThrows(AEADBadTagException.class, () -> channel.receive(3, plain, ATTACKER, 0));
+        assertEquals(DEVICE, downlinkTarget(channel));
+        assertTrue(server.delivered.isEmpty());
+    }
+
+    @Test
+    void authenticatedChannelFollowsAnyAuthenticatedJump() throws Exception {
+        UdpAudioChannel channel = channel(true);
+        channel.receive(1, packet(1, new byte[0], true), DEVICE, 0);
+        channel.receive(100_000, packet(100_000, new byte[0], true), ROAMED, 0);
+        assertEquals(ROAMED, downlinkTarget(channel));
+    }
+
+    @Test
+    void closedChannelIgnoresPackets() throws Exception {
+        UdpAudioChannel channel = channel(false);
+        channel.close();
+        channel.receive(1, packet(1, new byte[] { 1 }, false), DEVICE, 0);
+        assertFalse(channel.isOpen());
+        assertNull(downlinkTarget(channel));
+    }
+
+    private void awaitDelivered(int count) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(2);
+        while (server.delivered.size() < count && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(count, server.delivered.size());
+    }
+}
@@ -0,0 +1,299 @@
+package com.xiaozhi.communication.server.websocket;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.socket.CloseStatus;
+import org.springframework.web.socket.TextMessage;
+import org.springframework.web.socket.WebSocketExtension;
+import org.springframework.web.socket.WebSocketMessage;
+import org.springframework.web.socket.WebSocketSession;
+
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 发送顺序、积压时按字节上限和排队时长丢弃音频帧、文本消息不丢弃、发送超时关闭连接以及关闭时的清理
+ */
+class OutboundQueueTest {
+
+    private static final long BUFFER_SIZE_LIMIT = 250;
+
+    private MeterRegistry registry;
+    private AtomicInteger totalDepth;
+    private OutboundQueue.Metrics metrics;
+    private FakeSession session;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        totalDepth = new AtomicInteger();
+        metrics = new OutboundQueue.Metrics(
+                DistributionSummary.builder("xiaozhi.websocket.outbound.depth").register(registry),
+                Timer.builder("xiaozhi.websocket.outbound.latency").register(registry),
+                registry.counter("xiaozhi.websocket.outbound.dropped", "reason", "stale"),
+                registry.counter("xiaozhi.websocket.outbound.dropped", "reason", "overflow"),
+                totalDepth);
+        session = new FakeSession();
+    }
+
+    @AfterEach
+    void tearDown() {
+        session.gate.countDown();
+    }
+
+    private OutboundQueue queue(long sendTimeLimitMs, long maxAudioDelayMs) {
+        return new OutboundQueue(session, BUFFER_SIZE_LIMIT, sendTimeLimitMs, maxAudioDelayMs, metrics);
+    }
+
+    private double dropped(String reason) {
+        return registry.counter("xiaozhi.websocket.outbound.dropped", "reason", reason).count();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static byte[] audio(int size, int marker) {
+        byte[] data = new byte[size];
+        data[0] = (byte) marker;
+        return data;
+    }
+
+    /**
+     * 记录发送内容的会话，打开 blocking 后发送会卡住直到 gate 放行
+     */
+    private static final class FakeSession implements WebSocketSession {
+        final List<Object> sent = new CopyOnWriteArrayList<>();
+        final CountDownLatch gate = new CountDownLatch(1);
+        final CountDownLatch entered = new CountDownLatch(1);
+        volatile boolean blocking = false;
+        volatile boolean open = true;
+        volatile CloseStatus closeStatus;
+
+        @Override
+        public void sendMessage(WebSocketMessage<?> message) {
+            entered.countDown();
+            if (blocking) {
+                try {
+                    gate.await(5, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+            if (message instanceof TextMessage text) {
+                sent.add(text.getPayload());
+            } else {
+                ByteBuffer payload = (ByteBuffer) message.getPayload();
+                sent.add((int) payload.get(payload.position()));
+            }
+        }
+
+        @Override
+        public String getId() {
+            return "session";
+        }
+
+        @Override
+        public URI getUri() {
+            return null;
+        }
+
+        @Override
+        public HttpHeaders getHandshakeHeaders() {
+            return new HttpHeaders();
+        }
+
+        @Override
+        public Map<String, Object> getAttributes() {
+            return Map.of();
+        }
+
+        @Override
+        public Principal getPrincipal() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getLocalAddress() {
+            return null;
+        }
+
+        @Override
+        public InetSocketAddress getRemoteAddress() {
+            return null;
+        }
+
+        @Override
+        public String getAcceptedProtocol() {
+            return null;
+        }
+
+        @Override
+        public void setTextMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getTextMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public void setBinaryMessageSizeLimit(int messageSizeLimit) {
+        }
+
+        @Override
+        public int getBinaryMessageSizeLimit() {
+            return 0;
+        }
+
+        @Override
+        public List<WebSocketExtension> getExtensions() {
+            return List.of();
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            close(CloseStatus.NORMAL);
+        }
+
+        @Override
+        public void close(CloseStatus status) {
+            closeStatus = status;
+            open = false;
+        }
+    }
+
+    @Test
+    void sendsInEnqueueOrder() throws Exception {
+        OutboundQueue queue = queue(10_000, 2000);
+        queue.sendText("start");
+        queue.sendBinary(audio(10, 1));
+        queue.sendBinary(ByteBuffer.wrap(audio(10, 2)));
+        queue.sendText("stop");
+
+        waitUntil(() -> session.sent.size() == 4);
+        assertEquals(List.of("start", 1, 2, "stop"), session.sent);
+        waitUntil(() -> queue.getDepth() == 0);
+        assertEquals(0, queue.getBufferedBytes());
+        assertEquals(0, totalDepth.get());
+    }
+
+    @Test
+    void overflowDropsOldestAudioButKeepsText() throws Exception {
+        OutboundQueue queue = queue(10_000, 2000);
+        session.blocking = true;
+        // 第一帧被写线程取走后卡在发送中，后续消息积压
+        queue.sendBinary(audio(10, 0));
+        assertTrue(session.entered.await(5, TimeUnit.SECONDS));
+
+        queue.sendText("sentence_start");
+        queue.sendBinary(audio(100, 1));
+        queue.sendBinary(audio(100, 2));
+        queue.sendBinary(audio(100, 3));
+        assertEquals(3, queue.getDepth());
+        assertTrue(queue.getBufferedBytes() <= BUFFER_SIZE_LIMIT);
+        assertEquals(1.0, dropped("overflow"), 0);
+
+        session.gate.countDown();
+        waitUntil(() -> session.sent.size() == 4);
+        assertEquals(List.of(0, "sentence_start", 2, 3), session.sent);
+    }
+
+    @Test
+    void staleAudioIsDroppedBeforeSending() throws Exception {
+        OutboundQueue queue = queue(10_000, 50);
+        session.blocking = true;
+        queue.sendBinary(audio(10, 0));
+        assertTrue(session.entered.await(5, TimeUnit.SECONDS));
+
+        queue.sendBinary(audio(10, 1));
+        queue.sendText("stop");
+        Thread.sleep(100);
+        session.gate.countDown();
+
+        waitUntil(() -> session.sent.size() == 2);
+        assertEquals(List.of(0, "stop"), session.sent);
+        assertEquals(1.0, dropped("stale"), 0);
+        waitUntil(() -> queue.getDepth() == 0);
+    }
+
+    @Test
+    void stuckSendClosesSession() throws Exception {
+        OutboundQueue queue = queue(50, 2000);
+        session.blocking = true;
+        queue.sendBinary(audio(10, 0));
+        assertTrue(session.entered.await(5, TimeUnit.SECONDS));
+        Thread.sleep(100);
+
+        // 下一次入队时发现写线程卡住超过限制
+        queue.sendText("hello");
+        assertSame(CloseStatus.SESSION_NOT_RELIABLE, session.closeStatus);
+        assertEquals(0, queue.getDepth());
+
+        queue.sendText("ignored");
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, totalDepth.get());
+    }
+
+    @Test
+    void flushAndCloseWaitsForPendingMessages() throws Exception {
+        OutboundQueue queue = queue(10_000, 2000);
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            queue.sendText("m" + i);
+            expected.add("m" + i);
+        }
+        queue.flushAndClose();
+        assertEquals(expected, session.sent);
+
+        queue.sendText("late");
+        Thread.sleep(20);
+        assertEquals(20, session.sent.size());
+    }
+
+    @Test
+    void closeDiscardsPendingMessages() throws Exception {
+        OutboundQueue queue = queue(10_000, 2000);
+        session.blocking = true;
+        queue.sendBinary(audio(10, 0));
+        assertTrue(session.entered.await(5, TimeUnit.SECONDS));
+        queue.sendText("a");
+        queue.sendBinary(audio(10, 1));
+
+        queue.close();
+        assertEquals(0, queue.getDepth());
+        assertEquals(0, queue.getBufferedBytes());
+        assertEquals(0, totalDepth.get());
+
+        session.gate.countDown();
+        Thread.sleep(20);
+        assertEquals(List.of(0), session.sent);
+    }
+}
@@ -0,0 +1,88 @@
+package com.xiaozhi.dialogue.llm;
+
+import com.xiaozhi.utils.EmojiUtils;
+
+import java.util.function.Consumer;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 改造前 TokenStreamResponseListener.onToken 的逐字符正则断句逻辑，作为 {@link SentenceSegmenter} 默认策略的参照实现，
+ * 供等价性测试和 SentenceSegmenterBenchmark 使用
+ */
+public class LegacySentenceSegmenter {
+    private static final Pattern SENTENCE_END_PATTERN = Pattern.compile("[。！？!?]");
+    private static final Pattern PAUSE_PATTERN = Pattern.compile("[，、；,;]");
+    private static final Pattern SPECIAL_PATTERN = Pattern.compile("[：:\"]");
+    private static final Pattern NEWLINE_PATTERN = Pattern.compile("[\n\r]");
+    private static final Pattern NUMBER_PATTERN = Pattern.compile("\\d+\\.\\d+");
+    private static final int MIN_SENTENCE_LENGTH = 5;
+
+    private final StringBuilder currentSentence = new StringBuilder();
+    private final StringBuilder contextBuffer = new StringBuilder();
+
+    public void onToken(String token, Consumer<String> consumer) {
+        for (int i = 0; i < token.length();) {
+            int codePoint = token.codePointAt(i);
+            String charStr = new String(Character.toChars(codePoint));
+
+            contextBuffer.append(charStr);
+            if (contextBuffer.length() > 20) {
+                contextBuffer.delete(0, contextBuffer.length() - 20);
+            }
+            currentSentence.append(charStr);
+
+            boolean shouldSendSentence = false;
+            boolean isEndMark = SENTENCE_END_PATTERN.matcher(charStr).find();
+            boolean isPauseMark = PAUSE_PATTERN.matcher(charStr).find();
+            boolean isSpecialMark = SPECIAL_PATTERN.matcher(charStr).find();
+            boolean isNewline = NEWLINE_PATTERN.matcher(charStr).find();
+            boolean isEmoji = EmojiUtils.isEmoji(codePoint);
+
+            boolean containsKaomoji = false;
+            if (currentSentence.length() >= 3) {
+                containsKaomoji = EmojiUtils.containsKaomoji(currentSentence.toString());
+            }
+
+            if (isEndMark && charStr.equals(".")) {
+                String context = contextBuffer.toString();
+                Matcher numberMatcher = NUMBER_PATTERN.matcher(context);
+                if (numberMatcher.find() && numberMatcher.end() >= context.length() - 3) {
+                    isEndMark = false;
+                }
+            }
+
+            if (isEndMark) {
+                shouldSendSentence = true;
+            } else if (isNewline) {
+                shouldSendSentence = true;
+            } else if ((isPauseMark || isSpecialMark || isEmoji || containsKaomoji)
+                    && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
+                shouldSendSentence = true;
+            }
+
+            if (shouldSendSentence && currentSentence.length() >= MIN_SENTENCE_LENGTH) {
+                String sentence = currentSentence.toString().trim();
+                sentence = EmojiUtils.filterKaomoji(sentence);
+                if (containsSubstantialContent(sentence)) {
+                    consumer.accept(sentence);
+                    currentSentence.setLength(0);
+                }
+            }
+
+            i += Character.charCount(codePoint);
+        }
+    }
+
+    public String remaining() {
+        return currentSentence.toString();
+    }
+
+    private static boolean containsSubstantialContent(String text) {
+        if (text == null || text.trim().length() < MIN_SENTENCE_LENGTH) {
+            return false;
+        }
+        String stripped = text.replaceAll("[\\p{P}\\s]", "");
+        return stripped.length() >= 2;
+    }
+}
@@ -0,0 +1,155 @@
+package com.xiaozhi.dialogue.llm;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 断句器默认策略与改造前逐字符正则实现的等价性，几条关键的断句规则，以及按角色配置的分块策略
+ */
+class SentenceSegmenterTest {
+
+    private static final String[] CHINESE = {
+            "好的", "，", "我", "来", "给你", "讲", "一个", "小", "故事", "吧", "！", "从前", "有", "一只", "小", "兔子",
+            "，", "它", "住在", "森林", "边", "的", "树洞", "里", "。", "每天", "早上", "，", "小", "兔子", "都会", "去",
+            "河边", "喝水", "😊", "。", "有一天", "，", "它", "遇到", "了", "一只", "迷路", "的", "小", "鸭子", "(・ω・)",
+            "，", "小", "鸭子", "说", "：", "“", "我", "找不到", "妈妈", "了", "。", "”", "\n", "它们", "走了", "大约",
+            "3.5", "公里", "(^_^)", "～" };
+
+    private static final String[] ENGLISH = {
+            "Sure", "!", " Here", "'s", " a", " quick", " summary", ":", " it", "'s", " partly", " cloudy", " with",
+            " a", " high", " of", " 23", ".", "5", " degrees", ",", " and", " a", " light", " breeze", " ☔", ".", "\n",
+            "Tomorrow", " looks", " sunny", " :", ")", " Is", " there", " anything", " else", "?", " \\o/" };
+
+    // 随机拼接的片段，覆盖各类断句标点、表情符号、颜文字的组成字符、小数和空白
+    private static final String[] FRAGMENTS = {
+            "你好", "小", "朋友", "今天", "天气", "hello", " world", "a", "b", "42", "3.14", ".", "。", "！", "？", "!",
+            "?", "，", "、", "；", ",", ";", "：", ":", "\"", "\n", "\r", " ", "  ", "\t", "😊", "🥕", "☔", "🇨🇳", "𠀀",
+            "(", ")", "（", "）", "<", ">", "＜", "＞", "^_^", "・ω・", "\\", "¯", "*", "_", "-", "o", "/", "=", "D",
+            ":)", ":-(", ";-)", "\\o/", "=_=", "(^_^)", "<(￣︶￣)>", "“", "”", "～", "…" };
+
+    private static List<String> legacy(String[] tokens) {
+        List<String> out = new ArrayList<>();
+        LegacySentenceSegmenter segmenter = new LegacySentenceSegmenter();
+        for (String token : tokens) {
+            segmenter.onToken(token, out::add);
+        }
+        out.add(segmenter.remaining());
+        return out;
+    }
+
+    private static List<String> segment(SentenceSegmenter segmenter, String... tokens) {
+        List<String> out = new ArrayList<>();
+        for (String token : tokens) {
+            segmenter.append(token, out::add);
+        }
+        out.add(segmenter.remaining());
+        return out;
+    }
+
+    private static List<String> segment(String... tokens) {
+        return segment(new SentenceSegmenter(), tokens);
+    }
+
+    @Test
+    void matchesLegacyOnRecordedChinese() {
+        assertEquals(legacy(CHINESE), segment(CHINESE));
+    }
+
+    @Test
+    void matchesLegacyOnRecordedEnglish() {
+        assertEquals(legacy(ENGLISH), segment(ENGLISH));
+    }
+
+    @Test
+    void matchesLegacyOnRandomStreams() {
+        Random random = new Random(20250701);
+        for (int round = 0; round < 3000; round++) {
+            StringBuilder text = new StringBuilder();
+            int fragments = 1 + random.nextInt(40);
+            for (int i = 0; i < fragments; i++) {
+                text.append(FRAGMENTS[random.nextInt(FRAGMENTS.length)]);
+            }
+            // 按随机长度切成 token，可能切开代理对以外的任意位置
+            List<String> tokens = new ArrayList<>();
+            for (int i = 0; i < text.length();) {
+                int end = Math.min(text.length(), i + 1 + random.nextInt(4));
+                if (end < text.length() && Character.isHighSurrogate(text.charAt(end - 1))) {
+                    end++;
+                }
+                tokens.add(text.substring(i, end));
+                i = end;
+            }
+            String[] stream = tokens.toArray(String[]::new);
+            assertEquals(legacy(stream), segment(stream), "输入: " + tokens);
+        }
+    }
+
+    @Test
+    void decimalsAreNotSplit() {
+        assertEquals(List.of("价格是3.14元，", "这个东西很便宜。", ""),
+                segment("价格是", "3", ".", "14", "元，", "这个东西很便宜。"));
+    }
+
+    @Test
+    void shortFragmentsAccumulate() {
+        assertEquals(List.of("好，我来。", ""), segment("好", "，", "我来", "。"));
+    }
+
+    @Test
+    void kaomojiIsFilteredFromSentence() {
+        assertEquals(List.of("今天很开心", ""), segment("今天很开心", "(^_^)"));
+    }
+
+    @Test
+    void clearResetsState() {
+        SentenceSegmenter segmenter = new SentenceSegmenter();
+        segment(segmenter, "第一句话。", "未完");
+        assertEquals(1, segmenter.getEmitted());
+        assertFalse(segmenter.isEmpty());
+
+        segmenter.clear();
+        assertTrue(segmenter.isEmpty());
+        assertEquals(0, segmenter.getEmitted());
+        assertEquals(List.of("新的一句话。", ""), segment(segmenter, "新的一句话。"));
+    }
+
+    @Test
+    void policyDefaultsUnsetValues() {
+        assertSame(SentenceSegmenter.ChunkPolicy.DEFAULT, SentenceSegmenter.ChunkPolicy.of(null, null, null));
+        assertEquals(new SentenceSegmenter.ChunkPolicy(3, 0, SentenceSegmenter.MIN_SENTENCE_LENGTH),
+                SentenceSegmenter.ChunkPolicy.of(3, null, null));
+        // 过短的长度和负的token数被修正
+        assertEquals(new SentenceSegmenter.ChunkPolicy(2, 0, 2), new SentenceSegmenter.ChunkPolicy(0, -1, 1));
+    }
+
+    @Test
+    void shortFirstChunkIsEmittedEarly() {
+        String[] tokens = { "好的", "，", "我来", "，", "讲个故事", "。" };
+        assertEquals(List.of("好的，", "我来，讲个故事。", ""),
+                segment(new SentenceSegmenter(new SentenceSegmenter.ChunkPolicy(2, 0, 5)), tokens));
+        assertEquals(List.of("好的，我来，", "讲个故事。", ""), segment(tokens));
+    }
+
+    @Test
+    void firstChunkIsFlushedAtWordBoundaryAfterMaxTokens() {
+        SentenceSegmenter.ChunkPolicy policy = new SentenceSegmenter.ChunkPolicy(2, 3, 5);
+        // 第三个token停在单词中间，等到下一个token以空白开头才断出
+        assertEquals(List.of("Hello there my", "friend!", ""),
+                segment(new SentenceSegmenter(policy), "Hello", " there", " my", " friend", "!"));
+        // 汉字之间都是词边界
+        assertEquals(List.of("今天天气很好", "我们"),
+                segment(new SentenceSegmenter(new SentenceSegmenter.ChunkPolicy(2, 2, 5)), "今天天气", "很好", "我们"));
+    }
+
+    @Test
+    void laterSentencesShorterThanMinLengthAreMerged() {
+        assertEquals(List.of("你好呀朋友。", "今天不错。我们出去玩吧。", ""),
+                segment(new SentenceSegmenter(new SentenceSegmenter.ChunkPolicy(5, 0, 8)),
+                        "你好呀朋友。", "今天不错。", "我们出去玩吧。"));
+    }
+}
@@ -0,0 +1,82 @@
+package com.xiaozhi.dialogue.llm;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 预取请求的确认和取消：确认时回放缓存的句子，对话记录保存最终识别结果
+ */
+class SpeculativeChatTest {
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final Counter hits = registry.counter("xiaozhi.llm.speculation", "result", "hit");
+    private final Counter misses = registry.counter("xiaozhi.llm.speculation", "result", "miss");
+    private final DistributionSummary wastedTokens = DistributionSummary.builder("xiaozhi.llm.speculation.wasted.tokens")
+            .register(registry);
+
+    private SpeculativeChat speculate(String message) {
+        return new SpeculativeChat(message, hits, misses, wastedTokens);
+    }
+
+    @Test
+    void commitPersistsFinalTextAndReplaysSentences() {
+        SpeculativeChat speculation = speculate("明天北京天气怎么样");
+        speculation.accept("明天北京晴。", true, false);
+
+        // 最终结果只补上了标点，仍然使用预取的请求
+        String finalText = "明天北京天气怎么样？";
+        assertTrue(speculation.matches(finalText));
+        List<String> sentences = new ArrayList<>();
+        assertTrue(speculation.commit(finalText, (sentence, isFirst, isLast) -> sentences.add(sentence)));
+        speculation.accept("气温十度。", false, true);
+
+        assertEquals(List.of("明天北京晴。", "气温十度。"), sentences);
+        CompletableFuture<String> gate = speculation.getGate();
+        assertEquals(finalText, gate.join());
+        assertTrue(speculation.getCommitTime().isDone());
+        assertEquals(1.0, hits.count());
+    }
+
+    @Test
+    void differentTextDoesNotMatch() {
+        SpeculativeChat speculation = speculate("明天北京天气");
+        assertFalse(speculation.matches("明天北京天气怎么样"));
+        assertFalse(speculation.matches(null));
+    }
+
+    @Test
+    void cancelDropsBufferedSentencesAndBlocksCommit() {
+        SpeculativeChat speculation = speculate("你好");
+        speculation.onToken();
+        speculation.onToken();
+        speculation.accept("你好呀。", true, false);
+
+        speculation.cancel();
+        assertTrue(speculation.getGate().isCompletedExceptionally());
+        assertFalse(speculation.getCommitTime().isDone());
+        assertEquals(1.0, misses.count());
+        assertEquals(2.0, wastedTokens.totalAmount());
+
+        List<String> sentences = new ArrayList<>();
+        assertFalse(speculation.commit("你好", (sentence, isFirst, isLast) -> sentences.add(sentence)));
+        assertTrue(sentences.isEmpty());
+        assertEquals(0.0, hits.count());
+    }
+
+    @Test
+    void failedRequestCannotBeCommitted() {
+        SpeculativeChat speculation = speculate("你好");
+        speculation.onError();
+        assertFalse(speculation.commit("你好", (sentence, isFirst, isLast) -> {
+        }));
+        assertFalse(speculation.getGate().isDone());
+    }
+}
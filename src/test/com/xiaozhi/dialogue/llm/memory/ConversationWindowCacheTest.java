@@ -0,0 +1,221 @@
+package com.xiaozhi.dialogue.llm.memory;
+
+import com.xiaozhi.entity.SysMessage;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.IntFunction;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 窗口缓存的加载去重、加载期间追加的消息合并、窗口裁剪和按设备数淘汰
+ */
+class ConversationWindowCacheTest {
+
+    private static final int WINDOW_SIZE = 4;
+
+    private MeterRegistry registry;
+    private ConversationWindowCache cache;
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        cache = new ConversationWindowCache();
+        ReflectionTestUtils.setField(cache, "maxDevices", 2);
+        ReflectionTestUtils.setField(cache, "windowSize", WINDOW_SIZE);
+        ReflectionTestUtils.setField(cache, "meterRegistry", registry);
+        cache.init();
+    }
+
+    private static SysMessage message(String text, long time) {
+        return new SysMessage().setDeviceId("device").setSender("user").setMessage(text)
+                .setCreateTime(new Date(time));
+    }
+
+    private static List<SysMessage> history(int count) {
+        List<SysMessage> messages = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            messages.add(message("h" + i, i));
+        }
+        return messages;
+    }
+
+    private static List<String> texts(List<SysMessage> messages) {
+        return messages.stream().map(SysMessage::getMessage).toList();
+    }
+
+    private static List<SysMessage> get(CompletableFuture<List<SysMessage>> future) throws Exception {
+        return future.get(5, TimeUnit.SECONDS);
+    }
+
+    /**
+     * 记录调用次数的加载器，返回数据库中最近的 limit 条
+     */
+    private static final class CountingLoader implements IntFunction<List<SysMessage>> {
+        final AtomicInteger calls = new AtomicInteger();
+        final List<SysMessage> rows;
+
+        CountingLoader(List<SysMessage> rows) {
+            this.rows = rows;
+        }
+
+        @Override
+        public List<SysMessage> apply(int limit) {
+            calls.incrementAndGet();
+            return List.copyOf(rows.subList(Math.max(0, rows.size() - limit), rows.size()));
+        }
+    }
+
+    @Test
+    void loadsOnceAndServesFromCache() throws Exception {
+        CountingLoader loader = new CountingLoader(history(3));
+        assertEquals(List.of("h0", "h1", "h2"), texts(get(cache.getMessages("a", 4, loader))));
+        assertEquals(List.of("h1", "h2"), texts(get(cache.getMessages("a", 2, loader))));
+        assertEquals(1, loader.calls.get());
+        assertEquals(1.0, registry.counter("xiaozhi.chat.window", "result", "miss").count(), 0);
+        assertEquals(1.0, registry.counter("xiaozhi.chat.window", "result", "hit").count(), 0);
+    }
+
+    @Test
+    void concurrentMissesShareOneLoad() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger calls = new AtomicInteger();
+        IntFunction<List<SysMessage>> loader = limit -> {
+            calls.incrementAndGet();
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return history(2);
+        };
+        List<CompletableFuture<List<SysMessage>>> futures = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            futures.add(cache.getMessages("a", 4, loader));
+        }
+        assertTrue(futures.stream().noneMatch(CompletableFuture::isDone));
+
+        release.countDown();
+        for (CompletableFuture<List<SysMessage>> future : futures) {
+            assertEquals(List.of("h0", "h1"), texts(get(future)));
+        }
+        assertEquals(1, calls.get());
+    }
+
+    @Test
+    void mergesMessagesAppendedDuringLoadWithoutDuplicates() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        List<SysMessage> rows = new ArrayList<>(history(2));
+        SysMessage persisted = message("new-0", 100);
+        SysMessage pending = message("new-1", 101);
+        CompletableFuture<List<SysMessage>> future = cache.getMessages("a", 4, limit -> {
+            try {
+                assertTrue(release.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            return List.copyOf(rows);
+        });
+
+        // 加载期间追加两条，其中一条在查询前已经落库
+        cache.append("a", persisted);
+        cache.append("a", pending);
+        rows.add(message("new-0", 100));
+        release.countDown();
+
+        assertEquals(List.of("h0", "h1", "new-0", "new-1"), texts(get(future)));
+    }
+
+    @Test
+    void appendTrimsToWindowSize() throws Exception {
+        CountingLoader loader = new CountingLoader(history(3));
+        get(cache.getMessages("a", 4, loader));
+        cache.append("a", message("m0", 10));
+        cache.append("a", message("m1", 11));
+        assertEquals(List.of("h2", "m0", "m1"), texts(get(cache.getMessages("a", 3, loader))));
+        assertEquals(List.of("h1", "h2", "m0", "m1"), texts(get(cache.getMessages("a", 4, loader))));
+        assertEquals(1, loader.calls.get());
+    }
+
+    @Test
+    void appendIgnoresUncachedDevice() throws Exception {
+        cache.append("a", message("m0", 10));
+        assertEquals(0, cache.size());
+        CountingLoader loader = new CountingLoader(history(1));
+        assertEquals(List.of("h0"), texts(get(cache.getMessages("a", 4, loader))));
+    }
+
+    @Test
+    void limitAboveWindowBypassesCache() throws Exception {
+        CountingLoader loader = new CountingLoader(history(6));
+        assertEquals(6, get(cache.getMessages("a", 6, loader)).size());
+        assertEquals(0, cache.size());
+        assertEquals(1, loader.calls.get());
+    }
+
+    @Test
+    void evictsLeastRecentlyUsedDevice() throws Exception {
+        CountingLoader loader = new CountingLoader(history(1));
+        get(cache.getMessages("a", 4, loader));
+        get(cache.getMessages("b", 4, loader));
+        // 追加算一次访问，a 成为最近使用
+        cache.append("a", message("m0", 10));
+        get(cache.getMessages("c", 4, loader));
+
+        assertEquals(2, cache.size());
+        assertEquals(1.0, registry.counter("xiaozhi.chat.window.evictions").count(), 0);
+        assertEquals(3, loader.calls.get());
+        get(cache.getMessages("a", 4, loader));
+        assertEquals(3, loader.calls.get());
+        get(cache.getMessages("b", 4, loader));
+        assertEquals(4, loader.calls.get());
+    }
+
+    @Test
+    void failedLoadIsRetriedOnNextRequest() throws Exception {
+        AtomicInteger calls = new AtomicInteger();
+        IntFunction<List<SysMessage>> loader = limit -> {
+            if (calls.incrementAndGet() == 1) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            return history(1);
+        };
+        assertEquals(List.of(), get(cache.getMessages("a", 4, loader)));
+        assertEquals(0, cache.size());
+        assertEquals(List.of("h0"), texts(get(cache.getMessages("a", 4, loader))));
+        assertEquals(2, calls.get());
+    }
+
+    @Test
+    void evictRemovesDevice() throws Exception {
+        CountingLoader loader = new CountingLoader(history(1));
+        get(cache.getMessages("a", 4, loader));
+        cache.evict("a");
+        assertEquals(0, cache.size());
+        get(cache.getMessages("a", 4, loader));
+        assertEquals(2, loader.calls.get());
+    }
+
+    @Test
+    void evictAllRemovesEveryDevice() throws Exception {
+        CountingLoader loader = new CountingLoader(history(1));
+        get(cache.getMessages("a", 4, loader));
+        get(cache.getMessages("b", 4, loader));
+        cache.evictAll();
+        assertEquals(0, cache.size());
+        get(cache.getMessages("a", 4, loader));
+        get(cache.getMessages("b", 4, loader));
+        assertEquals(4, loader.calls.get());
+    }
+}
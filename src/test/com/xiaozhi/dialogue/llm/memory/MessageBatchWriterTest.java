@@ -0,0 +1,248 @@
+package com.xiaozhi.dialogue.llm.memory;
+
+import com.xiaozhi.common.web.PageFilter;
+import com.xiaozhi.entity.SysMessage;
+import com.xiaozhi.service.SysMessageService;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 批量写入的凑批、背压溢出（丢弃/溢写）、溢写补写和写入失败处理
+ */
+class MessageBatchWriterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final List<MessageBatchWriter> writers = new ArrayList<>();
+
+    /**
+     * 记录每批写入的消息，可以阻塞写入或让写入失败
+     */
+    private static final class RecordingMessageService implements SysMessageService {
+        final List<List<SysMessage>> batches = new CopyOnWriteArrayList<>();
+        final CountDownLatch entered = new CountDownLatch(1);
+        final AtomicInteger failures = new AtomicInteger();
+        volatile CountDownLatch gate = new CountDownLatch(0);
+
+        @Override
+        public int add(SysMessage message) {
+            return addBatch(List.of(message));
+        }
+
+        @Override
+        public int addBatch(List<SysMessage> messages) {
+            entered.countDown();
+            try {
+                assertTrue(gate.await(5, TimeUnit.SECONDS));
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            if (failures.getAndUpdate(n -> Math.max(0, n - 1)) > 0) {
+                throw new IllegalStateException("数据库不可用");
+            }
+            batches.add(List.copyOf(messages));
+            return messages.size();
+        }
+
+        @Override
+        public List<SysMessage> query(SysMessage message, PageFilter pageFilter) {
+            return List.of();
+        }
+
+        @Override
+        public int delete(SysMessage message) {
+            return 0;
+        }
+
+        int written() {
+            return batches.stream().mapToInt(List::size).sum();
+        }
+
+        List<String> contents() {
+            return batches.stream().flatMap(List::stream).map(SysMessage::getMessage).toList();
+        }
+    }
+
+    @AfterEach
+    void tearDown() {
+        writers.forEach(MessageBatchWriter::stop);
+    }
+
+    private MessageBatchWriter writer(RecordingMessageService service, MeterRegistry registry, int capacity,
+            int batchSize, MessageBatchWriter.OverflowPolicy policy) {
+        MessageBatchWriter writer = new MessageBatchWriter();
+        ReflectionTestUtils.setField(writer, "queueCapacity", capacity);
+        ReflectionTestUtils.setField(writer, "batchSize", batchSize);
+        ReflectionTestUtils.setField(writer, "flushIntervalMs", 50L);
+        ReflectionTestUtils.setField(writer, "offerTimeoutMs", 10L);
+        ReflectionTestUtils.setField(writer, "overflowPolicy", policy);
+        ReflectionTestUtils.setField(writer, "spillPath", spillFile().toString());
+        ReflectionTestUtils.setField(writer, "shutdownTimeoutMs", 5000L);
+        ReflectionTestUtils.setField(writer, "messageService", service);
+        ReflectionTestUtils.setField(writer, "meterRegistry", registry);
+        writer.start();
+        writers.add(writer);
+        return writer;
+    }
+
+    private Path spillFile() {
+        return tempDir.resolve("spill").resolve("messages.jsonl");
+    }
+
+    private static SysMessage message(String text) {
+        return new SysMessage().setDeviceId("device").setSender("user").setMessage(text);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    private static double overflow(MeterRegistry registry, String policy) {
+        return registry.counter("xiaozhi.chat.message.overflow", "policy", policy).count();
+    }
+
+    /**
+     * 写线程阻塞在第一批后再把队列填满，下一条消息必然溢出
+     */
+    private void fillQueue(MessageBatchWriter writer, RecordingMessageService service, int capacity)
+            throws InterruptedException {
+        service.gate = new CountDownLatch(1);
+        assertTrue(writer.submit(message("blocked")));
+        assertTrue(service.entered.await(5, TimeUnit.SECONDS));
+        for (int i = 0; i < capacity; i++) {
+            assertTrue(writer.submit(message("queued-" + i)));
+        }
+    }
+
+    @Test
+    void writesMessagesInBatches() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        MessageBatchWriter writer = writer(service, new SimpleMeterRegistry(), 100, 10,
+                MessageBatchWriter.OverflowPolicy.DROP);
+        for (int i = 0; i < 25; i++) {
+            assertTrue(writer.submit(message("m" + i)));
+        }
+        waitUntil(() -> service.written() == 25);
+        assertTrue(service.batches.size() < 25, "消息应合并写入");
+        assertTrue(service.batches.stream().allMatch(batch -> batch.size() <= 10));
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 25; i++) {
+            expected.add("m" + i);
+        }
+        assertEquals(expected, service.contents());
+    }
+
+    @Test
+    void flushesPartialBatchAfterInterval() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        MessageBatchWriter writer = writer(service, new SimpleMeterRegistry(), 100, 10,
+                MessageBatchWriter.OverflowPolicy.DROP);
+        writer.submit(message("a"));
+        writer.submit(message("b"));
+        waitUntil(() -> service.written() == 2);
+        assertEquals(List.of("a", "b"), service.contents());
+    }
+
+    @Test
+    void dropsWhenQueueStaysFull() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MessageBatchWriter writer = writer(service, registry, 2, 1, MessageBatchWriter.OverflowPolicy.DROP);
+        fillQueue(writer, service, 2);
+
+        assertFalse(writer.submit(message("overflow")));
+        assertEquals(1.0, overflow(registry, "drop"), 0);
+        assertEquals(0.0, overflow(registry, "spill"), 0);
+        assertFalse(Files.exists(spillFile()));
+
+        service.gate.countDown();
+        waitUntil(() -> service.written() == 3);
+        assertEquals(List.of("blocked", "queued-0", "queued-1"), service.contents());
+    }
+
+    @Test
+    void spillsWhenQueueStaysFullAndReplaysOnStart() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MessageBatchWriter writer = writer(service, registry, 2, 1, MessageBatchWriter.OverflowPolicy.SPILL);
+        fillQueue(writer, service, 2);
+
+        assertFalse(writer.submit(message("spilled-0")));
+        assertFalse(writer.submit(message("spilled-1")));
+        assertEquals(2.0, overflow(registry, "spill"), 0);
+        assertEquals(0.0, overflow(registry, "drop"), 0);
+        assertEquals(2, Files.readAllLines(spillFile(), StandardCharsets.UTF_8).size());
+
+        service.gate.countDown();
+        waitUntil(() -> service.written() == 3);
+        writer.stop();
+
+        // 下次启动时补写溢写的消息，补写后删除文件
+        RecordingMessageService restarted = new RecordingMessageService();
+        writer(restarted, new SimpleMeterRegistry(), 10, 10, MessageBatchWriter.OverflowPolicy.SPILL);
+        waitUntil(() -> restarted.written() == 2);
+        assertEquals(List.of("spilled-0", "spilled-1"), restarted.contents());
+        waitUntil(() -> !Files.exists(spillFile().resolveSibling("messages.jsonl.replay")));
+        assertFalse(Files.exists(spillFile()));
+    }
+
+    @Test
+    void retriesFailedBatchOnce() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        service.failures.set(1);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MessageBatchWriter writer = writer(service, registry, 10, 10, MessageBatchWriter.OverflowPolicy.SPILL);
+        writer.submit(message("a"));
+        waitUntil(() -> service.written() == 1);
+        assertEquals(0.0, registry.counter("xiaozhi.chat.message.failed").count(), 0);
+        assertFalse(Files.exists(spillFile()));
+    }
+
+    @Test
+    void spillsBatchThatFailsTwice() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        service.failures.set(2);
+        MeterRegistry registry = new SimpleMeterRegistry();
+        MessageBatchWriter writer = writer(service, registry, 10, 10, MessageBatchWriter.OverflowPolicy.SPILL);
+        writer.submit(message("a"));
+        waitUntil(() -> overflow(registry, "spill") == 1);
+        assertEquals(1.0, registry.counter("xiaozhi.chat.message.failed").count(), 0);
+        assertEquals(1, Files.readAllLines(spillFile(), StandardCharsets.UTF_8).size());
+        assertEquals(0, service.written());
+    }
+
+    @Test
+    void stopWritesQueuedMessages() throws Exception {
+        RecordingMessageService service = new RecordingMessageService();
+        MessageBatchWriter writer = writer(service, new SimpleMeterRegistry(), 100, 10,
+                MessageBatchWriter.OverflowPolicy.DROP);
+        for (int i = 0; i < 30; i++) {
+            writer.submit(message("m" + i));
+        }
+        writer.stop();
+        assertEquals(30, service.written());
+        assertEquals(0, writer.getQueueSize());
+    }
+}
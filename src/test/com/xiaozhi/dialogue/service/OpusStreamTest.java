@@ -0,0 +1,102 @@
+package com.xiaozhi.dialogue.service;
+
+import com.xiaozhi.utils.AudioUtils;
+import com.xiaozhi.utils.OpusProcessor;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 同一句子的主流、对冲流和缓存编码各自持有编码器，一路结束或放弃不影响其他路
+ */
+class OpusStreamTest {
+
+    // 一帧PCM的字节数
+    private static final int FRAME_BYTES = AudioUtils.FRAME_SIZE * 2;
+
+    private final OpusProcessor opusProcessor = new OpusProcessor();
+
+    private static byte[] pcm(int bytes) {
+        byte[] data = new byte[bytes];
+        for (int i = 0; i < bytes; i += 2) {
+            data[i] = 1;
+        }
+        return data;
+    }
+
+    private static List<byte[]> drain(OpusStream stream) {
+        List<byte[]> frames = new ArrayList<>();
+        byte[] frame;
+        while ((frame = stream.poll()) != null) {
+            frames.add(frame);
+        }
+        return frames;
+    }
+
+    private Object encoder(String key) {
+        Map<?, ?> encoders = (Map<?, ?>) ReflectionTestUtils.getField(opusProcessor, "encoders");
+        return encoders.get(key);
+    }
+
+    @Test
+    void hedgeEncoderSurvivesAbortedPrimary() {
+        OpusStream primary = new OpusStream(opusProcessor, "s_1", false, false);
+        OpusStream hedge = new OpusStream(opusProcessor, "s_1_hedge", false, false);
+
+        primary.write(pcm(FRAME_BYTES));
+        // 对冲流写入一帧半，半帧留在残留数据中
+        hedge.write(pcm(FRAME_BYTES + FRAME_BYTES / 2));
+        drain(hedge);
+        Object hedgeEncoder = encoder("s_1_hedge");
+        assertNotNull(hedgeEncoder);
+
+        // 对冲胜出，放弃主流
+        primary.abort();
+        assertTrue(primary.isAborted());
+        assertNull(encoder("s_1"));
+        assertSame(hedgeEncoder, encoder("s_1_hedge"));
+
+        // 补齐残留的半帧，继续使用原编码器得到一帧
+        hedge.write(pcm(FRAME_BYTES / 2));
+        assertEquals(1, drain(hedge).size());
+        assertSame(hedgeEncoder, encoder("s_1_hedge"));
+
+        hedge.finish();
+        assertTrue(hedge.isDrained());
+        assertNull(encoder("s_1_hedge"));
+    }
+
+    @Test
+    void cacheEncoderSurvivesFinishedPrimary() {
+        OpusStream primary = new OpusStream(opusProcessor, "s_2", false, false);
+        OpusStream cache = new OpusStream(opusProcessor, "s_2_cache", false, true);
+
+        cache.write(pcm(FRAME_BYTES + FRAME_BYTES / 2));
+        primary.write(pcm(FRAME_BYTES));
+        Object cacheEncoder = encoder("s_2_cache");
+        primary.finish();
+        assertSame(cacheEncoder, encoder("s_2_cache"));
+
+        int before = cache.getFrames().size();
+        cache.finish();
+        // 残留的半帧在结束时编码为最后一帧
+        assertEquals(before + 1, cache.getFrames().size());
+    }
+
+    @Test
+    void sessionCleanupStillRemovesAllStreams() {
+        opusProcessor.pcmToOpus("s_3", pcm(FRAME_BYTES), true);
+        opusProcessor.pcmToOpus("s_3_hedge", pcm(FRAME_BYTES), true);
+        opusProcessor.release("s_3");
+        assertNull(encoder("s_3"));
+        assertNotNull(encoder("s_3_hedge"));
+
+        opusProcessor.cleanup("s_3");
+        assertNull(encoder("s_3_hedge"));
+    }
+}
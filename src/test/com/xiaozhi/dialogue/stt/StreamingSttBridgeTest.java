@@ -0,0 +1,208 @@
+package com.xiaozhi.dialogue.stt;
+
+import org.junit.jupiter.api.Test;
+import reactor.core.publisher.Flux;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+import java.util.function.Consumer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 会话就绪后才拉取音频、多句结果拼接、超时以已识别文本结束，以及各环节出错时的结束方式
+ */
+class StreamingSttBridgeTest {
+
+    private static final Duration TIMEOUT = Duration.ofSeconds(5);
+
+    private static final byte[] CHUNK_A = { 1 };
+    private static final byte[] CHUNK_B = { 2 };
+
+    /**
+     * 记录写入的音频，结束时按 onFinish 输出识别结果
+     */
+    private static class RecordingSession implements StreamingSttBridge.Session {
+        final StreamingSttBridge.TranscriptSink sink;
+        final List<byte[]> written = new CopyOnWriteArrayList<>();
+        final AtomicInteger closed = new AtomicInteger();
+        CompletableFuture<Void> ready = CompletableFuture.completedFuture(null);
+        Consumer<StreamingSttBridge.TranscriptSink> onWrite = sink -> {
+        };
+        Consumer<StreamingSttBridge.TranscriptSink> onFinish = sink -> sink.complete(null);
+
+        RecordingSession(StreamingSttBridge.TranscriptSink sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public CompletionStage<Void> ready() {
+            return ready;
+        }
+
+        @Override
+        public void write(byte[] audio) {
+            written.add(audio);
+            onWrite.accept(sink);
+        }
+
+        @Override
+        public void finish() {
+            onFinish.accept(sink);
+        }
+
+        @Override
+        public void close() {
+            closed.incrementAndGet();
+        }
+    }
+
+    /**
+     * 创建一次会话并保留引用，便于在测试中设置行为和检查结果
+     */
+    private static class Factory implements StreamingSttBridge.SessionFactory {
+        final Consumer<RecordingSession> configure;
+        volatile RecordingSession session;
+
+        Factory(Consumer<RecordingSession> configure) {
+            this.configure = configure;
+        }
+
+        @Override
+        public StreamingSttBridge.Session open(StreamingSttBridge.TranscriptSink sink) {
+            RecordingSession session = new RecordingSession(sink);
+            configure.accept(session);
+            this.session = session;
+            return session;
+        }
+    }
+
+    private static List<PartialTranscript> collect(Flux<byte[]> audio, Duration timeout, Factory factory) {
+        return StreamingSttBridge.bridge("test", audio, timeout, factory).collectList().block(TIMEOUT);
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TIMEOUT.toNanos();
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void joinsSentencesIntoFinalResult() {
+        Factory factory = new Factory(session -> session.onFinish = sink -> {
+            sink.partial("你");
+            sink.partial("你");
+            sink.sentenceEnd("你好。");
+            sink.partial("今天");
+            sink.complete(null);
+        });
+        List<PartialTranscript> transcripts = collect(Flux.just(CHUNK_A, CHUNK_B), TIMEOUT, factory);
+
+        assertEquals(List.of(
+                PartialTranscript.partial("你"),
+                PartialTranscript.sentence("你好。"),
+                PartialTranscript.partial("你好。今天"),
+                PartialTranscript.result("你好。今天")), transcripts);
+        assertEquals(List.of(CHUNK_A, CHUNK_B), factory.session.written);
+        assertTrue(factory.session.closed.get() >= 1);
+    }
+
+    @Test
+    void completeUsesServerResultWhenGiven() {
+        Factory factory = new Factory(session -> session.onFinish = sink -> {
+            sink.sentenceEnd("你好");
+            sink.complete("你好。");
+            // 完成后的结果被忽略
+            sink.partial("迟到");
+        });
+        List<PartialTranscript> transcripts = collect(Flux.just(CHUNK_A), TIMEOUT, factory);
+        assertEquals(PartialTranscript.result("你好。"), transcripts.get(transcripts.size() - 1));
+        assertEquals(2, transcripts.size());
+    }
+
+    @Test
+    void audioIsSubscribedOnlyWhenSessionIsReady() throws Exception {
+        CompletableFuture<Void> ready = new CompletableFuture<>();
+        AtomicBoolean subscribed = new AtomicBoolean();
+        Flux<byte[]> audio = Flux.defer(() -> {
+            subscribed.set(true);
+            return Flux.just(CHUNK_A);
+        });
+        Factory factory = new Factory(session -> session.ready = ready);
+
+        CompletableFuture<List<PartialTranscript>> result =
+                StreamingSttBridge.bridge("test", audio, TIMEOUT, factory).collectList().toFuture();
+        Thread.sleep(50);
+        assertFalse(subscribed.get());
+
+        ready.complete(null);
+        assertEquals(List.of(PartialTranscript.result("")), result.get(5, TimeUnit.SECONDS));
+        assertTrue(subscribed.get());
+    }
+
+    @Test
+    void timeoutCompletesWithRecognisedText() throws Exception {
+        Factory factory = new Factory(session -> {
+            session.onWrite = sink -> sink.partial("一部分");
+            // 服务端一直不返回最终结果
+            session.onFinish = sink -> {
+            };
+        });
+        List<PartialTranscript> transcripts = collect(Flux.just(CHUNK_A), Duration.ofMillis(100), factory);
+
+        assertEquals(List.of(PartialTranscript.partial("一部分"), PartialTranscript.result("一部分")), transcripts);
+        // 超时在定时线程上结束识别，会话随后关闭
+        waitUntil(() -> factory.session.closed.get() >= 1);
+    }
+
+    @Test
+    void audioErrorFinishesWithReceivedAudio() {
+        Factory factory = new Factory(session -> session.onFinish = sink -> sink.complete("好的"));
+        Flux<byte[]> audio = Flux.concat(Flux.just(CHUNK_A), Flux.error(new IOException("连接断开")));
+
+        assertEquals(List.of(PartialTranscript.result("好的")), collect(audio, TIMEOUT, factory));
+        assertEquals(1, factory.session.written.size());
+    }
+
+    @Test
+    void writeFailureStopsAudioAndErrors() {
+        AtomicInteger requested = new AtomicInteger();
+        Flux<byte[]> audio = Flux.just(CHUNK_A, CHUNK_B).doOnNext(chunk -> requested.incrementAndGet());
+        Factory factory = new Factory(session -> session.onWrite = sink -> {
+            throw new IllegalStateException("发送失败");
+        });
+
+        assertThrows(IllegalStateException.class, () -> collect(audio, TIMEOUT, factory));
+        assertEquals(1, requested.get());
+        assertTrue(factory.session.closed.get() >= 1);
+    }
+
+    @Test
+    void readyFailureErrors() {
+        Factory factory = new Factory(
+                session -> session.ready = CompletableFuture.failedFuture(new IllegalStateException("鉴权失败")));
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> collect(Flux.just(CHUNK_A), TIMEOUT, factory));
+        assertEquals("鉴权失败", error.getMessage());
+        assertTrue(factory.session.written.isEmpty());
+    }
+
+    @Test
+    void openFailureErrors() {
+        StreamingSttBridge.SessionFactory factory = sink -> {
+            throw new IllegalStateException("无法连接");
+        };
+        assertThrows(IllegalStateException.class,
+                () -> StreamingSttBridge.bridge("test", Flux.just(CHUNK_A), TIMEOUT, factory).blockLast(TIMEOUT));
+    }
+}
@@ -0,0 +1,125 @@
+package com.xiaozhi.dialogue.tts.cache;
+
+import com.xiaozhi.entity.SysConfig;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 内存层和磁盘层的读写，以及配置失效后旧配置合成结果的丢弃
+ */
+class TtsAudioCacheTest {
+
+    private static final List<byte[]> FRAMES = List.of(new byte[] { 1, 2 }, new byte[] { 3 });
+
+    @TempDir
+    Path dir;
+
+    private TtsAudioCache cache;
+    private final SysConfig config = new SysConfig().setConfigId(7).setProvider("edge");
+
+    @BeforeEach
+    void setUp() {
+        cache = cache();
+    }
+
+    private TtsAudioCache cache() {
+        TtsAudioCache cache = new TtsAudioCache();
+        ReflectionTestUtils.setField(cache, "enabled", true);
+        ReflectionTestUtils.setField(cache, "maxTextLength", 64);
+        ReflectionTestUtils.setField(cache, "memoryMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cache, "diskEnabled", true);
+        ReflectionTestUtils.setField(cache, "diskPath", dir.toString());
+        ReflectionTestUtils.setField(cache, "diskMaxBytes", 1024L * 1024);
+        ReflectionTestUtils.setField(cache, "diskLowWaterRatio", 0.8);
+        ReflectionTestUtils.setField(cache, "meterRegistry", new SimpleMeterRegistry());
+        cache.init();
+        return cache;
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void putThenGetFromMemoryAndDisk() throws Exception {
+        cache.put(config, "voice", "你好", FRAMES, cache.generation(config));
+        assertSame(FRAMES.get(0), cache.get(config, "voice", "你好").get(0));
+        assertNull(cache.get(config, "other", "你好"));
+
+        // 新实例只有磁盘层
+        waitUntil(() -> cache().get(config, "voice", " 你好 ") != null);
+        assertArrayEquals(FRAMES.get(1), cache().get(config, "voice", "你好").get(1));
+    }
+
+    @Test
+    void invalidateRemovesBothTiers() throws Exception {
+        cache.put(config, "voice", "你好", FRAMES, cache.generation(config));
+        waitUntil(() -> cache().get(config, "voice", "你好") != null);
+
+        cache.invalidate(config);
+        assertNull(cache.get(config, "voice", "你好"));
+        assertEquals(0, cache.getMemoryBytes());
+        assertNull(cache().get(config, "voice", "你好"));
+    }
+
+    @Test
+    void resultOfOldConfigIsDroppedAfterInvalidate() throws Exception {
+        // 合成开始时取得代数，合成期间配置被修改
+        long generation = cache.generation(config);
+        cache.invalidate(config);
+        cache.put(config, "voice", "你好", FRAMES, generation);
+
+        assertNull(cache.get(config, "voice", "你好"));
+        assertEquals(0, cache.getMemoryBytes());
+        Thread.sleep(50);
+        assertNull(cache().get(config, "voice", "你好"));
+
+        // 新配置的结果正常写入
+        cache.put(config, "voice", "你好", FRAMES, cache.generation(config));
+        assertNotNull(cache.get(config, "voice", "你好"));
+    }
+
+    @Test
+    void invalidateOnlyAffectsItsConfig() {
+        SysConfig other = new SysConfig().setConfigId(8).setProvider("edge");
+        long generation = cache.generation(other);
+        cache.put(other, "voice", "你好", FRAMES, generation);
+        cache.invalidate(config);
+
+        assertEquals(generation, cache.generation(other));
+        assertNotNull(cache.get(other, "voice", "你好"));
+    }
+
+    @Test
+    void pendingDiskWriteIsSkippedAfterInvalidate() throws Exception {
+        ReentrantLock diskLock = (ReentrantLock) ReflectionTestUtils.getField(cache, "diskLock");
+        Map<?, ?> writing = (Map<?, ?>) ReflectionTestUtils.getField(cache, "writing");
+        diskLock.lock();
+        try {
+            // 磁盘写入在等待锁，此时配置失效
+            cache.put(config, "voice", "你好", FRAMES, cache.generation(config));
+            assertEquals(1, writing.size());
+            cache.invalidate(config);
+        } finally {
+            diskLock.unlock();
+        }
+        waitUntil(writing::isEmpty);
+        assertNull(cache().get(config, "voice", "你好"));
+    }
+}
@@ -0,0 +1,50 @@
+package com.xiaozhi.dialogue.tts.hedge;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 耗时窗口的分位数估算和旧样本覆盖
+ */
+class LatencyWindowTest {
+
+    @Test
+    void percentileNeedsMinimumSamples() {
+        LatencyWindow window = new LatencyWindow(10);
+        assertEquals(-1, window.percentile(0.5, 1));
+        window.record(5);
+        window.record(7);
+        assertEquals(-1, window.percentile(0.5, 3));
+        assertEquals(5, window.percentile(0.5, 2));
+    }
+
+    @Test
+    void percentileUsesNearestRank() {
+        LatencyWindow window = new LatencyWindow(100);
+        for (int i = 100; i >= 1; i--) {
+            window.record(i);
+        }
+        assertEquals(50, window.percentile(0.5, 1));
+        assertEquals(95, window.percentile(0.95, 1));
+        assertEquals(99, window.percentile(0.99, 1));
+        assertEquals(100, window.percentile(1.0, 1));
+        assertEquals(1, window.percentile(0.0, 1));
+    }
+
+    @Test
+    void newSamplesOverwriteOldest() {
+        LatencyWindow window = new LatencyWindow(3);
+        window.record(1000);
+        window.record(1000);
+        window.record(1000);
+        assertEquals(1000, window.percentile(0.5, 1));
+
+        window.record(1);
+        window.record(2);
+        assertEquals(3, window.size());
+        assertEquals(2, window.percentile(0.5, 1));
+        window.record(3);
+        assertEquals(3, window.percentile(1.0, 1));
+    }
+}
@@ -0,0 +1,222 @@
+package com.xiaozhi.dialogue.tts.hedge;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 对冲的触发、主请求失败改发、落败请求的中断和结果释放、超时和名额限制
+ */
+class TtsHedgerTest {
+
+    private static final long HEDGE_DELAY_MS = 100;
+    // 不希望触发对冲的用例使用的延迟，远大于虚拟线程冷启动等耗时
+    private static final long LONG_DELAY_MS = 4000;
+
+    private MeterRegistry registry;
+    private TtsHedger hedger;
+    private final List<String> discarded = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        registry = new SimpleMeterRegistry();
+        hedger = hedger(16);
+    }
+
+    private TtsHedger hedger(int maxInflight) {
+        TtsHedger hedger = new TtsHedger();
+        ReflectionTestUtils.setField(hedger, "enabled", true);
+        ReflectionTestUtils.setField(hedger, "percentile", 0.95);
+        ReflectionTestUtils.setField(hedger, "minDelayMs", 10L);
+        ReflectionTestUtils.setField(hedger, "defaultDelayMs", HEDGE_DELAY_MS);
+        ReflectionTestUtils.setField(hedger, "minSamples", 1);
+        ReflectionTestUtils.setField(hedger, "windowSize", 10);
+        ReflectionTestUtils.setField(hedger, "maxInflight", maxInflight);
+        ReflectionTestUtils.setField(hedger, "meterRegistry", registry);
+        hedger.init();
+        return hedger;
+    }
+
+    private static TtsHedger.Leg<String> leg(String provider, long delayMs, String value) {
+        return new TtsHedger.Leg<>(provider, () -> {
+            Thread.sleep(delayMs);
+            return value;
+        });
+    }
+
+    private static TtsHedger.Leg<String> failing(String provider, long delayMs) {
+        return new TtsHedger.Leg<>(provider, () -> {
+            Thread.sleep(delayMs);
+            throw new IllegalStateException(provider + " 失败");
+        });
+    }
+
+    private double hedge(String outcome) {
+        return registry.counter("xiaozhi.tts.hedge", "outcome", outcome, "provider", "primary").count();
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void fastPrimaryWinsWithoutHedging() throws Exception {
+        ReflectionTestUtils.setField(hedger, "defaultDelayMs", LONG_DELAY_MS);
+        AtomicBoolean fallbackCalled = new AtomicBoolean();
+        TtsHedger.Result<String> result = hedger.call(false, leg("primary", 0, "p"),
+                new TtsHedger.Leg<>("fallback", () -> {
+                    fallbackCalled.set(true);
+                    return "f";
+                }), 5000, discarded::add);
+        assertEquals("p", result.value());
+        assertFalse(result.fallback());
+        assertFalse(fallbackCalled.get());
+        assertEquals(0.0, hedge("fired"), 0);
+    }
+
+    @Test
+    void slowPrimaryIsHedgedAndInterrupted() throws Exception {
+        CountDownLatch interrupted = new CountDownLatch(1);
+        TtsHedger.Leg<String> primary = new TtsHedger.Leg<>("primary", () -> {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+                throw e;
+            }
+            return "p";
+        });
+        long start = System.nanoTime();
+        TtsHedger.Result<String> result = hedger.call(false, primary, leg("fallback", 0, "f"), 5000,
+                discarded::add);
+        long elapsed = System.nanoTime() - start;
+
+        assertEquals("f", result.value());
+        assertTrue(result.fallback());
+        assertTrue(elapsed >= TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY_MS));
+        assertTrue(interrupted.await(5, TimeUnit.SECONDS), "落败的主请求应被中断");
+        assertEquals(1.0, hedge("fired"), 0);
+        assertEquals(1.0, registry.counter("xiaozhi.tts.hedge.won", "leg", "fallback", "provider", "fallback").count(), 0);
+
+        // 被放弃的主请求按已耗费的时间计入，对冲延迟不会低于它
+        assertTrue(hedger.hedgeDelayNanos("primary", false) >= TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY_MS));
+    }
+
+    @Test
+    void hedgeDelayFollowsRecordedLatency() throws Exception {
+        for (int i = 0; i < 3; i++) {
+            hedger.call(true, leg("primary", 30, "p"), null, 5000, discarded::add);
+        }
+        long delay = hedger.hedgeDelayNanos("primary", true);
+        assertTrue(delay >= TimeUnit.MILLISECONDS.toNanos(30));
+        assertTrue(delay < TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY_MS));
+        // 流式和非流式分别统计
+        assertEquals(TimeUnit.MILLISECONDS.toNanos(HEDGE_DELAY_MS), hedger.hedgeDelayNanos("primary", false));
+    }
+
+    @Test
+    void primaryFailureFailsOverImmediately() throws Exception {
+        ReflectionTestUtils.setField(hedger, "defaultDelayMs", LONG_DELAY_MS);
+        long start = System.nanoTime();
+        TtsHedger.Result<String> result = hedger.call(false, failing("primary", 0), leg("fallback", 0, "f"), 5000,
+                discarded::add);
+        assertEquals("f", result.value());
+        assertTrue(result.fallback());
+        assertTrue(System.nanoTime() - start < TimeUnit.MILLISECONDS.toNanos(LONG_DELAY_MS));
+        assertEquals(1.0, hedge("failover"), 0);
+    }
+
+    @Test
+    void bothFailingThrowsPrimaryError() {
+        IllegalStateException error = assertThrows(IllegalStateException.class,
+                () -> hedger.call(false, failing("primary", 0), failing("fallback", 0), 5000, discarded::add));
+        assertEquals("primary 失败", error.getMessage());
+    }
+
+    @Test
+    void lateLoserResultIsDiscarded() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        // 主请求不响应中断，在胜者确定后才返回
+        TtsHedger.Leg<String> primary = new TtsHedger.Leg<>("primary", () -> {
+            while (true) {
+                try {
+                    if (release.await(5, TimeUnit.SECONDS)) {
+                        return "late";
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        TtsHedger.Result<String> result = hedger.call(false, primary, leg("fallback", 0, "f"), 5000,
+                discarded::add);
+        assertEquals("f", result.value());
+
+        release.countDown();
+        waitUntil(() -> discarded.contains("late"));
+    }
+
+    @Test
+    void timeoutAbandonsBothLegs() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        TtsHedger.Leg<String> primary = new TtsHedger.Leg<>("primary", () -> {
+            while (true) {
+                try {
+                    if (release.await(5, TimeUnit.SECONDS)) {
+                        return "late";
+                    }
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        assertThrows(TimeoutException.class, () -> hedger.call(false, primary, null, 50, discarded::add));
+
+        // 超时后才返回的结果交给调用方释放
+        release.countDown();
+        waitUntil(() -> discarded.contains("late"));
+    }
+
+    @Test
+    void exhaustedSlotsSkipHedgeAndFailover() {
+        TtsHedger limited = hedger(0);
+        AtomicBoolean fallbackCalled = new AtomicBoolean();
+        TtsHedger.Leg<String> fallback = new TtsHedger.Leg<>("fallback", () -> {
+            fallbackCalled.set(true);
+            return "f";
+        });
+
+        assertThrows(IllegalStateException.class,
+                () -> limited.call(false, failing("primary", 0), fallback, 5000, discarded::add));
+        assertEquals(1.0, hedge("skipped"), 0);
+        assertFalse(fallbackCalled.get());
+    }
+
+    @Test
+    void slotIsReleasedAfterHedge() throws Exception {
+        TtsHedger limited = hedger(1);
+        for (int i = 0; i < 3; i++) {
+            TtsHedger.Result<String> result = limited.call(false, failing("primary", 0), leg("fallback", 0, "f"),
+                    5000, discarded::add);
+            assertTrue(result.fallback());
+            // 名额在备用请求的线程结束时归还，稍晚于结果返回
+            Thread.sleep(50);
+        }
+        assertEquals(3.0, hedge("failover"), 0);
+        assertEquals(0.0, hedge("skipped"), 0);
+    }
+}
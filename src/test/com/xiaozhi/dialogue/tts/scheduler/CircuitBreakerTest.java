@@ -0,0 +1,79 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 熔断器的关闭、打开、半开状态转换
+ */
+class CircuitBreakerTest {
+
+    private static final long OPEN_NANOS = 1_000;
+
+    @Test
+    void opensAfterConsecutiveFailures() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_NANOS);
+        assertFalse(breaker.onFailure(0));
+        assertFalse(breaker.onFailure(0));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(0));
+
+        assertTrue(breaker.onFailure(10));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(10));
+        assertEquals(OPEN_NANOS - 5, breaker.remainingOpenNanos(15));
+    }
+
+    @Test
+    void successResetsFailureCount() {
+        CircuitBreaker breaker = new CircuitBreaker(2, OPEN_NANOS);
+        breaker.onFailure(0);
+        breaker.onSuccess();
+        assertFalse(breaker.onFailure(0));
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+    }
+
+    @Test
+    void halfOpenAllowsSingleProbe() {
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN_NANOS);
+        breaker.onFailure(0);
+        assertFalse(breaker.allowRequest(OPEN_NANOS - 1));
+
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.HALF_OPEN, breaker.getState());
+        assertEquals(0, breaker.remainingOpenNanos(OPEN_NANOS));
+        breaker.onDispatch();
+        assertFalse(breaker.allowRequest(OPEN_NANOS), "探测请求完成前不再放行");
+    }
+
+    @Test
+    void probeSuccessCloses() {
+        CircuitBreaker breaker = new CircuitBreaker(1, OPEN_NANOS);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+        breaker.onDispatch();
+        breaker.onSuccess();
+        assertEquals(CircuitBreaker.State.CLOSED, breaker.getState());
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+        breaker.onDispatch();
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+    }
+
+    @Test
+    void probeFailureReopens() {
+        CircuitBreaker breaker = new CircuitBreaker(3, OPEN_NANOS);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        breaker.onFailure(0);
+        assertTrue(breaker.allowRequest(OPEN_NANOS));
+        breaker.onDispatch();
+
+        // 半开时一次失败即重新打开，不等累计到阈值
+        assertTrue(breaker.onFailure(2 * OPEN_NANOS));
+        assertEquals(CircuitBreaker.State.OPEN, breaker.getState());
+        assertFalse(breaker.allowRequest(2 * OPEN_NANOS));
+        assertEquals(OPEN_NANOS, breaker.remainingOpenNanos(2 * OPEN_NANOS));
+        assertTrue(breaker.allowRequest(3 * OPEN_NANOS));
+    }
+}
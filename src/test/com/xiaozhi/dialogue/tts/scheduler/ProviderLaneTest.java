@@ -0,0 +1,280 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 通道的并发限制、优先级、重试、熔断，以及会话和单轮对话的取消
+ */
+class ProviderLaneTest {
+
+    private ScheduledExecutorService timer;
+
+    // 各会话正在合成的任务数及出现过的最大值
+    private final Map<String, AtomicInteger> running = new ConcurrentHashMap<>();
+    private final Map<String, Integer> peak = new ConcurrentHashMap<>();
+    private final AtomicInteger runningTotal = new AtomicInteger();
+    private final AtomicInteger peakTotal = new AtomicInteger();
+
+    private final List<String> started = new CopyOnWriteArrayList<>();
+    private final List<String> finished = new CopyOnWriteArrayList<>();
+    private final List<Throwable> givenUp = new CopyOnWriteArrayList<>();
+
+    @BeforeEach
+    void setUp() {
+        timer = Executors.newSingleThreadScheduledExecutor();
+    }
+
+    @AfterEach
+    void tearDown() {
+        timer.shutdownNow();
+    }
+
+    private ProviderLane lane(int maxConcurrent, int perSession, int failureThreshold, int maxRetries) {
+        ProviderLane.Limits limits = new ProviderLane.Limits(maxConcurrent, perSession, 0, 1,
+                failureThreshold, 60_000, maxRetries, 1, 1);
+        return new ProviderLane("test", limits, timer, new SimpleMeterRegistry());
+    }
+
+    private TtsJob job(String sessionId, boolean first, int seq, TtsScheduler.Attempt body) {
+        return job(sessionId, null, first, seq, body);
+    }
+
+    private TtsJob job(String sessionId, Long dialogueId, boolean first, int seq, TtsScheduler.Attempt body) {
+        String name = sessionId + "-" + seq;
+        return new TtsJob(sessionId, dialogueId, first, seq, () -> {
+            started.add(name);
+            int sessionRunning = running.computeIfAbsent(sessionId, k -> new AtomicInteger()).incrementAndGet();
+            peak.merge(sessionId, sessionRunning, Math::max);
+            peakTotal.accumulateAndGet(runningTotal.incrementAndGet(), Math::max);
+            try {
+                body.run();
+                finished.add(name);
+            } finally {
+                runningTotal.decrementAndGet();
+                running.get(sessionId).decrementAndGet();
+            }
+        }, givenUp::add);
+    }
+
+    private static TtsScheduler.Attempt await(CountDownLatch latch) {
+        return () -> assertTrue(latch.await(5, TimeUnit.SECONDS));
+    }
+
+    private static void waitUntil(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "等待超时");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    void limitsConcurrencyPerSession() throws Exception {
+        ProviderLane lane = lane(10, 2, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        for (int seq = 0; seq < 5; seq++) {
+            lane.submit(job("a", seq == 0, seq, await(release)));
+        }
+        waitUntil(() -> started.size() == 2);
+        Thread.sleep(50);
+        assertEquals(2, started.size());
+
+        release.countDown();
+        waitUntil(() -> finished.size() == 5);
+        assertEquals(2, (int) peak.get("a"));
+        assertTrue(givenUp.isEmpty());
+    }
+
+    @Test
+    void limitsTotalConcurrency() throws Exception {
+        ProviderLane lane = lane(2, 2, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        for (String session : List.of("a", "b", "c")) {
+            for (int seq = 0; seq < 2; seq++) {
+                lane.submit(job(session, false, seq, await(release)));
+            }
+        }
+        waitUntil(() -> started.size() == 2);
+        Thread.sleep(50);
+        assertEquals(2, started.size());
+
+        release.countDown();
+        waitUntil(() -> finished.size() == 6);
+        assertEquals(2, peakTotal.get());
+    }
+
+    @Test
+    void firstSentenceJumpsAheadOfOtherSessions() throws Exception {
+        ProviderLane lane = lane(1, 1, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.submit(job("a", false, 0, await(release)));
+        waitUntil(() -> started.size() == 1);
+
+        lane.submit(job("b", false, 1, () -> {
+        }));
+        lane.submit(job("c", true, 0, () -> {
+        }));
+        release.countDown();
+        waitUntil(() -> finished.size() == 3);
+        assertEquals(List.of("a-0", "c-0", "b-1"), started);
+    }
+
+    @Test
+    void retriesFailedJob() throws Exception {
+        ProviderLane lane = lane(4, 2, 5, 2);
+        AtomicInteger attempts = new AtomicInteger();
+        lane.submit(job("a", true, 0, () -> {
+            if (attempts.incrementAndGet() < 3) {
+                throw new IllegalStateException("合成失败");
+            }
+        }));
+        waitUntil(() -> finished.size() == 1);
+        assertEquals(3, attempts.get());
+        assertTrue(givenUp.isEmpty());
+    }
+
+    @Test
+    void givesUpAfterMaxRetries() throws Exception {
+        ProviderLane lane = lane(4, 2, 5, 1);
+        lane.submit(job("a", true, 0, () -> {
+            throw new IllegalStateException("合成失败");
+        }));
+        waitUntil(() -> givenUp.size() == 1);
+        assertEquals(2, started.size());
+        assertInstanceOf(IllegalStateException.class, givenUp.get(0));
+    }
+
+    @Test
+    void openBreakerRejectsQueuedAndNewJobs() throws Exception {
+        ProviderLane lane = lane(1, 1, 1, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.submit(job("a", false, 0, () -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            throw new IllegalStateException("合成失败");
+        }));
+        lane.submit(job("b", false, 0, () -> {
+        }));
+        waitUntil(() -> started.size() == 1);
+
+        // 失败打开熔断器，排队中的任务立即失败
+        release.countDown();
+        waitUntil(() -> givenUp.size() == 2);
+        assertInstanceOf(RejectedExecutionException.class, givenUp.get(1));
+
+        lane.submit(job("c", false, 0, () -> {
+        }));
+        assertEquals(3, givenUp.size());
+        assertInstanceOf(RejectedExecutionException.class, givenUp.get(2));
+        assertEquals(List.of("a-0"), started);
+    }
+
+    @Test
+    void cancelDropsQueuedJobsSilently() throws Exception {
+        ProviderLane lane = lane(4, 1, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.submit(job("a", false, 0, await(release)));
+        lane.submit(job("a", false, 1, () -> {
+        }));
+        waitUntil(() -> started.size() == 1);
+
+        lane.cancel("a");
+        release.countDown();
+        waitUntil(() -> finished.size() == 1);
+        Thread.sleep(50);
+        assertEquals(List.of("a-0"), started);
+        assertTrue(givenUp.isEmpty());
+    }
+
+    @Test
+    void cancelledSessionKeepsLimitWhileJobsInFlight() throws Exception {
+        ProviderLane lane = lane(4, 1, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.submit(job("a", false, 0, await(release)));
+        waitUntil(() -> started.size() == 1);
+
+        // 取消后提交的同一会话任务不会另建队列与仍在合成的任务并发
+        lane.cancel("a");
+        lane.submit(job("a", false, 1, () -> {
+        }));
+        Thread.sleep(50);
+        assertEquals(1, started.size());
+
+        release.countDown();
+        waitUntil(() -> finished.size() == 1);
+        Thread.sleep(50);
+        assertEquals(1, (int) peak.get("a"));
+        assertEquals(List.of("a-0"), started);
+
+        // 合成结束后队列已回收，新的任务正常调度
+        lane.submit(job("a", false, 2, () -> {
+        }));
+        waitUntil(() -> finished.size() == 2);
+        assertTrue(givenUp.isEmpty());
+    }
+
+    @Test
+    void cancelDialogueDropsOnlyItsQueuedJobs() throws Exception {
+        ProviderLane lane = lane(4, 1, 5, 0);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.submit(job("a", 1L, true, 0, await(release)));
+        lane.submit(job("a", 1L, false, 1, () -> {
+        }));
+        lane.submit(job("a", 1L, false, 2, () -> {
+        }));
+        lane.submit(job("b", 1L, false, 0, () -> {
+        }));
+        waitUntil(() -> started.size() == 2);
+
+        // 中止会话a的第1轮，排队的句子不再合成，其他会话的同名对话不受影响
+        lane.cancel("a", 1L);
+        lane.submit(job("a", 1L, false, 3, () -> {
+        }));
+        lane.submit(job("a", 2L, true, 4, () -> {
+        }));
+        release.countDown();
+        waitUntil(() -> finished.size() == 3);
+        Thread.sleep(50);
+        assertEquals(List.of("a-0", "a-4"), started.stream().filter(name -> name.startsWith("a")).toList());
+        assertTrue(started.contains("b-0"));
+        assertTrue(givenUp.isEmpty());
+    }
+
+    @Test
+    void cancelledDialogueIsNotRetried() throws Exception {
+        ProviderLane lane = lane(4, 1, 5, 2);
+        CountDownLatch release = new CountDownLatch(1);
+        lane.submit(job("a", 1L, true, 0, () -> {
+            assertTrue(release.await(5, TimeUnit.SECONDS));
+            throw new IllegalStateException("合成失败");
+        }));
+        waitUntil(() -> started.size() == 1);
+
+        lane.cancel("a", 1L);
+        release.countDown();
+        Thread.sleep(100);
+        assertEquals(1, started.size());
+        assertTrue(givenUp.isEmpty());
+
+        // 下一轮对话正常调度
+        lane.submit(job("a", 2L, true, 1, () -> {
+        }));
+        waitUntil(() -> finished.size() == 1);
+    }
+}
@@ -0,0 +1,60 @@
+package com.xiaozhi.dialogue.tts.scheduler;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 令牌桶的突发容量、按时间补充和不限速
+ */
+class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    void allowsBurstThenWaits() {
+        TokenBucket bucket = new TokenBucket(10, 3);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+
+        long wait = bucket.tryAcquire(now);
+        assertEquals(SECOND / 10, wait, SECOND / 1000);
+    }
+
+    @Test
+    void refillsOverTime() {
+        TokenBucket bucket = new TokenBucket(10, 1);
+        long now = System.nanoTime();
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+
+        // 半个令牌时仍需等待剩余的时间
+        long wait = bucket.tryAcquire(now + SECOND / 20);
+        assertEquals(SECOND / 20, wait, SECOND / 1000);
+
+        assertEquals(0, bucket.tryAcquire(now + SECOND / 10));
+        assertTrue(bucket.tryAcquire(now + SECOND / 10) > 0);
+    }
+
+    @Test
+    void refillIsCappedAtBurst() {
+        TokenBucket bucket = new TokenBucket(100, 2);
+        long now = System.nanoTime() + 10 * SECOND;
+        assertEquals(0, bucket.tryAcquire(now));
+        assertEquals(0, bucket.tryAcquire(now));
+        assertTrue(bucket.tryAcquire(now) > 0);
+    }
+
+    @Test
+    void zeroRateIsUnlimited() {
+        TokenBucket bucket = new TokenBucket(0, 1);
+        long now = System.nanoTime();
+        for (int i = 0; i < 1000; i++) {
+            assertEquals(0, bucket.tryAcquire(now));
+        }
+    }
+}
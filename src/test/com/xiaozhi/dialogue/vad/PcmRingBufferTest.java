@@ -0,0 +1,119 @@
+package com.xiaozhi.dialogue.vad;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 按块增长、达到上限后覆盖最旧数据、跨块和回绕的读出，以及清空后只保留一块
+ */
+class PcmRingBufferTest {
+
+    private static byte[] bytes(int from, int to) {
+        byte[] data = new byte[to - from];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (from + i);
+        }
+        return data;
+    }
+
+    @Test
+    void growsChunkByChunk() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 16);
+        assertTrue(buffer.isEmpty());
+        assertEquals(0, buffer.capacity());
+
+        buffer.write(bytes(0, 3));
+        assertEquals(4, buffer.capacity());
+        buffer.write(bytes(3, 9));
+        assertEquals(12, buffer.capacity());
+        assertEquals(9, buffer.size());
+        assertArrayEquals(bytes(0, 9), buffer.toByteArray());
+        assertEquals(0, buffer.getDroppedBytes());
+    }
+
+    @Test
+    void overwritesOldestWhenFull() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 16);
+        buffer.write(bytes(0, 14));
+        buffer.write(bytes(14, 20));
+
+        assertEquals(16, buffer.capacity());
+        assertEquals(16, buffer.size());
+        assertEquals(4, buffer.getDroppedBytes());
+        assertArrayEquals(bytes(4, 20), buffer.toByteArray());
+    }
+
+    @Test
+    void wrapsAroundRepeatedly() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 12);
+        // 每次写入长度与块大小不对齐，起止位置落在块中间并多次回绕
+        int written = 0;
+        for (int i = 0; i < 20; i++) {
+            buffer.write(bytes(written, written + 5));
+            written += 5;
+            int expected = Math.min(written, 12);
+            assertEquals(expected, buffer.size());
+            assertArrayEquals(bytes(written - expected, written), buffer.toByteArray(), "第" + i + "次写入后");
+        }
+        assertEquals(written - 12, buffer.getDroppedBytes());
+    }
+
+    @Test
+    void oversizedWriteKeepsTail() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 8);
+        buffer.write(bytes(0, 3));
+        buffer.write(bytes(3, 23));
+
+        assertEquals(8, buffer.size());
+        assertArrayEquals(bytes(15, 23), buffer.toByteArray());
+        assertEquals(15, buffer.getDroppedBytes());
+    }
+
+    @Test
+    void writeHonorsOffsetAndLength() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 16);
+        buffer.write(bytes(0, 10), 2, 5);
+        buffer.write(null);
+        buffer.write(bytes(0, 10), 0, 0);
+        assertArrayEquals(bytes(2, 7), buffer.toByteArray());
+    }
+
+    @Test
+    void chunkSizeAndCapacityAreAligned() {
+        // 块大小按16位样本对齐，上限向上取整到整块
+        PcmRingBuffer buffer = new PcmRingBuffer(5, 9);
+        buffer.write(new byte[100]);
+        assertEquals(12, buffer.capacity());
+        assertEquals(12, buffer.size());
+    }
+
+    @Test
+    void writeToMatchesToByteArray() throws Exception {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 12);
+        buffer.write(bytes(0, 17));
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertEquals(12, buffer.writeTo(Channels.newChannel(out)));
+        assertArrayEquals(buffer.toByteArray(), out.toByteArray());
+        assertArrayEquals(bytes(5, 17), out.toByteArray());
+    }
+
+    @Test
+    void clearKeepsFirstChunkOnly() {
+        PcmRingBuffer buffer = new PcmRingBuffer(4, 12);
+        buffer.write(bytes(0, 17));
+        buffer.clear();
+
+        assertTrue(buffer.isEmpty());
+        assertEquals(4, buffer.capacity());
+        assertEquals(0, buffer.getDroppedBytes());
+        assertEquals(0, buffer.toByteArray().length);
+
+        // 清空后从头写入，不受之前回绕位置影响
+        buffer.write(bytes(50, 60));
+        assertArrayEquals(bytes(50, 60), buffer.toByteArray());
+    }
+}
@@ -0,0 +1,142 @@
+package com.xiaozhi.utils;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * 帧文件的写入和两种读取方式、按索引切帧、关闭后的访问以及损坏文件的识别
+ */
+class OpusFrameFileTest {
+
+    @TempDir
+    Path dir;
+
+    private static final List<byte[]> FRAMES = List.of(
+            new byte[] { 1, 2, 3 },
+            new byte[0],
+            new byte[] { 4 },
+            new byte[] { 5, 6, 7, 8, 9 });
+
+    private static void assertFrames(List<byte[]> expected, List<byte[]> actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int i = 0; i < expected.size(); i++) {
+            assertArrayEquals(expected.get(i), actual.get(i));
+        }
+    }
+
+    private static byte[] bytes(ByteBuffer buffer) {
+        byte[] data = new byte[buffer.remaining()];
+        buffer.duplicate().get(data);
+        return data;
+    }
+
+    @Test
+    void writeThenOpen() throws Exception {
+        Path path = dir.resolve("a" + OpusFrameFile.SUFFIX);
+        long size = OpusFrameFile.write(path, FRAMES);
+        assertEquals(Files.size(path), size);
+        assertTrue(OpusFrameFile.isFrameFile(path));
+
+        try (OpusFrameFile file = OpusFrameFile.open(path)) {
+            assertEquals(4, file.frameCount());
+            assertEquals(AudioUtils.OPUS_FRAME_DURATION_MS, file.getFrameDurationMs());
+            assertEquals(AudioUtils.SAMPLE_RATE, file.getSampleRate());
+            assertEquals(4L * AudioUtils.OPUS_FRAME_DURATION_MS, file.durationMs());
+            for (int i = 0; i < FRAMES.size(); i++) {
+                assertArrayEquals(FRAMES.get(i), bytes(file.frame(i)));
+            }
+            assertFrames(FRAMES, file.toList());
+        }
+    }
+
+    @Test
+    void readLoadsIntoHeap() throws Exception {
+        Path path = dir.resolve("a" + OpusFrameFile.SUFFIX);
+        OpusFrameFile.write(path, FRAMES);
+        try (OpusFrameFile file = OpusFrameFile.read(path)) {
+            assertFrames(FRAMES, file.toList());
+            assertArrayEquals(new byte[] { 5, 6, 7, 8, 9 }, bytes(file.frame(3)));
+        }
+    }
+
+    @Test
+    void emptyFrameList() throws Exception {
+        Path path = dir.resolve("empty" + OpusFrameFile.SUFFIX);
+        OpusFrameFile.write(path, List.of());
+        try (OpusFrameFile file = OpusFrameFile.open(path)) {
+            assertEquals(0, file.frameCount());
+            assertEquals(0, file.durationMs());
+            assertTrue(file.toList().isEmpty());
+        }
+    }
+
+    @Test
+    void rewriteReplacesExistingFile() throws Exception {
+        Path path = dir.resolve("a" + OpusFrameFile.SUFFIX);
+        OpusFrameFile.write(path, FRAMES);
+        OpusFrameFile.write(path, List.of(new byte[] { 42 }));
+        try (OpusFrameFile file = OpusFrameFile.read(path)) {
+            assertFrames(List.of(new byte[] { 42 }), file.toList());
+        }
+        // 临时文件已被移走，目录里只剩目标文件
+        try (var files = Files.list(dir)) {
+            assertEquals(List.of(path), files.toList());
+        }
+    }
+
+    @Test
+    void frameIndexIsChecked() throws Exception {
+        Path path = dir.resolve("a" + OpusFrameFile.SUFFIX);
+        OpusFrameFile.write(path, FRAMES);
+        try (OpusFrameFile file = OpusFrameFile.open(path)) {
+            assertThrows(IndexOutOfBoundsException.class, () -> file.frame(-1));
+            assertThrows(IndexOutOfBoundsException.class, () -> file.frame(4));
+        }
+    }
+
+    @Test
+    void closedFileCannotBeRead() throws Exception {
+        Path path = dir.resolve("a" + OpusFrameFile.SUFFIX);
+        OpusFrameFile.write(path, FRAMES);
+        OpusFrameFile file = OpusFrameFile.open(path);
+        ByteBuffer frame = file.frame(0);
+        file.close();
+
+        assertThrows(IllegalStateException.class, () -> file.frame(0));
+        assertThrows(IllegalStateException.class, file::toList);
+        // 关闭前取出的切片仍然有效
+        assertArrayEquals(new byte[] { 1, 2, 3 }, bytes(frame));
+        assertEquals(4, file.frameCount());
+    }
+
+    @Test
+    void rejectsOtherFiles() throws Exception {
+        Path opus = dir.resolve("a.opus");
+        Files.write(opus, new byte[] { 'O', 'g', 'g', 'S', 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0 });
+        assertFalse(OpusFrameFile.isFrameFile(opus));
+        assertFalse(OpusFrameFile.isFrameFile(dir));
+        assertFalse(OpusFrameFile.isFrameFile(dir.resolve("missing")));
+        assertThrows(IOException.class, () -> OpusFrameFile.read(opus));
+    }
+
+    @Test
+    void rejectsTruncatedFile() throws Exception {
+        Path path = dir.resolve("a" + OpusFrameFile.SUFFIX);
+        OpusFrameFile.write(path, FRAMES);
+        byte[] data = Files.readAllBytes(path);
+        Files.write(path, Arrays.copyOf(data, data.length - 1));
+
+        assertTrue(OpusFrameFile.isFrameFile(path));
+        assertThrows(IOException.class, () -> OpusFrameFile.open(path));
+        assertThrows(IOException.class, () -> OpusFrameFile.read(path));
+    }
+}